@@ -8,16 +8,22 @@ import org.sikuli.script.FindFailed;
 import com.aventstack.extentreports.ExtentTest;
 import com.aventstack.extentreports.MediaEntityBuilder;
 
+import core.ActionEngine;
+import core.ActionReport;
 import core.Application;
 import core.Driver;
+import core.ElementModel;
 import core.EventFailException;
+import core.SearchMode;
 import core.SikuliElement;
+import core.TreeSnapshot;
 import core.UIElement;
 import epiplex.Capture;
 import epiplex.PerformanceUtils;
 import epiplex.RemoteClient;
 import mmarquee.automation.AutomationException;
 import mmarquee.automation.Element;
+import mmarquee.automation.PatternID;
 import utils.ProjectConfiguration;
 import utils.Settings;
 import utils.TakeScreenshot;
@@ -266,13 +272,14 @@ public class ActionMethods {
 	 *                    name, or text).
 	 * @param expected    The expected 'name' attribute value of the UI element.
 	 */
+	@TreeQuery
 	public void assertName(String controlType, String IDValue, String expected) {
 		try {
 			String actual = null;
 			try {
 				// Attempt to get the UI element using the provided 'controlType', 'IDValue',
 				// and a timeout of 3 seconds.
-				actual = elementFinder.getUIElement("id", controlType, IDValue, 3).getName();
+				actual = elementFinder.getName("id", controlType, IDValue, 3);
 			} catch (AutomationException e) {
 				// If an AutomationException occurs during the element retrieval, it will be
 				// caught here.
@@ -299,6 +306,8 @@ public class ActionMethods {
 	 * @param parameter2  The second parameter used in the element identification
 	 *                    (if required).
 	 */
+	@LocatorStep
+	@TreeQuery
 	public void assertExist(String locatorType, String parameter1, String parameter2) {
 		try {
 			// Check whether the element exists using the provided locator and parameters.
@@ -326,6 +335,8 @@ public class ActionMethods {
 	 * @param parameter2  The second parameter used in the element identification
 	 *                    (if required).
 	 */
+	@LocatorStep
+	@TreeQuery
 	public void assertNotExist(String locatorType, String parameter1, String parameter2) {
 		try {
 			// Check whether the element does not exist using the provided locator and
@@ -355,6 +366,8 @@ public class ActionMethods {
 	 * @param parameter2  The second parameter used in the element identification
 	 *                    (if required).
 	 */
+	@LocatorStep
+	@TreeQuery
 	public void assertEnabled(String locatorType, String parameter1, String parameter2) {
 		try {
 			// Check whether the element is enabled using the provided locator and
@@ -384,6 +397,8 @@ public class ActionMethods {
 	 * @param parameter2  The second parameter used in the element identification
 	 *                    (if required).
 	 */
+	@LocatorStep
+	@TreeQuery
 	public void assertNotEnabled(String locatorType, String parameter1, String parameter2) {
 		try {
 			// Check whether the element is not enabled using the provided locator and
@@ -667,6 +682,112 @@ public class ActionMethods {
 		}
 	}
 
+	/**
+	 * Sets how the following searches walk the tree: SUBTREE (the default),
+	 * DEPTH_LIMITED or BREADTH_FIRST down to the given depth.
+	 *
+	 * @param mode  The name of the search mode.
+	 * @param depth The number of levels below the search root to walk.
+	 */
+	public void setSearchMode(String mode, String depth) {
+		try {
+			driver.setSearchMode(SearchMode.valueOf(mode.toUpperCase()), Integer.parseInt(depth));
+			reportLogger.info(config.getPassMarkUp("setSearchMode set to " + mode + " " + depth + " successfully"));
+		} catch (Exception e) {
+			reportLogger.info(config.getFailMarkUp("setSearchMode set to " + mode + " " + depth + " failed"));
+		}
+	}
+
+	/**
+	 * Narrows the following searches to the subtree of the given element, e.g. a
+	 * pane of the focused window. Elements not found there are still searched in
+	 * the full system.
+	 *
+	 * @param locatorType The type of locator used to identify the element.
+	 * @param controlType The type of control of the element.
+	 * @param value       The value or identifier of the element.
+	 */
+	@LocatorStep
+	public void pushSearchScope(String locatorType, String controlType, String value) {
+		if (elementFinder.pushSearchScope(locatorType, controlType, value, Settings.FIND_WAIT)) {
+			reportLogger.info(config.getPassMarkUp("pushSearchScope " + value + " successfully"));
+			eventStatus = true;
+		} else {
+			reportLogger.info(config.getFailMarkUp("pushSearchScope " + value + " failed"));
+			eventStatus = false;
+		}
+	}
+
+	/**
+	 * Captures the tree under the search context into a snapshot, which the
+	 * following assertions query until a keyword that is not an assertion runs
+	 * or the application reports a change.
+	 */
+	@TreeQuery
+	public void takeSnapshot() {
+		try {
+			TreeSnapshot snapshot = driver.takeSnapshot();
+			reportLogger.info(config.getPassMarkUp("takeSnapshot of " + snapshot.size() + " elements successfully"));
+			eventStatus = true;
+		} catch (AutomationException e) {
+			reportLogger.info(config.getFailMarkUp("takeSnapshot failed"));
+			eventStatus = false;
+		}
+	}
+
+	/**
+	 * Captures the tree under the search context into an indexed element model,
+	 * which the following lookups resolve from until the structure of the tree
+	 * changes.
+	 */
+	@TreeQuery
+	public void buildElementModel() {
+		try {
+			ElementModel model = driver.buildElementModel();
+			reportLogger.info(
+					config.getPassMarkUp("buildElementModel of " + model.size() + " elements successfully"));
+			eventStatus = true;
+		} catch (AutomationException e) {
+			reportLogger.info(config.getFailMarkUp("buildElementModel failed"));
+			eventStatus = false;
+		}
+	}
+
+	/**
+	 * Saves the tree snapshot of the session to a file, capturing one if there is
+	 * none, e.g. to replay the tree in a locator benchmark.
+	 *
+	 * @param fileName The path of the file to write.
+	 */
+	@TreeQuery
+	public void saveSnapshot(String fileName) {
+		try {
+			TreeSnapshot snapshot = driver.getSnapshot();
+			if (snapshot == null) {
+				snapshot = driver.takeSnapshot();
+			}
+			snapshot.save(new File(fileName));
+			reportLogger.info(config.getPassMarkUp("saveSnapshot " + fileName + " successfully"));
+			eventStatus = true;
+		} catch (AutomationException | IOException e) {
+			reportLogger.info(config.getFailMarkUp("saveSnapshot " + fileName + " failed"));
+			eventStatus = false;
+		}
+	}
+
+	/**
+	 * Goes back to the search scope before the last pushSearchScope.
+	 */
+	public void popSearchScope() {
+		if (driver.popSearchScope() != null) {
+			reportLogger.info(config.getPassMarkUp("popSearchScope successfully"));
+			eventStatus = true;
+		} else {
+			reportLogger.info(config.getFailMarkUp("popSearchScope failed, no search scope"));
+			eventStatus = false;
+		}
+	}
+
 	/**
 	 * Focuses on the window with the specified window title.
 	 *
@@ -679,9 +800,12 @@ public class ActionMethods {
 				waitToDisplay("NAME", "WINDOW", windowTitle, "5");
 				element = elementFinder.getWindow(windowTitle, Settings.FIND_WAIT);
 			}
-			Driver.searchContext = element;
-			Driver.searchContext.setFocus();
+			driver.setSearchContext(element);
+			Driver.getBackend().setFocus(element);
 			new UIElement(element).highlight(1);
+			if (Settings.ELEMENT_MODEL) {
+				driver.buildElementModel();
+			}
 			eventStatus = true;
 			reportLogger.info(config.getPassMarkUp("focusWindow " + windowTitle + " successfully"));
 		} catch (Exception e) {
@@ -699,9 +823,12 @@ public class ActionMethods {
 	public void focusPane(String paneTitle) {
 		try {
 			Element element = elementFinder.getPane(paneTitle, Settings.FIND_WAIT);
-			Driver.searchContext = element;
-			element.setFocus();
+			driver.setSearchContext(element);
+			Driver.getBackend().setFocus(element);
 			new UIElement(element).highlight(1);
+			if (Settings.ELEMENT_MODEL) {
+				driver.buildElementModel();
+			}
 			eventStatus = true;
 			reportLogger.info(config.getPassMarkUp("focusPane " + paneTitle + " successfully"));
 		} catch (Exception e) {
@@ -721,7 +848,7 @@ public class ActionMethods {
 			// Press CONTROL + T to open a new tab.
 			shortcut("CONTROL", "T");
 			// Paste the URL into the address bar.
-			SikuliElement.screen.paste(url);
+			SikuliElement.getScreen().paste(url);
 			// Press ENTER to navigate to the URL.
 			shortcut("ENTER");
 			eventStatus = true;
@@ -760,6 +887,7 @@ public class ActionMethods {
 	 * @throws RuntimeException if the element fails to be displayed within the
 	 *                          maximum wait duration.
 	 */
+	@LocatorStep
 	public void waitToDisplay(String locatorType, String parameter1, String parameter2) {
 		boolean displayStatus = elementFinder.waitToDisplay(locatorType, parameter1, parameter2, Settings.MAX_WAIT);
 		if (displayStatus) {
@@ -784,6 +912,7 @@ public class ActionMethods {
 	 * @throws RuntimeException if the element fails to be displayed within the
 	 *                          specified duration.
 	 */
+	@LocatorStep
 	public void waitToDisplay(String locatorType, String parameter1, String parameter2, String duration) {
 		boolean displayStatus = elementFinder.waitToDisplay(locatorType, parameter1, parameter2,
 				Long.parseLong(duration));
@@ -808,6 +937,7 @@ public class ActionMethods {
 	 * @throws RuntimeException if the element fails to vanish within the maximum
 	 *                          wait duration.
 	 */
+	@LocatorStep
 	public void waitToVanish(String locatorType, String parameter1, String parameter2) {
 		boolean vanishStatus = elementFinder.waitToVanish(locatorType, parameter1, parameter2, Settings.MAX_WAIT);
 		if (vanishStatus) {
@@ -832,6 +962,7 @@ public class ActionMethods {
 	 * @throws RuntimeException if the element fails to vanish within the specified
 	 *                          duration.
 	 */
+	@LocatorStep
 	public void waitToVanish(String locatorType, String parameter1, String parameter2, String duration) {
 		boolean vanishStatus = elementFinder.waitToVanish(locatorType, parameter1, parameter2,
 				Long.parseLong(duration));
@@ -858,6 +989,7 @@ public class ActionMethods {
 	 * @throws RuntimeException If the element fails to become enabled within the
 	 *                          specified duration.
 	 */
+	@LocatorStep
 	public void waitToEnable(String locatorType, String controlType, String value, String duration) {
 		boolean enableStatus = elementFinder.waitToEnable(locatorType, controlType, value, Long.parseLong(duration));
 		if (enableStatus)
@@ -881,6 +1013,7 @@ public class ActionMethods {
 	 * @throws RuntimeException If the element fails to become enabled within the
 	 *                          default maximum duration time.
 	 */
+	@LocatorStep
 	public void waitToEnable(String locatorType, String controlType, String value) {
 		boolean enableStatus = elementFinder.waitToEnable(locatorType, controlType, value, Settings.MAX_WAIT);
 		if (enableStatus)
@@ -903,10 +1036,12 @@ public class ActionMethods {
 	 *                    be the control value, search element image, or
 	 *                    Y-coordinate value. element.
 	 */
+	@LocatorStep
 	public void click(String locatorType, String parameter1, String parameter2) {
 		try {
 			elementFinder.getElement(locatorType, parameter1, parameter2, Settings.FIND_WAIT).click();
-			reportLogger.info(config.getPassMarkUp(parameter1 + " " + parameter2 + " click successfully."));
+			reportLogger.info(config.getPassMarkUp(
+					parameter1 + " " + parameter2 + " click successfully" + describeAction() + "."));
 			eventStatus = true;
 		} catch (NullPointerException e) {
 			reportLogger.info(config.getFailMarkUp(parameter1 + " " + parameter2 + " click failed."));
@@ -926,6 +1061,7 @@ public class ActionMethods {
 	 *                    be the control value, search element image, or
 	 *                    Y-coordinate value.
 	 */
+	@LocatorStep
 	public void clickCenter(String locatorType, String parameter1, String parameter2) {
 		try {
 			elementFinder.getElement(locatorType, parameter1, parameter2, Settings.FIND_WAIT).clickCenter();
@@ -949,6 +1085,7 @@ public class ActionMethods {
 	 *                    be the control value, search element image, or
 	 *                    Y-coordinate value.
 	 */
+	@LocatorStep
 	public void rightClick(String locatorType, String parameter1, String parameter2) {
 		try {
 			elementFinder.getElement(locatorType, parameter1, parameter2, Settings.FIND_WAIT).rightClick();
@@ -972,6 +1109,7 @@ public class ActionMethods {
 	 *                    be the control value, search element image, or
 	 *                    Y-coordinate value.
 	 */
+	@LocatorStep
 	public void doubleClick(String locatorType, String parameter1, String parameter2) {
 		try {
 			elementFinder.getElement(locatorType, parameter1, parameter2, Settings.FIND_WAIT).doubleClick();
@@ -995,6 +1133,7 @@ public class ActionMethods {
 	 *                    be the control value, search element image, or
 	 *                    Y-coordinate value.
 	 */
+	@LocatorStep
 	public void hover(String locatorType, String parameter1, String parameter2) {
 		try {
 			elementFinder.getElement(locatorType, parameter1, parameter2, Settings.FIND_WAIT).hover();
@@ -1007,7 +1146,10 @@ public class ActionMethods {
 	}
 
 	/**
-	 * Writes the given text on the specified element.
+	 * Writes the given text on the specified element. A UI element supporting the
+	 * Value pattern gets the text set in one call; others are clicked, cleared and
+	 * typed into, without searching for the element again. The step fails at
+	 * once if the element is not found.
 	 *
 	 * @param locatorType The type of locator used to identify the element (e.g.,
 	 *                    "id", "name", "xpath").
@@ -1019,14 +1161,28 @@ public class ActionMethods {
 	 *                    Y-coordinate value.
 	 * @param text        The text to be written on the element.
 	 */
+	@LocatorStep
 	public void write(String locatorType, String parameter1, String parameter2, String text) {
 		try {
-			click(locatorType, parameter1, parameter2);
-			Timer.waitTime(200);
-			Keyboard.clear();
-			keyboardType(text);
-			reportLogger
-					.info(config.getPassMarkUp(parameter1 + " " + parameter2 + " write " + text + " successfully."));
+			SikuliElement element = elementFinder.getElement(locatorType, parameter1, parameter2, Settings.FIND_WAIT);
+			if (element == null) {
+				throw new NullPointerException("Element not found: " + parameter1 + " " + parameter2);
+			}
+			Runnable typing = () -> {
+				element.click();
+				Timer.waitTime(200);
+				Keyboard.clear();
+				Keyboard.type(text);
+			};
+			if (element instanceof UIElement) {
+				String value = Keyboard.resolveText(text);
+				ActionEngine.perform("write", (UIElement) element, PatternID.Value,
+						(backend, target) -> backend.setValue(target, value), typing);
+			} else {
+				typing.run();
+			}
+			reportLogger.info(config.getPassMarkUp(
+					parameter1 + " " + parameter2 + " write " + text + " successfully" + describeAction() + "."));
 			eventStatus = true;
 		} catch (NullPointerException e) {
 			reportLogger.info(config.getFailMarkUp(parameter1 + " " + parameter2 + " write " + text + " failed."));
@@ -1046,10 +1202,12 @@ public class ActionMethods {
 	 *                    be the control value, search element image, or
 	 *                    Y-coordinate value.
 	 */
+	@LocatorStep(controlType = "CHECKBOX")
 	public void check(String locatorType, String parameter1, String parameter2) {
 		try {
 			elementFinder.getUIElement(locatorType, "CHECKBOX", parameter2, Settings.FIND_WAIT).check();
-			reportLogger.info(config.getPassMarkUp(parameter1 + " " + parameter2 + " checked successfully."));
+			reportLogger.info(config.getPassMarkUp(
+					parameter1 + " " + parameter2 + " checked successfully" + describeAction() + "."));
 			eventStatus = true;
 		} catch (FindFailed | AutomationException | NullPointerException e) {
 			reportLogger.info(config.getFailMarkUp(parameter1 + " " + parameter2 + " check failed."));
@@ -1069,10 +1227,12 @@ public class ActionMethods {
 	 *                    be the control value, search element image, or
 	 *                    Y-coordinate value.
 	 */
+	@LocatorStep(controlType = "CHECKBOX")
 	public void unCheck(String locatorType, String parameter1, String parameter2) {
 		try {
 			elementFinder.getUIElement(locatorType, "CHECKBOX", parameter2, Settings.FIND_WAIT).unCheck();
-			reportLogger.info(config.getPassMarkUp(parameter1 + " " + parameter2 + " unchecked successfully."));
+			reportLogger.info(config.getPassMarkUp(
+					parameter1 + " " + parameter2 + " unchecked successfully" + describeAction() + "."));
 			eventStatus = true;
 		} catch (FindFailed | AutomationException | NullPointerException e) {
 			reportLogger.info(config.getFailMarkUp(parameter1 + " " + parameter2 + " uncheck failed."));
@@ -1080,6 +1240,79 @@ public class ActionMethods {
 		}
 	}
 
+	/**
+	 * Expands the specified element, e.g. a combo box or tree item.
+	 *
+	 * @param locatorType The type of locator used to identify the element.
+	 * @param controlType The type of control of the element.
+	 * @param value       The value or identifier of the element.
+	 */
+	@LocatorStep
+	public void expand(String locatorType, String controlType, String value) {
+		try {
+			elementFinder.getUIElement(locatorType, controlType, value, Settings.FIND_WAIT).expand();
+			reportLogger.info(config.getPassMarkUp(
+					controlType + " " + value + " expanded successfully" + describeAction() + "."));
+			eventStatus = true;
+		} catch (NullPointerException e) {
+			reportLogger.info(config.getFailMarkUp(controlType + " " + value + " expand failed."));
+			eventStatus = false;
+		}
+	}
+
+	/**
+	 * Collapses the specified element, e.g. a combo box or tree item.
+	 *
+	 * @param locatorType The type of locator used to identify the element.
+	 * @param controlType The type of control of the element.
+	 * @param value       The value or identifier of the element.
+	 */
+	@LocatorStep
+	public void collapse(String locatorType, String controlType, String value) {
+		try {
+			elementFinder.getUIElement(locatorType, controlType, value, Settings.FIND_WAIT).collapse();
+			reportLogger.info(config.getPassMarkUp(
+					controlType + " " + value + " collapsed successfully" + describeAction() + "."));
+			eventStatus = true;
+		} catch (NullPointerException e) {
+			reportLogger.info(config.getFailMarkUp(controlType + " " + value + " collapse failed."));
+			eventStatus = false;
+		}
+	}
+
+	/**
+	 * Selects the specified element, e.g. a list item, tree item or tab.
+	 *
+	 * @param locatorType The type of locator used to identify the element.
+	 * @param controlType The type of control of the element.
+	 * @param value       The value or identifier of the element.
+	 */
+	@LocatorStep
+	public void select(String locatorType, String controlType, String value) {
+		try {
+			elementFinder.getUIElement(locatorType, controlType, value, Settings.FIND_WAIT).select();
+			reportLogger.info(config.getPassMarkUp(
+					controlType + " " + value + " selected successfully" + describeAction() + "."));
+			eventStatus = true;
+		} catch (NullPointerException e) {
+			reportLogger.info(config.getFailMarkUp(controlType + " " + value + " select failed."));
+			eventStatus = false;
+		}
+	}
+
+	/**
+	 * Describes the path and time of the last action of the keyword, for the
+	 * report.
+	 *
+	 * @return The description, or an empty string if the keyword ran no action
+	 *         through the ActionEngine.
+	 */
+	private static String describeAction() {
+		ActionReport report = ActionEngine.takeLastAction();
+		return report == null ? ""
+				: " (" + report.getPath() + ", " + String.format("%.1f", report.getElapsedNanos() / 1e6) + " ms)";
+	}
+
 	/**
 	 * Drags the given element.
 	 *
@@ -1092,6 +1325,7 @@ public class ActionMethods {
 	 *                    be the control value, search element image, or
 	 *                    Y-coordinate value.
 	 */
+	@LocatorStep
 	public void drag(String locatorType, String parameter1, String parameter2) {
 		try {
 			SikuliElement element = elementFinder.getElement(locatorType, parameter1, parameter2, 2);
@@ -1116,6 +1350,7 @@ public class ActionMethods {
 	 *                    be the control value, search element image, or
 	 *                    Y-coordinate value.
 	 */
+	@LocatorStep
 	public void drop(String locatorType, String parameter1, String parameter2) {
 		try {
 			SikuliElement element = elementFinder.getElement(locatorType, parameter1, parameter2, 2);
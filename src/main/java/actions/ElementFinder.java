@@ -1,19 +1,32 @@
 package actions;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.sikuli.script.FindFailed;
 
-import core.Controls;
 import core.Driver;
 import core.SikuliElement;
+import core.TreeSnapshot;
 import core.UIElement;
+import core.WaitEngine;
+import core.backend.AutomationBackend;
+import core.backend.AutomationEvent;
 import mmarquee.automation.AutomationException;
 import mmarquee.automation.Element;
-import mmarquee.automation.pattern.Window;
+import mmarquee.automation.PropertyID;
+import mmarquee.automation.UIAutomation;
+import utils.Settings;
 
 /**
  * This class consists of all element finding methods
@@ -22,16 +35,32 @@ import mmarquee.automation.pattern.Window;
  *
  */
 /**
- * The ElementFinder class is responsible for mapping human-readable locator
- * types to their corresponding internal locator types. It provides a mapping of
- * strings to LocatorType enum values for easy lookup. The class also stores a
- * static reference to the Driver instance to be used for locating elements.
+ * The ElementFinder class finds the elements of the keywords with the Driver
+ * session it holds. The locators given as strings are resolved through their
+ * compiled {@link LocatorPlan}s; a locator that cannot be compiled is logged
+ * and not found.
+ *
+ * A step listing several locators for the same target, a {@link LocatorChain},
+ * races them: the UIAutomation locators are polled on the thread of the
+ * {@link WaitEngine}, the Sikuli ones on a pool of image workers, the first
+ * locator that finds the element wins and the others are cancelled. The winners
+ * are counted in the {@link #raceStatistics}.
+ *
+ * While the session holds a {@link TreeSnapshot}, the display, vanish and
+ * enable checks and {@link #getName} are answered from it when it confirms the
+ * expected state, and are made live otherwise.
  */
 public class ElementFinder {
 
 	private static final Logger log = LogManager.getLogger(ElementFinder.class);
-	private static HashMap<String, LocatorType> locators = new HashMap<>();
-	public static Driver driver;
+	// Events after which an element may have appeared, or vanished.
+	private static final Set<AutomationEvent.Type> DISPLAY_EVENTS = EnumSet.of(AutomationEvent.Type.WINDOW_OPENED,
+			AutomationEvent.Type.STRUCTURE_CHANGED, AutomationEvent.Type.PROPERTY_CHANGED);
+	private static final Set<AutomationEvent.Type> VANISH_EVENTS = EnumSet.of(AutomationEvent.Type.WINDOW_CLOSED,
+			AutomationEvent.Type.STRUCTURE_CHANGED, AutomationEvent.Type.PROPERTY_CHANGED);
+	public static final LocatorRaceStatistics raceStatistics = new LocatorRaceStatistics();
+	private static volatile ExecutorService imageWorkers;
+	private final Driver driver;
 
 	/**
 	 * Constructor for the ElementFinder class.
@@ -39,26 +68,7 @@ public class ElementFinder {
 	 * @param driver The Driver instance to be used for locating elements.
 	 */
 	public ElementFinder(Driver driver) {
-		ElementFinder.driver = driver;
-	}
-
-	/**
-	 * Static initializer block to populate the locators HashMap with human-readable
-	 * locator types mapped to their corresponding LocatorType enum values. The
-	 * supported locator types are NAME, ID, TEXT, PARTIALNAME, PARTIALID,
-	 * PARTIALTEXT, PARTIALVALUE, IMAGE, LOCATION, and OCR.
-	 */
-	static {
-		locators.put("NAME", LocatorType.NAME);
-		locators.put("ID", LocatorType.ID);
-		locators.put("TEXT", LocatorType.TEXT);
-		locators.put("PARTIALNAME", LocatorType.PARTIALNAME);
-		locators.put("PARTIALID", LocatorType.PARTIALID);
-		locators.put("PARTIALTEXT", LocatorType.PARTIALTEXT);
-		locators.put("PARTIALVALUE", LocatorType.PARTIALVALUE);
-		locators.put("IMAGE", LocatorType.IMAGE);
-		locators.put("LOCATION", LocatorType.LOCATION);
-		locators.put("OCR", LocatorType.OCR);
+		this.driver = driver;
 	}
 
 	/**
@@ -72,7 +82,7 @@ public class ElementFinder {
 	public void maximizeWindow(String windowTitle, long findWait) throws RuntimeException {
 		Element element = getWindow(windowTitle, findWait);
 		try {
-			new Window(element).maximize();
+			Driver.getBackend().maximize(element);
 		} catch (AutomationException e) {
 			throw new RuntimeException("Error while maximizing the window: " + e.getMessage());
 		}
@@ -88,7 +98,7 @@ public class ElementFinder {
 	public void maximizePane(String paneTitle, long findWait) throws RuntimeException {
 		Element element = getPane(paneTitle, findWait);
 		try {
-			new Window(element).maximize();
+			Driver.getBackend().maximize(element);
 		} catch (AutomationException e) {
 			throw new RuntimeException("Error while maximizing the pane: " + e.getMessage());
 		}
@@ -105,7 +115,10 @@ public class ElementFinder {
 	public void closeWindow(String windowTitle, long findWait) throws RuntimeException {
 		Element element = getWindow(windowTitle, findWait);
 		try {
-			new Window(element).close();
+			Driver.getBackend().closeWindow(element);
+			Driver.invalidateCachedElement(element);
+			Driver.getWindowRegistry().invalidate();
+			driver.removeSearchScope(element);
 		} catch (AutomationException e) {
 			throw new RuntimeException("Error while closing the window: " + e.getMessage());
 		}
@@ -121,19 +134,21 @@ public class ElementFinder {
 	public void closePane(String paneTitle, long findWait) throws RuntimeException {
 		Element element = getPane(paneTitle, findWait);
 		try {
-			new Window(element).close();
+			Driver.getBackend().closeWindow(element);
+			Driver.invalidateCachedElement(element);
+			Driver.getWindowRegistry().invalidate();
+			driver.removeSearchScope(element);
 		} catch (AutomationException e) {
 			throw new RuntimeException("Error while closing the pane: " + e.getMessage());
 		}
 	}
 
-	// HashMap to store already found windows and panes to avoid redundant searches
-	private Map<String, Element> windowList = new HashMap<>();
-	private Map<String, Element> panesList = new HashMap<>();
-
 	/**
 	 * Retrieves the Element representing the specified window with the given title
-	 * within the specified duration.
+	 * within the specified duration. The windows are looked up in the
+	 * {@link Driver#getWindowRegistry() window registry}. With the AUTO_SCOPE
+	 * setting, the window becomes the {@link Driver#setSearchScope search scope} of
+	 * the following lookups.
 	 *
 	 * @param windowTitle The title of the window to find.
 	 * @param duration    The maximum duration, in seconds, to wait for the window
@@ -142,19 +157,13 @@ public class ElementFinder {
 	 *         is not found within the specified duration.
 	 */
 	public Element getWindow(String windowTitle, long duration) {
-		Element element = checkWindowList(windowTitle);
-		if (element != null)
-			return element;
-
-		long start = System.currentTimeMillis();
-		long durationMillis = 1000 * duration;
-
-		while (System.currentTimeMillis() - start <= durationMillis) {
-			element = ElementFinder.driver.getWindow(windowTitle);
-			if (element != null) {
-				windowList.put(windowTitle, element);
-				return element;
+		Element element = WaitEngine.await("Window " + windowTitle, 1000 * duration,
+				() -> driver.getWindow(windowTitle), Driver.getBackend(), DISPLAY_EVENTS);
+		if (element != null) {
+			if (Settings.AUTO_SCOPE) {
+				driver.setSearchScope(element);
 			}
+			return element;
 		}
 
 		System.err.println(String.format(windowTitle + " not found within %s s", duration));
@@ -163,7 +172,10 @@ public class ElementFinder {
 
 	/**
 	 * Retrieves the Element representing the specified pane with the given title
-	 * within the specified duration.
+	 * within the specified duration. The panes are looked up in the
+	 * {@link Driver#getWindowRegistry() window registry}. With the AUTO_SCOPE
+	 * setting, the pane becomes the {@link Driver#setSearchScope search scope} of
+	 * the following lookups.
 	 *
 	 * @param paneTitle The title of the pane to find.
 	 * @param duration  The maximum duration, in seconds, to wait for the pane to be
@@ -172,35 +184,19 @@ public class ElementFinder {
 	 *         not found within the specified duration.
 	 */
 	public Element getPane(String paneTitle, long duration) {
-		Element element = checkPaneList(paneTitle);
-		if (element != null)
-			return element;
-
-		long start = System.currentTimeMillis();
-		long durationMillis = 1000 * duration;
-
-		while (System.currentTimeMillis() - start <= durationMillis) {
-			element = driver.getPane(paneTitle);
-			if (element != null) {
-				panesList.put(paneTitle, element);
-				return element;
+		Element element = WaitEngine.await("Pane " + paneTitle, 1000 * duration, () -> driver.getPane(paneTitle),
+				Driver.getBackend(), DISPLAY_EVENTS);
+		if (element != null) {
+			if (Settings.AUTO_SCOPE) {
+				driver.setSearchScope(element);
 			}
+			return element;
 		}
 
 		System.err.println(String.format(paneTitle + " not found within %s s", duration));
 		return null;
 	}
 
-	// Helper methods to check if the window or pane is already found in the
-	// respective lists
-	private Element checkWindowList(String windowTitle) {
-		return windowList.get(windowTitle);
-	}
-
-	private Element checkPaneList(String paneTitle) {
-		return panesList.get(paneTitle);
-	}
-
 	/**
 	 * Retrieves the SikuliElement representing the UI element using the given
 	 * locator type and parameters, within the specified duration.
@@ -217,16 +213,30 @@ public class ElementFinder {
 	 *         the element is not found within the specified duration.
 	 */
 	public SikuliElement getSikuliElement(String locatorType, String parameter1, String parameter2, long duration) {
-		duration = 1000 * duration;
-		long start = System.currentTimeMillis();
-		long durationMillis = 1000 * duration;
+		LocatorChain chain = getChain(locatorType, parameter1, parameter2);
+		if (chain == null) {
+			return null;
+		}
+		return chain.size() > 1 ? getElement(chain, duration) : getSikuliElement(chain.get(0), duration);
+	}
 
-		while (System.currentTimeMillis() - start <= durationMillis) {
-			try {
-				return driver.findSikuliElement(locators.get(locatorType.toUpperCase()), parameter1, parameter2);
-			} catch (FindFailed e) {
-				// Continue to the next iteration if the element is not found.
-			}
+	/**
+	 * Retrieves the SikuliElement of a compiled IMAGE, LOCATION or OCR locator
+	 * within the specified duration.
+	 *
+	 * @param plan     The compiled locator.
+	 * @param duration The maximum duration, in seconds, to wait for the element to
+	 *                 be found.
+	 * @return The SikuliElement if found, or null if the element is not found
+	 *         within the specified duration.
+	 */
+	public SikuliElement getSikuliElement(LocatorPlan plan, long duration) {
+		String parameter1 = plan.getParameter1();
+		String parameter2 = plan.getParameter2();
+		SikuliElement element = WaitEngine.await(parameter1 + " - " + parameter2, 1000 * duration,
+				sikuliElementProbe(plan));
+		if (element != null) {
+			return element;
 		}
 
 		System.err.println(String.format(parameter1 + " - " + parameter2 + " not found within %s s", duration));
@@ -250,17 +260,48 @@ public class ElementFinder {
 	 *         control is not found within the specified duration.
 	 */
 	public UIElement getUIElement(String locatorType, String controlType, String value, long duration) {
+		LocatorChain chain = getChain(locatorType, controlType, value);
+		if (chain == null) {
+			return null;
+		}
+		if (chain.size() == 1) {
+			return getUIElement(chain.get(0), duration);
+		}
+		if (chain.hasSikuli()) {
+			log.error("Not a UIAutomation locator: " + chain);
+			return null;
+		}
+		return getElement(chain, duration);
+	}
+
+	/**
+	 * Retrieves the UIElement of a compiled UIAutomation locator within the
+	 * specified duration.
+	 *
+	 * @param plan     The compiled locator.
+	 * @param duration The maximum duration, in seconds, to wait for the UI control
+	 *                 to be found.
+	 * @return The UIElement if found, or null if the control is not found within
+	 *         the specified duration or the locator is a Sikuli one.
+	 */
+	public UIElement getUIElement(LocatorPlan plan, long duration) {
+		if (plan.isSikuli()) {
+			log.error("Not a UIAutomation locator: " + plan);
+			return null;
+		}
 		long durationMillis = 1000 * duration;
-		long start = System.currentTimeMillis();
+		String controlType = plan.getParameter1();
+		String value = plan.getParameter2();
 
-		while (System.currentTimeMillis() - start <= durationMillis) {
-			try {
-				UIElement element = new UIElement(driver.findElement(locators.get(locatorType.toUpperCase()),
-						Controls.getControl(controlType), value));
+		// Let the lookups retry with backoff until the end of the duration.
+		Driver.startSearchDeadline(durationMillis);
+		try {
+			UIElement element = WaitEngine.await(controlType + " - " + value, durationMillis, uiElementProbe(plan));
+			if (element != null) {
 				return element;
-			} catch (NullPointerException | AutomationException e) {
-				// Catch specific exceptions only if necessary. Handle or log them accordingly.
 			}
+		} finally {
+			Driver.clearSearchDeadline();
 		}
 
 		System.err.println(String.format(controlType + " - " + value + " not found within %s s", duration));
@@ -290,18 +331,37 @@ public class ElementFinder {
 	@SuppressWarnings("unchecked")
 	public <T extends SikuliElement> T getElement(String locatorType, String parameter1, String parameter2,
 			long duration) {
-		locatorType = locatorType.toUpperCase();
+		LocatorChain chain = getChain(locatorType, parameter1, parameter2);
+		if (chain == null) {
+			return null;
+		}
+		return chain.size() > 1 ? getElement(chain, duration) : getElement(chain.get(0), duration);
+	}
 
-		if ("IMAGE".equals(locatorType) || "LOCATION".equals(locatorType) || "OCR".equals(locatorType)) {
+	/**
+	 * Retrieves the UIElement or SikuliElement of a compiled locator within the
+	 * specified duration.
+	 *
+	 * @param <T>      The type of element to retrieve, which can be either
+	 *                 SikuliElement or UIElement.
+	 * @param plan     The compiled locator.
+	 * @param duration The maximum duration, in seconds, to wait for the element to
+	 *                 be found.
+	 * @return The retrieved UiElement or SikuliElement if found, or null if the
+	 *         element is not found or an exception occurs during retrieval.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends SikuliElement> T getElement(LocatorPlan plan, long duration) {
+		if (plan.isSikuli()) {
 			try {
-				return (T) getSikuliElement(locatorType, parameter1, parameter2, duration);
+				return (T) getSikuliElement(plan, duration);
 			} catch (Exception e) {
 				// Handle or log any exceptions related to Sikuli element retrieval.
 				e.printStackTrace();
 			}
 		} else {
 			try {
-				return (T) getUIElement(locatorType, parameter1, parameter2, duration);
+				return (T) getUIElement(plan, duration);
 			} catch (Exception e) {
 				// Handle or log any exceptions related to UI element retrieval.
 				e.printStackTrace();
@@ -311,6 +371,32 @@ public class ElementFinder {
 		return null;
 	}
 
+	/**
+	 * Retrieves the element of the first locator of a chain that finds it within
+	 * the specified duration. The locators are raced, and the others are cancelled
+	 * once one of them wins.
+	 *
+	 * @param <T>      The type of element to retrieve, which can be either
+	 *                 SikuliElement or UIElement.
+	 * @param chain    The compiled locators.
+	 * @param duration The maximum duration, in seconds, to wait for the element to
+	 *                 be found.
+	 * @return The UiElement or SikuliElement of the winning locator, or null if no
+	 *         locator finds the element within the specified duration.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends SikuliElement> T getElement(LocatorChain chain, long duration) {
+		SikuliElement element = race(chain, chain.toString(), 1000 * duration,
+				this::sikuliOrUIElementProbe, DISPLAY_EVENTS).join();
+		if (element != null) {
+			return (T) element;
+		}
+
+		System.err.println(String.format(chain + " not found within %s s", duration));
+		log.error(String.format(chain + " not found within %s s", duration));
+		return null;
+	}
+
 	/**
 	 * This method will wait to display the given element
 	 * 
@@ -341,7 +427,9 @@ public class ElementFinder {
 	 * Waits for the element specified by the locator type and parameters to vanish
 	 * from the screen within the given duration. The method checks for the
 	 * element's presence repeatedly until it vanishes or the specified duration is
-	 * exceeded.
+	 * exceeded, and checks again at once when the backend reports a window closing
+	 * or the tree changing. With several locators, the element has vanished once
+	 * none of them finds it.
 	 *
 	 * @param locatorType The type of locator to use for finding the element (e.g.,
 	 *                    "NAME", "ID", "TEXT", "IMAGE", "LOCATION", "OCR").
@@ -357,44 +445,37 @@ public class ElementFinder {
 	 *         otherwise.
 	 */
 	public boolean vanish(String locatorType, String parameter1, String parameter2, long duration) {
-		boolean isVanished = false;
-		long durationMillis = 1000 * duration;
-		long start = System.currentTimeMillis();
-
-		while (!isVanished) {
-			try {
-				locatorType = locatorType.toUpperCase();
-				SikuliElement sikuliElement = null;
-				if ("IMAGE".equals(locatorType) || "LOCATION".equals(locatorType) || "OCR".equals(locatorType)) {
-					sikuliElement = driver.findSikuliElement(locators.get(locatorType.toUpperCase()), parameter1,
-							parameter2);
-				} else {
-					sikuliElement = new UIElement(driver.findElement(locators.get(locatorType.toUpperCase()),
-							Controls.getControl(parameter1), parameter2));
-				}
-
-				if (sikuliElement != null && sikuliElement.isVanished()) {
-					return true;
-				}
-			} catch (FindFailed | NullPointerException | AutomationException e) {
-				// Handle or log any exceptions appropriately.
+		LocatorChain chain = getChain(locatorType, parameter1, parameter2);
+		if (chain == null) {
+			return false;
+		}
+		// An element missing from the snapshot has only vanished if the snapshot
+		// holds every element the live check searches.
+		TreeSnapshot snapshot = getSnapshot(chain);
+		if (snapshot != null && coversLiveSearch(snapshot)) {
+			long start = System.nanoTime();
+			if (answered(findInSnapshot(snapshot, chain) < 0, start)) {
 				return true;
 			}
+		} else if (snapshot != null) {
+			Driver.snapshotStatistics.recordFallback();
+		}
+		boolean isVanished = WaitEngine.awaitTrue(parameter2 + " to vanish", 1000 * duration, vanishProbe(chain),
+				getEventBackend(chain), VANISH_EVENTS);
 
-			if (System.currentTimeMillis() - start > durationMillis) {
-				System.err.println(String.format(parameter2 + " not vanished within %s s", duration));
-				log.error(String.format(parameter2 + " not vanished within %s s", duration));
-				break;
-			}
+		if (!isVanished) {
+			System.err.println(String.format(parameter2 + " not vanished within %s s", duration));
+			log.error(String.format(parameter2 + " not vanished within %s s", duration));
 		}
-		return false;
+		return isVanished;
 	}
 
 	/**
 	 * Waits for the element specified by the locator type and parameters to be
 	 * displayed on the screen within the given duration. The method checks for the
 	 * element's presence and visibility repeatedly until it is displayed or the
-	 * specified duration is exceeded.
+	 * specified duration is exceeded, and checks again at once when the backend
+	 * reports a window opening, the tree changing or a property changing.
 	 *
 	 * @param locatorType The type of locator to use for finding the element (e.g.,
 	 *                    "NAME", "ID", "TEXT", "IMAGE", "LOCATION", "OCR").
@@ -410,41 +491,41 @@ public class ElementFinder {
 	 *         otherwise.
 	 */
 	public boolean display(String locatorType, String parameter1, String parameter2, long duration) {
-		long durationMillis = 1000 * duration;
-		long start = System.currentTimeMillis();
-
-		while (true) {
-			try {
-				locatorType = locatorType.toUpperCase();
-				SikuliElement sikuliElement = null;
-				if ("IMAGE".equals(locatorType) || "LOCATION".equals(locatorType) || "OCR".equals(locatorType)) {
-					sikuliElement = driver.findSikuliElement(locators.get(locatorType.toUpperCase()), parameter1,
-							parameter2);
-				} else {
-					sikuliElement = new UIElement(driver.findElement(locators.get(locatorType.toUpperCase()),
-							Controls.getControl(parameter1), parameter2));
-				}
-
-				if (sikuliElement != null && sikuliElement.isDisplayed()) {
-					return true;
-				}
-			} catch (FindFailed | NullPointerException | AutomationException e) {
-				// Handle or log any exceptions appropriately.
+		LocatorChain chain = getChain(locatorType, parameter1, parameter2);
+		if (chain == null) {
+			return false;
+		}
+		TreeSnapshot snapshot = getSnapshot(chain);
+		if (snapshot != null) {
+			long start = System.nanoTime();
+			int node = findInSnapshot(snapshot, chain);
+			if (answered(node >= 0 && snapshot.isDisplayed(node), start)) {
+				return true;
 			}
+		}
+		boolean isDisplayed;
+		if (chain.size() > 1) {
+			isDisplayed = race(chain, parameter2 + " to display", 1000 * duration,
+					plan -> whenTrue(displayProbe(plan)), DISPLAY_EVENTS).join() != null;
+		} else {
+			LocatorPlan plan = chain.get(0);
+			isDisplayed = WaitEngine.awaitTrue(parameter2 + " to display", 1000 * duration, displayProbe(plan),
+					getEventBackend(plan), DISPLAY_EVENTS);
+		}
 
-			if (System.currentTimeMillis() - start > durationMillis) {
-				System.err.println(String.format(parameter2 + " not displayed within %s s", duration));
-				log.error(String.format(parameter2 + " not displayed within %s s", duration / 1000));
-				break;
-			}
+		if (!isDisplayed) {
+			System.err.println(String.format(parameter2 + " not displayed within %s s", duration));
+			log.error(String.format(parameter2 + " not displayed within %s s", duration));
 		}
-		return false;
+		return isDisplayed;
 	}
 
 	/**
 	 * Waits for the specified element to become enabled within the given duration.
 	 * The method checks for the element's presence and whether it is enabled
-	 * repeatedly until it is enabled or the specified duration is exceeded.
+	 * repeatedly until it is enabled or the specified duration is exceeded, and
+	 * checks again at once when the backend reports a window opening, the tree
+	 * changing or a property changing.
 	 *
 	 * @param locatorType The type of locator to use for finding the element (e.g.,
 	 *                    "NAME", "ID", "TEXT").
@@ -458,27 +539,536 @@ public class ElementFinder {
 	 *         false otherwise.
 	 */
 	public boolean waitToEnable(String locatorType, String controlType, String value, long duration) {
-		long durationMillis = 1000 * duration;
-		long start = System.currentTimeMillis();
+		LocatorChain chain = getChain(locatorType, controlType, value);
+		if (chain == null) {
+			return false;
+		}
+		TreeSnapshot snapshot = getSnapshot(chain);
+		if (snapshot != null) {
+			long start = System.nanoTime();
+			int node = findInSnapshot(snapshot, chain);
+			if (answered(node >= 0 && snapshot.isEnabled(node), start)) {
+				return true;
+			}
+		}
+		boolean isEnabled;
+		if (chain.size() > 1) {
+			isEnabled = race(chain, value + " to enable", 1000 * duration, plan -> whenTrue(enableProbe(plan)),
+					DISPLAY_EVENTS).join() != null;
+		} else {
+			isEnabled = WaitEngine.awaitTrue(value + " to enable", 1000 * duration, enableProbe(chain.get(0)),
+					Driver.getBackend(), DISPLAY_EVENTS);
+		}
+
+		if (!isEnabled) {
+			System.err.println(String.format(value + " not enabled within %s s", duration));
+			log.error(String.format(value + " not enabled within %s s", duration));
+		}
+		return isEnabled;
+	}
+
+	/**
+	 * Get the Name property of the UI control with the given locator, from the
+	 * tree snapshot of the session if it holds the control, or else from the
+	 * control found within the specified duration.
+	 *
+	 * @param locatorType The type of locator to use for finding the control (e.g.,
+	 *                    "NAME", "ID", "TEXT").
+	 * @param controlType The type of the control (e.g., "BUTTON", "TEXTBOX").
+	 * @param value       The value of the locator.
+	 * @param duration    The maximum duration, in seconds, to wait for the control
+	 *                    to be found.
+	 * @return The name, or null if the control is not found.
+	 * @throws AutomationException If the name could not be read.
+	 */
+	public String getName(String locatorType, String controlType, String value, long duration)
+			throws AutomationException {
+		LocatorChain chain = getChain(locatorType, controlType, value);
+		if (chain == null) {
+			return null;
+		}
+		TreeSnapshot snapshot = getSnapshot(chain);
+		if (snapshot != null) {
+			long start = System.nanoTime();
+			int node = findInSnapshot(snapshot, chain);
+			if (answered(node >= 0, start)) {
+				return snapshot.getName(node);
+			}
+		}
+		UIElement element = getUIElement(locatorType, controlType, value, duration);
+		return element == null ? null : element.getName();
+	}
+
+	/**
+	 * Finds the element with the given locator within the specified duration and
+	 * pushes it on the {@link Driver#pushSearchScope search scopes}, so that the
+	 * following lookups search its subtree first.
+	 *
+	 * @param locatorType The type of locator to use for finding the element (e.g.,
+	 *                    "NAME", "ID", "TEXT").
+	 * @param controlType The control type of the element.
+	 * @param value       The value of the element property.
+	 * @param duration    The maximum duration, in seconds, to wait for the element
+	 *                    to be found.
+	 * @return True if the element was found and pushed, false otherwise.
+	 */
+	public boolean pushSearchScope(String locatorType, String controlType, String value, long duration) {
+		LocatorChain chain = getChain(locatorType, controlType, value);
+		if (chain == null || chain.hasSikuli()) {
+			return false;
+		}
+		Element element;
+		if (chain.size() > 1) {
+			element = race(chain, value + " to scope", 1000 * duration, this::elementProbe, DISPLAY_EVENTS).join();
+		} else {
+			element = WaitEngine.await(value + " to scope", 1000 * duration, elementProbe(chain.get(0)),
+					Driver.getBackend(), DISPLAY_EVENTS);
+		}
+
+		if (element == null) {
+			log.error(String.format(value + " not found within %s s", duration));
+			return false;
+		}
+		driver.pushSearchScope(element);
+		return true;
+	}
+
+	/**
+	 * Starts waiting for the element to be displayed and returns at once. The
+	 * future completes when the backend reports the change that displays the
+	 * element, or at the next poll for backends without events.
+	 *
+	 * The checks run on the shared thread of the {@link WaitEngine}.
+	 *
+	 * @param locatorType The type of locator to use for finding the element (e.g.,
+	 *                    "NAME", "ID", "TEXT", "IMAGE", "LOCATION", "OCR").
+	 * @param parameter1  The control type, search area image or coordinate-X
+	 *                    value.
+	 * @param parameter2  The control value, search element image or coordinate-Y
+	 *                    value.
+	 * @param duration    The maximum duration, in seconds, to wait for the element
+	 *                    to be displayed.
+	 * @return A future completed with true if the element is displayed within the
+	 *         duration, with false otherwise.
+	 */
+	public CompletableFuture<Boolean> waitToDisplayAsync(String locatorType, String parameter1, String parameter2,
+			long duration) {
+		LocatorChain chain = getChain(locatorType, parameter1, parameter2);
+		if (chain == null) {
+			return CompletableFuture.completedFuture(false);
+		}
+		if (chain.size() > 1) {
+			return race(chain, parameter2 + " to display", 1000 * duration, plan -> whenTrue(displayProbe(plan)),
+					DISPLAY_EVENTS).thenApply(result -> result != null);
+		}
+		LocatorPlan plan = chain.get(0);
+		return WaitEngine.submitTrue(parameter2 + " to display", 1000 * duration, displayProbe(plan),
+				getEventBackend(plan), DISPLAY_EVENTS);
+	}
+
+	/**
+	 * Starts waiting for the element to vanish and returns at once. The future
+	 * completes when the backend reports the change that removes the element, or
+	 * at the next poll for backends without events.
+	 *
+	 * The checks run on the shared thread of the {@link WaitEngine}.
+	 *
+	 * @param locatorType The type of locator to use for finding the element (e.g.,
+	 *                    "NAME", "ID", "TEXT", "IMAGE", "LOCATION", "OCR").
+	 * @param parameter1  The control type, search area image or coordinate-X
+	 *                    value.
+	 * @param parameter2  The control value, search element image or coordinate-Y
+	 *                    value.
+	 * @param duration    The maximum duration, in seconds, to wait for the element
+	 *                    to vanish.
+	 * @return A future completed with true if the element vanishes within the
+	 *         duration, with false otherwise.
+	 */
+	public CompletableFuture<Boolean> waitToVanishAsync(String locatorType, String parameter1, String parameter2,
+			long duration) {
+		LocatorChain chain = getChain(locatorType, parameter1, parameter2);
+		if (chain == null) {
+			return CompletableFuture.completedFuture(false);
+		}
+		return WaitEngine.submitTrue(parameter2 + " to vanish", 1000 * duration, vanishProbe(chain),
+				getEventBackend(chain), VANISH_EVENTS);
+	}
+
+	/**
+	 * Starts waiting for the element to become enabled and returns at once. The
+	 * future completes when the backend reports the change that enables the
+	 * element, or at the next poll for backends without events.
+	 *
+	 * The checks run on the shared thread of the {@link WaitEngine}.
+	 *
+	 * @param locatorType The type of locator to use for finding the element (e.g.,
+	 *                    "NAME", "ID", "TEXT").
+	 * @param controlType The type of the control (e.g., "BUTTON", "TEXTBOX").
+	 * @param value       The value of the element, such as the control value or
+	 *                    text to search for.
+	 * @param duration    The maximum duration, in seconds, to wait for the element
+	 *                    to become enabled.
+	 * @return A future completed with true if the element becomes enabled within
+	 *         the duration, with false otherwise.
+	 */
+	public CompletableFuture<Boolean> waitToEnableAsync(String locatorType, String controlType, String value,
+			long duration) {
+		LocatorChain chain = getChain(locatorType, controlType, value);
+		if (chain == null) {
+			return CompletableFuture.completedFuture(false);
+		}
+		if (chain.size() > 1) {
+			return race(chain, value + " to enable", 1000 * duration, plan -> whenTrue(enableProbe(plan)),
+					DISPLAY_EVENTS).thenApply(result -> result != null);
+		}
+		return WaitEngine.submitTrue(value + " to enable", 1000 * duration, enableProbe(chain.get(0)),
+				Driver.getBackend(), DISPLAY_EVENTS);
+	}
+
+	/**
+	 * Get the compiled chain of the locators of a step, logging locators that
+	 * cannot be compiled.
+	 *
+	 * @param locatorType The type of locator, or several separated by
+	 *                    {@value LocatorChain#SEPARATOR}.
+	 * @param parameter1  The control type, search area image or coordinate-X value.
+	 * @param parameter2  The control value, search element image or coordinate-Y
+	 *                    value.
+	 * @return The LocatorChain, or null if a locator cannot be compiled.
+	 */
+	private static LocatorChain getChain(String locatorType, String parameter1, String parameter2) {
+		try {
+			return LocatorChain.of(locatorType, parameter1, parameter2);
+		} catch (IllegalArgumentException | NullPointerException e) {
+			System.err.println(e.getMessage());
+			log.error("Invalid locator " + locatorType + " - " + parameter1 + " - " + parameter2 + ": "
+					+ e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Get the tree snapshot of the session if it can answer for a chain of
+	 * locators.
+	 *
+	 * @param chain The compiled locators.
+	 * @return The TreeSnapshot, or null if there is none or a locator is a Sikuli
+	 *         one.
+	 */
+	private TreeSnapshot getSnapshot(LocatorChain chain) {
+		TreeSnapshot snapshot = driver.getSnapshot();
+		return snapshot == null || chain.hasSikuli() ? null : snapshot;
+	}
+
+	/**
+	 * Checks whether a snapshot holds every element a live lookup of the session
+	 * searches: the snapshot was captured under the desktop root, or under the
+	 * search context of a session that does not search from the root. Only then
+	 * does a locator that matches no node match nothing live.
+	 *
+	 * @param snapshot The tree snapshot.
+	 * @return True if the snapshot covers the live lookups.
+	 */
+	private boolean coversLiveSearch(TreeSnapshot snapshot) {
+		Element root = snapshot.getRootElement();
+		if (root == null) {
+			return false;
+		}
+		return root == Driver.getRootElement()
+				|| !driver.getOptions().isRootSearch() && root == driver.getSearchContext();
+	}
+
+	/**
+	 * Finds the first locator of a chain that matches a node of a snapshot.
+	 *
+	 * @param snapshot The tree snapshot.
+	 * @param chain    The compiled UIAutomation locators.
+	 * @return The node, or -1 if no locator matches.
+	 */
+	private static int findInSnapshot(TreeSnapshot snapshot, LocatorChain chain) {
+		for (LocatorPlan plan : chain.getPlans()) {
+			int node = snapshot.find(plan.getCondition());
+			if (node >= 0) {
+				return node;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Counts a query of the snapshot as answered if it confirmed the expected
+	 * state, or as a fallback to a live check.
+	 *
+	 * @param confirmed True if the snapshot confirmed the state.
+	 * @param start     The start time of the query, from System.nanoTime().
+	 * @return The confirmed flag.
+	 */
+	private static boolean answered(boolean confirmed, long start) {
+		if (confirmed) {
+			Driver.snapshotStatistics.recordAnswer(System.nanoTime() - start);
+		} else {
+			Driver.snapshotStatistics.recordFallback();
+		}
+		return confirmed;
+	}
+
+	/**
+	 * Races the locators of a chain: every locator polls its probe until it
+	 * reports a result or the timeout is over, and the first result completes the
+	 * race. The UIAutomation locators poll on the thread of the {@link WaitEngine},
+	 * one lookup per poll so that they take turns, and wake on the backend
+	 * events. The Sikuli locators poll on the image workers. The losing locators
+	 * are cancelled when the race completes; a Sikuli search under way finishes
+	 * first, and its locator stops at its next poll.
+	 *
+	 * @param <T>           The type of the result.
+	 * @param chain         The compiled locators.
+	 * @param description   The awaited condition, for the log.
+	 * @param timeoutMillis The maximum time to wait, in milliseconds.
+	 * @param probes        Creates the probe of a locator.
+	 * @param wakeOn        The types of events that trigger a poll of the
+	 *                      UIAutomation locators.
+	 * @return A future completed with the result of the winning locator, or with
+	 *         null if no locator reports one within the timeout.
+	 */
+	private <T> CompletableFuture<T> race(LocatorChain chain, String description, long timeoutMillis,
+			Function<LocatorPlan, WaitEngine.Probe<T>> probes, Set<AutomationEvent.Type> wakeOn) {
+		CompletableFuture<T> race = new CompletableFuture<>();
+		List<CompletableFuture<T>> strategies = new ArrayList<>(chain.size());
+		AtomicInteger pending = new AtomicInteger(chain.size());
+		long start = System.nanoTime();
+		for (int i = 0; i < chain.size(); i++) {
+			int index = i;
+			LocatorPlan plan = chain.get(i);
+			WaitEngine.Probe<T> probe = probes.apply(plan);
+			String strategyDescription = description + " by " + plan;
+			CompletableFuture<T> strategy;
+			if (plan.isSikuli()) {
+				WaitEngine.Probe<T> cancellable = () -> {
+					if (race.isDone()) {
+						throw new CancellationException(strategyDescription + " lost the race");
+					}
+					return probe.poll();
+				};
+				strategy = CompletableFuture.supplyAsync(
+						() -> WaitEngine.await(strategyDescription, timeoutMillis, cancellable), getImageWorkers());
+			} else {
+				strategy = WaitEngine.submit(strategyDescription, timeoutMillis, singleLookup(probe),
+						Driver.getBackend(), wakeOn);
+			}
+			strategy.whenComplete((result, error) -> {
+				if (result != null && race.complete(result)) {
+					raceStatistics.recordWin(chain, index, System.nanoTime() - start);
+				}
+				if (pending.decrementAndGet() == 0 && race.complete(null)) {
+					raceStatistics.recordMiss(chain);
+				}
+			});
+			strategies.add(strategy);
+		}
+		race.whenComplete((result, error) -> {
+			for (CompletableFuture<T> strategy : strategies) {
+				strategy.cancel(false);
+			}
+		});
+		return race;
+	}
 
-		while (true) {
+	/**
+	 * Get the pool that runs the Sikuli locators of the races, creating it on
+	 * first use. The image searches are bound by the CPU, so it has a daemon
+	 * thread per processor, and at least two.
+	 *
+	 * @return The shared ExecutorService.
+	 */
+	private static ExecutorService getImageWorkers() {
+		ExecutorService current = imageWorkers;
+		if (current == null) {
+			synchronized (ElementFinder.class) {
+				if (imageWorkers == null) {
+					AtomicInteger threads = new AtomicInteger();
+					imageWorkers = Executors.newFixedThreadPool(
+							Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+								Thread thread = new Thread(runnable, "image-worker-" + threads.incrementAndGet());
+								thread.setDaemon(true);
+								return thread;
+							});
+				}
+				current = imageWorkers;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Limits the lookups of a probe to one attempt, without the retries of By: the
+	 * probe is polled again by the WaitEngine, whose thread the retries would hold.
+	 *
+	 * @param probe The probe.
+	 * @return The probe with a single lookup per poll.
+	 */
+	private static <T> WaitEngine.Probe<T> singleLookup(WaitEngine.Probe<T> probe) {
+		return () -> {
+			Driver.startSearchDeadline(0);
+			try {
+				return probe.poll();
+			} finally {
+				Driver.clearSearchDeadline();
+			}
+		};
+	}
+
+	/**
+	 * Turns a condition into a probe reporting TRUE once it is met, and null
+	 * before.
+	 *
+	 * @param condition The condition.
+	 * @return The probe.
+	 */
+	private static WaitEngine.Probe<Boolean> whenTrue(WaitEngine.Probe<Boolean> condition) {
+		return () -> Boolean.TRUE.equals(condition.poll()) ? Boolean.TRUE : null;
+	}
+
+	private WaitEngine.Probe<SikuliElement> sikuliElementProbe(LocatorPlan plan) {
+		return () -> {
+			try {
+				return driver.findSikuliElement(plan.getLocatorType(), plan.getParameter1(), plan.getParameter2());
+			} catch (FindFailed e) {
+				// Poll again if the element is not found.
+				return null;
+			}
+		};
+	}
+
+	private WaitEngine.Probe<UIElement> uiElementProbe(LocatorPlan plan) {
+		return () -> {
+			try {
+				return driver.getUIElement(driver.findElement(plan.getCondition()));
+			} catch (NullPointerException | AutomationException e) {
+				// Poll again if the element is not found.
+				return null;
+			}
+		};
+	}
+
+	private WaitEngine.Probe<SikuliElement> sikuliOrUIElementProbe(LocatorPlan plan) {
+		if (plan.isSikuli()) {
+			return sikuliElementProbe(plan);
+		}
+		WaitEngine.Probe<UIElement> probe = uiElementProbe(plan);
+		return probe::poll;
+	}
+
+	private WaitEngine.Probe<Element> elementProbe(LocatorPlan plan) {
+		return () -> {
+			try {
+				return driver.findElement(plan.getCondition());
+			} catch (NullPointerException | AutomationException e) {
+				// Poll again if the element is not found.
+				return null;
+			}
+		};
+	}
+
+	private WaitEngine.Probe<Boolean> displayProbe(LocatorPlan plan) {
+		return () -> {
 			try {
-				Element element = driver.findElement(locators.get(locatorType.toUpperCase()),
-						Controls.getControl(controlType), value);
+				SikuliElement sikuliElement = findSikuliOrUIElement(plan);
+				return sikuliElement != null && sikuliElement.isDisplayed();
+			} catch (FindFailed | NullPointerException | AutomationException e) {
+				// Poll again if the element is not found.
+				return false;
+			}
+		};
+	}
+
+	private WaitEngine.Probe<Boolean> vanishProbe(LocatorPlan plan) {
+		return () -> {
+			try {
+				SikuliElement sikuliElement = findSikuliOrUIElement(plan);
+				return sikuliElement != null && sikuliElement.isVanished();
+			} catch (FindFailed | NullPointerException | AutomationException e) {
+				// The element is no longer found.
+				return true;
+			}
+		};
+	}
 
-				if (element != null && element.isEnabled()) {
-					return true;
+	private WaitEngine.Probe<Boolean> vanishProbe(LocatorChain chain) {
+		if (chain.size() == 1) {
+			return vanishProbe(chain.get(0));
+		}
+		List<WaitEngine.Probe<Boolean>> probes = new ArrayList<>(chain.size());
+		for (LocatorPlan plan : chain.getPlans()) {
+			probes.add(vanishProbe(plan));
+		}
+		return () -> {
+			for (WaitEngine.Probe<Boolean> probe : probes) {
+				if (!probe.poll()) {
+					return false;
 				}
+			}
+			return true;
+		};
+	}
+
+	private WaitEngine.Probe<Boolean> enableProbe(LocatorPlan plan) {
+		return () -> {
+			try {
+				Element element = driver.findElement(plan.getCondition());
+				return element != null && UIAutomation
+						.isPropertyValueTrue(Driver.getBackend().getPropertyValue(element, PropertyID.IsEnabled));
 			} catch (NullPointerException | AutomationException e) {
-				// Handle or log any exceptions appropriately.
+				// Poll again if the element is not found.
+				return false;
 			}
+		};
+	}
 
-			if (System.currentTimeMillis() - start > durationMillis) {
-				System.err.println(String.format(value + " not enabled within %s s", duration));
-				log.error(String.format(value + " not enabled within %s s", duration / 1000));
-				break;
+	/**
+	 * Get the backend whose events wake the waits for a locator. The Sikuli
+	 * locators search the screen, which reports no events.
+	 *
+	 * @param plan The compiled locator.
+	 * @return The automation backend, or null for the Sikuli locators.
+	 */
+	private static AutomationBackend getEventBackend(LocatorPlan plan) {
+		if (plan.isSikuli()) {
+			return null;
+		}
+		return Driver.getBackend();
+	}
+
+	/**
+	 * Get the backend whose events wake the waits for a chain of locators.
+	 *
+	 * @param chain The compiled locators.
+	 * @return The automation backend, or null if all the locators are Sikuli
+	 *         ones.
+	 */
+	private static AutomationBackend getEventBackend(LocatorChain chain) {
+		for (LocatorPlan plan : chain.getPlans()) {
+			if (!plan.isSikuli()) {
+				return Driver.getBackend();
 			}
 		}
-		return false;
+		return null;
+	}
+
+	/**
+	 * Finds the element once, with Sikuli for the IMAGE, LOCATION and OCR locators
+	 * and with UIAutomation for the others.
+	 *
+	 * @param plan The compiled locator.
+	 * @return The element found.
+	 * @throws FindFailed          If the Sikuli element is not found.
+	 * @throws AutomationException If the UIAutomation element is not found.
+	 */
+	private SikuliElement findSikuliOrUIElement(LocatorPlan plan) throws FindFailed, AutomationException {
+		if (plan.isSikuli()) {
+			return driver.findSikuliElement(plan.getLocatorType(), plan.getParameter1(), plan.getParameter2());
+		}
+		// The checks need at most the bounds, not the prefetched properties.
+		return new UIElement(driver.findElement(plan.getCondition()));
 	}
 }
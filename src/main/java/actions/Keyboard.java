@@ -199,9 +199,7 @@ public class Keyboard {
 	public static void type(String text) {
 		initializeRobot();
 		robot.delay(100);
-		if (text.endsWith("Base-Files"))
-			text = ProjectConfiguration.baseFilesPath;
-		screen.type(text);
+		screen.type(resolveText(text));
 	}
 
 	/**
@@ -216,9 +214,20 @@ public class Keyboard {
 		initializeRobot();
 		clear();
 		robot.delay(100);
+		screen.paste(resolveText(text));
+	}
+
+	/**
+	 * Resolves the text to be typed or pasted: text ending with "Base-Files" is
+	 * replaced with the path defined in ProjectConfiguration.baseFilesPath.
+	 *
+	 * @param text The text as given in the sheet.
+	 * @return The text to enter.
+	 */
+	static String resolveText(String text) {
 		if (text.endsWith("Base-Files"))
-			text = ProjectConfiguration.baseFilesPath;
-		screen.paste(text);
+			return ProjectConfiguration.baseFilesPath;
+		return text;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+package actions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The LocatorChain class is the compiled form of a step that lists several
+ * locators for the same target, e.g. {@code ID|NAME|IMAGE}: the locator type
+ * and the two parameters of the step are split on {@value #SEPARATOR}, and the
+ * n-th locator type is compiled with the n-th part of each parameter into a
+ * {@link LocatorPlan}. A parameter with a single part is shared by all the
+ * locators, so {@code ID|NAME}, {@code BUTTON}, {@code btnOk|OK} searches a
+ * button by its id and by its name.
+ *
+ * A step with a single locator compiles into a chain of one plan. The chains
+ * are cached like the plans by {@link #of(String, String, String)}. ElementFinder
+ * races the locators of a longer chain and takes the first one that finds the
+ * element.
+ */
+public final class LocatorChain {
+
+	/**
+	 * The separator of the locators in the cells of a step.
+	 */
+	public static final String SEPARATOR = "|";
+
+	private static final Pattern SPLITTER = Pattern.compile(Pattern.quote(SEPARATOR));
+	private static final Map<String, LocatorChain> chains = new ConcurrentHashMap<>();
+
+	private final List<LocatorPlan> plans;
+	private final String text;
+
+	private LocatorChain(List<LocatorPlan> plans) {
+		this.plans = Collections.unmodifiableList(plans);
+		StringBuilder builder = new StringBuilder();
+		for (LocatorPlan plan : plans) {
+			if (builder.length() > 0) {
+				builder.append(' ').append(SEPARATOR).append(' ');
+			}
+			builder.append(plan);
+		}
+		this.text = builder.toString();
+	}
+
+	/**
+	 * Get the chain of a step, compiling it on first use.
+	 *
+	 * @param locatorType The locator types, separated by {@value #SEPARATOR}.
+	 * @param parameter1  The first parameters, one for all the locators or one per
+	 *                    locator.
+	 * @param parameter2  The second parameters, one for all the locators or one
+	 *                    per locator.
+	 * @return The LocatorChain.
+	 * @throws IllegalArgumentException If a locator cannot be compiled or the
+	 *                                  parts do not match the locators.
+	 * @throws NullPointerException     If a parameter is null.
+	 */
+	public static LocatorChain of(String locatorType, String parameter1, String parameter2)
+			throws IllegalArgumentException {
+		if (locatorType == null || parameter1 == null || parameter2 == null) {
+			throw new NullPointerException("LocatorType, parameter1, and parameter2 cannot be null.");
+		}
+		String key = locatorType + '\n' + parameter1 + '\n' + parameter2;
+		LocatorChain chain = chains.get(key);
+		if (chain == null) {
+			chain = compile(locatorType, parameter1, parameter2);
+			chains.putIfAbsent(key, chain);
+		}
+		return chain;
+	}
+
+	/**
+	 * Compiles the locators of a step into a new chain.
+	 *
+	 * @param locatorType The locator types, separated by {@value #SEPARATOR}.
+	 * @param parameter1  The first parameters, one for all the locators or one per
+	 *                    locator.
+	 * @param parameter2  The second parameters, one for all the locators or one
+	 *                    per locator.
+	 * @return The LocatorChain.
+	 * @throws IllegalArgumentException If a locator cannot be compiled or the
+	 *                                  parts do not match the locators.
+	 * @throws NullPointerException     If a parameter is null.
+	 */
+	public static LocatorChain compile(String locatorType, String parameter1, String parameter2)
+			throws IllegalArgumentException {
+		if (!isChain(locatorType)) {
+			return new LocatorChain(Collections.singletonList(LocatorPlan.of(locatorType, parameter1, parameter2)));
+		}
+		String[] locators = SPLITTER.split(locatorType, -1);
+		String[] parameters1 = split(parameter1, locators.length);
+		String[] parameters2 = split(parameter2, locators.length);
+		List<LocatorPlan> plans = new ArrayList<>(locators.length);
+		for (int i = 0; i < locators.length; i++) {
+			plans.add(LocatorPlan.of(locators[i].trim(), parameters1[i], parameters2[i]));
+		}
+		return new LocatorChain(plans);
+	}
+
+	private static String[] split(String parameter, int locators) {
+		String[] parts = SPLITTER.split(parameter, -1);
+		if (parts.length == locators) {
+			return parts;
+		}
+		if (parts.length == 1) {
+			String[] shared = new String[locators];
+			for (int i = 0; i < locators; i++) {
+				shared[i] = parameter;
+			}
+			return shared;
+		}
+		throw new IllegalArgumentException(
+				"Expected 1 or " + locators + " parts separated by " + SEPARATOR + " in: " + parameter);
+	}
+
+	/**
+	 * Checks whether a locator type lists several locators.
+	 *
+	 * @param locatorType The locator type of a step.
+	 * @return True if it contains the {@value #SEPARATOR}.
+	 */
+	public static boolean isChain(String locatorType) {
+		return locatorType.contains(SEPARATOR);
+	}
+
+	/**
+	 * Forgets the compiled chains, e.g. before loading other sheets.
+	 */
+	public static void clear() {
+		chains.clear();
+	}
+
+	/**
+	 * Get the number of locators of the chain.
+	 *
+	 * @return The locator count.
+	 */
+	public int size() {
+		return plans.size();
+	}
+
+	/**
+	 * Get a locator of the chain.
+	 *
+	 * @param index The position of the locator in the step.
+	 * @return The LocatorPlan.
+	 */
+	public LocatorPlan get(int index) {
+		return plans.get(index);
+	}
+
+	/**
+	 * Get the locators of the chain, in the order of the step.
+	 *
+	 * @return The unmodifiable list of plans.
+	 */
+	public List<LocatorPlan> getPlans() {
+		return plans;
+	}
+
+	/**
+	 * Checks whether a locator of the chain searches the screen with Sikuli.
+	 *
+	 * @return True if any locator is an IMAGE, LOCATION or OCR one.
+	 */
+	public boolean hasSikuli() {
+		for (LocatorPlan plan : plans) {
+			if (plan.isSikuli()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+}
@@ -0,0 +1,224 @@
+package actions;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import core.Controls;
+import core.SearchCondition;
+import core.SearchRegion;
+import mmarquee.automation.ControlType;
+
+/**
+ * The LocatorPlan class is the compiled, immutable form of the locator of a
+ * step: the locator type and control type resolved from the strings of the
+ * sheet, and for the UIAutomation locators the prebuilt
+ * {@link SearchCondition}. The IMAGE, LOCATION and OCR locators keep their two
+ * parameters for Sikuli.
+ *
+ * Plans are compiled once per distinct locator by {@link #of(String, String,
+ * String)}, normally when the sheets are validated and loaded, and then shared,
+ * so a lookup while the steps run does no string parsing. A locator that
+ * cannot be compiled, e.g. with a misspelled control type, fails with an
+ * IllegalArgumentException.
+ */
+public final class LocatorPlan {
+
+	private static final Map<Key, LocatorPlan> plans = new ConcurrentHashMap<>();
+
+	private final LocatorType locatorType;
+	private final ControlType controlType;
+	private final String parameter1;
+	private final String parameter2;
+	private final SearchCondition condition;
+
+	private LocatorPlan(LocatorType locatorType, ControlType controlType, String parameter1, String parameter2) {
+		this.locatorType = locatorType;
+		this.controlType = controlType;
+		this.parameter1 = parameter1;
+		this.parameter2 = parameter2;
+		this.condition = controlType == null ? null : new SearchCondition(locatorType, controlType, parameter2);
+	}
+
+	/**
+	 * Get the plan of a locator, compiling it on first use.
+	 *
+	 * @param locatorType The type of locator (case-insensitive), e.g. "NAME" or
+	 *                    "IMAGE".
+	 * @param parameter1  The control type, search area image or coordinate-X
+	 *                    value.
+	 * @param parameter2  The control value, search element image or coordinate-Y
+	 *                    value.
+	 * @return The LocatorPlan.
+	 * @throws IllegalArgumentException If the locator cannot be compiled.
+	 * @throws NullPointerException     If a parameter is null.
+	 */
+	public static LocatorPlan of(String locatorType, String parameter1, String parameter2)
+			throws IllegalArgumentException {
+		Key key = new Key(locatorType, parameter1, parameter2);
+		LocatorPlan plan = plans.get(key);
+		if (plan == null) {
+			plan = compile(locatorType, parameter1, parameter2);
+			plans.putIfAbsent(key, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Compiles a locator into a new plan.
+	 *
+	 * @param locatorType The type of locator (case-insensitive).
+	 * @param parameter1  The control type, search area image or coordinate-X
+	 *                    value.
+	 * @param parameter2  The control value, search element image or coordinate-Y
+	 *                    value.
+	 * @return The LocatorPlan.
+	 * @throws IllegalArgumentException If the locator type or control type is not
+	 *                                  supported, a LOCATION is not numeric or
+	 *                                  the search region of an IMAGE is
+	 *                                  malformed.
+	 * @throws NullPointerException     If a parameter is null.
+	 */
+	public static LocatorPlan compile(String locatorType, String parameter1, String parameter2)
+			throws IllegalArgumentException {
+		if (locatorType == null || parameter1 == null || parameter2 == null) {
+			throw new NullPointerException("LocatorType, parameter1, and parameter2 cannot be null.");
+		}
+		LocatorType locator;
+		try {
+			locator = LocatorType.valueOf(locatorType.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Locator type not exist: " + locatorType);
+		}
+
+		switch (locator) {
+		case IMAGE:
+			// A misspelled search region fails here and not when the step runs.
+			SearchRegion.of(parameter1);
+			return new LocatorPlan(locator, null, parameter1, parameter2);
+		case OCR:
+			return new LocatorPlan(locator, null, parameter1, parameter2);
+		case LOCATION:
+			try {
+				Integer.parseInt(parameter1);
+				Integer.parseInt(parameter2);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(
+						"Invalid parameter values for locator type: " + locator + " - " + parameter1 + ", " + parameter2);
+			}
+			return new LocatorPlan(locator, null, parameter1, parameter2);
+		default:
+			return new LocatorPlan(locator, Controls.parse(parameter1), parameter1, parameter2);
+		}
+	}
+
+	/**
+	 * Forgets the compiled plans, e.g. before loading other sheets.
+	 */
+	public static void clear() {
+		plans.clear();
+	}
+
+	/**
+	 * Get the number of compiled plans.
+	 *
+	 * @return The plan count.
+	 */
+	public static int size() {
+		return plans.size();
+	}
+
+	/**
+	 * Checks whether the locator searches the screen with Sikuli: IMAGE, LOCATION
+	 * or OCR.
+	 *
+	 * @return True for a Sikuli locator.
+	 */
+	public boolean isSikuli() {
+		return condition == null;
+	}
+
+	/**
+	 * Get the locator type.
+	 *
+	 * @return The LocatorType.
+	 */
+	public LocatorType getLocatorType() {
+		return locatorType;
+	}
+
+	/**
+	 * Get the control type of a UIAutomation locator.
+	 *
+	 * @return The ControlType, or null for a Sikuli locator.
+	 */
+	public ControlType getControlType() {
+		return controlType;
+	}
+
+	/**
+	 * Get the first parameter as given: the control type, search area image or
+	 * coordinate-X value.
+	 *
+	 * @return The first parameter.
+	 */
+	public String getParameter1() {
+		return parameter1;
+	}
+
+	/**
+	 * Get the second parameter as given: the control value, search element image
+	 * or coordinate-Y value.
+	 *
+	 * @return The second parameter.
+	 */
+	public String getParameter2() {
+		return parameter2;
+	}
+
+	/**
+	 * Get the search condition of a UIAutomation locator.
+	 *
+	 * @return The SearchCondition, or null for a Sikuli locator.
+	 */
+	public SearchCondition getCondition() {
+		return condition;
+	}
+
+	@Override
+	public String toString() {
+		return locatorType + " " + parameter1 + " - " + parameter2;
+	}
+
+	private static final class Key {
+		private final String locatorType;
+		private final String parameter1;
+		private final String parameter2;
+		private final int hash;
+
+		private Key(String locatorType, String parameter1, String parameter2) {
+			this.locatorType = locatorType;
+			this.parameter1 = parameter1;
+			this.parameter2 = parameter2;
+			this.hash = Objects.hash(locatorType, parameter1, parameter2);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return Objects.equals(locatorType, other.locatorType) && Objects.equals(parameter1, other.parameter1)
+					&& Objects.equals(parameter2, other.parameter2);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
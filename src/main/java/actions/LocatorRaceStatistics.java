@@ -0,0 +1,151 @@
+package actions;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LocatorRaceStatistics class counts, per {@link LocatorChain}, which of
+ * its locators won the races of ElementFinder and how long they took, so that
+ * the locators of a sheet can be re-ordered toward the one that finds the
+ * element first. The statistics are thread-safe.
+ */
+public class LocatorRaceStatistics {
+
+	private static final class Counts {
+		private final LocatorChain chain;
+		private final AtomicLong races = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+		private final AtomicLongArray wins;
+		private final AtomicLongArray winNanos;
+
+		private Counts(LocatorChain chain) {
+			this.chain = chain;
+			this.wins = new AtomicLongArray(chain.size());
+			this.winNanos = new AtomicLongArray(chain.size());
+		}
+	}
+
+	private final Map<String, Counts> chains = new ConcurrentSkipListMap<>();
+	private final AtomicLong races = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Adds a race won by a locator of the chain.
+	 *
+	 * @param chain  The chain raced.
+	 * @param winner The position of the locator that found the element first.
+	 * @param nanos  The time from the start of the race to the win, in
+	 *               nanoseconds.
+	 */
+	public void recordWin(LocatorChain chain, int winner, long nanos) {
+		Counts counts = getCounts(chain);
+		counts.races.incrementAndGet();
+		counts.wins.incrementAndGet(winner);
+		counts.winNanos.addAndGet(winner, nanos);
+		races.incrementAndGet();
+	}
+
+	/**
+	 * Adds a race in which no locator of the chain found the element.
+	 *
+	 * @param chain The chain raced.
+	 */
+	public void recordMiss(LocatorChain chain) {
+		Counts counts = getCounts(chain);
+		counts.races.incrementAndGet();
+		counts.misses.incrementAndGet();
+		races.incrementAndGet();
+		misses.incrementAndGet();
+	}
+
+	private Counts getCounts(LocatorChain chain) {
+		return chains.computeIfAbsent(chain.toString(), key -> new Counts(chain));
+	}
+
+	/**
+	 * Get the number of races.
+	 *
+	 * @return The race count.
+	 */
+	public long getRaces() {
+		return races.get();
+	}
+
+	/**
+	 * Get the number of races that no locator won.
+	 *
+	 * @return The miss count.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Get the number of races of a chain won by one of its locators.
+	 *
+	 * @param chain  The chain.
+	 * @param winner The position of the locator in the chain.
+	 * @return The win count.
+	 */
+	public long getWins(LocatorChain chain, int winner) {
+		Counts counts = chains.get(chain.toString());
+		return counts == null ? 0 : counts.wins.get(winner);
+	}
+
+	/**
+	 * Get the locator of a chain that won the most races, the faster one on a
+	 * tie: the locator to put first in the sheet.
+	 *
+	 * @param chain The chain.
+	 * @return The position of the locator in the chain, or -1 if no race was won.
+	 */
+	public int getBest(LocatorChain chain) {
+		Counts counts = chains.get(chain.toString());
+		return counts == null ? -1 : best(counts);
+	}
+
+	private static int best(Counts counts) {
+		int best = -1;
+		for (int i = 0; i < counts.wins.length(); i++) {
+			long wins = counts.wins.get(i);
+			if (wins == 0) {
+				continue;
+			}
+			if (best < 0 || wins > counts.wins.get(best) || (wins == counts.wins.get(best)
+					&& counts.winNanos.get(i) / wins < counts.winNanos.get(best) / wins)) {
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Resets the statistics.
+	 */
+	public void reset() {
+		chains.clear();
+		races.set(0);
+		misses.set(0);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("LocatorRaceStatistics[races=").append(races.get())
+				.append(", misses=").append(misses.get());
+		for (Counts counts : chains.values()) {
+			builder.append(", {").append(counts.chain).append("}: ");
+			for (int i = 0; i < counts.wins.length(); i++) {
+				long wins = counts.wins.get(i);
+				builder.append(counts.chain.get(i).getLocatorType()).append('=').append(wins).append("x ");
+				builder.append(String.format("%.3f", wins == 0 ? 0 : counts.winNanos.get(i) / 1e6 / wins))
+						.append(" ms, ");
+			}
+			int best = best(counts);
+			builder.append("misses=").append(counts.misses.get()).append(", best=")
+					.append(best < 0 ? "none" : counts.chain.get(best).getLocatorType());
+		}
+		return builder.append(']').toString();
+	}
+}
@@ -0,0 +1,26 @@
+package actions;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a keyword of {@link ActionMethods} whose first three arguments are a
+ * locator: the locator type, the control type or first Sikuli parameter, and
+ * the value or second Sikuli parameter. The locators of these steps are
+ * compiled into {@link LocatorPlan}s when the sheets are validated and loaded,
+ * so that a misspelled locator or control type fails the step there.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface LocatorStep {
+
+	/**
+	 * The control type the keyword searches for in place of its second argument,
+	 * e.g. CHECKBOX for check, or an empty string if it uses the argument.
+	 *
+	 * @return The control type.
+	 */
+	String controlType() default "";
+}
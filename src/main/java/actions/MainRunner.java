@@ -1,16 +1,21 @@
 package actions;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.file.Paths;
 import java.util.LinkedHashSet;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import core.ActionEngine;
 import core.Application;
+import core.By;
 import core.Driver;
+import core.WaitEngine;
 import utils.ExecutionMethodContainer;
 import utils.ExecutionUtils;
 import utils.ProjectConfiguration;
@@ -30,6 +35,7 @@ public class MainRunner {
 	private List<String> workbookPaths;
 	private ReflectionUtils reflectionUtils;
 	private ActionMethods action;
+	private Driver driver;
 	private ProjectConfiguration config;
 	public int stepDelay = 100;
 	public boolean retryFlag = true;
@@ -48,7 +54,8 @@ public class MainRunner {
 		this.executionUtil = new ExecutionUtils();
 		this.projectSetup = new ProjectSetupManager(this.config, this.executionUtil);
 		this.reflectionUtils = new ReflectionUtils();
-		this.action = new ActionMethods(new Driver());
+		this.driver = new Driver();
+		this.action = new ActionMethods(driver);
 	}
 
 	public enum Action {
@@ -146,7 +153,9 @@ public class MainRunner {
 	}
 
 	/**
-	 * Load images from the specified Sikuli image base path.
+	 * Load images from the specified Sikuli image base path, and decode them into
+	 * the template cache of the image searches, with the locations they were
+	 * found at in the last runs.
 	 *
 	 * @return A LinkedHashSet containing the absolute paths of the loaded image
 	 *         files.
@@ -159,6 +168,8 @@ public class MainRunner {
 			String path = file.getAbsolutePath();
 			imagesList.add(path);
 		}
+		By.templateCache.warm(imagesList);
+		By.hitHistory.load(Paths.get(ProjectConfiguration.imageHitHistoryPath));
 		return imagesList;
 	}
 
@@ -217,6 +228,8 @@ public class MainRunner {
 
 		try {
 			log.info("startExecution started...");
+			// A sheet starts searching from the desktop, not a window of the last sheet.
+			driver.clearSearchScopes();
 
 			ExecutionMethodContainer methodContainer = new ExecutionMethodContainer();
 			List<Method> methods = methodContainer.getMethods();
@@ -255,6 +268,28 @@ public class MainRunner {
 			Application.closeAllApps();
 			log.info("Close all Application completed.");
 			Application.applicationPaths.clear();
+			log.info("Automation backend statistics - " + Driver.getBackend());
+			log.info("Element lookup statistics - " + Driver.lookupStatistics);
+			log.info("Element cache statistics - " + driver.getElementCache());
+			log.info("Search scope statistics - " + Driver.scopeStatistics);
+			log.info("Keyword call statistics - " + Driver.keywordStatistics);
+			log.info("Action statistics - " + ActionEngine.getStatistics());
+			log.info("Locator race statistics - " + ElementFinder.raceStatistics);
+			log.info("Tree snapshot statistics - " + Driver.snapshotStatistics);
+			log.info("Window tree model statistics - " + Driver.treeModelStatistics);
+			log.info("Window registry statistics - " + Driver.getWindowRegistry());
+			log.info("Template cache statistics - " + By.templateCache);
+			log.info("Image search statistics - " + By.imageSearchStatistics);
+			log.info("Image hit history - " + By.hitHistory);
+			for (String line : By.hitHistory.getReport()) {
+				log.info("Image hit history - " + line);
+			}
+			try {
+				By.hitHistory.save(Paths.get(ProjectConfiguration.imageHitHistoryPath));
+			} catch (IOException e) {
+				log.warn("Image hit history could not be saved.", e);
+			}
+			log.info("Wait statistics - " + WaitEngine.getStatistics());
 		}
 	}
 
@@ -267,6 +302,14 @@ public class MainRunner {
 	 * @param logString A string used for logging purposes.
 	 */
 	private void invoker(Method method, Object[] arguments, String logString) {
+		// Count the calls into the application made by the keyword, retry included.
+		long calls = Driver.getBackend().getCallCount();
+		// Forget the action report of the previous keyword.
+		ActionEngine.takeLastAction();
+		// Keep the tree snapshot only for the keywords that do not change the tree.
+		if (!method.isAnnotationPresent(TreeQuery.class)) {
+			driver.invalidateSnapshot();
+		}
 		try {
 			// Invoke the method with the given arguments.
 			method.invoke(action, arguments);
@@ -281,6 +324,10 @@ public class MainRunner {
 			log.error("Invalid arguments for method: " + method.getName() + " - " + logString, e);
 		} catch (InvocationTargetException e) {
 			log.error("Error executing method: " + method.getName() + " - " + logString, e);
+		} finally {
+			if (calls >= 0) {
+				Driver.keywordStatistics.record(method.getName(), Driver.getBackend().getCallCount() - calls);
+			}
 		}
 	}
 
@@ -0,0 +1,17 @@
+package actions;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a keyword of {@link ActionMethods} that only reads the automation
+ * tree, such as an assertion. The tree snapshot of the session is kept across
+ * these keywords; any other keyword may change the application, so the runner
+ * drops the snapshot before it runs.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface TreeQuery {
+}
@@ -0,0 +1,121 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.sikuli.script.FindFailed;
+
+import actions.LocatorType;
+import core.ActionEngine;
+import core.ActionReport;
+import core.Driver;
+import core.UIElement;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.PropertyID;
+import utils.Settings;
+
+/**
+ * Benchmark for the pattern path of the {@link ActionEngine}. Menu items are
+ * clicked, edit boxes written, checkboxes toggled, combo boxes expanded and
+ * collapsed and list items selected on a {@link SimulatedBackend} desktop,
+ * each through its control pattern, and the {@link ActionReport}s are summed
+ * up. The input path cannot run without a display; for comparison, the write
+ * keyword spends at least 2100 ms in the fixed delays of its typing path (200
+ * ms after the click, 6 x 300 ms of key delays to clear the field and 100 ms
+ * before typing), before typing a single character.
+ *
+ * Usage: {@code ActionEngineBenchmark [latencyMicros] [runs]}
+ */
+public class ActionEngineBenchmark {
+
+	private enum Action {
+		CLICK(ControlType.MenuItem), WRITE(ControlType.Edit), TOGGLE(ControlType.CheckBox),
+		EXPAND(ControlType.ComboBox), COLLAPSE(ControlType.ComboBox), SELECT(ControlType.ListItem);
+
+		private final ControlType controlType;
+
+		Action(ControlType controlType) {
+			this.controlType = controlType;
+		}
+	}
+
+	public static void main(String[] args) throws AutomationException, FindFailed {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+
+		long latencyNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 0 ? Long.parseLong(args[0]) : 50);
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		Settings.PATTERN_ACTIONS = true;
+		SimulatedBackend backend = new SimulatedBackend(8, 3, 0);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+
+		// Warm up without latency.
+		for (Action action : Action.values()) {
+			run(findTargets(driver, backend, action), action, runs);
+		}
+		ActionEngine.getStatistics().reset();
+
+		backend.setCallLatencyNanos(latencyNanos);
+		System.out.println(String.format("latency=%dus runs=%d/action", TimeUnit.NANOSECONDS.toMicros(latencyNanos),
+				runs));
+		for (Action action : Action.values()) {
+			List<UIElement> targets = findTargets(driver, backend, action);
+			backend.resetCallCounts();
+			long elapsed = run(targets, action, runs);
+			ActionReport report = ActionEngine.getLastAction();
+			System.out.println(String.format("%-8s %-8s: %6.3f ms/action, %4.2f calls/action, via %s", action,
+					action.controlType, elapsed / 1e6 / runs, (double) backend.getTotalCalls() / runs,
+					report.getPath()));
+		}
+		System.out.println(ActionEngine.getStatistics());
+	}
+
+	private static List<UIElement> findTargets(Driver driver, SimulatedBackend backend, Action action)
+			throws AutomationException {
+		List<UIElement> targets = new ArrayList<>();
+		for (SimulatedElement element : backend.getElements()) {
+			if (element.getSimulatedControlType() == action.controlType) {
+				targets.add(driver.getUIElement(driver.findElement(LocatorType.NAME, action.controlType,
+						(String) element.readProperty(PropertyID.Name))));
+			}
+		}
+		return targets;
+	}
+
+	private static long run(List<UIElement> targets, Action action, int runs) throws AutomationException, FindFailed {
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; i++) {
+			UIElement target = targets.get(i % targets.size());
+			switch (action) {
+			case CLICK:
+				target.click();
+				break;
+			case WRITE:
+				target.write("value " + i);
+				break;
+			case TOGGLE:
+				// Check all targets, then uncheck them all.
+				target.toggle((i / targets.size()) % 2 == 0 ? "1" : "0");
+				break;
+			case EXPAND:
+				target.expand();
+				break;
+			case COLLAPSE:
+				target.collapse();
+				break;
+			case SELECT:
+				target.select();
+				break;
+			}
+		}
+		return System.nanoTime() - start;
+	}
+}
@@ -0,0 +1,157 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.ptr.PointerByReference;
+
+import actions.LocatorType;
+import core.ConditionCache;
+import core.SearchCondition;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+
+/**
+ * Microbenchmark for the {@link ConditionCache}. It replays a keyword-sheet
+ * like workload, where a small set of (locator, control type, value) triples
+ * is repeated many times, against an in-process fake automation backend. Each
+ * fake COM call costs a configurable amount of busy time, so the benchmark runs
+ * on any platform, including Linux build agents.
+ *
+ * Usage: {@code ConditionCacheBenchmark [lookups] [distinctLocators] [comCallMicros]}
+ */
+public class ConditionCacheBenchmark {
+
+	private static final LocatorType[] LOCATORS = { LocatorType.NAME, LocatorType.ID, LocatorType.TEXT,
+			LocatorType.VALUE };
+	private static final ControlType[] CONTROLS = { ControlType.Button, ControlType.Edit, ControlType.MenuItem,
+			ControlType.Window, ControlType.Text, ControlType.CheckBox };
+
+	/**
+	 * Fake automation backend that mimics the COM calls made by the real
+	 * condition factory: one call per condition part, one for the AND condition
+	 * and a BSTR allocation for the TEXT and VALUE locators.
+	 */
+	static class FakeConditionFactory implements ConditionCache.ConditionFactory {
+
+		private final long comCallNanos;
+		private final AtomicLong comCalls = new AtomicLong();
+
+		FakeConditionFactory(long comCallNanos) {
+			this.comCallNanos = comCallNanos;
+		}
+
+		@Override
+		public PointerByReference create(SearchCondition condition) throws AutomationException {
+			PointerByReference controlTypeCondition = comCall();
+			if (condition.isControlTypeOnly()) {
+				return controlTypeCondition;
+			}
+			if (condition.getLocatorType() == LocatorType.TEXT || condition.getLocatorType() == LocatorType.VALUE) {
+				// SysAllocString and SysFreeString.
+				Memory bstr = new Memory((condition.getValue().length() + 1L) * Native.WCHAR_SIZE);
+				bstr.setWideString(0, condition.getValue());
+				comCall();
+			}
+			comCall();
+			return comCall();
+		}
+
+		@Override
+		public void release(PointerByReference condition) {
+			// Nothing to release for the fake conditions.
+		}
+
+		private PointerByReference comCall() {
+			comCalls.incrementAndGet();
+			long end = System.nanoTime() + comCallNanos;
+			while (System.nanoTime() < end) {
+				// Simulates the cost of a call into UIAutomationCore.
+			}
+			return new PointerByReference(new Memory(8));
+		}
+
+		long getComCalls() {
+			return comCalls.get();
+		}
+	}
+
+	public static void main(String[] args) throws AutomationException {
+		int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+		int distinct = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		long comCallNanos = (args.length > 2 ? Long.parseLong(args[2]) : 5) * 1000;
+
+		List<SearchCondition> workload = createWorkload(lookups, distinct);
+
+		// Warm up both paths before measuring.
+		runUncached(workload.subList(0, Math.min(10_000, lookups)), new FakeConditionFactory(comCallNanos));
+		runCached(workload.subList(0, Math.min(10_000, lookups)), new FakeConditionFactory(comCallNanos), distinct);
+
+		FakeConditionFactory uncachedFactory = new FakeConditionFactory(comCallNanos);
+		long uncachedNanos = runUncached(workload, uncachedFactory);
+
+		FakeConditionFactory cachedFactory = new FakeConditionFactory(comCallNanos);
+		ConditionCache cache = new ConditionCache(Math.max(1, distinct), cachedFactory);
+		long cachedNanos = run(workload, cache);
+
+		System.out.println(String.format("lookups=%d distinct=%d comCall=%dus", lookups, distinct,
+				comCallNanos / 1000));
+		System.out.println(String.format("uncached : %8.1f ns/lookup, %d COM calls", (double) uncachedNanos / lookups,
+				uncachedFactory.getComCalls()));
+		System.out.println(String.format("cached   : %8.1f ns/lookup, %d COM calls", (double) cachedNanos / lookups,
+				cachedFactory.getComCalls()));
+		System.out.println(String.format("speed-up : %.1fx", (double) uncachedNanos / cachedNanos));
+		System.out.println(cache);
+	}
+
+	/**
+	 * Creates a skewed workload: a few locators are used far more often than the
+	 * rest, like the common buttons and windows of a keyword sheet.
+	 */
+	private static List<SearchCondition> createWorkload(int lookups, int distinct) {
+		List<SearchCondition> conditions = new ArrayList<>();
+		for (int i = 0; i < distinct; i++) {
+			LocatorType locator = LOCATORS[i % LOCATORS.length];
+			ControlType control = CONTROLS[i % CONTROLS.length];
+			conditions.add(new SearchCondition(locator, control, "Control " + i));
+		}
+
+		Random random = new Random(42);
+		List<SearchCondition> workload = new ArrayList<>(lookups);
+		for (int i = 0; i < lookups; i++) {
+			double skew = random.nextDouble();
+			int index = (int) (skew * skew * distinct);
+			// Recreate the key as the keyword methods do on every call.
+			SearchCondition condition = conditions.get(index);
+			workload.add(new SearchCondition(condition.getLocatorType(), condition.getControlType(),
+					new String(condition.getValue())));
+		}
+		return workload;
+	}
+
+	private static long runUncached(List<SearchCondition> workload, FakeConditionFactory factory)
+			throws AutomationException {
+		long start = System.nanoTime();
+		for (SearchCondition condition : workload) {
+			factory.release(factory.create(condition));
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long runCached(List<SearchCondition> workload, FakeConditionFactory factory, int capacity)
+			throws AutomationException {
+		return run(workload, new ConditionCache(Math.max(1, capacity), factory));
+	}
+
+	private static long run(List<SearchCondition> workload, ConditionCache cache) throws AutomationException {
+		long start = System.nanoTime();
+		for (SearchCondition condition : workload) {
+			cache.acquire(condition).close();
+		}
+		return System.nanoTime() - start;
+	}
+}
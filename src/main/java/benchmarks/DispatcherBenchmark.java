@@ -0,0 +1,123 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import core.backend.AutomationDispatcher;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedBackend.CallType;
+import core.backend.SimulatedElement;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+
+/**
+ * Benchmark for the {@link AutomationDispatcher}. It measures the round trip of
+ * an empty call through the dispatcher, then has several threads read the
+ * name, automation id, help text and control type of random elements of a
+ * {@link SimulatedBackend}, whose property reads have a call latency, queuing
+ * the four reads of an element back to back. The reads run once separately
+ * and once batched into one backend call per element.
+ *
+ * Usage:
+ * {@code DispatcherBenchmark [threads] [latencyMicros] [elementsPerThread] [calls]}
+ */
+public class DispatcherBenchmark {
+
+	private static final PropertyID[] PROPERTIES = { PropertyID.Name, PropertyID.AutomationId, PropertyID.HelpText,
+			PropertyID.ControlType };
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		long latencyNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 1 ? Long.parseLong(args[1]) : 20);
+		int elementsPerThread = args.length > 2 ? Integer.parseInt(args[2]) : 250;
+		int calls = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+
+		SimulatedBackend backend = new SimulatedBackend(8, 3, 0);
+		List<SimulatedElement> elements = backend.getElements();
+		AutomationDispatcher dispatcher = new AutomationDispatcher(SimulatedBackend.NAME);
+		try {
+			// Round trip of an empty call, after a warm up.
+			for (int i = 0; i < calls; i++) {
+				dispatcher.call(() -> null);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < calls; i++) {
+				dispatcher.call(() -> null);
+			}
+			System.out.println(String.format("empty call round trip: %.2f us/call",
+					(System.nanoTime() - start) / 1e3 / calls));
+
+			backend.setCallLatencyNanos(latencyNanos);
+			System.out.println(String.format("elements=%d threads=%d latency=%dus reads=%d/thread",
+					elements.size(), threads, TimeUnit.NANOSECONDS.toMicros(latencyNanos),
+					elementsPerThread * PROPERTIES.length));
+
+			dispatcher.setPropertyReader((element, properties) -> {
+				Object[] values = new Object[properties.length];
+				for (int i = 0; i < properties.length; i++) {
+					values[i] = backend.getPropertyValue(element, properties[i]);
+				}
+				return values;
+			});
+			run("separate", dispatcher, backend, elements, threads, elementsPerThread);
+			dispatcher.setPropertyReader(backend::getPropertyValues);
+			run("batched", dispatcher, backend, elements, threads, elementsPerThread);
+		} finally {
+			dispatcher.shutdown();
+		}
+	}
+
+	private static void run(String label, AutomationDispatcher dispatcher, SimulatedBackend backend,
+			List<SimulatedElement> elements, int threads, int elementsPerThread) throws Exception {
+		backend.resetCallCounts();
+		dispatcher.getStatistics().reset();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			long start = System.nanoTime();
+			for (int thread = 0; thread < threads; thread++) {
+				int seed = thread;
+				futures.add(executor.submit(() -> {
+					read(dispatcher, elements, elementsPerThread, seed);
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			long elapsed = System.nanoTime() - start;
+
+			long reads = (long) threads * elementsPerThread * PROPERTIES.length;
+			System.out.println(String.format("%-8s: %7.2f us/read, %5.2f backend calls/read", label,
+					elapsed / 1e3 / reads, (double) backend.getCallCount(CallType.PROPERTY) / reads));
+			System.out.println("  " + dispatcher.getStatistics());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void read(AutomationDispatcher dispatcher, List<SimulatedElement> elements, int count, int seed)
+			throws AutomationException {
+		Random random = new Random(seed);
+		List<CompletableFuture<Object>> values = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Element element = elements.get(random.nextInt(elements.size()));
+			values.clear();
+			for (PropertyID property : PROPERTIES) {
+				values.add(dispatcher.submitPropertyRead(element, property));
+			}
+			for (CompletableFuture<Object> value : values) {
+				if (dispatcher.await(value) == null) {
+					throw new IllegalStateException("No value read from " + element);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import actions.LocatorType;
+import core.Driver;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import utils.Settings;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.Element;
+
+/**
+ * Benchmark for the {@link Driver#getElementCache()}. It replays a sheet on the
+ * {@link SimulatedBackend} desktop: most steps act on a small working set of
+ * controls of one window, often on the control of the previous step, and now
+ * and then a control is removed and added again under the same name, like a
+ * dialog being reopened. The replay runs without the cache, with the cache
+ * validating every hit, which needs the ELEMENT_CACHE_WITHOUT_EVENTS setting
+ * as the desktop reports no events, and with the cache also invalidated by the
+ * events of the desktop.
+ *
+ * Usage: {@code ElementCacheBenchmark [steps] [latencyMicros]}
+ */
+public class ElementCacheBenchmark {
+
+	public static void main(String[] args) throws AutomationException {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+
+		int steps = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+		long latencyNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 1 ? Long.parseLong(args[1]) : 20);
+
+		SimulatedBackend backend = new SimulatedBackend(8, 4, latencyNanos);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+		System.out.println(String.format("elements=%d steps=%d latency=%dus", backend.getElementCount(), steps,
+				TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+
+		run("no cache", false, false, driver, backend, steps);
+		run("cache, validated", true, false, driver, backend, steps);
+		run("cache, validated + events", true, true, driver, backend, steps);
+	}
+
+	private static void run(String label, boolean cached, boolean events, Driver driver, SimulatedBackend backend,
+			int steps) throws AutomationException {
+		driver.getElementCache().setEnabled(cached);
+		driver.getElementCache().resetStatistics();
+		backend.setEventsEnabled(events);
+		Settings.ELEMENT_CACHE_WITHOUT_EVENTS = cached && !events;
+
+		// The working set: the named controls in the subtree of window 3.
+		List<SimulatedElement> workingSet = new ArrayList<>();
+		List<String> names = new ArrayList<>();
+		for (SimulatedElement element : backend.getElements()) {
+			if (element.getPath().startsWith("3.") && element.getDepth() == 3 && workingSet.size() < 16) {
+				workingSet.add(element);
+				names.add(element.getName());
+			}
+		}
+		Random random = new Random(3);
+		SimulatedElement previous = workingSet.get(0);
+		int reopened = 0;
+
+		backend.resetCallCounts();
+		long start = System.nanoTime();
+		for (int step = 0; step < steps; step++) {
+			if (step > 0 && step % 40 == 0) {
+				// Reopen a control: same name, new element.
+				int index = random.nextInt(workingSet.size());
+				SimulatedElement old = workingSet.get(index);
+				backend.removeElement(old);
+				SimulatedElement renewed = backend.addElement(old.getParent(), old.getSimulatedControlType(),
+						names.get(index));
+				workingSet.set(index, renewed);
+				if (previous == old) {
+					previous = renewed;
+				}
+				reopened++;
+			}
+			SimulatedElement target = random.nextInt(3) == 0 ? workingSet.get(random.nextInt(workingSet.size()))
+					: previous;
+			String name = names.get(workingSet.indexOf(target));
+			Element found = driver.findElement(LocatorType.NAME, target.getSimulatedControlType(), name);
+			if (found != target) {
+				throw new IllegalStateException("Wrong element for " + target + ": " + found);
+			}
+			previous = target;
+		}
+		long elapsed = System.nanoTime() - start;
+
+		System.out.println(String.format("%-26s: %7.3f ms/step, %7.1f calls/step, %d reopened", label,
+				elapsed / 1e6 / steps, (double) backend.getTotalCalls() / steps, reopened));
+		if (cached) {
+			System.out.println("  " + driver.getElementCache());
+		}
+	}
+}
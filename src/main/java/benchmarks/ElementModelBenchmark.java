@@ -0,0 +1,143 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import actions.LocatorType;
+import core.By;
+import core.By.FindOption;
+import core.Driver;
+import core.ElementModel;
+import core.SearchCondition;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+
+/**
+ * Benchmark for the {@link ElementModel}. Random elements of a large
+ * {@link SimulatedBackend} desktop are looked up by name, id and partial name
+ * and id, with the FindAll-and-filter search of the By class the partial
+ * locators use today and with the model of the whole desktop. The element
+ * cache plays no part: By does not use it and the model is queried directly,
+ * then through Driver.findElement with the cache cleared before every lookup,
+ * which adds the check of the found element against the live tree.
+ *
+ * Usage: {@code ElementModelBenchmark [fanOut] [depth] [lookups] [callLatencyMicros]}
+ */
+public class ElementModelBenchmark {
+
+	public static void main(String[] args) throws AutomationException {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+
+		int fanOut = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		int lookups = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+		long latencyMicros = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+		SimulatedBackend backend = new SimulatedBackend(fanOut, depth, latencyMicros * 1000);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+		List<SimulatedElement> elements = backend.getElements();
+		Random random = new Random(42);
+		List<SearchCondition[]> conditions = new ArrayList<>();
+		for (int i = 0; i < lookups; i++) {
+			SimulatedElement element = elements.get(random.nextInt(elements.size()));
+			ControlType controlType = element.getSimulatedControlType();
+			String name = (String) element.readProperty(PropertyID.Name);
+			String id = (String) element.readProperty(PropertyID.AutomationId);
+			String path = element.getPath();
+			conditions.add(new SearchCondition[] { new SearchCondition(LocatorType.NAME, controlType, name),
+					new SearchCondition(LocatorType.ID, controlType, id),
+					new SearchCondition(LocatorType.PARTIALNAME, controlType, "contains:" + path),
+					new SearchCondition(LocatorType.PARTIALNAME, controlType, "suffix:" + path),
+					new SearchCondition(LocatorType.PARTIALID, controlType, "prefix:" + id),
+					new SearchCondition(LocatorType.PARTIALNAME, controlType,
+							"regex:^" + name.replace(".", "\\.") + "$") });
+		}
+		String[] labels = { "name", "id", "partial name contains", "partial name suffix", "partial id prefix",
+				"partial name regex" };
+		System.out.println(String.format("elements=%d lookups=%d latency=%d us", backend.getElementCount(),
+				conditions.size() * labels.length, latencyMicros));
+
+		long start = System.nanoTime();
+		ElementModel model = driver.buildElementModel();
+		long buildNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+		new ElementModel(model.getSnapshot());
+		long indexNanos = System.nanoTime() - start;
+		System.out.println(String.format("build: %.3f ms (indexing %.3f ms) for %s", buildNanos / 1e6,
+				indexNanos / 1e6, model));
+
+		for (int pass = 0; pass < 2; pass++) {
+			// The first pass warms up.
+			for (int kind = 0; kind < labels.length; kind++) {
+				double live = live(driver, conditions, kind);
+				double indexed = indexed(model, conditions, kind);
+				double found = findElement(driver, conditions, kind);
+				if (pass == 1) {
+					System.out.println(String.format(
+							"%-22s: By %10.3f us/lookup, model %8.3f us/lookup, findElement %8.3f us/lookup",
+							labels[kind], live, indexed, found));
+				}
+			}
+		}
+		System.out.println(Driver.snapshotStatistics);
+	}
+
+	private static double live(Driver driver, List<SearchCondition[]> conditions, int kind)
+			throws AutomationException {
+		long start = System.nanoTime();
+		for (SearchCondition[] lookup : conditions) {
+			SearchCondition condition = lookup[kind];
+			ControlType controlType = condition.getControlType();
+			String value = condition.getValue();
+			List<Element> found;
+			switch (condition.getLocatorType()) {
+			case NAME:
+				found = By.findElementsByName(driver, controlType, value, FindOption.FIRST);
+				break;
+			case ID:
+				found = By.findElementsById(driver, controlType, value, FindOption.FIRST);
+				break;
+			case PARTIALNAME:
+				found = By.findElementsByPartialName(driver, controlType, value, FindOption.FIRST);
+				break;
+			default:
+				found = By.findElementsByPartialId(driver, controlType, value, FindOption.FIRST);
+				break;
+			}
+			if (found.isEmpty()) {
+				throw new IllegalStateException(condition + " not found");
+			}
+		}
+		return (System.nanoTime() - start) / 1e3 / conditions.size();
+	}
+
+	private static double indexed(ElementModel model, List<SearchCondition[]> conditions, int kind) {
+		long start = System.nanoTime();
+		for (SearchCondition[] lookup : conditions) {
+			if (model.find(lookup[kind]) < 0) {
+				throw new IllegalStateException(lookup[kind] + " not found");
+			}
+		}
+		return (System.nanoTime() - start) / 1e3 / conditions.size();
+	}
+
+	private static double findElement(Driver driver, List<SearchCondition[]> conditions, int kind)
+			throws AutomationException {
+		long start = System.nanoTime();
+		for (SearchCondition[] lookup : conditions) {
+			driver.getElementCache().clear();
+			driver.findElement(lookup[kind]);
+		}
+		return (System.nanoTime() - start) / 1e3 / conditions.size();
+	}
+}
@@ -0,0 +1,155 @@
+package benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import core.HitHistory;
+import core.SearchRegion;
+import core.TemplateCache;
+import core.TemplateMatcher;
+import core.TemplateMatcher.Match;
+
+/**
+ * Benchmark for the {@link HitHistory}. Templates are cut from a screen put
+ * together from the recorded window captures of the image folder, see
+ * {@link ImageRegionBenchmark}, and every template is found a few times per
+ * run, probing the spots of the history before searching the screen as the
+ * image searches do. The history is saved after every run and loaded into a
+ * new one for the next: the first run starts without a history, the second
+ * finds everything where it was, the third has one window moved, and the
+ * fourth has it back in its old place, which the second spot of the history
+ * answers.
+ *
+ * Usage: {@code HitHistoryBenchmark [imageFolder] [templates] [searchesPerRun]}
+ */
+public class HitHistoryBenchmark {
+
+	private static final int WIDTH = 1280;
+	private static final int HEIGHT = 800;
+	private static final int PROBE_MARGIN = 2;
+	private static final int MOVE = 40;
+
+	public static void main(String[] args) throws IOException {
+		// Keep the load messages out of the results.
+		Configurator.setLevel("core", Level.WARN);
+
+		File folder = new File(args.length > 0 ? args[0] : "Sikuli-Images");
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		int searches = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		List<Rectangle> windows = new ArrayList<>();
+		BufferedImage screen = ImageRegionBenchmark.composeScreen(folder, WIDTH, HEIGHT, windows);
+		TemplateCache.Level level = TemplateCache.Level.of(screen);
+		TemplateMatcher matcher = new TemplateMatcher(0.95);
+		Random random = new Random(7);
+		List<Rectangle> locations = new ArrayList<>();
+		List<TemplateCache.Level> templates = new ArrayList<>();
+		// The last window moves in the third run; one template is cut from it.
+		Rectangle moving = windows.get(windows.size() - 1);
+		while (locations.size() < count) {
+			Rectangle window = locations.isEmpty() ? moving : windows.get(random.nextInt(windows.size()));
+			Rectangle location = ImageRegionBenchmark.cutTemplate(level, window, random, matcher);
+			if (location != null) {
+				locations.add(location);
+				templates.add(ImageRegionBenchmark.crop(level, location));
+			}
+		}
+		TemplateCache.Level moved = TemplateCache.Level.of(move(screen, moving));
+		System.out.println(String.format("screen=%dx%d templates=%d searches/run=%d", WIDTH, HEIGHT, count, searches));
+
+		Path file = Files.createTempFile("image-hits", ".properties");
+		TemplateCache.Level[] runs = { level, level, moved, level };
+		String[] labels = { "no history", "unchanged", "window moved", "window back" };
+		for (int run = 0; run < runs.length; run++) {
+			HitHistory history = new HitHistory();
+			history.load(file);
+			long probeNanos = 0;
+			long searchNanos = 0;
+			int probeHits = 0;
+			int screenSearches = 0;
+			for (int search = 0; search < searches; search++) {
+				for (int i = 0; i < count; i++) {
+					String name = "template" + i;
+					long start = System.nanoTime();
+					Rectangle found = probe(history, name, runs[run], templates.get(i));
+					probeNanos += System.nanoTime() - start;
+					if (found != null) {
+						probeHits++;
+						continue;
+					}
+					start = System.nanoTime();
+					Match match = matcher.find(runs[run], templates.get(i));
+					long nanos = System.nanoTime() - start;
+					searchNanos += nanos;
+					screenSearches++;
+					history.recordSearch(name, nanos);
+					history.recordHit(name, match.getRect(), match.getScore());
+				}
+			}
+			System.out.println(String.format("run %d, %-12s: %3d probe hits %8.3f ms, %2d screen searches %9.3f ms; %s",
+					run + 1, labels[run], probeHits, probeNanos / 1e6, screenSearches, searchNanos / 1e6, history));
+			if (run == runs.length - 1) {
+				for (String line : history.getReport()) {
+					System.out.println("  " + line);
+				}
+			}
+			history.save(file);
+		}
+		Files.delete(file);
+	}
+
+	/**
+	 * Probes the spots of the history like the image searches, with a crop of
+	 * the screen for the capture of a spot.
+	 */
+	private static Rectangle probe(HitHistory history, String name, TemplateCache.Level screen,
+			TemplateCache.Level template) {
+		List<HitHistory.Hit> hits = history.getHits(name);
+		if (hits.isEmpty()) {
+			return null;
+		}
+		long start = System.nanoTime();
+		Rectangle bounds = new Rectangle(0, 0, screen.getWidth(), screen.getHeight());
+		for (int spot = 0; spot < hits.size(); spot++) {
+			HitHistory.Hit hit = hits.get(spot);
+			Rectangle probed = SearchRegion.around(hit.getRect(), PROBE_MARGIN).intersection(bounds);
+			Match match = new TemplateMatcher(hit.getProbeThreshold()).find(ImageRegionBenchmark.crop(screen, probed),
+					template);
+			if (match != null) {
+				Rectangle found = match.getRect();
+				found.translate(probed.x, probed.y);
+				history.recordProbe(name, spot, System.nanoTime() - start);
+				history.recordHit(name, found, match.getScore());
+				return found;
+			}
+		}
+		history.recordProbe(name, -1, System.nanoTime() - start);
+		return null;
+	}
+
+	/**
+	 * Moves a window of the screen to the right, leaving the desktop behind.
+	 */
+	private static BufferedImage move(BufferedImage screen, Rectangle window) {
+		BufferedImage moved = new BufferedImage(screen.getWidth(), screen.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = moved.createGraphics();
+		graphics.drawImage(screen, 0, 0, null);
+		graphics.setPaint(ImageRegionBenchmark.DESKTOP);
+		graphics.fill(window);
+		graphics.drawImage(screen.getSubimage(window.x, window.y, window.width, window.height), window.x + MOVE,
+				window.y, null);
+		graphics.dispose();
+		return moved;
+	}
+}
@@ -0,0 +1,189 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import core.SearchRegion;
+import core.TemplateCache.Level;
+import core.TemplateMatcher;
+import core.TemplateMatcher.Match;
+
+/**
+ * Benchmark for the regions of interest of the image searches. A screen is
+ * put together from the recorded window captures of the image folder on a
+ * plain desktop, and templates are cut from the windows, mostly from their
+ * toolbar rows. Every template is then found with the {@link TemplateMatcher}
+ * on the whole screen, as the "SCREEN" searches do, and in the regions a
+ * locator can name: the window it belongs to, a fixed rectangle around it, its
+ * last location plus the default margin, and its last location when the
+ * template has moved, which misses and is widened to the screen.
+ *
+ * Usage: {@code ImageRegionBenchmark [imageFolder] [templates] [screenWidth] [screenHeight]}
+ */
+public class ImageRegionBenchmark {
+
+	private static final String[] CAPTURES = { "img2.PNG", "img1.PNG", "Test1.PNG", "launchDocument.PNG",
+			"ProcessInformation.PNG", "launchSimulation.PNG" };
+	private static final int TEMPLATE_WIDTH = 64;
+	private static final int TEMPLATE_HEIGHT = 20;
+	private static final int MOVE = 120;
+	static final Color DESKTOP = new Color(0, 99, 177);
+
+	public static void main(String[] args) throws IOException {
+		File folder = new File(args.length > 0 ? args[0] : "Sikuli-Images");
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		int width = args.length > 2 ? Integer.parseInt(args[2]) : 1280;
+		int height = args.length > 3 ? Integer.parseInt(args[3]) : 800;
+
+		List<Rectangle> windows = new ArrayList<>();
+		BufferedImage screen = composeScreen(folder, width, height, windows);
+		Level level = Level.of(screen);
+		System.out.println(String.format("screen=%dx%d windows=%d templates=%d (%dx%d)", width, height,
+				windows.size(), count, TEMPLATE_WIDTH, TEMPLATE_HEIGHT));
+
+		TemplateMatcher matcher = new TemplateMatcher(0.95);
+		Random random = new Random(42);
+		String[] labels = { "screen", "window", "rect 400x200", "last + margin", "last, moved" };
+		long[] nanos = new long[labels.length];
+		long[] hits = new long[labels.length];
+		int templates = 0;
+		while (templates < count) {
+			Rectangle window = windows.get(random.nextInt(windows.size()));
+			Rectangle location = cutTemplate(level, window, random, matcher);
+			if (location == null) {
+				continue;
+			}
+			Level template = crop(level, location);
+			templates++;
+
+			Rectangle moved = new Rectangle(location);
+			moved.translate(location.x + MOVE + location.width < width ? MOVE : -MOVE, 0);
+			Rectangle[] regions = { null, window,
+					new Rectangle(location.x - 168, location.y - 90, 400, 200),
+					SearchRegion.around(location, SearchRegion.DEFAULT_MARGIN),
+					SearchRegion.around(moved, SearchRegion.DEFAULT_MARGIN) };
+			for (int i = 0; i < regions.length; i++) {
+				long start = System.nanoTime();
+				Match match = regions[i] == null ? null : matcher.find(level, template, regions[i]);
+				if (match == null) {
+					// Widened to the screen.
+					match = matcher.find(level, template);
+				} else {
+					hits[i]++;
+				}
+				nanos[i] += System.nanoTime() - start;
+				if (match == null || !match.getRect().equals(location)) {
+					throw new IllegalStateException(labels[i] + ": " + location + " found at " + match);
+				}
+			}
+		}
+		for (int i = 0; i < labels.length; i++) {
+			System.out.println(String.format("%-14s: %9.3f ms/search, %d of %d found in the region, %6.1fx", labels[i],
+					nanos[i] / 1e6 / count, hits[i], count, (double) nanos[0] / nanos[i]));
+		}
+	}
+
+	/**
+	 * Puts the recorded window captures of the image folder on a plain desktop,
+	 * row by row, as long as they fit.
+	 *
+	 * @param folder  The image folder.
+	 * @param width   The width of the screen.
+	 * @param height  The height of the screen.
+	 * @param windows Receives the bounds of the windows on the screen.
+	 * @return The screen.
+	 * @throws IOException If a capture could not be read.
+	 */
+	static BufferedImage composeScreen(File folder, int width, int height, List<Rectangle> windows)
+			throws IOException {
+		BufferedImage screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = screen.createGraphics();
+		graphics.setPaint(DESKTOP);
+		graphics.fillRect(0, 0, width, height);
+		int x = 10;
+		int y = 10;
+		int rowHeight = 0;
+		for (String name : CAPTURES) {
+			BufferedImage capture = ImageIO.read(new File(folder, name));
+			if (x + capture.getWidth() > width) {
+				x = 10;
+				y += rowHeight + 10;
+				rowHeight = 0;
+			}
+			if (y + capture.getHeight() > height) {
+				break;
+			}
+			graphics.drawImage(capture, x, y, null);
+			windows.add(new Rectangle(x, y, capture.getWidth(), capture.getHeight()));
+			x += capture.getWidth() + 10;
+			rowHeight = Math.max(rowHeight, capture.getHeight());
+		}
+		graphics.dispose();
+		return screen;
+	}
+
+	/**
+	 * Picks the location of a template in a window, two in three times from the
+	 * toolbar rows at its top.
+	 *
+	 * @param screen  The screen.
+	 * @param window  The bounds of the window.
+	 * @param random  The random numbers.
+	 * @param matcher The matcher that checks the template is unique.
+	 * @return The location, or null if the template picked is not unique on the
+	 *         screen, e.g. a plain part of a window.
+	 */
+	static Rectangle cutTemplate(Level screen, Rectangle window, Random random, TemplateMatcher matcher) {
+		return cutTemplate(screen, window, random, matcher, TEMPLATE_WIDTH, TEMPLATE_HEIGHT);
+	}
+
+	/**
+	 * Picks the location of a template of a given size in a window, see
+	 * {@link #cutTemplate(Level, Rectangle, Random, TemplateMatcher)}.
+	 *
+	 * @param screen  The screen.
+	 * @param window  The bounds of the window.
+	 * @param random  The random numbers.
+	 * @param matcher The matcher that checks the template is unique.
+	 * @param width   The width of the template.
+	 * @param height  The height of the template.
+	 * @return The location, or null if the template picked is not unique.
+	 */
+	static Rectangle cutTemplate(Level screen, Rectangle window, Random random, TemplateMatcher matcher, int width,
+			int height) {
+		int band = random.nextInt(3) < 2 ? Math.min(60, window.height) : window.height;
+		Rectangle location = new Rectangle(window.x + random.nextInt(window.width - width),
+				window.y + random.nextInt(Math.max(1, band - height)), width, height);
+		Level template = crop(screen, location);
+		Match check = matcher.find(screen, template);
+		return check != null && check.getRect().equals(location) ? location : null;
+	}
+
+	/**
+	 * Copies a rectangle of a grayscale image.
+	 *
+	 * @param image The image.
+	 * @param rect  The rectangle, inside the image.
+	 * @return The copy.
+	 */
+	static Level crop(Level image, Rectangle rect) {
+		BufferedImage copy = new BufferedImage(rect.width, rect.height, BufferedImage.TYPE_INT_RGB);
+		byte[] pixels = image.getPixels();
+		for (int y = 0; y < rect.height; y++) {
+			for (int x = 0; x < rect.width; x++) {
+				int value = pixels[(rect.y + y) * image.getWidth() + rect.x + x] & 0xFF;
+				copy.setRGB(x, y, value << 16 | value << 8 | value);
+			}
+		}
+		return Level.of(copy);
+	}
+}
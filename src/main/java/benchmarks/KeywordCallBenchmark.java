@@ -0,0 +1,130 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import actions.LocatorType;
+import core.Driver;
+import core.ElementProperties;
+import core.KeywordStatistics;
+import core.UIElement;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+
+/**
+ * Benchmark for the calls into the application per keyword, with the element
+ * properties read live as a plain {@link UIElement} does, and prefetched in one
+ * call as {@link UIElement#prefetch(Element)} does. Each keyword finds a
+ * checkbox of a {@link SimulatedBackend} desktop by name, mostly validating it
+ * in the element cache as a sheet acting on the same controls does, reads its
+ * bounding rectangle for the Sikuli region and then what the keyword uses:
+ * assertName the name, assertEnabled the enabled state, check the toggle state
+ * and click nothing more. The mouse and screen steps are left out, as the
+ * benchmark runs without a display. The calls are counted into a
+ * {@link KeywordStatistics} like a sheet run does.
+ *
+ * Usage: {@code KeywordCallBenchmark [latencyMicros] [runs]}
+ */
+public class KeywordCallBenchmark {
+
+	private enum Keyword {
+		CLICK, ASSERT_NAME, ASSERT_ENABLED, CHECK
+	}
+
+	public static void main(String[] args) throws AutomationException {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+
+		long latencyNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 0 ? Long.parseLong(args[0]) : 50);
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		SimulatedBackend backend = new SimulatedBackend(6, 3, 0);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+		List<SimulatedElement> checkBoxes = new ArrayList<>();
+		for (SimulatedElement element : backend.getElements()) {
+			if (element.getSimulatedControlType() == ControlType.CheckBox) {
+				checkBoxes.add(element);
+			}
+		}
+
+		// Warm up without latency.
+		run(driver, backend, checkBoxes, false, runs, new KeywordStatistics());
+		run(driver, backend, checkBoxes, true, runs, new KeywordStatistics());
+
+		backend.setCallLatencyNanos(latencyNanos);
+		System.out.println(String.format("checkboxes=%d latency=%dus runs=%d/keyword", checkBoxes.size(),
+				TimeUnit.NANOSECONDS.toMicros(latencyNanos), runs));
+		for (boolean prefetch : new boolean[] { false, true }) {
+			KeywordStatistics statistics = new KeywordStatistics();
+			long elapsed = run(driver, backend, checkBoxes, prefetch, runs, statistics);
+			System.out.println(String.format("%-8s: %6.3f ms/keyword", prefetch ? "prefetch" : "live",
+					elapsed / 1e6 / runs / Keyword.values().length));
+			System.out.println("  " + statistics);
+		}
+	}
+
+	private static long run(Driver driver, SimulatedBackend backend, List<SimulatedElement> checkBoxes,
+			boolean prefetch, int runs, KeywordStatistics statistics) throws AutomationException {
+		Random random = new Random(7);
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; i++) {
+			SimulatedElement target = checkBoxes.get(random.nextInt(checkBoxes.size()));
+			for (Keyword keyword : Keyword.values()) {
+				long calls = backend.getCallCount();
+				keyword(driver, backend, target, keyword, prefetch);
+				statistics.record(keyword.name(), backend.getCallCount() - calls);
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static void keyword(Driver driver, SimulatedBackend backend, SimulatedElement target, Keyword keyword,
+			boolean prefetch) throws AutomationException {
+		Element element = driver.findElement(LocatorType.NAME, ControlType.CheckBox,
+				(String) target.readProperty(PropertyID.Name));
+		if (prefetch) {
+			// What UIElement.prefetch reads.
+			ElementProperties properties = ElementProperties.fetch(backend, element);
+			switch (keyword) {
+			case ASSERT_NAME:
+				properties.getName();
+				break;
+			case ASSERT_ENABLED:
+				properties.isEnabled();
+				break;
+			case CHECK:
+				properties.getToggleState();
+				break;
+			default:
+				break;
+			}
+			return;
+		}
+
+		// What a live UIElement reads.
+		backend.getPropertyValue(element, PropertyID.BoundingRectangle);
+		switch (keyword) {
+		case ASSERT_NAME:
+			backend.getPropertyValue(element, PropertyID.Name);
+			break;
+		case ASSERT_ENABLED:
+			backend.getPropertyValue(element, PropertyID.IsEnabled);
+			break;
+		case CHECK:
+			backend.getToggleState(element);
+			break;
+		default:
+			break;
+		}
+	}
+}
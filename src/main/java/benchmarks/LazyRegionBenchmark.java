@@ -0,0 +1,124 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.sikuli.script.FindFailed;
+
+import actions.LocatorType;
+import core.Driver;
+import core.UIElement;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+import utils.Settings;
+
+/**
+ * Benchmark for the lazy geometry of {@link UIElement}. Existence checks of
+ * elements of a {@link SimulatedBackend} desktop, as waitToDisplay and
+ * waitToVanish run them, are timed with the bounding rectangle read when the
+ * UIElement is created, as it used to be, and read on first use. Then menu
+ * items, checkboxes and edit boxes are clicked, checked and written in the
+ * PATTERN_ACTIONS mode; the benchmark runs without a display, so these only
+ * succeed if no Sikuli region is ever computed.
+ *
+ * Usage: {@code LazyRegionBenchmark [latencyMicros] [checks]}
+ */
+public class LazyRegionBenchmark {
+
+	private enum Check {
+		DISPLAY, VANISH
+	}
+
+	public static void main(String[] args) throws AutomationException, FindFailed {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+
+		long latencyNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 0 ? Long.parseLong(args[0]) : 50);
+		int checks = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		Settings.SCALE = 100;
+		SimulatedBackend backend = new SimulatedBackend(6, 3, 0);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+		List<SimulatedElement> targets = new ArrayList<>();
+		for (SimulatedElement element : backend.getElements()) {
+			if (element.getDepth() > 1) {
+				targets.add(element);
+			}
+		}
+
+		// Warm up without latency.
+		for (Check check : Check.values()) {
+			run(driver, backend, targets, check, true, checks);
+			run(driver, backend, targets, check, false, checks);
+		}
+
+		backend.setCallLatencyNanos(latencyNanos);
+		System.out.println(String.format("elements=%d latency=%dus checks=%d", targets.size(),
+				TimeUnit.NANOSECONDS.toMicros(latencyNanos), checks));
+		for (Check check : Check.values()) {
+			for (boolean eager : new boolean[] { true, false }) {
+				backend.resetCallCounts();
+				long elapsed = run(driver, backend, targets, check, eager, checks);
+				System.out.println(String.format("%-7s %-5s: %6.3f ms/check, %4.2f calls/check", check,
+						eager ? "eager" : "lazy", elapsed / 1e6 / checks, (double) backend.getTotalCalls() / checks));
+			}
+		}
+
+		Settings.PATTERN_ACTIONS = true;
+		for (ControlType controlType : new ControlType[] { ControlType.MenuItem, ControlType.CheckBox,
+				ControlType.Edit }) {
+			SimulatedElement target = null;
+			for (SimulatedElement element : targets) {
+				if (element.getSimulatedControlType() == controlType) {
+					target = element;
+					break;
+				}
+			}
+			Element element = driver.findElement(LocatorType.NAME, controlType,
+					(String) target.readProperty(PropertyID.Name));
+			backend.resetCallCounts();
+			long start = System.nanoTime();
+			UIElement uiElement = driver.getUIElement(element);
+			if (controlType == ControlType.MenuItem) {
+				uiElement.click();
+			} else if (controlType == ControlType.CheckBox) {
+				uiElement.check();
+			} else {
+				uiElement.write("typed");
+			}
+			long elapsed = System.nanoTime() - start;
+			System.out.println(String.format("pattern %-8s: %6.3f ms, %d calls, no region", controlType,
+					elapsed / 1e6, backend.getTotalCalls()));
+		}
+	}
+
+	private static long run(Driver driver, SimulatedBackend backend, List<SimulatedElement> targets, Check check,
+			boolean eager, int checks) throws AutomationException {
+		Random random = new Random(11);
+		long start = System.nanoTime();
+		for (int i = 0; i < checks; i++) {
+			SimulatedElement target = targets.get(random.nextInt(targets.size()));
+			UIElement element = new UIElement(driver.findElement(LocatorType.NAME,
+					target.getSimulatedControlType(), (String) target.readProperty(PropertyID.Name)));
+			if (eager) {
+				// What the constructor used to read; the region itself needs a
+				// display.
+				element.getBounds();
+			}
+			boolean result = check == Check.DISPLAY ? element.isDisplayed() : element.getProperties() == null;
+			if (!result) {
+				throw new IllegalStateException("Check failed for " + target);
+			}
+		}
+		return System.nanoTime() - start;
+	}
+}
@@ -0,0 +1,116 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import actions.LocatorPlan;
+import actions.LocatorType;
+import core.Controls;
+import core.Driver;
+import core.SearchCondition;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.PropertyID;
+
+/**
+ * Benchmark for the compiled {@link LocatorPlan}s. The locators of the
+ * elements of a {@link SimulatedBackend} desktop, as strings the way a sheet
+ * gives them, are resolved as ElementFinder used to on every lookup
+ * (upper-casing, the locator and control type maps and a new SearchCondition)
+ * and through their cached plans. Then the elements are found with both, from
+ * the element cache, without call latency so the resolution is what differs.
+ *
+ * Usage: {@code LocatorPlanBenchmark [rounds]}
+ */
+public class LocatorPlanBenchmark {
+
+	public static void main(String[] args) throws AutomationException {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+		SimulatedBackend backend = new SimulatedBackend(6, 3, 0);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+		List<String[]> steps = new ArrayList<>();
+		for (SimulatedElement element : backend.getElements()) {
+			if (element.getDepth() > 1) {
+				steps.add(new String[] { "name", element.getSimulatedControlType().name().toLowerCase(),
+						(String) element.readProperty(PropertyID.Name) });
+			}
+		}
+
+		long compileStart = System.nanoTime();
+		for (String[] step : steps) {
+			LocatorPlan.of(step[0], step[1], step[2]);
+		}
+		System.out.println(String.format("steps=%d rounds=%d compiled in %.3f ms", steps.size(), rounds,
+				(System.nanoTime() - compileStart) / 1e6));
+
+		for (int pass = 0; pass < 2; pass++) {
+			// The first pass warms up.
+			long resolveStrings = resolveStrings(steps, rounds);
+			long resolvePlans = resolvePlans(steps, rounds);
+			long findStrings = findStrings(driver, steps, rounds);
+			long findPlans = findPlans(driver, steps, rounds);
+			if (pass == 1) {
+				int lookups = steps.size() * rounds;
+				System.out.println(String.format("resolve strings: %6.3f us/lookup", resolveStrings / 1e3 / lookups));
+				System.out.println(String.format("resolve plans  : %6.3f us/lookup", resolvePlans / 1e3 / lookups));
+				System.out.println(String.format("find strings   : %6.3f us/lookup", findStrings / 1e3 / lookups));
+				System.out.println(String.format("find plans     : %6.3f us/lookup", findPlans / 1e3 / lookups));
+			}
+		}
+	}
+
+	private static long resolveStrings(List<String[]> steps, int rounds) {
+		int hash = 0;
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			for (String[] step : steps) {
+				LocatorType locator = LocatorType.valueOf(step[0].toUpperCase());
+				hash += new SearchCondition(locator, Controls.getControl(step[1]), step[2]).hashCode();
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		return hash == 42 ? elapsed + 1 : elapsed;
+	}
+
+	private static long resolvePlans(List<String[]> steps, int rounds) {
+		int hash = 0;
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			for (String[] step : steps) {
+				hash += LocatorPlan.of(step[0], step[1], step[2]).getCondition().hashCode();
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		return hash == 42 ? elapsed + 1 : elapsed;
+	}
+
+	private static long findStrings(Driver driver, List<String[]> steps, int rounds) throws AutomationException {
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			for (String[] step : steps) {
+				LocatorType locator = LocatorType.valueOf(step[0].toUpperCase());
+				driver.findElement(locator, Controls.getControl(step[1]), step[2]);
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long findPlans(Driver driver, List<String[]> steps, int rounds) throws AutomationException {
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			for (String[] step : steps) {
+				driver.findElement(LocatorPlan.of(step[0], step[1], step[2]).getCondition());
+			}
+		}
+		return System.nanoTime() - start;
+	}
+}
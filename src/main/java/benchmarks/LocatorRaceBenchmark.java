@@ -0,0 +1,120 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import actions.ElementFinder;
+import actions.LocatorChain;
+import actions.LocatorPlan;
+import core.Driver;
+import core.ElementCache;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.PropertyID;
+
+/**
+ * Benchmark for the racing of the locators of a {@link LocatorChain}. Elements
+ * of a {@link SimulatedBackend} desktop are found with a two-locator chain
+ * whose first locator is stale, an outdated id, as a sheet tries the locators
+ * one after the other and as ElementFinder races them; then with a chain whose
+ * first locator hits, against that locator alone, for the cost of the race.
+ * The element cache is cleared before every step.
+ *
+ * The Sikuli locators of a chain search the screen, so they cannot be raced in
+ * a headless run; the benchmark races UIAutomation locators only.
+ *
+ * Usage: {@code LocatorRaceBenchmark [rounds] [callLatencyMicros]}
+ */
+public class LocatorRaceBenchmark {
+
+	// The wait of a step, in seconds.
+	private static final long DURATION = 1;
+
+	public static void main(String[] args) {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+		Configurator.setLevel("actions", Level.FATAL);
+
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		long latencyMicros = args.length > 1 ? Long.parseLong(args[1]) : 50;
+
+		SimulatedBackend backend = new SimulatedBackend(6, 3, latencyMicros * 1000);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+		ElementFinder finder = new ElementFinder(driver);
+		List<LocatorChain> staleFirst = new ArrayList<>();
+		List<LocatorChain> hitFirst = new ArrayList<>();
+		for (SimulatedElement element : backend.getElements()) {
+			if (element.getDepth() == 3 && staleFirst.size() < 4) {
+				String controlType = element.getSimulatedControlType().name();
+				String name = (String) element.readProperty(PropertyID.Name);
+				String id = (String) element.readProperty(PropertyID.AutomationId);
+				staleFirst.add(LocatorChain.of("id|name", controlType, "stale-" + id + "|" + name));
+				hitFirst.add(LocatorChain.of("name|id", controlType, name + "|" + id));
+			}
+		}
+		System.out.println(String.format("steps=%d rounds=%d latency=%d us duration=%d s", staleFirst.size(), rounds,
+				latencyMicros, DURATION));
+
+		for (int pass = 0; pass < 2; pass++) {
+			// The first pass warms up.
+			int passRounds = pass == 0 ? 1 : rounds;
+			ElementFinder.raceStatistics.reset();
+			double sequential = sequential(finder, driver.getElementCache(), staleFirst, passRounds);
+			double raced = raced(finder, driver.getElementCache(), staleFirst, passRounds);
+			double single = single(finder, driver.getElementCache(), hitFirst, passRounds);
+			double racedHit = raced(finder, driver.getElementCache(), hitFirst, passRounds);
+			if (pass == 1) {
+				System.out.println(String.format("stale first, one after the other: %9.3f ms/step", sequential));
+				System.out.println(String.format("stale first, raced             : %9.3f ms/step", raced));
+				System.out.println(String.format("hit first, first locator only  : %9.3f ms/step", single));
+				System.out.println(String.format("hit first, raced               : %9.3f ms/step", racedHit));
+				System.out.println(ElementFinder.raceStatistics);
+			}
+		}
+	}
+
+	private static double sequential(ElementFinder finder, ElementCache cache, List<LocatorChain> chains, int rounds) {
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			for (LocatorChain chain : chains) {
+				cache.clear();
+				for (LocatorPlan plan : chain.getPlans()) {
+					if (finder.getElement(plan, DURATION) != null) {
+						break;
+					}
+				}
+			}
+		}
+		return (System.nanoTime() - start) / 1e6 / (rounds * chains.size());
+	}
+
+	private static double raced(ElementFinder finder, ElementCache cache, List<LocatorChain> chains, int rounds) {
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			for (LocatorChain chain : chains) {
+				cache.clear();
+				if (finder.getElement(chain, DURATION) == null) {
+					throw new IllegalStateException(chain + " not found");
+				}
+			}
+		}
+		return (System.nanoTime() - start) / 1e6 / (rounds * chains.size());
+	}
+
+	private static double single(ElementFinder finder, ElementCache cache, List<LocatorChain> chains, int rounds) {
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			for (LocatorChain chain : chains) {
+				cache.clear();
+				if (finder.getElement(chain.get(0), DURATION) == null) {
+					throw new IllegalStateException(chain.get(0) + " not found");
+				}
+			}
+		}
+		return (System.nanoTime() - start) / 1e6 / (rounds * chains.size());
+	}
+}
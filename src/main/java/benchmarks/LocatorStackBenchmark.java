@@ -0,0 +1,107 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import actions.LocatorType;
+import core.Driver;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.PropertyID;
+
+/**
+ * Performance harness for the locator stack, {@link Driver} and {@link core.By}
+ * down to the automation backend, on the deterministic desktop of the
+ * {@link SimulatedBackend}. It replays random lookups of existing elements with
+ * every UIAutomation locator type and reports the time and the number of
+ * backend calls per lookup, with the element cache of the session on.
+ *
+ * Usage: {@code LocatorStackBenchmark [fanOut] [depth] [latencyMicros] [lookups]}
+ */
+public class LocatorStackBenchmark {
+
+	private static final LocatorType[] LOCATORS = { LocatorType.NAME, LocatorType.ID, LocatorType.TEXT,
+			LocatorType.VALUE, LocatorType.PARTIALNAME, LocatorType.PARTIALID };
+
+	public static void main(String[] args) throws AutomationException {
+		int fanOut = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		long latencyNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 2 ? Long.parseLong(args[2]) : 20);
+		int lookups = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+		SimulatedBackend backend = new SimulatedBackend(fanOut, depth, 0);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+
+		// Lookups of elements below the windows; the desktop and windows are found
+		// with getWindow.
+		List<SimulatedElement> targets = new ArrayList<>();
+		for (SimulatedElement element : backend.getElements()) {
+			if (element.getDepth() > 1) {
+				targets.add(element);
+			}
+		}
+		Random random = new Random(7);
+
+		System.out.println(String.format("elements=%d fanOut=%d depth=%d latency=%dus lookups=%d",
+				backend.getElementCount(), fanOut, depth, TimeUnit.NANOSECONDS.toMicros(latencyNanos), lookups));
+
+		for (LocatorType locator : LOCATORS) {
+			// Warm up without latency.
+			backend.setCallLatencyNanos(0);
+			for (int i = 0; i < Math.min(50, lookups); i++) {
+				lookup(driver, locator, targets.get(random.nextInt(targets.size())));
+			}
+
+			backend.setCallLatencyNanos(latencyNanos);
+			backend.resetCallCounts();
+			long start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) {
+				lookup(driver, locator, targets.get(random.nextInt(targets.size())));
+			}
+			long elapsed = System.nanoTime() - start;
+			System.out.println(String.format("%-12s: %8.3f ms/lookup, %6.1f calls/lookup", locator,
+					elapsed / 1e6 / lookups, (double) backend.getTotalCalls() / lookups));
+		}
+
+		backend.resetCallCounts();
+		long start = System.nanoTime();
+		for (int i = 0; i < lookups; i++) {
+			driver.getWindow("Window " + random.nextInt(Math.min(fanOut, 5)));
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.println(String.format("%-12s: %8.3f ms/lookup, %6.1f calls/lookup", "getWindow",
+				elapsed / 1e6 / lookups, (double) backend.getTotalCalls() / lookups));
+		System.out.println(driver.getElementCache());
+		System.out.println(backend);
+	}
+
+	private static void lookup(Driver driver, LocatorType locator, SimulatedElement target)
+			throws AutomationException {
+		ControlType controlType = target.getSimulatedControlType();
+		String value;
+		switch (locator) {
+		case NAME:
+		case PARTIALNAME:
+			value = (String) target.readProperty(PropertyID.Name);
+			break;
+		case ID:
+		case PARTIALID:
+			value = (String) target.readProperty(PropertyID.AutomationId);
+			break;
+		case TEXT:
+			value = (String) target.readProperty(PropertyID.HelpText);
+			break;
+		default:
+			value = (String) target.readProperty(PropertyID.LegacyIAccessibleValue);
+			break;
+		}
+		if (driver.findElement(locator, controlType, value) != target) {
+			throw new IllegalStateException(locator + " " + value + " did not find " + target);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package benchmarks;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import core.ParallelMatcher;
+import core.TemplateCache.Level;
+import core.TemplateMatcher;
+import core.TemplateMatcher.Match;
+
+/**
+ * Benchmark for the {@link ParallelMatcher}. Templates are cut from a screen
+ * put together from the recorded window captures of the image folder, see
+ * {@link ImageRegionBenchmark}, and found on the whole screen by the
+ * {@link TemplateMatcher} on one thread, and by the parallel matcher on pools
+ * of 1 up to the given number of threads: one template at a time for the best
+ * match and for the first one, and all templates in one pass. Every best
+ * match is checked against the one the TemplateMatcher finds; a first match
+ * may be another place the template is on, e.g. in the toolbar of a second
+ * window of the same application.
+ *
+ * Usage: {@code ParallelMatcherBenchmark [imageFolder] [templates] [maxThreads]}
+ */
+public class ParallelMatcherBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		File folder = new File(args.length > 0 ? args[0] : "Sikuli-Images");
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		List<Rectangle> windows = new ArrayList<>();
+		BufferedImage screen = ImageRegionBenchmark.composeScreen(folder, 1280, 800, windows);
+		Level level = Level.of(screen);
+		TemplateMatcher matcher = new TemplateMatcher(0.95);
+		Random random = new Random(5);
+		Map<String, Level> templates = new LinkedHashMap<>();
+		while (templates.size() < count) {
+			Rectangle location = ImageRegionBenchmark.cutTemplate(level, windows.get(random.nextInt(windows.size())),
+					random, matcher);
+			if (location != null) {
+				templates.put("template" + templates.size(), ImageRegionBenchmark.crop(level, location));
+			}
+		}
+		System.out.println(String.format("screen=%dx%d templates=%d cores=%d tile=%d", screen.getWidth(),
+				screen.getHeight(), count, Runtime.getRuntime().availableProcessors(), ParallelMatcher.TILE_SIZE));
+
+		Map<String, Match> expected = new LinkedHashMap<>();
+		long start = System.nanoTime();
+		for (Map.Entry<String, Level> entry : templates.entrySet()) {
+			expected.put(entry.getKey(), matcher.find(level, entry.getValue()));
+		}
+		long sequential = System.nanoTime() - start;
+		System.out.println(String.format("sequential        : %9.3f ms/template", sequential / 1e6 / count));
+
+		for (int threads = 1; threads <= maxThreads; threads = threads < maxThreads ? Math.min(threads * 2, maxThreads)
+				: threads + 1) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				ParallelMatcher parallel = new ParallelMatcher(matcher.getThreshold(), pool);
+				// One search to start the threads of the pool.
+				parallel.find(level, templates.values().iterator().next());
+
+				long best = 0;
+				long first = 0;
+				int firstIsBest = 0;
+				for (Map.Entry<String, Level> entry : templates.entrySet()) {
+					start = System.nanoTime();
+					check("best", expected.get(entry.getKey()), parallel.find(level, entry.getValue()));
+					best += System.nanoTime() - start;
+					start = System.nanoTime();
+					Match match = parallel.findFirst(level, entry.getValue());
+					first += System.nanoTime() - start;
+					if (match == null) {
+						throw new IllegalStateException("first: " + expected.get(entry.getKey()) + " not found");
+					}
+					if (match.getRect().equals(expected.get(entry.getKey()).getRect())) {
+						firstIsBest++;
+					}
+				}
+				start = System.nanoTime();
+				Map<String, Match> all = parallel.findAll(level, templates);
+				long pass = System.nanoTime() - start;
+				for (Map.Entry<String, Match> entry : expected.entrySet()) {
+					check("one pass", entry.getValue(), all.get(entry.getKey()));
+				}
+				System.out.println(String.format(
+						"%2d threads: best %9.3f ms/template %5.2fx, first %9.3f ms/template %5.2fx (%d best), "
+								+ "one pass %9.3f ms/template %5.2fx",
+						threads, best / 1e6 / count, (double) sequential / best, first / 1e6 / count,
+						(double) sequential / first, firstIsBest, pass / 1e6 / count, (double) sequential / pass));
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	private static void check(String search, Match expected, Match match) {
+		if (match == null || !match.getRect().equals(expected.getRect())) {
+			throw new IllegalStateException(search + ": " + expected + " found as " + match);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import actions.LocatorType;
+import core.Driver;
+import core.backend.AutomationBackend;
+import core.backend.AutomationDispatcher;
+import core.backend.ConfinedBackend;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.PropertyID;
+
+/**
+ * Benchmark for parallel {@link Driver} sessions. Each session is scoped to its
+ * own window of a {@link SimulatedBackend} desktop and looks up elements of
+ * that window by name, first one session after the other on one thread, then
+ * all sessions at once on a thread each. The backend is used directly, and
+ * confined to an {@link AutomationDispatcher} like the UIAutomation backend.
+ * Every lookup checks that it found the element of its own session, with the
+ * element cache of every session on, so that a session is never handed an
+ * element another session cached.
+ *
+ * Usage:
+ * {@code ParallelSessionBenchmark [sessions] [fanOut] [depth] [visitLatencyNanos] [lookups]}
+ */
+public class ParallelSessionBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int fanOut = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		long visitLatencyNanos = args.length > 3 ? Long.parseLong(args[3]) : 200;
+		int lookups = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+
+		SimulatedBackend simulated = new SimulatedBackend(fanOut, depth, 0);
+		simulated.setVisitLatencyNanos(visitLatencyNanos);
+		System.out.println(String.format("elements=%d sessions=%d visitLatency=%dns lookups=%d/session",
+				simulated.getElementCount(), sessions, visitLatencyNanos, lookups));
+
+		run("direct", simulated, simulated, sessions, lookups);
+		ConfinedBackend confined = new ConfinedBackend(new AutomationDispatcher(SimulatedBackend.NAME),
+				() -> simulated);
+		run("confined", confined, simulated, sessions, lookups);
+		System.out.println("  " + confined.getDispatcher().getStatistics());
+		confined.close();
+	}
+
+	private static void run(String label, AutomationBackend backend, SimulatedBackend simulated, int sessions,
+			int lookups) throws Exception {
+		Driver.setBackend(backend);
+
+		List<Driver> drivers = new ArrayList<>();
+		List<List<SimulatedElement>> targets = new ArrayList<>();
+		for (int i = 0; i < sessions; i++) {
+			SimulatedElement window = simulated.getElement(String.valueOf(i % simulated.getFanOut()));
+			Driver driver = new Driver();
+			driver.setSearchScope(window);
+			drivers.add(driver);
+			List<SimulatedElement> inWindow = new ArrayList<>();
+			for (SimulatedElement element : simulated.getElements()) {
+				if (element.getPath().startsWith(window.getPath() + ".")) {
+					inWindow.add(element);
+				}
+			}
+			targets.add(inWindow);
+		}
+
+		// Warm up.
+		for (int i = 0; i < sessions; i++) {
+			lookups(drivers.get(i), targets.get(i), 20, i);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < sessions; i++) {
+			lookups(drivers.get(i), targets.get(i), lookups, i);
+		}
+		long sequential = System.nanoTime() - start;
+
+		ExecutorService executor = Executors.newFixedThreadPool(sessions);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			start = System.nanoTime();
+			for (int i = 0; i < sessions; i++) {
+				int session = i;
+				futures.add(executor.submit(() -> {
+					lookups(drivers.get(session), targets.get(session), lookups, session);
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		long parallel = System.nanoTime() - start;
+
+		int total = sessions * lookups;
+		System.out.println(String.format("%-9s: sequential %7.3f ms/lookup, parallel %7.3f ms/lookup", label,
+				sequential / 1e6 / total, parallel / 1e6 / total));
+		System.out.println("  " + Driver.scopeStatistics);
+		Driver.scopeStatistics.reset();
+		for (Driver driver : drivers) {
+			System.out.println("  " + driver.getElementCache());
+		}
+	}
+
+	private static void lookups(Driver driver, List<SimulatedElement> targets, int lookups, int seed)
+			throws AutomationException {
+		Random random = new Random(seed);
+		for (int i = 0; i < lookups; i++) {
+			SimulatedElement target = targets.get(random.nextInt(targets.size()));
+			String name = (String) target.readProperty(PropertyID.Name);
+			if (driver.findElement(LocatorType.NAME, target.getSimulatedControlType(), name) != target) {
+				throw new IllegalStateException("Session " + seed + " did not find " + name);
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import actions.LocatorType;
+import core.By;
+import core.By.FindOption;
+import core.Driver;
+import core.PartialMatcher.MatchMode;
+import core.SearchCondition;
+import core.backend.SimulatedBackend;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+import mmarquee.uiautomation.TreeScope;
+
+/**
+ * Microbenchmark for the partial locators on the {@link SimulatedBackend}. It
+ * compares the old approach, one findAll followed by a live property read per
+ * element, with {@link By#findElementsByPartial}, which fetches the properties
+ * with the elements and matches them in memory.
+ *
+ * Usage: {@code PartialMatchBenchmark [fanOut] [depth] [latencyMicros] [rounds]}
+ */
+public class PartialMatchBenchmark {
+
+	private interface Run {
+		int run() throws AutomationException;
+	}
+
+	public static void main(String[] args) throws AutomationException {
+		int fanOut = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		long latencyNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 2 ? Long.parseLong(args[2]) : 20);
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+		SimulatedBackend backend = new SimulatedBackend(fanOut, depth, 0);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+
+		// A button near the middle of the tree, the typical case for FIRST.
+		List<Element> buttons = backend.findAll(backend.getRootElement(), TreeScope.SUBTREE,
+				SearchCondition.ofControlType(ControlType.Button));
+		String target = buttons.get(buttons.size() / 2).getName();
+		String part = target.substring(target.indexOf(' ') + 1);
+
+		// Warm up without latency.
+		runLive(backend, part);
+		By.findElementsByPartial(driver, LocatorType.PARTIALNAME, ControlType.Button, part, MatchMode.CONTAINS,
+				FindOption.ALL);
+
+		backend.setCallLatencyNanos(latencyNanos);
+		System.out.println(String.format("elements=%d buttons=%d latency=%dus rounds=%d", backend.getElementCount(),
+				buttons.size(), TimeUnit.NANOSECONDS.toMicros(latencyNanos), rounds));
+		report(backend, "live read + contains (ALL)", rounds, () -> runLive(backend, part));
+		report(backend, "batched + contains (ALL)", rounds, () -> By.findElementsByPartial(driver, LocatorType.PARTIALNAME,
+				ControlType.Button, part, MatchMode.CONTAINS, FindOption.ALL).size());
+		report(backend, "batched + contains (FIRST)", rounds, () -> By.findElementsByPartial(driver, LocatorType.PARTIALNAME,
+				ControlType.Button, part, MatchMode.CONTAINS, FindOption.FIRST).size());
+		report(backend, "batched + suffix (FIRST)", rounds, () -> By.findElementsByPartial(driver, LocatorType.PARTIALNAME,
+				ControlType.Button, part, MatchMode.SUFFIX, FindOption.FIRST).size());
+		report(backend, "batched + regex (FIRST)", rounds, () -> By.findElementsByPartial(driver, LocatorType.PARTIALNAME,
+				ControlType.Button, "^Button " + part.replace(".", "\\.") + "$", MatchMode.REGEX, FindOption.FIRST)
+				.size());
+	}
+
+	private static void report(SimulatedBackend backend, String label, int rounds, Run run)
+			throws AutomationException {
+		backend.resetCallCounts();
+		int found = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			found = run.run();
+		}
+		long elapsed = (System.nanoTime() - start) / rounds;
+		System.out.println(String.format("%-28s: %8.2f ms/find, %6d calls/find, found=%d", label, elapsed / 1e6,
+				backend.getTotalCalls() / rounds, found));
+	}
+
+	/**
+	 * The old approach: findAll, then one live property read per element.
+	 */
+	private static int runLive(SimulatedBackend backend, String value) throws AutomationException {
+		int found = 0;
+		for (Element element : backend.findAll(backend.getRootElement(), TreeScope.SUBTREE,
+				SearchCondition.ofControlType(ControlType.Button))) {
+			if (backend.getPropertyValue(element, PropertyID.Name).toString().contains(value)) {
+				found++;
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,106 @@
+package benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import core.PyramidMatcher;
+import core.TemplateCache.Level;
+import core.TemplateMatcher;
+import core.TemplateMatcher.Match;
+
+/**
+ * Benchmark for the {@link PyramidMatcher}. Templates are cut from a screen put
+ * together from the recorded window captures of the image folder, see
+ * {@link ImageRegionBenchmark}, and the screen is then shown at the display
+ * scalings of our hosts. Every template is found on every scaled screen with
+ * the exhaustive {@link TemplateMatcher} at the template's own scale, the
+ * correlation SikuliX computes for a find, with the pyramid matcher at the
+ * template's own scale, and with the pyramid matcher over a scale range.
+ *
+ * Usage: {@code PyramidMatcherBenchmark [imageFolder] [templates] [minScale] [maxScale]}
+ */
+public class PyramidMatcherBenchmark {
+
+	private static final double[] DISPLAY_SCALES = { 1.0, 1.25, 0.8 };
+	private static final double THRESHOLD = 0.8;
+	private static final int TOLERANCE = 3;
+
+	public static void main(String[] args) throws IOException {
+		File folder = new File(args.length > 0 ? args[0] : "Sikuli-Images");
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		double minScale = args.length > 2 ? Double.parseDouble(args[2]) : 0.75;
+		double maxScale = args.length > 3 ? Double.parseDouble(args[3]) : 1.35;
+
+		List<Rectangle> windows = new ArrayList<>();
+		BufferedImage screen = ImageRegionBenchmark.composeScreen(folder, 1280, 800, windows);
+		Level level = Level.of(screen);
+		TemplateMatcher exhaustive = new TemplateMatcher(THRESHOLD);
+		Random random = new Random(11);
+		List<Rectangle> locations = new ArrayList<>();
+		List<Level> templates = new ArrayList<>();
+		while (locations.size() < count) {
+			Rectangle window = windows.get(random.nextInt(windows.size()));
+			// Toolbar buttons and labels, and a larger part of a window.
+			boolean large = locations.size() % 2 == 1;
+			Rectangle location = ImageRegionBenchmark.cutTemplate(level, window, random, exhaustive, large ? 160 : 96,
+					large ? 64 : 32);
+			if (location != null) {
+				locations.add(location);
+				templates.add(ImageRegionBenchmark.crop(level, location));
+			}
+		}
+
+		PyramidMatcher[] pyramids = { new PyramidMatcher(THRESHOLD, 1, 1),
+				new PyramidMatcher(THRESHOLD, minScale, maxScale) };
+		System.out.println(String.format("templates=%d threshold=%.2f scales=%.2f-%.2f (%d)", count, THRESHOLD,
+				minScale, maxScale, pyramids[1].getScales().size()));
+		for (double displayScale : DISPLAY_SCALES) {
+			Level scaled = Level.of(scale(screen, displayScale));
+			String[] labels = { "exhaustive, 1.0", "pyramid, 1.0", "pyramid, range" };
+			for (int method = 0; method < labels.length; method++) {
+				long nanos = 0;
+				int found = 0;
+				double scores = 0;
+				for (int i = 0; i < count; i++) {
+					long start = System.nanoTime();
+					Match match = method == 0 ? exhaustive.find(scaled, templates.get(i))
+							: pyramids[method - 1].find(scaled, templates.get(i));
+					nanos += System.nanoTime() - start;
+					Rectangle location = locations.get(i);
+					if (match != null && Math.abs(match.getRect().x - location.x * displayScale) <= TOLERANCE
+							&& Math.abs(match.getRect().y - location.y * displayScale) <= TOLERANCE) {
+						found++;
+						scores += match.getScore();
+					}
+				}
+				System.out.println(String.format("display %.2f %-16s: %9.3f ms/search, found %d of %d, score %.3f",
+						displayScale, labels[method], nanos / 1e6 / count, found, count,
+						found == 0 ? 0 : scores / found));
+			}
+		}
+	}
+
+	/**
+	 * Shows a screen at another display scaling.
+	 */
+	private static BufferedImage scale(BufferedImage screen, double scale) {
+		if (scale == 1) {
+			return screen;
+		}
+		int width = (int) Math.round(screen.getWidth() * scale);
+		int height = (int) Math.round(screen.getHeight() * scale);
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = scaled.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		graphics.drawImage(screen, 0, 0, width, height, null);
+		graphics.dispose();
+		return scaled;
+	}
+}
@@ -0,0 +1,110 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import actions.LocatorType;
+import core.BackoffRetryPolicy;
+import core.By;
+import core.Driver;
+import core.FixedRetryPolicy;
+import core.LookupReport;
+import core.RetryPolicy;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.ElementNotFoundException;
+
+/**
+ * Benchmark for the retry policies of the element lookups. A button appears in
+ * the {@link SimulatedBackend} desktop after a random delay while a lookup with
+ * a deadline waits for it. For every policy it reports how long after the
+ * button appeared it was found, the attempts per lookup and the time spent
+ * sleeping. Two workloads are run: controls that appear almost at once, like
+ * a button enabled by the previous step, and controls that appear within a
+ * few seconds, like a dialog opening.
+ *
+ * Usage: {@code RetryPolicyBenchmark [trials] [maxAppearMillis] [latencyMicros]}
+ */
+public class RetryPolicyBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		// Keep the per-lookup debug output of By out of the results.
+		Configurator.setLevel("core.By", Level.INFO);
+
+		int trials = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int maxAppearMillis = args.length > 1 ? Integer.parseInt(args[1]) : 1500;
+		long latencyNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 2 ? Long.parseLong(args[2]) : 50);
+
+		SimulatedBackend backend = new SimulatedBackend(6, 3, latencyNanos);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+		try {
+			for (int appear : new int[] { 40, maxAppearMillis }) {
+				System.out.println(String.format("elements=%d trials=%d appear=0-%dms latency=%dus",
+						backend.getElementCount(), trials, appear, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+				run(driver, backend, scheduler, new FixedRetryPolicy(Integer.MAX_VALUE, 100), trials, appear);
+				run(driver, backend, scheduler, new BackoffRetryPolicy(), trials, appear);
+				run(driver, backend, scheduler, new BackoffRetryPolicy(10, 250, 2.0, 0.2, Integer.MAX_VALUE), trials,
+						appear);
+			}
+		} finally {
+			scheduler.shutdownNow();
+		}
+	}
+
+	private static void run(Driver driver, SimulatedBackend backend, ScheduledExecutorService scheduler,
+			RetryPolicy policy, int trials, int maxAppearMillis) throws Exception {
+		driver.setRetryPolicy(policy);
+		Random random = new Random(11);
+		SimulatedElement window = backend.getElement("0");
+		long totalLateness = 0;
+		long maxLateness = 0;
+		long attempts = 0;
+		long waited = 0;
+		long calls = 0;
+
+		for (int trial = 0; trial < trials; trial++) {
+			String name = "Delayed OK " + trial;
+			long appearMillis = random.nextInt(maxAppearMillis);
+			SimulatedElement[] added = new SimulatedElement[1];
+			long start = System.nanoTime();
+			ScheduledFuture<?> appear = scheduler.schedule(
+					() -> added[0] = backend.addElement(window, ControlType.Button, name), appearMillis,
+					TimeUnit.MILLISECONDS);
+
+			backend.resetCallCounts();
+			Driver.startSearchDeadline(maxAppearMillis + 2000L);
+			try {
+				driver.findElement(LocatorType.NAME, ControlType.Button, name);
+			} catch (ElementNotFoundException e) {
+				System.out.println("  " + name + " not found: " + e.getMessage());
+			} finally {
+				Driver.clearSearchDeadline();
+			}
+			long foundMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			appear.get();
+			backend.removeElement(added[0]);
+
+			LookupReport report = By.getLastLookup();
+			long lateness = Math.max(0, foundMillis - appearMillis);
+			totalLateness += lateness;
+			maxLateness = Math.max(maxLateness, lateness);
+			attempts += report.getAttempts();
+			waited += report.getWaitedMillis();
+			calls += backend.getTotalCalls();
+		}
+
+		System.out.println(String.format("%-80s: found %6.1f ms late (max %4d), %5.1f attempts, %5.1f calls, slept %6.1f ms",
+				policy, (double) totalLateness / trials, maxLateness, (double) attempts / trials,
+				(double) calls / trials, (double) waited / trials));
+	}
+}
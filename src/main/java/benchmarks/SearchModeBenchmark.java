@@ -0,0 +1,126 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import actions.LocatorType;
+import core.Driver;
+import core.SearchMode;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ElementNotFoundException;
+import mmarquee.automation.PropertyID;
+
+/**
+ * Benchmark for the {@link SearchMode search modes} of the {@link core.By}
+ * class on a wide {@link SimulatedBackend} desktop, whose searches cost a call
+ * latency plus a latency for every element walked. Lookups by name of shallow
+ * elements, like toolbar buttons right below a window, and of the deepest
+ * elements are run from the desktop root with a full SUBTREE search and with
+ * the depth-limited and nearest-first walks. It reports the time, backend
+ * calls and elements walked per lookup, and the lookups that missed because
+ * the target was below the search depth.
+ *
+ * Usage:
+ * {@code SearchModeBenchmark [fanOut] [depth] [latencyMicros] [visitLatencyNanos] [lookups]}
+ */
+public class SearchModeBenchmark {
+
+	public static void main(String[] args) throws AutomationException {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+
+		int fanOut = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		long latencyNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 2 ? Long.parseLong(args[2]) : 50);
+		long visitLatencyNanos = args.length > 3 ? Long.parseLong(args[3]) : 200;
+		int lookups = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+
+		SimulatedBackend backend = new SimulatedBackend(fanOut, depth, 0);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+		// Measure the searches themselves, not the element cache.
+		driver.getElementCache().setEnabled(false);
+
+		List<SimulatedElement> shallow = new ArrayList<>();
+		List<SimulatedElement> deep = new ArrayList<>();
+		for (SimulatedElement element : backend.getElements()) {
+			if (element.getDepth() == 2) {
+				shallow.add(element);
+			} else if (element.getDepth() == depth) {
+				deep.add(element);
+			}
+		}
+
+		System.out.println(String.format("elements=%d fanOut=%d depth=%d latency=%dus visitLatency=%dns lookups=%d",
+				backend.getElementCount(), fanOut, depth, TimeUnit.NANOSECONDS.toMicros(latencyNanos),
+				visitLatencyNanos, lookups));
+
+		String[] names = { "shallow", "deep" };
+		List<List<SimulatedElement>> workloads = new ArrayList<>();
+		workloads.add(shallow);
+		workloads.add(deep);
+		for (int workload = 0; workload < workloads.size(); workload++) {
+			System.out.println(names[workload] + " targets (depth " + (workload == 0 ? 2 : depth) + "):");
+			run(driver, backend, SearchMode.SUBTREE, depth, workloads.get(workload), lookups, latencyNanos,
+					visitLatencyNanos);
+			run(driver, backend, SearchMode.DEPTH_LIMITED, 2, workloads.get(workload), lookups, latencyNanos,
+					visitLatencyNanos);
+			run(driver, backend, SearchMode.DEPTH_LIMITED, depth, workloads.get(workload), lookups, latencyNanos,
+					visitLatencyNanos);
+			run(driver, backend, SearchMode.BREADTH_FIRST, 2, workloads.get(workload), lookups, latencyNanos,
+					visitLatencyNanos);
+			run(driver, backend, SearchMode.BREADTH_FIRST, depth, workloads.get(workload), lookups, latencyNanos,
+					visitLatencyNanos);
+		}
+		driver.setSearchMode(SearchMode.SUBTREE, depth);
+	}
+
+	private static void run(Driver driver, SimulatedBackend backend, SearchMode mode, int searchDepth,
+			List<SimulatedElement> targets, int lookups, long latencyNanos, long visitLatencyNanos)
+			throws AutomationException {
+		driver.setSearchMode(mode, searchDepth);
+
+		// Warm up without latency.
+		backend.setCallLatencyNanos(0);
+		backend.setVisitLatencyNanos(0);
+		Random random = new Random(3);
+		for (int i = 0; i < Math.min(50, lookups); i++) {
+			lookup(driver, targets.get(random.nextInt(targets.size())));
+		}
+
+		backend.setCallLatencyNanos(latencyNanos);
+		backend.setVisitLatencyNanos(visitLatencyNanos);
+		backend.resetCallCounts();
+		random = new Random(5);
+		int missed = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < lookups; i++) {
+			if (!lookup(driver, targets.get(random.nextInt(targets.size())))) {
+				missed++;
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.println(String.format("  %-13s depth %d: %8.3f ms/lookup, %7.1f calls/lookup, %8.1f elements/lookup, %3d missed",
+				mode, searchDepth, elapsed / 1e6 / lookups, (double) backend.getTotalCalls() / lookups,
+				(double) backend.getVisitedElements() / lookups, missed));
+	}
+
+	private static boolean lookup(Driver driver, SimulatedElement target) throws AutomationException {
+		String name = (String) target.readProperty(PropertyID.Name);
+		try {
+			if (driver.findElement(LocatorType.NAME, target.getSimulatedControlType(), name) != target) {
+				throw new IllegalStateException("Did not find " + name);
+			}
+			return true;
+		} catch (ElementNotFoundException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import actions.LocatorType;
+import core.Driver;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.PropertyID;
+
+/**
+ * Benchmark for the search scopes of the {@link Driver}. Lookups by name of
+ * elements in one window of a large {@link SimulatedBackend} desktop, whose
+ * searches cost more the more elements they walk, are run from the desktop
+ * root, scoped to the window, scoped to the window with a share of lookups
+ * outside it that fall back to the root, and scoped to a pane of the window.
+ * It reports the time and elements walked per lookup, the
+ * {@link Driver#scopeStatistics} and the element cache of the session, which
+ * is on, so that every lookup also checks that a change of scope is not
+ * answered from the cache of the previous one.
+ *
+ * Usage:
+ * {@code SearchScopeBenchmark [fanOut] [depth] [visitLatencyNanos] [lookups] [outsidePercent]}
+ */
+public class SearchScopeBenchmark {
+
+	private enum Mode {
+		ROOT, WINDOW, WINDOW_WITH_FALLBACK, PANE
+	}
+
+	public static void main(String[] args) throws AutomationException {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+
+		int fanOut = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		long visitLatencyNanos = args.length > 2 ? Long.parseLong(args[2]) : 200;
+		int lookups = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+		int outsidePercent = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+		SimulatedBackend backend = new SimulatedBackend(fanOut, depth, 0);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+
+		// The keywords act on the last window; a root search walks the others
+		// first.
+		String windowPath = String.valueOf(fanOut - 1);
+		SimulatedElement window = backend.getElement(windowPath);
+		SimulatedElement pane = backend.getElement(windowPath + ".0");
+		List<SimulatedElement> inWindow = new ArrayList<>();
+		List<SimulatedElement> inPane = new ArrayList<>();
+		List<SimulatedElement> outside = new ArrayList<>();
+		for (SimulatedElement element : backend.getElements()) {
+			String path = element.getPath();
+			if (element.getDepth() < 2) {
+				continue;
+			} else if (path.startsWith(pane.getPath() + ".")) {
+				inPane.add(element);
+				inWindow.add(element);
+			} else if (path.startsWith(windowPath + ".")) {
+				inWindow.add(element);
+			} else {
+				outside.add(element);
+			}
+		}
+
+		System.out.println(String.format("elements=%d fanOut=%d depth=%d visitLatency=%dns lookups=%d outside=%d%%",
+				backend.getElementCount(), fanOut, depth, visitLatencyNanos, lookups, outsidePercent));
+
+		for (Mode mode : Mode.values()) {
+			driver.clearSearchScopes();
+			if (mode != Mode.ROOT) {
+				driver.setSearchScope(window);
+			}
+			if (mode == Mode.PANE) {
+				driver.pushSearchScope(pane);
+			}
+			List<SimulatedElement> targets = mode == Mode.PANE ? inPane : inWindow;
+			int outsideShare = mode == Mode.WINDOW_WITH_FALLBACK ? outsidePercent : 0;
+
+			// Warm up without latency.
+			backend.setVisitLatencyNanos(0);
+			Random random = new Random(3);
+			for (int i = 0; i < Math.min(50, lookups); i++) {
+				lookup(driver, pick(random, targets, outside, outsideShare));
+			}
+
+			backend.setVisitLatencyNanos(visitLatencyNanos);
+			backend.resetCallCounts();
+			Driver.scopeStatistics.reset();
+			random = new Random(5);
+			long start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) {
+				lookup(driver, pick(random, targets, outside, outsideShare));
+			}
+			long elapsed = System.nanoTime() - start;
+			System.out.println(String.format("%-20s: %8.3f ms/lookup, %8.1f elements/lookup, %4.1f calls/lookup",
+					mode, elapsed / 1e6 / lookups, (double) backend.getVisitedElements() / lookups,
+					(double) backend.getTotalCalls() / lookups));
+			System.out.println("  " + Driver.scopeStatistics);
+			System.out.println("  " + driver.getElementCache());
+			driver.getElementCache().resetStatistics();
+		}
+		driver.clearSearchScopes();
+	}
+
+	private static SimulatedElement pick(Random random, List<SimulatedElement> targets,
+			List<SimulatedElement> outside, int outsidePercent) {
+		if (random.nextInt(100) < outsidePercent) {
+			return outside.get(random.nextInt(outside.size()));
+		}
+		return targets.get(random.nextInt(targets.size()));
+	}
+
+	private static void lookup(Driver driver, SimulatedElement target) throws AutomationException {
+		String name = (String) target.readProperty(PropertyID.Name);
+		if (driver.findElement(LocatorType.NAME, target.getSimulatedControlType(), name) != target) {
+			throw new IllegalStateException("Did not find " + name);
+		}
+	}
+}
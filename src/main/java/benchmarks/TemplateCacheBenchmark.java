@@ -0,0 +1,110 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import core.TemplateCache;
+import core.TemplateCache.Template;
+
+/**
+ * Benchmark for the {@link TemplateCache}. A folder of generated PNG
+ * templates, the size of button and label captures, is looked up by name the
+ * way the polls of the image waits look them up: decoding the file on every
+ * lookup, as the image searches did, and from the cache warmed at startup. A
+ * round with every file touched times the reloads of changed templates.
+ *
+ * Usage: {@code TemplateCacheBenchmark [templates] [lookups]}
+ */
+public class TemplateCacheBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+		int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		File folder = Files.createTempDirectory("templates").toFile();
+		List<String> paths = new ArrayList<>();
+		Random random = new Random(42);
+		for (int i = 0; i < count; i++) {
+			File file = new File(folder, "template" + i + ".PNG");
+			ImageIO.write(createTemplate(random), "png", file);
+			paths.add(file.getAbsolutePath());
+		}
+		System.out.println(String.format("templates=%d lookups=%d", count, lookups));
+
+		long start = System.nanoTime();
+		long pixels = 0;
+		for (int i = 0; i < lookups; i++) {
+			BufferedImage image = ImageIO.read(new File(paths.get(i % count)));
+			pixels += image.getWidth() * image.getHeight();
+		}
+		report("decode every lookup", start, lookups, pixels);
+
+		TemplateCache cache = new TemplateCache(folder.getAbsolutePath());
+		start = System.nanoTime();
+		cache.warm(paths);
+		System.out.println(String.format("%-20s: %9.3f ms", "warm", (System.nanoTime() - start) / 1e6));
+
+		start = System.nanoTime();
+		pixels = 0;
+		for (int i = 0; i < lookups; i++) {
+			Template template = cache.get("template" + (i % count));
+			pixels += template.getImage().getWidth() * template.getImage().getHeight();
+		}
+		report("cache", start, lookups, pixels);
+
+		for (String path : paths) {
+			File file = new File(path);
+			file.setLastModified(file.lastModified() + 2000);
+		}
+		start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			cache.get("template" + i);
+		}
+		report("cache, all changed", start, count, 0);
+		System.out.println("  " + cache);
+
+		for (String path : paths) {
+			new File(path).delete();
+		}
+		folder.delete();
+	}
+
+	private static void report(String label, long start, int lookups, long pixels) {
+		System.out.println(String.format("%-20s: %9.3f us/lookup (%d pixels)", label,
+				(System.nanoTime() - start) / 1e3 / lookups, pixels));
+	}
+
+	/**
+	 * Creates a template with a gradient, a frame and some noise, so that it
+	 * compresses like a capture.
+	 */
+	private static BufferedImage createTemplate(Random random) {
+		int width = 80 + random.nextInt(120);
+		int height = 24 + random.nextInt(40);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setPaint(new Color(random.nextInt(0xFFFFFF)));
+		graphics.fillRect(0, 0, width, height);
+		graphics.setPaint(Color.DARK_GRAY);
+		graphics.drawRect(0, 0, width - 1, height - 1);
+		graphics.dispose();
+		for (int i = 0; i < width * height / 8; i++) {
+			image.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt(0xFFFFFF));
+		}
+		return image;
+	}
+}
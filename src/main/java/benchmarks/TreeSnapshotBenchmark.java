@@ -0,0 +1,106 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import actions.ElementFinder;
+import core.Driver;
+import core.TreeSnapshot;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.PropertyID;
+
+/**
+ * Benchmark for the {@link TreeSnapshot}. The assertions of a sheet, that
+ * elements of a window of a {@link SimulatedBackend} desktop are displayed and
+ * that missing ones do not exist, are checked live and from a snapshot of the
+ * window taken first, counting the time and the calls into the application.
+ * A live search pays the visit latency for every element it walks, like a
+ * FindFirst over the subtree. The snapshot is then saved, loaded and replayed
+ * as a simulated desktop.
+ *
+ * Usage: {@code TreeSnapshotBenchmark [asserts] [callLatencyMicros] [visitLatencyMicros]}
+ */
+public class TreeSnapshotBenchmark {
+
+	public static void main(String[] args) throws AutomationException, IOException {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+		Configurator.setLevel("actions", Level.FATAL);
+
+		int asserts = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		long latencyMicros = args.length > 1 ? Long.parseLong(args[1]) : 50;
+		long visitMicros = args.length > 2 ? Long.parseLong(args[2]) : 2;
+
+		SimulatedBackend backend = new SimulatedBackend(6, 4, latencyMicros * 1000);
+		backend.setVisitLatencyNanos(visitMicros * 1000);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+		SimulatedElement window = backend.getElement("0");
+		driver.setSearchContext(window);
+		ElementFinder finder = new ElementFinder(driver);
+		List<String[]> present = new ArrayList<>();
+		for (SimulatedElement element : backend.getElements()) {
+			if (element.getPath().startsWith("0.") && present.size() < asserts) {
+				present.add(new String[] { "name", element.getSimulatedControlType().name(),
+						(String) element.readProperty(PropertyID.Name) });
+			}
+		}
+		List<String[]> missing = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			missing.add(new String[] { "name", "Button", "Missing " + i });
+		}
+		System.out.println(String.format("elements=%d asserts=%d+%d latency=%d us visit=%d us",
+				backend.getElementCount(), present.size(), missing.size(), latencyMicros, visitMicros));
+
+		driver.getElementCache().clear();
+		backend.resetCallCounts();
+		long start = System.nanoTime();
+		int passed = check(finder, present, missing);
+		long liveNanos = System.nanoTime() - start;
+		long liveCalls = backend.getTotalCalls();
+		System.out.println(String.format("live     : %9.3f ms, %6d calls, %d passed", liveNanos / 1e6, liveCalls,
+				passed));
+
+		driver.getElementCache().clear();
+		backend.resetCallCounts();
+		start = System.nanoTime();
+		TreeSnapshot snapshot = driver.takeSnapshot();
+		long captureNanos = System.nanoTime() - start;
+		long captureCalls = backend.getTotalCalls();
+		passed = check(finder, present, missing);
+		long snapshotNanos = System.nanoTime() - start;
+		System.out.println(String.format("snapshot : %9.3f ms, %6d calls, %d passed (capture %.3f ms, %d calls)",
+				snapshotNanos / 1e6, backend.getTotalCalls(), passed, captureNanos / 1e6, captureCalls));
+		System.out.println(Driver.snapshotStatistics);
+
+		File file = File.createTempFile("tree", ".snapshot");
+		file.deleteOnExit();
+		start = System.nanoTime();
+		snapshot.save(file);
+		long saveNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+		TreeSnapshot loaded = TreeSnapshot.load(file);
+		long loadNanos = System.nanoTime() - start;
+		SimulatedBackend replayed = new SimulatedBackend(loaded, 0);
+		System.out.println(String.format("saved %d bytes in %.3f ms, loaded %s in %.3f ms, replayed %d elements",
+				file.length(), saveNanos / 1e6, loaded, loadNanos / 1e6, replayed.getElementCount()));
+	}
+
+	private static int check(ElementFinder finder, List<String[]> present, List<String[]> missing) {
+		int passed = 0;
+		for (String[] step : present) {
+			passed += finder.display(step[0], step[1], step[2], 5) ? 1 : 0;
+		}
+		for (String[] step : missing) {
+			passed += finder.vanish(step[0], step[1], step[2], 5) ? 1 : 0;
+		}
+		return passed;
+	}
+}
@@ -0,0 +1,200 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import actions.ElementFinder;
+import actions.LocatorType;
+import core.Controls;
+import core.Driver;
+import core.WaitEngine;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.Element;
+
+/**
+ * Benchmark for the waits of the keywords. A button appears in the
+ * {@link SimulatedBackend} desktop after a random delay while
+ * {@link ElementFinder#waitToEnable} waits for it. Next to the wait, a worker
+ * thread stands in for the application under test and times a fixed amount of
+ * work, like the Timer measurements of a sheet. The old busy-spin loop is
+ * compared with the {@link WaitEngine}, polling only, woken by the events of
+ * the simulated desktop, and waiting asynchronously: CPU time of the waiting
+ * thread, how late the button was noticed and the mean and spread of the worker
+ * timings.
+ *
+ * Usage: {@code WaitEngineBenchmark [trials] [maxAppearMillis] [latencyMicros]}
+ */
+public class WaitEngineBenchmark {
+
+	private enum Mode {
+		BUSY_SPIN, POLLING, EVENTS, ASYNC_EVENTS
+	}
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+
+		int trials = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int maxAppearMillis = args.length > 1 ? Integer.parseInt(args[1]) : 1500;
+		long latencyNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 2 ? Long.parseLong(args[2]) : 50);
+
+		SimulatedBackend backend = new SimulatedBackend(6, 3, latencyNanos);
+		Driver.setBackend(backend);
+		Driver driver = new Driver();
+		ElementFinder finder = new ElementFinder(driver);
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		long workUnits = calibrateWork(20);
+
+		System.out.println(String.format("elements=%d trials=%d appear=0-%dms latency=%dus cpus=%d",
+				backend.getElementCount(), trials, maxAppearMillis, TimeUnit.NANOSECONDS.toMicros(latencyNanos),
+				Runtime.getRuntime().availableProcessors()));
+		try {
+			backend.setEventsEnabled(false);
+			run(Mode.BUSY_SPIN, finder, driver, backend, scheduler, trials, maxAppearMillis, workUnits);
+			run(Mode.POLLING, finder, driver, backend, scheduler, trials, maxAppearMillis, workUnits);
+			backend.setEventsEnabled(true);
+			run(Mode.EVENTS, finder, driver, backend, scheduler, trials, maxAppearMillis, workUnits);
+			run(Mode.ASYNC_EVENTS, finder, driver, backend, scheduler, trials, maxAppearMillis, workUnits);
+		} finally {
+			scheduler.shutdownNow();
+		}
+		System.out.println(WaitEngine.getStatistics());
+	}
+
+	private static void run(Mode mode, ElementFinder finder, Driver driver,
+			SimulatedBackend backend, ScheduledExecutorService scheduler, int trials, int maxAppearMillis,
+			long workUnits) throws Exception {
+		Random random = new Random(5);
+		SimulatedElement window = backend.getElement("0");
+		long totalCpu = 0;
+		long totalLateness = 0;
+		long maxLateness = 0;
+		long calls = 0;
+		double workSum = 0;
+		double workSquares = 0;
+		int workSamples = 0;
+
+		for (int trial = 0; trial < trials; trial++) {
+			String name = "Later OK " + trial;
+			long appearMillis = random.nextInt(maxAppearMillis);
+			SimulatedElement[] added = new SimulatedElement[1];
+			long[] appearedAt = new long[1];
+			ScheduledFuture<?> appear = scheduler.schedule(() -> {
+				appearedAt[0] = System.nanoTime();
+				added[0] = backend.addElement(window, ControlType.Button, name);
+			}, appearMillis, TimeUnit.MILLISECONDS);
+
+			// The application under test keeps working while the sheet waits.
+			long[] workMicros = new long[1024];
+			int[] workCount = new int[1];
+			Thread worker = new Thread(() -> {
+				while (!Thread.currentThread().isInterrupted() && workCount[0] < workMicros.length) {
+					long workStart = System.nanoTime();
+					work(workUnits);
+					workMicros[workCount[0]++] = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - workStart);
+				}
+			});
+			worker.start();
+
+			backend.resetCallCounts();
+			long cpuStart = THREADS.getCurrentThreadCpuTime();
+			boolean enabled;
+			switch (mode) {
+			case BUSY_SPIN:
+				enabled = busySpinWaitToEnable(driver, name, 3);
+				break;
+			case ASYNC_EVENTS:
+				enabled = finder.waitToEnableAsync("name", "Button", name, 3).get();
+				break;
+			default:
+				enabled = finder.waitToEnable("name", "Button", name, 3);
+			}
+			long foundAt = System.nanoTime();
+			totalCpu += THREADS.getCurrentThreadCpuTime() - cpuStart;
+			calls += backend.getTotalCalls();
+
+			worker.interrupt();
+			worker.join();
+			appear.get();
+			backend.removeElement(added[0]);
+			if (!enabled) {
+				System.out.println("  " + name + " not enabled");
+			}
+
+			long lateness = Math.max(0, TimeUnit.NANOSECONDS.toMillis(foundAt - appearedAt[0]));
+			totalLateness += lateness;
+			maxLateness = Math.max(maxLateness, lateness);
+			for (int i = 0; i < workCount[0]; i++) {
+				double millis = workMicros[i] / 1000.0;
+				workSum += millis;
+				workSquares += millis * millis;
+				workSamples++;
+			}
+		}
+
+		double workMean = workSum / Math.max(1, workSamples);
+		double workStdDev = Math.sqrt(Math.max(0, workSquares / Math.max(1, workSamples) - workMean * workMean));
+		System.out.println(String.format(
+				"%-15s: wait CPU %7.1f ms, found %6.1f ms late (max %4d), %8.1f calls, app work %6.1f ms +- %5.1f",
+				mode, TimeUnit.NANOSECONDS.toMicros(totalCpu) / 1000.0 / trials, (double) totalLateness / trials,
+				maxLateness, (double) calls / trials, workMean, workStdDev));
+	}
+
+	/**
+	 * The waitToEnable loop as it was before the WaitEngine: search again at once
+	 * until the element is enabled or the duration is over.
+	 */
+	private static boolean busySpinWaitToEnable(Driver driver, String name, long duration) {
+		long durationMillis = 1000 * duration;
+		long start = System.currentTimeMillis();
+
+		while (true) {
+			try {
+				Element element = driver.findElement(LocatorType.NAME, Controls.getControl("Button"), name);
+				if (element != null && element.isEnabled()) {
+					return true;
+				}
+			} catch (NullPointerException | AutomationException e) {
+				// Search again.
+			}
+			if (System.currentTimeMillis() - start > durationMillis) {
+				return false;
+			}
+		}
+	}
+
+	private static long calibrateWork(long targetMillis) {
+		long units = 1_000_000;
+		// Let the JIT compile the loop before timing it.
+		for (int i = 0; i < 20; i++) {
+			work(units);
+		}
+		long start = System.nanoTime();
+		work(units);
+		long elapsed = Math.max(1, System.nanoTime() - start);
+		return units * TimeUnit.MILLISECONDS.toNanos(targetMillis) / elapsed;
+	}
+
+	private static volatile double sink;
+
+	private static void work(long units) {
+		double value = 1;
+		for (long i = 0; i < units; i++) {
+			value = value * 1.0000001 + 1e-9;
+		}
+		sink = value;
+	}
+}
@@ -0,0 +1,114 @@
+package benchmarks;
+
+import java.util.List;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import core.Driver;
+import core.SearchCondition;
+import core.WindowRegistry;
+import core.backend.AutomationBackend;
+import core.backend.SimulatedBackend;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+import mmarquee.uiautomation.TreeScope;
+
+/**
+ * Benchmark for the {@link WindowRegistry}. The windows of
+ * {@link SimulatedBackend} desktops with more and more top-level windows are
+ * looked up by title, the last window first, as the waits of a sheet poll for
+ * them: with a search of the top-level windows and their first children on
+ * every poll, as the Driver did, and with the registry, with and without the
+ * events of the backend. A lookup by regular expression is timed as well.
+ *
+ * Usage: {@code WindowRegistryBenchmark [lookups] [callLatencyMicros]}
+ */
+public class WindowRegistryBenchmark {
+
+	private static final int[] WINDOWS = { 5, 20, 50 };
+
+	public static void main(String[] args) throws AutomationException {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+
+		int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		long latencyMicros = args.length > 1 ? Long.parseLong(args[1]) : 50;
+		System.out.println(String.format("lookups=%d latency=%d us", lookups, latencyMicros));
+
+		for (int windows : WINDOWS) {
+			SimulatedBackend backend = new SimulatedBackend(windows, 2, latencyMicros * 1000);
+			String[] titles = new String[windows];
+			for (int i = 0; i < windows; i++) {
+				titles[i] = "Window " + (windows - 1 - i);
+			}
+
+			backend.resetCallCounts();
+			long start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) {
+				if (search(backend, titles[i % windows]) == null) {
+					throw new IllegalStateException(titles[i % windows] + " not found");
+				}
+			}
+			report(windows, "search every poll", start, backend.getTotalCalls(), lookups);
+
+			for (boolean events : new boolean[] { true, false }) {
+				backend.setEventsEnabled(events);
+				Driver.setBackend(backend);
+				WindowRegistry registry = Driver.getWindowRegistry();
+				backend.resetCallCounts();
+				start = System.nanoTime();
+				for (int i = 0; i < lookups; i++) {
+					if (registry.find(ControlType.Window, titles[i % windows]) == null) {
+						throw new IllegalStateException(titles[i % windows] + " not found");
+					}
+				}
+				report(windows, events ? "registry, events" : "registry, polled", start, backend.getTotalCalls(),
+						lookups);
+			}
+
+			backend.setEventsEnabled(true);
+			Driver.setBackend(backend);
+			WindowRegistry registry = Driver.getWindowRegistry();
+			backend.resetCallCounts();
+			start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) {
+				if (registry.find(ControlType.Window, "regex:^Window " + (i % windows) + "$") == null) {
+					throw new IllegalStateException("Window " + (i % windows) + " not found");
+				}
+			}
+			report(windows, "registry, regex", start, backend.getTotalCalls(), lookups);
+			System.out.println("  " + registry);
+		}
+	}
+
+	private static void report(int windows, String label, long start, long calls, int lookups) {
+		System.out.println(String.format("windows=%2d %-18s: %9.3f us/lookup, %6.2f calls/lookup", windows, label,
+				(System.nanoTime() - start) / 1e3 / lookups, (double) calls / lookups));
+	}
+
+	/**
+	 * The search of the top-level windows and their first children the Driver
+	 * made on every poll, without its limit of five windows.
+	 */
+	private static Element search(AutomationBackend backend, String title) throws AutomationException {
+		List<Element> elements = backend.findAll(backend.getRootElement(), TreeScope.CHILDREN,
+				SearchCondition.ofControlType(ControlType.Window));
+		for (Element element : elements) {
+			Object name = backend.getPropertyValue(element, PropertyID.Name);
+			if (name != null && name.toString().contains(title)) {
+				return element;
+			}
+			List<Element> children = backend.getChildren(element);
+			if (!children.isEmpty()) {
+				Object childName = backend.getPropertyValue(children.get(0), PropertyID.Name);
+				if (childName != null && childName.toString().contains(title)) {
+					return children.get(0);
+				}
+			}
+		}
+		return null;
+	}
+}
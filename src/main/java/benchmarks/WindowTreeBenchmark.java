@@ -0,0 +1,127 @@
+package benchmarks;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import core.TreeSnapshot;
+import core.WindowTreeModel;
+import core.WindowTreeModel.Refresh;
+import core.backend.SimulatedBackend;
+import core.backend.SimulatedElement;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+
+/**
+ * Benchmark for the {@link WindowTreeModel}. A window of a
+ * {@link SimulatedBackend} desktop is changed the way a click changes it, a
+ * renamed element, a removed element, an added element and, with the events
+ * of the backend off, a removed element and a moved element, and after every
+ * change the model is refreshed and the window captured again in full,
+ * counting the time and the calls into the application. Every refreshed model
+ * is checked against the full capture.
+ *
+ * Usage: {@code WindowTreeBenchmark [fanOut] [depth] [rounds] [callLatencyMicros]}
+ */
+public class WindowTreeBenchmark {
+
+	private static final String[] CHANGES = { "rename", "remove", "add", "remove, no events",
+			"move, no events" };
+
+	public static void main(String[] args) throws AutomationException {
+		// Keep the per-lookup debug output out of the results.
+		Configurator.setLevel("core", Level.INFO);
+
+		int fanOut = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		long latencyMicros = args.length > 3 ? Long.parseLong(args[3]) : 20;
+
+		SimulatedBackend backend = new SimulatedBackend(fanOut, depth, latencyMicros * 1000);
+		SimulatedElement window = backend.getElement("0");
+		WindowTreeModel model = new WindowTreeModel(backend, window);
+		backend.addEventListener(model);
+		System.out.println(String.format("elements=%d window=%d rounds=%d latency=%d us", backend.getElementCount(),
+				model.size(), rounds, latencyMicros));
+
+		Random random = new Random(42);
+		for (int change = 0; change < CHANGES.length; change++) {
+			long refreshNanos = 0;
+			long refreshCalls = 0;
+			long captureNanos = 0;
+			long captureCalls = 0;
+			long read = 0;
+			long reused = 0;
+			for (int round = 0; round < rounds; round++) {
+				backend.setEventsEnabled(change < 3);
+				change(backend, window, change, random);
+				if (change >= 3) {
+					// Without events the stale model is found by a lookup.
+					model.invalidate();
+				}
+				backend.setEventsEnabled(true);
+
+				backend.resetCallCounts();
+				long start = System.nanoTime();
+				Refresh refresh = model.refresh();
+				refreshNanos += System.nanoTime() - start;
+				refreshCalls += backend.getTotalCalls();
+				read += refresh.getRead();
+				reused += refresh.getReused();
+
+				backend.resetCallCounts();
+				start = System.nanoTime();
+				TreeSnapshot captured = TreeSnapshot.capture(backend, window);
+				captureNanos += System.nanoTime() - start;
+				captureCalls += backend.getTotalCalls();
+				check(model.toSnapshot(), captured);
+			}
+			System.out.println(String.format(
+					"%-17s: refresh %8.3f ms, %5d calls, read %5d, reused %5d; full capture %8.3f ms, %5d calls",
+					CHANGES[change], refreshNanos / 1e6 / rounds, refreshCalls / rounds, read / rounds,
+					reused / rounds, captureNanos / 1e6 / rounds, captureCalls / rounds));
+		}
+	}
+
+	private static void change(SimulatedBackend backend, SimulatedElement window, int change, Random random) {
+		List<SimulatedElement> elements = new ArrayList<>();
+		for (SimulatedElement element : backend.getElements()) {
+			if (element.getPath().startsWith(window.getPath() + ".") && !element.getChildElements().isEmpty()) {
+				elements.add(element);
+			}
+		}
+		SimulatedElement element = elements.get(random.nextInt(elements.size()));
+		switch (change) {
+		case 0:
+			element.setName(element.getPath() + " renamed");
+			break;
+		case 2:
+			backend.addElement(element, ControlType.Button, "Added " + element.getPath());
+			break;
+		case 4:
+			Rectangle bounds = element.getBounds();
+			element.setBounds(new Rectangle(bounds.x + 5, bounds.y, bounds.width, bounds.height));
+			break;
+		default:
+			backend.removeElement(element);
+			break;
+		}
+	}
+
+	private static void check(TreeSnapshot refreshed, TreeSnapshot captured) {
+		if (refreshed.size() != captured.size()) {
+			throw new IllegalStateException("Refreshed " + refreshed + ", captured " + captured);
+		}
+		for (int node = 0; node < captured.size(); node++) {
+			if (refreshed.getElement(node) != captured.getElement(node)
+					|| !captured.getName(node).equals(refreshed.getName(node))
+					|| !captured.getBounds(node).equals(refreshed.getBounds(node))) {
+				throw new IllegalStateException("Node " + node + " differs: " + refreshed.getName(node));
+			}
+		}
+	}
+}
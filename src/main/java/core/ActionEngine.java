@@ -0,0 +1,139 @@
+package core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import core.backend.AutomationBackend;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+import mmarquee.automation.PatternID;
+import utils.Settings;
+
+/**
+ * The ActionEngine class runs the actions of the keywords on UI elements. An
+ * action goes through its control pattern (Invoke, Toggle, Value,
+ * ExpandCollapse or SelectionItem) when the PATTERN_ACTIONS setting is on and
+ * the element supports the pattern: one call into the application, with no
+ * mouse moves, key delays or screen geometry. Otherwise, or if the pattern call
+ * fails, it falls back to synthesizing mouse and keyboard input as before.
+ *
+ * Every action is reported: the path it took, why it fell back and how long it
+ * took. The report of the last action of a thread is available from
+ * {@link #getLastAction()}, and all reports are summed up in
+ * {@link #getStatistics()}.
+ */
+public final class ActionEngine {
+
+	private static final Logger log = LogManager.getLogger(ActionEngine.class);
+
+	/**
+	 * An action through a control pattern.
+	 */
+	@FunctionalInterface
+	public interface PatternAction {
+
+		/**
+		 * Runs the action.
+		 *
+		 * @param backend The backend to call.
+		 * @param element The element to act on.
+		 * @throws AutomationException If the pattern call failed.
+		 */
+		void run(AutomationBackend backend, Element element) throws AutomationException;
+	}
+
+	private static final ThreadLocal<ActionReport> lastAction = new ThreadLocal<>();
+	private static final ActionStatistics statistics = new ActionStatistics();
+
+	private ActionEngine() {
+	}
+
+	/**
+	 * Runs an action on an element through a control pattern, or else through
+	 * mouse and keyboard input.
+	 *
+	 * @param action        The name of the action, for the report.
+	 * @param target        The element to act on.
+	 * @param pattern       The control pattern of the action.
+	 * @param patternAction The action through the pattern.
+	 * @param input         The action through mouse and keyboard input.
+	 * @return The report of the action.
+	 */
+	public static ActionReport perform(String action, UIElement target, PatternID pattern,
+			PatternAction patternAction, Runnable input) {
+		long start = System.nanoTime();
+		String fallbackReason = getUnavailableReason(target, pattern);
+		if (fallbackReason == null) {
+			try {
+				patternAction.run(Driver.getBackend(), target.getElement());
+			} catch (AutomationException e) {
+				log.warn(action + " through the " + pattern + " pattern failed, using input.", e);
+				fallbackReason = pattern + " failed: " + e.getMessage();
+			}
+		}
+		if (fallbackReason != null) {
+			input.run();
+		}
+		ActionReport report = new ActionReport(action, fallbackReason == null ? pattern : null, fallbackReason,
+				System.nanoTime() - start);
+		lastAction.set(report);
+		statistics.record(report);
+		log.debug(report);
+		return report;
+	}
+
+	/**
+	 * Checks whether an action can go through a control pattern.
+	 *
+	 * @param target  The element to act on.
+	 * @param pattern The control pattern.
+	 * @return Why the pattern cannot be used, or null if it can.
+	 */
+	private static String getUnavailableReason(UIElement target, PatternID pattern) {
+		if (!Settings.PATTERN_ACTIONS) {
+			return "pattern actions off";
+		}
+		ElementProperties properties = target.getProperties();
+		Boolean available = properties == null ? null : properties.isPatternAvailable(pattern);
+		if (available == null) {
+			try {
+				available = Driver.getBackend().isPatternAvailable(target.getElement(), pattern);
+			} catch (AutomationException e) {
+				log.warn("Could not check the " + pattern + " pattern, using input.", e);
+				return pattern + " check failed: " + e.getMessage();
+			}
+		}
+		return available ? null : pattern + " not available";
+	}
+
+	/**
+	 * Get the report of the last action run by the current thread.
+	 *
+	 * @return The ActionReport, or null if the thread ran no action yet.
+	 */
+	public static ActionReport getLastAction() {
+		return lastAction.get();
+	}
+
+	/**
+	 * Get and forget the report of the last action run by the current thread,
+	 * so that it is not taken for the report of a later keyword that ran no
+	 * action through the engine.
+	 *
+	 * @return The ActionReport, or null if the thread ran no action since.
+	 */
+	public static ActionReport takeLastAction() {
+		ActionReport report = lastAction.get();
+		lastAction.remove();
+		return report;
+	}
+
+	/**
+	 * Get the statistics of all actions run.
+	 *
+	 * @return The ActionStatistics.
+	 */
+	public static ActionStatistics getStatistics() {
+		return statistics;
+	}
+}
@@ -0,0 +1,101 @@
+package core;
+
+import mmarquee.automation.PatternID;
+
+/**
+ * The ActionReport class describes one action run by the {@link ActionEngine}:
+ * whether it went through a control pattern or through mouse and keyboard
+ * input, why it fell back to input and how long it took. The report of the
+ * last action of the current thread is available from
+ * {@link ActionEngine#getLastAction()}.
+ */
+public final class ActionReport {
+
+	/**
+	 * The path of an action that synthesized mouse and keyboard input.
+	 */
+	public static final String INPUT = "input";
+
+	private final String action;
+	private final PatternID pattern;
+	private final String fallbackReason;
+	private final long elapsedNanos;
+
+	/**
+	 * Constructs a new ActionReport.
+	 *
+	 * @param action         The name of the action, e.g. "click".
+	 * @param pattern        The control pattern the action went through, or null
+	 *                       if it synthesized input.
+	 * @param fallbackReason Why the action did not go through its pattern, or
+	 *                       null if it did.
+	 * @param elapsedNanos   The time the action took, in nanoseconds.
+	 */
+	public ActionReport(String action, PatternID pattern, String fallbackReason, long elapsedNanos) {
+		this.action = action;
+		this.pattern = pattern;
+		this.fallbackReason = fallbackReason;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Get the name of the action.
+	 *
+	 * @return The action.
+	 */
+	public String getAction() {
+		return action;
+	}
+
+	/**
+	 * Get the control pattern the action went through.
+	 *
+	 * @return The PatternID, or null if the action synthesized input.
+	 */
+	public PatternID getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Get the path the action took: the name of its control pattern, or
+	 * {@link #INPUT}.
+	 *
+	 * @return The path.
+	 */
+	public String getPath() {
+		return pattern == null ? INPUT : pattern.name();
+	}
+
+	/**
+	 * Checks whether the action went through a control pattern.
+	 *
+	 * @return True if no input was synthesized.
+	 */
+	public boolean isPattern() {
+		return pattern != null;
+	}
+
+	/**
+	 * Get why the action synthesized input instead of using its pattern.
+	 *
+	 * @return The reason, or null if the action went through its pattern.
+	 */
+	public String getFallbackReason() {
+		return fallbackReason;
+	}
+
+	/**
+	 * Get the time the action took.
+	 *
+	 * @return The elapsed time in nanoseconds.
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return action + " via " + getPath() + " in " + String.format("%.3f", elapsedNanos / 1e6) + " ms"
+				+ (fallbackReason == null ? "" : " (" + fallbackReason + ")");
+	}
+}
@@ -0,0 +1,87 @@
+package core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ActionStatistics class sums up the {@link ActionReport}s of the actions,
+ * per action and path, so that a sheet shows which actions still synthesize
+ * input and what that costs. The statistics are thread-safe.
+ */
+public class ActionStatistics {
+
+	private static final class Counts {
+		private final AtomicLong actions = new AtomicLong();
+		private final AtomicLong elapsedNanos = new AtomicLong();
+	}
+
+	private final Map<String, Counts> paths = new ConcurrentSkipListMap<>();
+	private final AtomicLong patternActions = new AtomicLong();
+	private final AtomicLong inputActions = new AtomicLong();
+
+	/**
+	 * Adds an action to the statistics.
+	 *
+	 * @param report The report of the action.
+	 */
+	public void record(ActionReport report) {
+		Counts counts = paths.computeIfAbsent(report.getAction() + "/" + report.getPath(), key -> new Counts());
+		counts.actions.incrementAndGet();
+		counts.elapsedNanos.addAndGet(report.getElapsedNanos());
+		(report.isPattern() ? patternActions : inputActions).incrementAndGet();
+	}
+
+	/**
+	 * Get the number of actions that went through a control pattern.
+	 *
+	 * @return The pattern action count.
+	 */
+	public long getPatternActions() {
+		return patternActions.get();
+	}
+
+	/**
+	 * Get the number of actions that synthesized mouse and keyboard input.
+	 *
+	 * @return The input action count.
+	 */
+	public long getInputActions() {
+		return inputActions.get();
+	}
+
+	/**
+	 * Get the average time of an action on a path.
+	 *
+	 * @param action The name of the action.
+	 * @param path   The path, a pattern name or {@link ActionReport#INPUT}.
+	 * @return The average time in nanoseconds, or 0 if there was no such action.
+	 */
+	public long getAverageNanos(String action, String path) {
+		Counts counts = paths.get(action + "/" + path);
+		long actions = counts == null ? 0 : counts.actions.get();
+		return actions == 0 ? 0 : counts.elapsedNanos.get() / actions;
+	}
+
+	/**
+	 * Resets the statistics.
+	 */
+	public void reset() {
+		paths.clear();
+		patternActions.set(0);
+		inputActions.set(0);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("ActionStatistics[pattern=").append(patternActions.get())
+				.append(", input=").append(inputActions.get());
+		for (Map.Entry<String, Counts> entry : paths.entrySet()) {
+			long actions = entry.getValue().actions.get();
+			builder.append(", ").append(entry.getKey()).append('=').append(actions).append("x ")
+					.append(String.format("%.3f", entry.getValue().elapsedNanos.get() / 1e6 / actions))
+					.append(" ms");
+		}
+		return builder.append(']').toString();
+	}
+}
@@ -14,7 +14,6 @@ import org.sikuli.script.App;
 import mmarquee.automation.AutomationException;
 import mmarquee.automation.Element;
 import mmarquee.automation.pattern.PatternNotFoundException;
-import mmarquee.automation.pattern.Window;
 import utils.Timer;
 
 /**
@@ -92,10 +91,7 @@ public class Application {
 			element = driver.getPane(title);
 		}
 		try {
-			Window win = new Window(element);
-			if (win.getCanMaximize()) {
-				win.maximize();
-			}
+			Driver.getBackend().maximize(element);
 		} catch (AutomationException | NullPointerException e) {
 			log.error("Error maximizing window", e);
 		}
@@ -172,8 +168,7 @@ public class Application {
 
 		if (element != null) {
 			try {
-				Window win = new Window(element);
-				win.close();
+				Driver.getBackend().closeWindow(element);
 				log.info("Application with title " + title + " is closed.");
 			} catch (AutomationException | NullPointerException e) {
 				log.error("Error closing application with title: " + title, e);
@@ -0,0 +1,101 @@
+package core;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The BackoffRetryPolicy class retries a failed lookup immediately once and
+ * then waits exponentially longer between the attempts, up to a maximum delay.
+ * Every delay is shortened by a random jitter, so that lookups started together
+ * do not keep polling the application in step, and is capped by the time left
+ * until the deadline of the lookup, so the last attempt is made at the
+ * deadline instead of after it.
+ */
+public class BackoffRetryPolicy implements RetryPolicy {
+
+	/**
+	 * The default delay before the second retry, in milliseconds.
+	 */
+	public static final long DEFAULT_INITIAL_DELAY = 25;
+
+	/**
+	 * The default maximum delay between two attempts, in milliseconds.
+	 */
+	public static final long DEFAULT_MAX_DELAY = 500;
+
+	/**
+	 * The default growth of the delay from one retry to the next.
+	 */
+	public static final double DEFAULT_MULTIPLIER = 2.0;
+
+	/**
+	 * The default share of a delay that may be cut by the jitter.
+	 */
+	public static final double DEFAULT_JITTER = 0.2;
+
+	private final long initialDelayMillis;
+	private final long maxDelayMillis;
+	private final double multiplier;
+	private final double jitter;
+	private final int maxAttempts;
+
+	/**
+	 * Constructs a new BackoffRetryPolicy with the default delays and no limit on
+	 * the attempts of a lookup with a deadline.
+	 */
+	public BackoffRetryPolicy() {
+		this(DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MULTIPLIER, DEFAULT_JITTER, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Constructs a new BackoffRetryPolicy.
+	 *
+	 * @param initialDelayMillis The delay before the second retry, in
+	 *                           milliseconds. The first retry is immediate.
+	 * @param maxDelayMillis     The maximum delay between two attempts, in
+	 *                           milliseconds.
+	 * @param multiplier         The growth of the delay from one retry to the
+	 *                           next, at least 1.
+	 * @param jitter             The share of a delay that may be cut at random,
+	 *                           between 0 and 1.
+	 * @param maxAttempts        The maximum number of attempts of a lookup.
+	 * @throws IllegalArgumentException If any of the parameters is out of range.
+	 */
+	public BackoffRetryPolicy(long initialDelayMillis, long maxDelayMillis, double multiplier, double jitter,
+			int maxAttempts) {
+		if (initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis || multiplier < 1 || jitter < 0
+				|| jitter > 1 || maxAttempts < 1) {
+			throw new IllegalArgumentException("Invalid retry policy: initialDelay=" + initialDelayMillis
+					+ "ms, maxDelay=" + maxDelayMillis + "ms, multiplier=" + multiplier + ", jitter=" + jitter
+					+ ", maxAttempts=" + maxAttempts);
+		}
+		this.initialDelayMillis = initialDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.multiplier = multiplier;
+		this.jitter = jitter;
+		this.maxAttempts = maxAttempts;
+	}
+
+	@Override
+	public long nextDelay(int failedAttempts, long remainingMillis) {
+		if (failedAttempts >= maxAttempts || remainingMillis <= 0) {
+			return STOP;
+		}
+		if (failedAttempts == 1) {
+			return 0;
+		}
+
+		double delay = initialDelayMillis * Math.pow(multiplier, failedAttempts - 2);
+		delay = Math.min(delay, maxDelayMillis);
+		if (jitter > 0) {
+			delay -= delay * jitter * ThreadLocalRandom.current().nextDouble();
+		}
+		return Math.min(Math.round(delay), remainingMillis);
+	}
+
+	@Override
+	public String toString() {
+		return "BackoffRetryPolicy[initialDelay=" + initialDelayMillis + "ms, maxDelay=" + maxDelayMillis
+				+ "ms, multiplier=" + multiplier + ", jitter=" + jitter
+				+ (maxAttempts == Integer.MAX_VALUE ? "" : ", maxAttempts=" + maxAttempts) + "]";
+	}
+}
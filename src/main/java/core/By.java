@@ -3,21 +3,22 @@ package core;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.sikuli.script.FindFailed;
 import org.sikuli.script.Match;
+import org.sikuli.script.Pattern;
 import org.sikuli.script.Region;
 import org.sikuli.script.Screen;
 
-import com.sun.jna.platform.win32.OleAuto;
-import com.sun.jna.platform.win32.Variant;
-import com.sun.jna.platform.win32.WTypes;
-import com.sun.jna.ptr.PointerByReference;
-
+import actions.LocatorType;
+import core.PartialMatcher.MatchMode;
+import core.backend.AutomationBackend;
 import exceptions.CustomImageSearchException;
 import exceptions.CustomLocationException;
 import exceptions.CustomOCRFailedException;
@@ -28,179 +29,318 @@ import mmarquee.automation.ElementNotFoundException;
 import mmarquee.automation.PropertyID;
 import mmarquee.uiautomation.TreeScope;
 import utils.ProjectConfiguration;
+import utils.Settings;
 
 /**
  * This class consists of element finding logic methods. It provides various
  * methods to find elements based on different attributes and criteria. It also
  * supports image-based and OCR-based element searches.
  * 
- * Note: The methods in this class use the `Driver` class for element search and
- * automation. Make sure to initialize the `Driver` before using any of the
+ * Note: The methods in this class use the `Driver` class and its automation
+ * backend for element search and automation. Make sure to initialize the `Driver` before using any of the
  * methods.
  * 
  * @author Dhanush
  */
 public class By {
 
+	private static final Logger log = LogManager.getLogger(By.class);
+	private static final ThreadLocal<LookupReport> lastLookup = new ThreadLocal<>();
+	public static final TemplateCache templateCache = new TemplateCache(ProjectConfiguration.sikuliImageBasePath);
+	public static final ImageSearchStatistics imageSearchStatistics = new ImageSearchStatistics();
+	public static final HitHistory hitHistory = new HitHistory();
+	public static final ParallelMatcher parallelMatcher = new ParallelMatcher(TemplateMatcher.DEFAULT_THRESHOLD);
+	// The pixels a remembered match may have moved and still be found by a probe.
+	private static final int PROBE_MARGIN = 2;
+	private static final double SCALED_THRESHOLD = 0.8;
+
+
 	/**
-	 * This method will find and return the first matching element based on the
-	 * provided criteria.
+	 * One attempt of an element lookup.
 	 *
-	 * @param pointerByReference The reference pointer to search for elements.
-	 * @return The first matching element.
-	 * @throws ElementNotFoundException If the element is not found after the
-	 *                                  specified search attempts.
-	 * @throws AutomationException      If there is an error during the automation
-	 *                                  process.
+	 * @param <T> The result of the attempt.
+	 */
+	private interface Attempt<T> {
+
+		/**
+		 * Searches once.
+		 *
+		 * @return The search result, or null if nothing was found.
+		 * @throws AutomationException If there is an error during the search.
+		 */
+		T search() throws AutomationException;
+	}
+
+	/**
+	 * One search of an attempt, from a given element.
+	 *
+	 * @param <T> The result of the search.
 	 */
-	private static Element findFirst(PointerByReference pointerByReference)
-			throws ElementNotFoundException, AutomationException {
-		Element element = null;
-		int searchAttempts = Driver.searchAttempts;
-		int retryInterval = 100; // Milliseconds
+	private interface ScopedSearch<T> {
+
+		/**
+		 * Searches once from the given element.
+		 *
+		 * @param root The element to search from.
+		 * @return The search result, or null if nothing was found.
+		 * @throws AutomationException If there is an error during the search.
+		 */
+		T search(Element root) throws AutomationException;
+	}
 
-		for (int retryCount = 0; retryCount < searchAttempts; retryCount++) {
+	/**
+	 * Runs the attempts of an element lookup until one finds a result, waiting
+	 * between them as decided by the {@link SearchOptions#getRetryPolicy() retry
+	 * policy}. The lookup ends at the search deadline of the current thread or,
+	 * without a deadline, after {@link SearchOptions#getSearchAttempts()}
+	 * attempts. The lookup is reported to {@link Driver#lookupStatistics} and kept
+	 * as the last lookup of the thread.
+	 *
+	 * @param <T>       The result of an attempt.
+	 * @param options   The search options of the lookup.
+	 * @param condition The search condition of the lookup.
+	 * @param attempt   The search to attempt.
+	 * @return The result of the first successful attempt, or null if none
+	 *         succeeded.
+	 */
+	private static <T> T lookup(SearchOptions options, SearchCondition condition, Attempt<T> attempt) {
+		RetryPolicy retryPolicy = options.getRetryPolicy();
+		long start = System.nanoTime();
+		long waitedNanos = 0;
+		int attempts = 0;
+		T result = null;
+
+		while (true) {
+			attempts++;
 			try {
-				if (Driver.rootSearch)
-					element = Driver.getRootElement().findFirst(new TreeScope(Driver.scope), pointerByReference);
-				else
-					element = Driver.getSearchContext().findFirst(new TreeScope(Driver.scope), pointerByReference);
-			} catch (AutomationException e1) {
-				// Log or handle the exception if needed
+				result = attempt.search();
+			} catch (AutomationException e) {
+				log.trace("Lookup attempt " + attempts + " of " + condition + " failed.", e);
+			}
+			if (result != null) {
+				break;
 			}
 
-			if (element == null) {
+			long remainingMillis = Driver.getRemainingSearchMillis();
+			if (remainingMillis == RetryPolicy.NO_DEADLINE && attempts >= options.getSearchAttempts()) {
+				break;
+			}
+			long delay = retryPolicy.nextDelay(attempts, remainingMillis);
+			if (delay == RetryPolicy.STOP) {
+				break;
+			}
+			if (delay > 0) {
+				long sleepStart = System.nanoTime();
 				try {
-					TimeUnit.MILLISECONDS.sleep(retryInterval);
+					TimeUnit.MILLISECONDS.sleep(delay);
 				} catch (InterruptedException e) {
-					// Log or handle the exception if needed
+					Thread.currentThread().interrupt();
+					break;
+				} finally {
+					waitedNanos += System.nanoTime() - sleepStart;
 				}
-			} else {
-				return element;
 			}
 		}
 
-		throw new ElementNotFoundException("Element not found after " + searchAttempts + " attempts.");
+		LookupReport report = new LookupReport(condition, attempts, TimeUnit.NANOSECONDS.toMillis(waitedNanos),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), result != null);
+		lastLookup.set(report);
+		Driver.lookupStatistics.record(report);
+		log.debug(report);
+		return result;
+	}
+
+	/**
+	 * Get the report of the last element lookup of the current thread.
+	 *
+	 * @return The LookupReport, or null if the thread made no lookup yet.
+	 */
+	public static LookupReport getLastLookup() {
+		return lastLookup.get();
+	}
+
+	/**
+	 * This method will find and return the first matching element based on the
+	 * provided criteria.
+	 *
+	 * @param driver    The session to search in.
+	 * @param options   The search options of the lookup.
+	 * @param condition The search condition to match elements against.
+	 * @return The first matching element.
+	 * @throws ElementNotFoundException If the element is not found after the
+	 *                                  specified search attempts.
+	 */
+	private static Element findFirst(Driver driver, SearchOptions options, SearchCondition condition)
+			throws ElementNotFoundException {
+		AutomationBackend backend = Driver.getBackend();
+		Element element = lookup(options, condition, () -> searchInScope(driver, options, condition, root -> {
+			TreeSearch treeSearch = getTreeSearch(backend, options);
+			if (treeSearch == null) {
+				return backend.findFirst(root, options.getScope(), condition);
+			}
+			List<Element> found = treeSearch.find(root, TreeSearch.getProperties(condition),
+					TreeSearch.forCondition(backend, condition), true);
+			return found.isEmpty() ? null : found.get(0);
+		}));
+
+		if (element == null) {
+			throw new ElementNotFoundException("Element not found after " + getLastLookup().getAttempts() + " attempts.");
+		}
+		return element;
 	}
 
 	/**
 	 * This method will find and return a list of all matching elements based on the
 	 * provided criteria.
 	 *
-	 * @param pointerByReference The reference pointer to search for elements.
+	 * @param driver    The session to search in.
+	 * @param options   The search options of the lookup.
+	 * @param condition The search condition to match elements against.
 	 * @return A list of all matching elements found.
 	 * @throws ElementNotFoundException If no elements are found after the specified
 	 *                                  search attempts.
-	 * @throws AutomationException      If there is an error during the automation
-	 *                                  process.
 	 */
-	private static List<Element> findAll(PointerByReference pointerByReference)
-			throws ElementNotFoundException, AutomationException {
-		List<Element> elements = new ArrayList<>();
-		int searchAttempts = Driver.searchAttempts;
-		int retryInterval = 100; // Milliseconds
-
-		for (int retryCount = 0; retryCount < searchAttempts; retryCount++) {
-			try {
-				if (Driver.rootSearch)
-					elements = Driver.getRootElement().findAll(new TreeScope(Driver.scope), pointerByReference);
-				else
-					elements = Driver.getSearchContext().findAll(new TreeScope(Driver.scope), pointerByReference);
-			} catch (AutomationException e1) {
-				// Log or handle the exception if needed
-			}
-
-			if (elements.size() == 0) {
-				try {
-					TimeUnit.MILLISECONDS.sleep(retryInterval);
-				} catch (InterruptedException e) {
-					// Log or handle the exception if needed
-				}
-			} else {
-				return elements;
-			}
+	private static List<Element> findAll(Driver driver, SearchOptions options, SearchCondition condition)
+			throws ElementNotFoundException {
+		AutomationBackend backend = Driver.getBackend();
+		List<Element> elements = lookup(options, condition, () -> searchInScope(driver, options, condition, root -> {
+			TreeSearch treeSearch = getTreeSearch(backend, options);
+			List<Element> found = treeSearch == null ? backend.findAll(root, options.getScope(), condition)
+					: treeSearch.find(root, TreeSearch.getProperties(condition),
+							TreeSearch.forCondition(backend, condition), false);
+			return found.isEmpty() ? null : found;
+		}));
+
+		if (elements == null) {
+			throw new ElementNotFoundException("No elements found after " + getLastLookup().getAttempts() + " attempts.");
 		}
-
-		throw new ElementNotFoundException("No elements found after " + searchAttempts + " attempts.");
+		return elements;
 	}
 
 	/**
-	 * This method will retrieve the value of a specific attribute from the given
-	 * element.
+	 * Get the walk of the tree for the search mode of the options. With the
+	 * children scope only the children are walked, otherwise the tree is walked
+	 * down to the search depth.
 	 *
-	 * @param element The element to extract the attribute value from.
-	 * @param locator The attribute name to retrieve the value from (e.g., "NAME",
-	 *                "ID", "TEXT", "VALUE").
-	 * @return The value of the specified attribute.
-	 * @throws IllegalArgumentException If the locator is not recognized.
-	 * @throws AutomationException      If there is an error during the automation
-	 *                                  process.
+	 * @param backend The automation backend to search.
+	 * @param options The search options of the lookup.
+	 * @return The TreeSearch, or null if the search mode is SUBTREE.
 	 */
-	private static String getValue(Element element, String locator) throws AutomationException {
-		if (element == null || locator == null || locator.isEmpty()) {
+	private static TreeSearch getTreeSearch(AutomationBackend backend, SearchOptions options) {
+		SearchMode mode = options.getSearchMode();
+		if (mode == SearchMode.SUBTREE) {
 			return null;
 		}
+		int depth = (options.getScope() & TreeScope.DESCENDANTS) == 0 ? 1 : options.getSearchDepth();
+		return new TreeSearch(backend, mode, depth);
+	}
 
-		String value = null;
-		locator = locator.toUpperCase();
+	/**
+	 * Runs a search from the current {@link Driver#getSearchScope() search scope}
+	 * of the session and, if it finds nothing, from the root element. A scope that
+	 * can no longer be searched, e.g. a closed window, counts as a miss. Without a
+	 * scope the search runs once from the root element, and without root search
+	 * once from the search context of the session. The searches are reported to
+	 * {@link Driver#scopeStatistics}.
+	 *
+	 * @param <T>       The result of the search.
+	 * @param driver    The session to search in.
+	 * @param options   The search options of the lookup.
+	 * @param condition The search condition, for the log.
+	 * @param search    The search to run.
+	 * @return The search result, or null if nothing was found.
+	 * @throws AutomationException If there is an error during the root search.
+	 */
+	private static <T> T searchInScope(Driver driver, SearchOptions options, SearchCondition condition,
+			ScopedSearch<T> search) throws AutomationException {
+		if (!options.isRootSearch()) {
+			return search.search(driver.getSearchContext());
+		}
 
-		try {
-			switch (locator) {
-			case "NAME":
-				value = element.getName();
-				break;
-			case "ID":
-				value = element.getAutomationId();
-				break;
-			case "TEXT":
-				value = element.getPropertyValue(PropertyID.HelpText.getValue()).toString();
-				break;
-			case "VALUE":
-				value = element.getPropertyValue(PropertyID.LegacyIAccessibleValue.getValue()).toString();
-				break;
-			default:
-				throw new IllegalArgumentException("Invalid locator: " + locator);
+		Element scopeElement = driver.getSearchScope();
+		T result = null;
+		if (scopeElement != null) {
+			long start = System.nanoTime();
+			try {
+				result = search.search(scopeElement);
+			} catch (AutomationException e) {
+				log.trace("Search of " + condition + " in the search scope failed.", e);
+			}
+			Driver.scopeStatistics.recordScoped(result != null, System.nanoTime() - start);
+			if (result != null) {
+				return result;
 			}
-		} catch (AutomationException e) {
-			// Log or print the exception for debugging purposes
-			e.printStackTrace();
-			throw e;
 		}
 
-		return value;
+		long start = System.nanoTime();
+		try {
+			result = search.search(Driver.getRootElement());
+		} finally {
+			Driver.scopeStatistics.recordRoot(result != null, System.nanoTime() - start, scopeElement != null);
+		}
+		return result;
 	}
 
 	/**
-	 * Finds elements with partial matches based on the given locator and value.
+	 * This method will retrieve the prefetched value of a property from the given
+	 * element. If the element was not fetched with the property cached, the value
+	 * is read from the application instead.
 	 *
-	 * @param pointerByReference A PointerByReference object for element search.
-	 * @param locator            The locator string used to identify elements.
-	 * @param value              The value to be partially matched.
-	 * @return A list of elements that contain the specified value partially.
-	 * @throws NullPointerException If pointerByReference, locator, or value is
-	 *                              null.
-	 * @throws AutomationException  If there is an error during the automation
-	 *                              process.
+	 * @param element  The element to extract the property value from.
+	 * @param property The property to retrieve.
+	 * @return The value of the property, or null if it has no value.
+	 * @throws AutomationException If there is an error during the automation
+	 *                             process.
 	 */
-	private static List<Element> findPartial(PointerByReference pointerByReference, String locator, String value)
-			throws NullPointerException, AutomationException {
-		if (pointerByReference == null || locator == null || locator.isEmpty() || value == null || value.isEmpty()) {
-			return Collections.emptyList();
-		}
-
-		long startTime = System.currentTimeMillis();
-		List<Element> partialMatchedElements = new ArrayList<>();
-		List<Element> elements = findAll(pointerByReference);
+	private static String getCachedValue(Element element, PropertyID property) throws AutomationException {
+		return TreeSearch.getCachedValue(Driver.getBackend(), element, property);
+	}
 
-		for (Element element : elements) {
-			if (getValue(element, locator).contains(value)) {
-				partialMatchedElements.add(element);
+	/**
+	 * Finds elements of the given control type whose property partially matches.
+	 * The elements are fetched with their properties in one cache request and
+	 * matched in memory; for {@link FindOption#FIRST} matching stops at the first
+	 * hit. The search scope only counts as a hit if one of its elements matches.
+	 * In the tree walking search modes the walk matches the elements as it goes.
+	 *
+	 * @param driver      The session to search in.
+	 * @param controlType The type of the control to search for.
+	 * @param matcher     The matcher for the property value.
+	 * @param findOption  An enumeration specifying whether to find the FIRST
+	 *                    matching element or ALL matching elements.
+	 * @return A list of elements that match, in tree order.
+	 * @throws AutomationException      If there is an error during the automation
+	 *                                  process.
+	 * @throws ElementNotFoundException If no elements match after the specified
+	 *                                  search attempts.
+	 */
+	private static List<Element> findPartial(Driver driver, ControlType controlType, PartialMatcher matcher,
+			FindOption findOption) throws AutomationException {
+		long startTime = System.nanoTime();
+		AutomationBackend backend = Driver.getBackend();
+		SearchOptions options = driver.getOptions();
+		SearchCondition condition = SearchCondition.ofControlType(controlType);
+		ScopedSearch<List<Element>> search = root -> {
+			TreeSearch treeSearch = getTreeSearch(backend, options);
+			List<Element> matched;
+			if (treeSearch == null) {
+				List<Element> elements = backend.findAll(root, options.getScope(), condition,
+						PartialMatcher.PREFETCH_PROPERTIES);
+				matched = matcher.filter(elements, By::getCachedValue, findOption);
+			} else {
+				matched = treeSearch.find(root, TreeSearch.PARTIAL_PROPERTIES,
+						TreeSearch.forPartial(backend, controlType, matcher), findOption == FindOption.FIRST);
 			}
-		}
-		long endTime = System.currentTimeMillis();
+			return matched.isEmpty() ? null : matched;
+		};
+		List<Element> partialMatchedElements = lookup(options, condition,
+				() -> searchInScope(driver, options, condition, search));
 
-		System.err.println(
-				"Time taken to find partial elements: " + (endTime - startTime) + " milliseconds for " + value);
+		if (partialMatchedElements == null) {
+			throw new ElementNotFoundException("No elements found after " + getLastLookup().getAttempts() + " attempts.");
+		}
+		log.debug(String.format("Partial match %s on %s elements found %d in %d ms", matcher, controlType,
+				partialMatchedElements.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)));
 
 		return partialMatchedElements;
 	}
@@ -208,7 +348,7 @@ public class By {
 	/**
 	 * An enumeration representing different find options for matching elements.
 	 */
-	enum FindOption {
+	public enum FindOption {
 		/**
 		 * Find the FIRST matching element.
 		 */
@@ -219,9 +359,43 @@ public class By {
 		ALL
 	}
 
+	/**
+	 * Finds the elements matching the given search condition through the
+	 * automation backend of the {@link Driver}, with the options of the session
+	 * at the start of the lookup.
+	 *
+	 * @param driver     The session to search in.
+	 * @param condition  The search condition to match elements against.
+	 * @param findOption An enumeration specifying whether to find the FIRST
+	 *                   matching element or ALL matching elements.
+	 * @return A list of elements that match the specified condition based on the
+	 *         chosen find option.
+	 * @throws AutomationException If there is an error during the automation
+	 *                             process.
+	 */
+	private static List<Element> findElements(Driver driver, SearchCondition condition, FindOption findOption)
+			throws AutomationException {
+		SearchOptions options = driver.getOptions();
+		List<Element> elements = new ArrayList<>();
+
+		if (findOption == FindOption.FIRST) {
+			// Find the FIRST matching element.
+			Element firstElement = findFirst(driver, options, condition);
+			if (firstElement != null) {
+				elements.add(firstElement);
+			}
+		} else if (findOption == FindOption.ALL) {
+			// Find ALL matching elements.
+			elements.addAll(findAll(driver, options, condition));
+		}
+
+		return elements;
+	}
+
 	/**
 	 * Finds elements with a specific help text attribute and control type.
 	 *
+	 * @param driver      The session to search in.
 	 * @param controlType The type of the control to search for (e.g., Button,
 	 *                    TextBox, etc.).
 	 * @param value       The help text attribute value to match elements against.
@@ -234,55 +408,19 @@ public class By {
 	 * @throws IllegalArgumentException If any of the input parameters (controlType,
 	 *                                  value, or findOption) are invalid.
 	 */
-	public static List<Element> findElementsByText(ControlType controlType, String value, FindOption findOption)
+	public static List<Element> findElementsByText(Driver driver, ControlType controlType, String value, FindOption findOption)
 			throws AutomationException {
 		if (controlType == null || value == null || value.isEmpty() || findOption == null) {
 			throw new IllegalArgumentException("Invalid input parameters.");
 		}
 
-		List<Element> elements = new ArrayList<>();
-		WTypes.BSTR sysAllocated = null;
-
-		try {
-			// Convert the 'value' String to a BSTR (OLE Automation string).
-			sysAllocated = OleAuto.INSTANCE.SysAllocString(value);
-
-			// Create a VARIANT to hold the BSTR.
-			Variant.VARIANT.ByValue variant = new Variant.VARIANT.ByValue();
-			variant.setValue(Variant.VT_BSTR, sysAllocated);
-
-			// Create an AND condition combining HelpText and ControlType conditions.
-			PointerByReference pointerByReference = Driver.automation.createAndCondition(
-					Driver.automation.createPropertyCondition(PropertyID.HelpText.getValue(), variant),
-					Driver.automation.createControlTypeCondition(controlType));
-
-			if (findOption == FindOption.FIRST) {
-				// Find the FIRST matching element.
-				Element firstElement = findFirst(pointerByReference);
-				if (firstElement != null) {
-					elements.add(firstElement);
-				}
-			} else if (findOption == FindOption.ALL) {
-				// Find ALL matching elements.
-				List<Element> allElements = findAll(pointerByReference);
-				elements.addAll(allElements);
-			}
-		} catch (Exception e) {
-			// Handle any exception that might occur during resource cleanup or processing.
-			// Logging or re-throwing the exception could be considered here.
-		} finally {
-			// Ensure proper cleanup of resources (e.g., releasing the sysAllocated BSTR).
-			if (sysAllocated != null) {
-				OleAuto.INSTANCE.SysFreeString(sysAllocated);
-			}
-		}
-
-		return elements;
+		return findElements(driver, new SearchCondition(LocatorType.TEXT, controlType, value), findOption);
 	}
 
 	/**
 	 * Finds elements with a specific value attribute and control type.
 	 *
+	 * @param driver      The session to search in.
 	 * @param controlType The type of the control to search for (e.g., Button,
 	 *                    TextBox, etc.).
 	 * @param value       The value attribute value to match elements against.
@@ -295,56 +433,19 @@ public class By {
 	 * @throws IllegalArgumentException If any of the input parameters (controlType,
 	 *                                  value, or findOption) are invalid.
 	 */
-	public static List<Element> findElementsByValue(ControlType controlType, String value, FindOption findOption)
+	public static List<Element> findElementsByValue(Driver driver, ControlType controlType, String value, FindOption findOption)
 			throws AutomationException {
 		if (controlType == null || value == null || value.isEmpty() || findOption == null) {
 			throw new IllegalArgumentException("Invalid input parameters.");
 		}
 
-		List<Element> elements = new ArrayList<>();
-		WTypes.BSTR sysAllocated = null;
-
-		try {
-			// Convert the 'value' String to a BSTR (OLE Automation string).
-			sysAllocated = OleAuto.INSTANCE.SysAllocString(value);
-
-			// Create a VARIANT to hold the BSTR.
-			Variant.VARIANT.ByValue variant = new Variant.VARIANT.ByValue();
-			variant.setValue(Variant.VT_BSTR, sysAllocated);
-
-			// Create an AND condition combining LegacyIAccessibleValue and ControlType
-			// conditions.
-			PointerByReference pointerByReference = Driver.automation.createAndCondition(
-					Driver.automation.createPropertyCondition(PropertyID.LegacyIAccessibleValue.getValue(), variant),
-					Driver.automation.createControlTypeCondition(controlType));
-
-			if (findOption == FindOption.FIRST) {
-				// Find the FIRST matching element.
-				Element firstElement = findFirst(pointerByReference);
-				if (firstElement != null) {
-					elements.add(firstElement);
-				}
-			} else if (findOption == FindOption.ALL) {
-				// Find ALL matching elements.
-				List<Element> allElements = findAll(pointerByReference);
-				elements.addAll(allElements);
-			}
-		} catch (Exception e) {
-			// Handle any exception that might occur during resource cleanup or processing.
-			// Logging or re-throwing the exception could be considered here.
-		} finally {
-			// Ensure proper cleanup of resources (e.g., releasing the sysAllocated BSTR).
-			if (sysAllocated != null) {
-				OleAuto.INSTANCE.SysFreeString(sysAllocated);
-			}
-		}
-
-		return elements;
+		return findElements(driver, new SearchCondition(LocatorType.VALUE, controlType, value), findOption);
 	}
 
 	/**
 	 * Finds elements with a specific name attribute and control type.
 	 *
+	 * @param driver      The session to search in.
 	 * @param controlType The type of the control to search for (e.g., Button,
 	 *                    TextBox, etc.).
 	 * @param value       The name attribute value to match elements against.
@@ -357,34 +458,19 @@ public class By {
 	 * @throws IllegalArgumentException If any of the input parameters (controlType,
 	 *                                  value, or findOption) are invalid.
 	 */
-	public static List<Element> findElementsByName(ControlType controlType, String value, FindOption findOption)
+	public static List<Element> findElementsByName(Driver driver, ControlType controlType, String value, FindOption findOption)
 			throws AutomationException {
 		if (controlType == null || value == null || value.isEmpty() || findOption == null) {
 			throw new IllegalArgumentException("Invalid input parameters.");
 		}
 
-		PointerByReference pointerByReference = Driver.automation.createAndCondition(
-				Driver.automation.createNamePropertyCondition(value),
-				Driver.automation.createControlTypeCondition(controlType));
-
-		List<Element> elements = new ArrayList<>();
-
-		if (findOption == FindOption.FIRST) {
-			Element element = findFirst(pointerByReference);
-			if (element != null) {
-				elements.add(element);
-			}
-		} else if (findOption == FindOption.ALL) {
-			List<Element> allElements = findAll(pointerByReference);
-			elements.addAll(allElements);
-		}
-
-		return elements;
+		return findElements(driver, new SearchCondition(LocatorType.NAME, controlType, value), findOption);
 	}
 
 	/**
 	 * Finds elements with a specific ID attribute and control type.
 	 *
+	 * @param driver      The session to search in.
 	 * @param controlType The type of the control to search for (e.g., Button,
 	 *                    TextBox, etc.).
 	 * @param value       The ID attribute value to match elements against.
@@ -397,37 +483,53 @@ public class By {
 	 * @throws IllegalArgumentException If any of the input parameters (controlType,
 	 *                                  value, or findOption) are invalid.
 	 */
-	public static List<Element> findElementsById(ControlType controlType, String value, FindOption findOption)
+	public static List<Element> findElementsById(Driver driver, ControlType controlType, String value, FindOption findOption)
 			throws AutomationException {
 		if (controlType == null || value == null || value.isEmpty() || findOption == null) {
 			throw new IllegalArgumentException("Invalid input parameters.");
 		}
 
-		List<Element> elements = new ArrayList<>();
-		PointerByReference pointerByReference = Driver.automation.createAndCondition(
-				Driver.automation.createAutomationIdPropertyCondition(value),
-				Driver.automation.createControlTypeCondition(controlType));
+		return findElements(driver, new SearchCondition(LocatorType.ID, controlType, value), findOption);
+	}
 
-		if (findOption == FindOption.FIRST) {
-			Element firstElement = findFirst(pointerByReference);
-			if (firstElement != null) {
-				elements.add(firstElement);
-			}
-		} else if (findOption == FindOption.ALL) {
-			List<Element> allElements = findAll(pointerByReference);
-			elements.addAll(allElements);
+	/**
+	 * Finds elements of a control type whose property partially matches the given
+	 * value. The property is chosen by the partial locator type.
+	 *
+	 * @param driver      The session to search in.
+	 * @param locatorType The partial locator type (PARTIALNAME, PARTIALID,
+	 *                    PARTIALTEXT or PARTIALVALUE).
+	 * @param controlType The type of the control to search for (e.g., Button,
+	 *                    TextBox, etc.).
+	 * @param value       The value, or regular expression, to match.
+	 * @param matchMode   How the property value is matched against the value.
+	 * @param findOption  An enumeration specifying whether to find the FIRST
+	 *                    matching element or ALL matching elements.
+	 * @return A list of elements that match the value and belong to the specified
+	 *         control type based on the chosen find option.
+	 * @throws AutomationException      If there is an error during the automation
+	 *                                  process.
+	 * @throws IllegalArgumentException If any of the input parameters are invalid.
+	 */
+	public static List<Element> findElementsByPartial(Driver driver, LocatorType locatorType, ControlType controlType,
+			String value, MatchMode matchMode, FindOption findOption) throws AutomationException {
+		if (controlType == null || value == null || value.isEmpty() || findOption == null) {
+			throw new IllegalArgumentException("Invalid input parameters.");
 		}
 
-		return elements;
+		return findPartial(driver, controlType, new PartialMatcher(PartialMatcher.getProperty(locatorType), matchMode, value),
+				findOption);
 	}
 
 	/**
 	 * Finds elements with a partial name attribute and control type.
 	 *
+	 * @param driver      The session to search in.
 	 * @param controlType The type of the control to search for (e.g., Button,
 	 *                    TextBox, etc.).
 	 * @param value       The partial name attribute value to match elements
-	 *                    against.
+	 *                    against, optionally prefixed with a match mode (see
+	 *                    {@link PartialMatcher#forLocator}).
 	 * @param findOption  An enumeration specifying whether to find the FIRST
 	 *                    matching element or ALL matching elements.
 	 * @return A list of elements that have a partial name match and belong to the
@@ -437,32 +539,24 @@ public class By {
 	 * @throws IllegalArgumentException If any of the input parameters (controlType,
 	 *                                  value, or findOption) are invalid.
 	 */
-	public static List<Element> findElementsByPartialName(ControlType controlType, String value, FindOption findOption)
-			throws AutomationException {
+	public static List<Element> findElementsByPartialName(Driver driver, ControlType controlType, String value,
+			FindOption findOption) throws AutomationException {
 		if (controlType == null || value == null || value.isEmpty() || findOption == null) {
 			throw new IllegalArgumentException("Invalid input parameters.");
 		}
 
-		List<Element> elements = new ArrayList<>();
-		PointerByReference pointerByReference = Driver.automation.createControlTypeCondition(controlType);
-
-		List<Element> partialMatchedElement = findPartial(pointerByReference, "name", value);
-
-		if (findOption == FindOption.FIRST && !partialMatchedElement.isEmpty()) {
-			elements.add(partialMatchedElement.get(0));
-		} else if (findOption == FindOption.ALL) {
-			elements.addAll(partialMatchedElement);
-		}
-
-		return elements;
+		return findPartial(driver, controlType, PartialMatcher.forLocator(LocatorType.PARTIALNAME, value), findOption);
 	}
 
 	/**
 	 * Finds elements with a partial ID attribute and control type.
 	 *
+	 * @param driver      The session to search in.
 	 * @param controlType The type of the control to search for (e.g., Button,
 	 *                    TextBox, etc.).
-	 * @param value       The partial ID attribute value to match elements against.
+	 * @param value       The partial ID attribute value to match elements against,
+	 *                    optionally prefixed with a match mode (see
+	 *                    {@link PartialMatcher#forLocator}).
 	 * @param findOption  An enumeration specifying whether to find the FIRST
 	 *                    matching element or ALL matching elements.
 	 * @return A list of elements that have a partial ID match and belong to the
@@ -472,33 +566,24 @@ public class By {
 	 * @throws IllegalArgumentException If any of the input parameters (controlType,
 	 *                                  value, or findOption) are invalid.
 	 */
-	public static List<Element> findElementsByPartialId(ControlType controlType, String value, FindOption findOption)
-			throws AutomationException {
+	public static List<Element> findElementsByPartialId(Driver driver, ControlType controlType, String value,
+			FindOption findOption) throws AutomationException {
 		if (controlType == null || value == null || value.isEmpty() || findOption == null) {
 			throw new IllegalArgumentException("Invalid input parameters.");
 		}
 
-		List<Element> elements = new ArrayList<>();
-		PointerByReference pointerByReference = Driver.automation.createControlTypeCondition(controlType);
-
-		List<Element> partialMatchedElements = findPartial(pointerByReference, "id", value);
-
-		if (findOption == FindOption.FIRST && !partialMatchedElements.isEmpty()) {
-			elements.add(partialMatchedElements.get(0));
-		} else if (findOption == FindOption.ALL) {
-			elements.addAll(partialMatchedElements);
-		}
-
-		return elements;
+		return findPartial(driver, controlType, PartialMatcher.forLocator(LocatorType.PARTIALID, value), findOption);
 	}
 
 	/**
 	 * Finds elements with a partial text attribute and control type.
 	 *
+	 * @param driver      The session to search in.
 	 * @param controlType The type of the control to search for (e.g., Button,
 	 *                    TextBox, etc.).
 	 * @param value       The partial text attribute value to match elements
-	 *                    against.
+	 *                    against, optionally prefixed with a match mode (see
+	 *                    {@link PartialMatcher#forLocator}).
 	 * @param findOption  An enumeration specifying whether to find the FIRST
 	 *                    matching element or ALL matching elements.
 	 * @return A list of elements that have a partial text match and belong to the
@@ -508,33 +593,24 @@ public class By {
 	 * @throws IllegalArgumentException If any of the input parameters (controlType,
 	 *                                  value, or findOption) are invalid.
 	 */
-	public static List<Element> findElementsByPartialText(ControlType controlType, String value, FindOption findOption)
-			throws AutomationException {
+	public static List<Element> findElementsByPartialText(Driver driver, ControlType controlType, String value,
+			FindOption findOption) throws AutomationException {
 		if (controlType == null || value == null || value.isEmpty() || findOption == null) {
 			throw new IllegalArgumentException("Invalid input parameters.");
 		}
 
-		List<Element> elements = new ArrayList<>();
-		PointerByReference pointerByReference = Driver.automation.createControlTypeCondition(controlType);
-
-		List<Element> partialMatchedElements = findPartial(pointerByReference, "text", value);
-
-		if (findOption == FindOption.FIRST && !partialMatchedElements.isEmpty()) {
-			elements.add(partialMatchedElements.get(0));
-		} else if (findOption == FindOption.ALL) {
-			elements.addAll(partialMatchedElements);
-		}
-
-		return elements;
+		return findPartial(driver, controlType, PartialMatcher.forLocator(LocatorType.PARTIALTEXT, value), findOption);
 	}
 
 	/**
 	 * Finds elements with a partial value attribute and control type.
 	 *
+	 * @param driver      The session to search in.
 	 * @param controlType The type of the control to search for (e.g., Button,
 	 *                    TextBox, etc.).
 	 * @param value       The partial value attribute value to match elements
-	 *                    against.
+	 *                    against, optionally prefixed with a match mode (see
+	 *                    {@link PartialMatcher#forLocator}).
 	 * @param findOption  An enumeration specifying whether to find the FIRST
 	 *                    matching element or ALL matching elements.
 	 * @return A list of elements that have a partial value match and belong to the
@@ -544,36 +620,39 @@ public class By {
 	 * @throws IllegalArgumentException If any of the input parameters (controlType,
 	 *                                  value, or findOption) are invalid.
 	 */
-	public static List<Element> findElementsByPartialValue(ControlType controlType, String value, FindOption findOption)
-			throws AutomationException {
+	public static List<Element> findElementsByPartialValue(Driver driver, ControlType controlType, String value,
+			FindOption findOption) throws AutomationException {
 		if (controlType == null || value == null || value.isEmpty() || findOption == null) {
 			throw new IllegalArgumentException("Invalid input parameters.");
 		}
 
-		List<Element> elements = new ArrayList<>();
-		PointerByReference pointerByReference = Driver.automation.createControlTypeCondition(controlType);
-
-		List<Element> partialMatchedElements = findPartial(pointerByReference, "value", value);
-
-		if (findOption == FindOption.FIRST && !partialMatchedElements.isEmpty()) {
-			elements.add(partialMatchedElements.get(0));
-		} else if (findOption == FindOption.ALL) {
-			elements.addAll(partialMatchedElements);
-		}
-
-		return elements;
+		return findPartial(driver, controlType, PartialMatcher.forLocator(LocatorType.PARTIALVALUE, value), findOption);
 	}
 
 	/**
 	 * Finds an element with the specified image inside another image or screen.
+	 * The images are taken from the {@link #templateCache}, so that they are
+	 * decoded once and not on every poll of a wait. Unless it is searched inside
+	 * another image, the image is first probed at the spots of the
+	 * {@link #hitHistory} it was last found at. The search area can also be a
+	 * region of interest, see {@link SearchRegion}: the image is searched there
+	 * next, and on the whole screen only if it is not found there, by SikuliX or,
+	 * with {@link Settings#PARALLEL_IMAGE_SEARCH}, on all cores by the
+	 * {@link #parallelMatcher}. If the image
+	 * is not on the screen at its own scale and {@link Settings#IMAGE_MIN_SCALE}
+	 * and {@link Settings#IMAGE_MAX_SCALE} allow other scales, e.g. for a host
+	 * with another display scaling, it is searched once more with the
+	 * {@link PyramidMatcher}.
 	 *
 	 * @param searchImage The filename of the image where the search for the
 	 *                    findImage should happen. Use "SCREEN" to search on the
-	 *                    entire screen.
+	 *                    entire screen, or a WINDOW, RECT or LAST region to
+	 *                    search there first.
 	 * @param findImage   The filename of the image to find inside the searchImage.
 	 * @return A SikuliElement representing the found region.
 	 * @throws CustomImageSearchException If the image search fails or the image
 	 *                                    filenames are null or empty.
+	 * @throws IllegalArgumentException   If the search area is a malformed region.
 	 */
 	public static SikuliElement findImageInImage(String searchImage, String findImage)
 			throws CustomImageSearchException {
@@ -581,17 +660,49 @@ public class By {
 			throw new IllegalArgumentException("Image filenames must not be null or empty.");
 		}
 
-		String basePath = ProjectConfiguration.sikuliImageBasePath + "\\";
+		SearchRegion area = SearchRegion.of(searchImage);
+		imageSearchStatistics.recordSearch();
 		Region region = null;
 
 		try {
-			if (searchImage.equalsIgnoreCase("SCREEN")) {
-				region = SikuliElement.screen.find(basePath + findImage);
-			} else {
-				Match searchMatch = SikuliElement.screen.find(basePath + searchImage);
-				Match findMatch = searchMatch.find(basePath + findImage);
+			if (area.isImage()) {
+				Match searchMatch = SikuliElement.getScreen().find(getPattern(searchImage));
+				Match findMatch = searchMatch.find(getPattern(findImage));
 				Rectangle foundRect = findMatch.getRect();
 				region = new Region(foundRect);
+				hitHistory.recordHit(findImage, foundRect, findMatch.getScore());
+			} else {
+				TemplateCache.Template template = templateCache.get(findImage);
+				region = probe(findImage, template);
+				if (region == null) {
+					Object pattern = getPattern(findImage, template);
+					long searchStart = System.nanoTime();
+					Match match = null;
+					Rectangle interest = getRegionOfInterest(area, findImage);
+					if (interest != null) {
+						long start = System.nanoTime();
+						match = new Region(interest).exists(pattern, 0);
+						imageSearchStatistics.recordRegionSearch(match != null, System.nanoTime() - start);
+					}
+					if (match == null) {
+						long start = System.nanoTime();
+						try {
+							match = findOnScreen(pattern, template);
+						} catch (FindFailed e) {
+							region = findScaled(template);
+							if (region == null) {
+								throw e;
+							}
+						} finally {
+							imageSearchStatistics.recordScreenSearch(System.nanoTime() - start);
+						}
+					}
+					hitHistory.recordSearch(findImage, System.nanoTime() - searchStart);
+					if (match != null) {
+						hitHistory.recordHit(findImage, match.getRect(), match.getScore());
+						region = match;
+					}
+				}
 			}
 		} catch (FindFailed e) {
 			throw new CustomImageSearchException("Image search failed: " + e.getMessage(), e);
@@ -600,6 +711,180 @@ public class By {
 		return new SikuliElement(region);
 	}
 
+	/**
+	 * Probes the spots of the screen a template was last found at, most recent
+	 * first, with a local correlation against a capture of each spot grown by a
+	 * few pixels.
+	 *
+	 * @param findImage The filename of the image to find.
+	 * @param template  The cached template of the image, or null if it is not
+	 *                  cached.
+	 * @return The Region of the image, or null if no spot holds it.
+	 */
+	private static Region probe(String findImage, TemplateCache.Template template) {
+		List<HitHistory.Hit> hits = hitHistory.getHits(findImage);
+		if (template == null || hits.isEmpty()) {
+			return null;
+		}
+		long start = System.nanoTime();
+		Rectangle screen = SikuliElement.getScreen().getBounds();
+		TemplateCache.Level gray = template.getGray();
+		for (int spot = 0; spot < hits.size(); spot++) {
+			HitHistory.Hit hit = hits.get(spot);
+			Rectangle probed = SearchRegion.around(hit.getRect(), PROBE_MARGIN).intersection(screen);
+			if (probed.width < gray.getWidth() || probed.height < gray.getHeight()) {
+				continue;
+			}
+			BufferedImage capture = SikuliElement.getScreen().capture(probed).getImage();
+			TemplateMatcher.Match match = new TemplateMatcher(hit.getProbeThreshold())
+					.find(TemplateCache.Level.of(capture), gray);
+			if (match != null) {
+				Rectangle found = match.getRect();
+				found.translate(probed.x, probed.y);
+				hitHistory.recordProbe(findImage, spot, System.nanoTime() - start);
+				hitHistory.recordHit(findImage, found, match.getScore());
+				return new Region(found);
+			}
+		}
+		hitHistory.recordProbe(findImage, -1, System.nanoTime() - start);
+		return null;
+	}
+
+	/**
+	 * Finds the best match of an image on the whole screen, by SikuliX or, with
+	 * {@link Settings#PARALLEL_IMAGE_SEARCH}, by the {@link #parallelMatcher} on
+	 * a capture of the screen.
+	 *
+	 * @param pattern  The SikuliX pattern of the image.
+	 * @param template The cached template of the image, or null if it is not
+	 *                 cached.
+	 * @return The Match.
+	 * @throws FindFailed If the image is not on the screen.
+	 */
+	private static Match findOnScreen(Object pattern, TemplateCache.Template template) throws FindFailed {
+		if (!Settings.PARALLEL_IMAGE_SEARCH || template == null) {
+			return SikuliElement.getScreen().find(pattern);
+		}
+		Rectangle screen = SikuliElement.getScreen().getBounds();
+		BufferedImage capture = SikuliElement.getScreen().capture(screen).getImage();
+		TemplateMatcher.Match match = parallelMatcher.find(TemplateCache.Level.of(capture), template.getGray());
+		if (match == null) {
+			throw new FindFailed("Image " + template.getFile().getName() + " not found on the screen.");
+		}
+		Rectangle found = match.getRect();
+		found.translate(screen.x, screen.y);
+		return new Match(new Region(found), match.getScore());
+	}
+
+	/**
+	 * Searches the screen for a template at the other scales of the configured
+	 * scale range, coarse to fine on a capture of the screen.
+	 *
+	 * @param template The cached template of the image, or null if it is not
+	 *                 cached.
+	 * @return The Region of the image, or null if the range holds no other scale
+	 *         or the image is not found at any of them.
+	 */
+	private static Region findScaled(TemplateCache.Template template) {
+		if (template == null || Settings.IMAGE_MIN_SCALE == 1 && Settings.IMAGE_MAX_SCALE == 1) {
+			return null;
+		}
+		Rectangle screen = SikuliElement.getScreen().getBounds();
+		BufferedImage capture = SikuliElement.getScreen().capture(screen).getImage();
+		TemplateMatcher.Match match = new PyramidMatcher(SCALED_THRESHOLD, Settings.IMAGE_MIN_SCALE,
+				Settings.IMAGE_MAX_SCALE).find(TemplateCache.Level.of(capture), template.getGray());
+		if (match == null) {
+			return null;
+		}
+		log.info("Image " + template.getFile().getName() + " found at scale "
+				+ String.format("%.2f", match.getScale()) + " with score " + String.format("%.3f", match.getScore()));
+		Rectangle found = match.getRect();
+		found.translate(screen.x, screen.y);
+		return new Region(found);
+	}
+
+	/**
+	 * Get the rectangle of the screen a region of interest stands for.
+	 *
+	 * @param area      The search area.
+	 * @param findImage The filename of the image to find.
+	 * @return The rectangle, clipped to the screen, or null if the area is no
+	 *         region of interest or it is not known yet, e.g. a LAST region of an
+	 *         image never found or a WINDOW region of a closed window.
+	 */
+	private static Rectangle getRegionOfInterest(SearchRegion area, String findImage) {
+		Rectangle interest;
+		switch (area.getKind()) {
+		case RECT:
+			interest = area.getRectangle();
+			break;
+		case LAST:
+			Rectangle last = hitHistory.getLast(findImage);
+			interest = last == null ? null : SearchRegion.around(last, area.getMargin());
+			break;
+		case WINDOW:
+			interest = getWindowBounds(area.getValue());
+			break;
+		default:
+			return null;
+		}
+		if (interest == null) {
+			return null;
+		}
+		interest = interest.intersection(SikuliElement.getScreen().getBounds());
+		return interest.isEmpty() ? null : interest;
+	}
+
+	/**
+	 * Get the bounds of a top-level window or pane on the screen, adjusted to the
+	 * display scale like the regions of the UI elements.
+	 *
+	 * @param title The title of the window, optionally starting with a match
+	 *              mode.
+	 * @return The bounds, or null if there is no such window.
+	 */
+	private static Rectangle getWindowBounds(String title) {
+		try {
+			WindowRegistry registry = Driver.getWindowRegistry();
+			Element window = registry.find(ControlType.Window, title);
+			if (window == null) {
+				window = registry.find(ControlType.Pane, title);
+			}
+			Region bounds = window == null ? null : new UIElement(window).getRegion();
+			return bounds == null ? null : bounds.getRect();
+		} catch (AutomationException e) {
+			log.debug("Bounds of window " + title + " not read, searching the screen.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Get the SikuliX pattern of an image file, from its cached template. An
+	 * image that is not in the cache is passed by its path, so that SikuliX
+	 * reports it the way it always did.
+	 *
+	 * @param image The filename of the image in the image folder.
+	 * @return The Pattern, or the path of the image.
+	 */
+	private static Object getPattern(String image) {
+		return getPattern(image, templateCache.get(image));
+	}
+
+	/**
+	 * Get the SikuliX pattern of an image file from its cached template, or the
+	 * path of the image if it is not cached.
+	 *
+	 * @param image    The filename of the image in the image folder.
+	 * @param template The cached template, or null.
+	 * @return The Pattern, or the path of the image.
+	 */
+	private static Object getPattern(String image, TemplateCache.Template template) {
+		if (template == null) {
+			return ProjectConfiguration.sikuliImageBasePath + "\\" + image;
+		}
+		return new Pattern(template.getImage());
+	}
+
 	/**
 	 * Finds an element containing the specified text using OCR inside an image or
 	 * screen.
@@ -617,7 +902,6 @@ public class By {
 			throw new IllegalArgumentException("Image filename and text must not be null or empty.");
 		}
 
-		String basePath = ProjectConfiguration.sikuliImageBasePath + "\\";
 		Screen screen = new Screen();
 		Region region = null;
 
@@ -625,7 +909,7 @@ public class By {
 			if (searchImage.equalsIgnoreCase("SCREEN")) {
 				region = screen.findText(text);
 			} else {
-				Match searchMatch = screen.find(basePath + searchImage);
+				Match searchMatch = screen.find(getPattern(searchImage));
 				region = searchMatch.findText(text);
 			}
 		} catch (FindFailed e) {
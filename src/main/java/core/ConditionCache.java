@@ -0,0 +1,284 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.jna.ptr.PointerByReference;
+
+import mmarquee.automation.AutomationException;
+
+/**
+ * The ConditionCache class keeps already built UIAutomation condition objects
+ * so that repeated lookups with the same locator type, control type and value
+ * do not create new COM conditions every time. The cache is bounded and evicts
+ * the least recently used condition, which is then released through the
+ * {@link ConditionFactory}.
+ *
+ * The cache is thread-safe. A condition is handed out as a {@link Lease},
+ * which the caller closes once the search using it returned; a condition that
+ * is evicted or cleared while leased is only released when its last lease is
+ * closed, so a concurrent miss cannot release it under a running search.
+ */
+public class ConditionCache {
+
+	/**
+	 * Creates and releases the native condition objects held by the cache.
+	 */
+	public interface ConditionFactory {
+
+		/**
+		 * Builds the native condition for the given search condition.
+		 *
+		 * @param condition The search condition to build.
+		 * @return The built condition.
+		 * @throws AutomationException If the condition could not be created.
+		 */
+		PointerByReference create(SearchCondition condition) throws AutomationException;
+
+		/**
+		 * Releases a condition previously built by {@link #create}.
+		 *
+		 * @param condition The condition to release.
+		 */
+		void release(PointerByReference condition);
+	}
+
+	/**
+	 * A condition handed out by {@link ConditionCache#acquire}, to close when the
+	 * search using it returned.
+	 */
+	public final class Lease implements AutoCloseable {
+		private final Entry entry;
+		private boolean closed;
+
+		private Lease(Entry entry) {
+			this.entry = entry;
+		}
+
+		/**
+		 * Get the leased condition. It must not be used after the lease is closed.
+		 *
+		 * @return The built condition.
+		 */
+		public PointerByReference get() {
+			return entry.condition;
+		}
+
+		/**
+		 * Returns the condition to the cache, releasing it if it was evicted in the
+		 * meantime and this was its last lease. Closing twice has no effect.
+		 */
+		@Override
+		public void close() {
+			boolean release;
+			synchronized (conditions) {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				entry.leases--;
+				release = entry.evicted && entry.leases == 0;
+			}
+			if (release) {
+				factory.release(entry.condition);
+			}
+		}
+	}
+
+	private static final class Entry {
+		private final PointerByReference condition;
+		// Guarded by the conditions map.
+		private int leases;
+		private boolean evicted;
+
+		Entry(PointerByReference condition) {
+			this.condition = condition;
+		}
+	}
+
+	private final int capacity;
+	private final ConditionFactory factory;
+	private final LinkedHashMap<SearchCondition, Entry> conditions;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Constructs a new ConditionCache.
+	 *
+	 * @param capacity The maximum number of conditions kept in the cache.
+	 * @param factory  The factory used to create and release conditions.
+	 * @throws IllegalArgumentException If the capacity is less than one.
+	 */
+	public ConditionCache(int capacity, ConditionFactory factory) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+		}
+		if (factory == null) {
+			throw new NullPointerException("ConditionFactory cannot be null.");
+		}
+		this.capacity = capacity;
+		this.factory = factory;
+		this.conditions = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Leases the condition for the given search condition, building it on a
+	 * cache miss. The lease must be closed, e.g. with try-with-resources, once
+	 * the search using the condition returned.
+	 *
+	 * @param condition The search condition to look up.
+	 * @return The Lease of the built condition.
+	 * @throws AutomationException If the condition could not be created.
+	 */
+	public Lease acquire(SearchCondition condition) throws AutomationException {
+		synchronized (conditions) {
+			Entry cached = conditions.get(condition);
+			if (cached != null) {
+				cached.leases++;
+				hits.incrementAndGet();
+				return new Lease(cached);
+			}
+		}
+
+		misses.incrementAndGet();
+		// Build outside the lock so that a slow COM call does not block other hits.
+		PointerByReference created = factory.create(condition);
+
+		Entry winner;
+		List<PointerByReference> released = new ArrayList<>();
+		synchronized (conditions) {
+			winner = conditions.get(condition);
+			if (winner == null) {
+				winner = new Entry(created);
+				conditions.put(condition, winner);
+				Iterator<Map.Entry<SearchCondition, Entry>> iterator = conditions.entrySet().iterator();
+				while (conditions.size() > capacity && iterator.hasNext()) {
+					Entry evicted = iterator.next().getValue();
+					iterator.remove();
+					evictions.incrementAndGet();
+					if (evict(evicted)) {
+						released.add(evicted.condition);
+					}
+				}
+			} else {
+				// Another thread built the same condition first.
+				released.add(created);
+			}
+			winner.leases++;
+		}
+
+		for (PointerByReference releasedCondition : released) {
+			factory.release(releasedCondition);
+		}
+		return new Lease(winner);
+	}
+
+	/**
+	 * Marks an entry removed from the map as evicted, under the lock.
+	 *
+	 * @return True if it is not leased and can be released now.
+	 */
+	private static boolean evict(Entry entry) {
+		entry.evicted = true;
+		return entry.leases == 0;
+	}
+
+	/**
+	 * Releases all the cached conditions and empties the cache; the leased ones
+	 * are released when their last lease is closed. The hit and miss counters
+	 * are kept.
+	 */
+	public void clear() {
+		List<PointerByReference> released = new ArrayList<>();
+		synchronized (conditions) {
+			for (Entry entry : conditions.values()) {
+				if (evict(entry)) {
+					released.add(entry.condition);
+				}
+			}
+			conditions.clear();
+		}
+		for (PointerByReference condition : released) {
+			factory.release(condition);
+		}
+	}
+
+	/**
+	 * Get the number of conditions currently held in the cache.
+	 *
+	 * @return The cache size.
+	 */
+	public int size() {
+		synchronized (conditions) {
+			return conditions.size();
+		}
+	}
+
+	/**
+	 * Get the maximum number of conditions held in the cache.
+	 *
+	 * @return The cache capacity.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Get the number of lookups served from the cache.
+	 *
+	 * @return The hit count.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Get the number of lookups that had to build a new condition.
+	 *
+	 * @return The miss count.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Get the number of conditions released because the cache was full.
+	 *
+	 * @return The eviction count.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Get the ratio of lookups served from the cache.
+	 *
+	 * @return The hit ratio between 0 and 1, or 0 if there were no lookups.
+	 */
+	public double getHitRatio() {
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	/**
+	 * Resets the hit, miss and eviction counters.
+	 */
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ConditionCache[size=%d/%d, hits=%d, misses=%d, evictions=%d, hitRatio=%.2f]", size(),
+				capacity, getHits(), getMisses(), getEvictions(), getHitRatio());
+	}
+}
@@ -77,4 +77,20 @@ public class Controls {
 		}
 		return result;
 	}
+
+	/**
+	 * Get the ControlType value for the given control type string, failing on an
+	 * unsupported one.
+	 *
+	 * @param controlType The control type string to look up (case-insensitive).
+	 * @return The ControlType value corresponding to the control type string.
+	 * @throws IllegalArgumentException If the control type is not supported.
+	 */
+	public static ControlType parse(String controlType) throws IllegalArgumentException {
+		ControlType result = controlMap.get(controlType.toUpperCase());
+		if (result == null) {
+			throw new IllegalArgumentException("Unsupported Control Type :- " + controlType);
+		}
+		return result;
+	}
 }
\ No newline at end of file
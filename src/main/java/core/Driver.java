@@ -1,43 +1,218 @@
 package core;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.sikuli.script.FindFailed;
 
 import actions.LocatorType;
 import core.By.FindOption;
+import core.backend.AutomationBackend;
+import core.backend.AutomationDispatcher;
+import core.backend.AutomationEvent;
+import core.backend.AutomationEventListener;
+import core.backend.ConfinedBackend;
+import core.backend.SimulatedBackend;
+import core.backend.UIAutomationBackend;
 import exceptions.CustomImageSearchException;
 import exceptions.CustomLocationException;
 import exceptions.CustomOCRFailedException;
 import mmarquee.automation.AutomationException;
 import mmarquee.automation.ControlType;
 import mmarquee.automation.Element;
-import mmarquee.automation.UIAutomation;
-import mmarquee.automation.controls.AutomationBase;
-import mmarquee.automation.controls.ElementBuilder;
-import mmarquee.automation.controls.Panel;
-import mmarquee.automation.controls.Window;
-import mmarquee.uiautomation.TreeScope;
+import utils.Settings;
 
 /**
  * The Driver class provides methods for UI element search and manipulation
- * using UIAutomation and Sikuli. It is responsible for managing the search
- * context, scope, and search attempts. The class also includes utility methods
- * to find Pane and Window elements.
+ * using UIAutomation and Sikuli. A Driver is one session: it holds the
+ * {@link SearchOptions}, search context and search scopes of the test flow using
+ * it, so that several flows can run concurrently in one JVM, each with its own
+ * Driver. Every session also has its own element cache. The automation backend
+ * and the statistics are shared by all sessions. The class also includes
+ * utility methods to find Pane and Window elements.
  */
 public class Driver {
 
-	public static final UIAutomation automation = UIAutomation.getInstance();
-	public static int searchAttempts = 1;
-	public static boolean rootSearch = true;
-	public static int scope = TreeScope.SUBTREE;
+	/**
+	 * The system property selecting the automation backend, "uiautomation" (the
+	 * default) or "simulated".
+	 */
+	public static final String BACKEND_PROPERTY = "automation.backend";
+
+	private static final Logger log = LogManager.getLogger(Driver.class);
+	private static final int ELEMENT_CACHE_SIZE = 256;
+	private static final long ELEMENT_CACHE_TTL = 30_000;
+
+	private static volatile AutomationBackend backend;
+	private static volatile WindowRegistry windowRegistry;
+	private static final ThreadLocal<Long> searchDeadline = new ThreadLocal<>();
+	public static final LookupStatistics lookupStatistics = new LookupStatistics();
+	public static final ScopeStatistics scopeStatistics = new ScopeStatistics();
+	public static final KeywordStatistics keywordStatistics = new KeywordStatistics();
+	public static final SnapshotStatistics snapshotStatistics = new SnapshotStatistics();
+	public static final TreeModelStatistics treeModelStatistics = new TreeModelStatistics();
+	// The open sessions, for the tree change listener; a session that is no
+	// longer used is dropped with its Driver.
+	private static final Set<Driver> sessions = Collections.newSetFromMap(new WeakHashMap<>());
+	// Drops the cached elements and search scopes of closed windows and the
+	// cached elements of removed elements, and the tree snapshots on any change.
+	// The element models only miss elements on a change of the structure; their
+	// window tree models are told what changed, to patch it on the next lookup.
+	private static final AutomationEventListener treeChangeListener = event -> {
+		boolean structural = event.getType() != AutomationEvent.Type.PROPERTY_CHANGED;
+		for (Driver session : getSessions()) {
+			WindowTreeModel tree = session.windowTree;
+			if (tree != null) {
+				tree.onEvent(event);
+			}
+			session.invalidateSnapshot();
+			if (structural) {
+				session.invalidateElementModel();
+			}
+		}
+		boolean closed = event.getType() == AutomationEvent.Type.WINDOW_CLOSED;
+		if ((closed || event.getType() == AutomationEvent.Type.STRUCTURE_CHANGED) && event.getSource() != null) {
+			// The source is a new Element, so the cached elements and the search
+			// scopes are compared with it through the backend.
+			Predicate<Element> source = sameElementAs(event.getSource());
+			for (Driver session : getSessions()) {
+				session.elementCache.invalidate(source);
+				if (closed) {
+					session.removeSearchScopes(source);
+				}
+			}
+		}
+	};
+
+	private final ElementCache elementCache = new ElementCache(ELEMENT_CACHE_SIZE, ELEMENT_CACHE_TTL);
+	private volatile SearchOptions options = SearchOptions.DEFAULT;
+	private volatile Element searchContext;
+	private final Deque<Element> searchScopes = new ArrayDeque<>();
+	private volatile TreeSnapshot snapshot;
+	private volatile ElementModel elementModel;
+	private volatile WindowTreeModel windowTree;
+
+	/**
+	 * Constructs a new Driver session with the default {@link SearchOptions}.
+	 */
+	public Driver() {
+		synchronized (sessions) {
+			sessions.add(this);
+		}
+	}
+
+	private static List<Driver> getSessions() {
+		synchronized (sessions) {
+			return new ArrayList<>(sessions);
+		}
+	}
 
-	private static Element rootElement;
-	public static Element searchContext;
+	/**
+	 * Get the automation backend, creating the one selected by the
+	 * {@value #BACKEND_PROPERTY} system property or the AUTOMATION_BACKEND setting
+	 * on first use.
+	 *
+	 * @return The AutomationBackend used for all searches.
+	 */
+	public static AutomationBackend getBackend() {
+		AutomationBackend current = backend;
+		if (current == null) {
+			synchronized (Driver.class) {
+				if (backend == null) {
+					AutomationBackend created = createBackend(
+							System.getProperty(BACKEND_PROPERTY, Settings.AUTOMATION_BACKEND));
+					created.addEventListener(treeChangeListener);
+					backend = created;
+				}
+				current = backend;
+			}
+		}
+		return current;
+	}
 
-	static {
-		rootElement = automation.getDesktop().getElement();
-		searchContext = rootElement;
+	/**
+	 * Get the registry of the top-level windows of the desktop, creating it for
+	 * the current backend on first use.
+	 *
+	 * @return The WindowRegistry used by the window and pane lookups.
+	 */
+	public static WindowRegistry getWindowRegistry() {
+		WindowRegistry current = windowRegistry;
+		if (current == null) {
+			synchronized (Driver.class) {
+				if (windowRegistry == null) {
+					AutomationBackend automationBackend = getBackend();
+					WindowRegistry created = new WindowRegistry(automationBackend);
+					automationBackend.addEventListener(created);
+					windowRegistry = created;
+				}
+				current = windowRegistry;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Set the automation backend used for all searches. The search context of
+	 * every session is reset to the root element of the new backend, and the
+	 * element cache, the element models, the window registry and the search
+	 * scopes are emptied. The previous backend is not closed.
+	 *
+	 * @param newBackend The AutomationBackend to use.
+	 */
+	public static synchronized void setBackend(AutomationBackend newBackend) {
+		if (newBackend == null) {
+			throw new NullPointerException("AutomationBackend cannot be null.");
+		}
+		if (backend != null) {
+			backend.removeEventListener(treeChangeListener);
+			if (windowRegistry != null) {
+				backend.removeEventListener(windowRegistry);
+			}
+		}
+		newBackend.addEventListener(treeChangeListener);
+		backend = newBackend;
+		windowRegistry = null;
+		for (Driver session : getSessions()) {
+			session.elementCache.clear();
+			session.searchContext = null;
+			session.elementModel = null;
+			session.windowTree = null;
+			session.clearSearchScopes();
+		}
+	}
+
+	/**
+	 * Creates the automation backend with the given name. The UIAutomation
+	 * backend is created on, and confined to, its own {@link AutomationDispatcher}.
+	 *
+	 * @param name The backend name, or null for the default backend.
+	 * @return The new AutomationBackend.
+	 * @throws IllegalArgumentException If there is no backend with the name.
+	 */
+	private static AutomationBackend createBackend(String name) {
+		if (name == null || name.isEmpty() || name.equalsIgnoreCase(UIAutomationBackend.NAME)) {
+			try {
+				return new ConfinedBackend(new AutomationDispatcher(UIAutomationBackend.NAME), UIAutomationBackend::new);
+			} catch (AutomationException e) {
+				throw new IllegalStateException("Could not create the UIAutomation backend.", e);
+			}
+		} else if (name.equalsIgnoreCase(SimulatedBackend.NAME)) {
+			return new SimulatedBackend();
+		}
+		throw new IllegalArgumentException("Unknown automation backend: " + name);
 	}
 
 	/**
@@ -46,25 +221,151 @@ public class Driver {
 	 * @return The root Element representing the desktop.
 	 */
 	public static Element getRootElement() {
-		return rootElement;
+		return getBackend().getRootElement();
+	}
+
+	/**
+	 * Get the element cache of this session, see {@link #findElement(SearchCondition)}.
+	 *
+	 * @return The ElementCache of the lookups of this session.
+	 */
+	public ElementCache getElementCache() {
+		return elementCache;
+	}
+
+	/**
+	 * Drops the cached elements of every session that are, or were searched
+	 * from or in, an element, e.g. a window the keywords closed.
+	 *
+	 * @param element The element that went away.
+	 */
+	public static void invalidateCachedElement(Element element) {
+		Predicate<Element> gone = sameElementAs(element);
+		for (Driver session : getSessions()) {
+			session.elementCache.invalidate(gone);
+		}
+	}
+
+	/**
+	 * Get a check of whether an element is the same UI element as another one,
+	 * by identity or else by {@link AutomationBackend#isSameElement}. Each
+	 * element is compared through the backend once; the check is meant for one
+	 * pass over the caches and scopes, on one thread. An element that cannot be
+	 * compared does not match.
+	 *
+	 * @param element The element to compare with.
+	 * @return The check.
+	 */
+	private static Predicate<Element> sameElementAs(Element element) {
+		AutomationBackend automationBackend = getBackend();
+		Map<Element, Boolean> compared = new IdentityHashMap<>();
+		return candidate -> {
+			if (candidate == null || element == null) {
+				return false;
+			}
+			if (candidate == element) {
+				return true;
+			}
+			return compared.computeIfAbsent(candidate, other -> {
+				try {
+					return automationBackend.isSameElement(element, other);
+				} catch (AutomationException | RuntimeException e) {
+					log.debug("Could not compare " + other + " with " + element + ".", e);
+					return false;
+				}
+			});
+		};
+	}
+
+	/**
+	 * Get the search options of this session.
+	 *
+	 * @return The SearchOptions used by the lookups of this session.
+	 */
+	public SearchOptions getOptions() {
+		return options;
+	}
+
+	/**
+	 * Set the search options of this session.
+	 *
+	 * @param options The SearchOptions to be used by the lookups of this session.
+	 */
+	public void setOptions(SearchOptions options) {
+		if (options == null) {
+			throw new NullPointerException("SearchOptions cannot be null.");
+		}
+		this.options = options;
 	}
 
 	/**
 	 * Get the current search context element.
 	 *
-	 * @return The search context Element.
+	 * @return The search context Element, or the root element if none was set.
 	 */
-	public static Element getSearchContext() {
-		return searchContext;
+	public Element getSearchContext() {
+		Element context = searchContext;
+		return context != null ? context : getRootElement();
 	}
 
 	/**
-	 * Set the number of search attempts for By class.
+	 * Get the retry policy of the element lookups.
+	 *
+	 * @return The RetryPolicy used by the By class.
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return options.getRetryPolicy();
+	}
+
+	/**
+	 * Set the retry policy of the element lookups.
+	 *
+	 * @param policy The RetryPolicy to be used by the By class.
+	 */
+	public void setRetryPolicy(RetryPolicy policy) {
+		options = options.withRetryPolicy(policy);
+	}
+
+	/**
+	 * Starts a deadline for the element lookups of the current thread. Until the
+	 * deadline is cleared, lookups retry until the deadline instead of for
+	 * {@link SearchOptions#getSearchAttempts()} attempts.
+	 *
+	 * @param timeoutMillis The time from now to the deadline, in milliseconds.
+	 */
+	public static void startSearchDeadline(long timeoutMillis) {
+		searchDeadline.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMillis)));
+	}
+
+	/**
+	 * Clears the lookup deadline of the current thread.
+	 */
+	public static void clearSearchDeadline() {
+		searchDeadline.remove();
+	}
+
+	/**
+	 * Get the time left until the lookup deadline of the current thread.
+	 *
+	 * @return The remaining time in milliseconds, 0 if the deadline has passed,
+	 *         or {@link RetryPolicy#NO_DEADLINE} if there is no deadline.
+	 */
+	public static long getRemainingSearchMillis() {
+		Long deadline = searchDeadline.get();
+		if (deadline == null) {
+			return RetryPolicy.NO_DEADLINE;
+		}
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+	}
+
+	/**
+	 * Set the number of search attempts for By class. The attempts only limit
+	 * lookups without a deadline.
 	 *
 	 * @param searchAttempts The number of search attempts to set.
 	 */
 	public void setSearchAttempts(int searchAttempts) {
-		Driver.searchAttempts = searchAttempts;
+		options = options.withSearchAttempts(searchAttempts);
 	}
 
 	/**
@@ -74,7 +375,7 @@ public class Driver {
 	 *                     false otherwise.
 	 */
 	public void setRootSearch(boolean searchStatus) {
-		Driver.rootSearch = searchStatus;
+		options = options.withRootSearch(searchStatus);
 	}
 
 	/**
@@ -84,7 +385,19 @@ public class Driver {
 	 *              TreeScope.CHILDREN).
 	 */
 	public void setTreeScope(int scope) {
-		Driver.scope = scope;
+		options = options.withScope(scope);
+	}
+
+	/**
+	 * Set how the tree is searched, see {@link SearchMode}.
+	 *
+	 * @param mode  The search mode.
+	 * @param depth The number of levels below the search root the DEPTH_LIMITED
+	 *              and BREADTH_FIRST modes walk.
+	 * @throws IllegalArgumentException If the depth is less than one.
+	 */
+	public void setSearchMode(SearchMode mode, int depth) {
+		options = options.withSearchMode(mode, depth);
 	}
 
 	/**
@@ -93,29 +406,185 @@ public class Driver {
 	 * @param element The Element to set as the search context.
 	 */
 	public void setSearchContext(Element element) {
-		Driver.searchContext = element;
+		this.searchContext = element;
 	}
 
+	/**
+	 * Get the current search scope, the element lookups from the root search
+	 * first before falling back to the root element, e.g. the window the keywords
+	 * act on.
+	 *
+	 * @return The innermost search scope, or null if there is none.
+	 */
+	public Element getSearchScope() {
+		synchronized (searchScopes) {
+			return searchScopes.peek();
+		}
+	}
 
-	private boolean checkNameCondition(Element element, String name)
-	{
-		if(element == null)
-			return false;
-		else
-		{
-			try {
-				if(element.getName().contains(name))
-				{
-					return true;
+	/**
+	 * Pushes a search scope on top of the current ones, e.g. a pane inside the
+	 * window scope.
+	 *
+	 * @param element The Element to search first.
+	 */
+	public void pushSearchScope(Element element) {
+		if (element == null) {
+			throw new NullPointerException("Search scope cannot be null.");
+		}
+		synchronized (searchScopes) {
+			searchScopes.push(element);
+		}
+	}
+
+	/**
+	 * Pops the innermost search scope, going back to the scope below it.
+	 *
+	 * @return The popped Element, or null if there was no search scope.
+	 */
+	public Element popSearchScope() {
+		synchronized (searchScopes) {
+			return searchScopes.poll();
+		}
+	}
+
+	/**
+	 * Replaces all the search scopes with the given element, e.g. when the
+	 * keywords move to another window.
+	 *
+	 * @param element The Element to search first.
+	 */
+	public void setSearchScope(Element element) {
+		if (element == null) {
+			throw new NullPointerException("Search scope cannot be null.");
+		}
+		synchronized (searchScopes) {
+			searchScopes.clear();
+			searchScopes.push(element);
+		}
+	}
+
+	/**
+	 * Removes an element from the search scopes, e.g. when its window is closed.
+	 *
+	 * @param element The Element that went away.
+	 */
+	public void removeSearchScope(Element element) {
+		removeSearchScopes(sameElementAs(element));
+	}
+
+	private void removeSearchScopes(Predicate<Element> matches) {
+		synchronized (searchScopes) {
+			Iterator<Element> iterator = searchScopes.iterator();
+			while (iterator.hasNext()) {
+				if (matches.test(iterator.next())) {
+					iterator.remove();
 				}
-			} catch (AutomationException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
 			}
 		}
-		return false;
 	}
-	
+
+	/**
+	 * Removes all the search scopes, so that lookups search from the root element
+	 * only.
+	 */
+	public void clearSearchScopes() {
+		synchronized (searchScopes) {
+			searchScopes.clear();
+		}
+	}
+
+	/**
+	 * Captures the tree under the search context into a {@link TreeSnapshot},
+	 * which the assertions of this session query until it is invalidated.
+	 *
+	 * @return The TreeSnapshot.
+	 * @throws AutomationException If the tree could not be read.
+	 */
+	public TreeSnapshot takeSnapshot() throws AutomationException {
+		long start = System.nanoTime();
+		TreeSnapshot captured = TreeSnapshot.capture(getBackend(), getSearchContext());
+		snapshotStatistics.recordCapture(captured.size(), System.nanoTime() - start);
+		snapshot = captured;
+		return captured;
+	}
+
+	/**
+	 * Get the tree snapshot of this session.
+	 *
+	 * @return The TreeSnapshot, or null if there is none or it was invalidated.
+	 */
+	public TreeSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Drops the tree snapshot of this session, e.g. before an action or when the
+	 * backend reports a change of the tree.
+	 */
+	public void invalidateSnapshot() {
+		if (snapshot != null) {
+			snapshot = null;
+			snapshotStatistics.recordInvalidation();
+		}
+	}
+
+	/**
+	 * Captures the tree under the search context into an indexed
+	 * {@link ElementModel}, which the lookups of this session resolve from before
+	 * searching the live tree, until the structure of the tree changes. The tree
+	 * is kept in a {@link WindowTreeModel}, so that the model of the same search
+	 * context is built again from a refresh of the changed subtrees only, also
+	 * when a lookup finds the model dropped.
+	 *
+	 * @return The ElementModel.
+	 * @throws AutomationException If the tree could not be read.
+	 */
+	public ElementModel buildElementModel() throws AutomationException {
+		long start = System.nanoTime();
+		Element context = getSearchContext();
+		WindowTreeModel tree = windowTree;
+		if (tree == null || tree.getRoot() != context) {
+			tree = new WindowTreeModel(getBackend(), context);
+			windowTree = tree;
+		} else {
+			treeModelStatistics.recordRefresh(tree.refresh());
+		}
+		ElementModel built = new ElementModel(tree.toSnapshot());
+		snapshotStatistics.recordCapture(built.size(), System.nanoTime() - start);
+		elementModel = built;
+		return built;
+	}
+
+	/**
+	 * Get the window tree model of this session.
+	 *
+	 * @return The WindowTreeModel, or null if no element model was built.
+	 */
+	public WindowTreeModel getWindowTree() {
+		return windowTree;
+	}
+
+	/**
+	 * Get the element model of this session.
+	 *
+	 * @return The ElementModel, or null if there is none or it was invalidated.
+	 */
+	public ElementModel getElementModel() {
+		return elementModel;
+	}
+
+	/**
+	 * Drops the element model of this session, e.g. when the backend reports a
+	 * change of the structure of the tree.
+	 */
+	public void invalidateElementModel() {
+		if (elementModel != null) {
+			elementModel = null;
+			snapshotStatistics.recordInvalidation();
+		}
+	}
+
 	/**
 	 * Finds a window element with the given name.
 	 *
@@ -123,40 +592,9 @@ public class Driver {
 	 * @return The Element representing the found window, or null if not found.
 	 */
 	public Element getWindow(String name) {
-	    try {
-	        List<Window> windows = automation.getDesktopWindows();
-
-	        for (int attempt = 0; attempt < 5; attempt++) {
-	            Window window = windows.get(attempt);
-	            Element winElement = findWindowElement(window, name);
-	            if (winElement != null) {
-	                winElement.setFocus();
-	                return winElement;
-	            }
-	        }
-	    } catch (AutomationException e) {
-	        // Log or handle AutomationException specifically
-	        e.printStackTrace();
-	    }
-	    return null;
-	}
-
-	private Element findWindowElement(Window window, String name) {
-	    Element windowElement = window.getElement();
-	    if (checkNameCondition(windowElement, name)) {
-	        return windowElement;
-	    }
-
-	    Window child = getChildWindow(window);
-	    if (child != null) {
-	        Element childElement = child.getElement();
-	        if (checkNameCondition(childElement, name)) {
-	            return childElement;
-	        }
-	    }
-	    return null;
-	}
-	
+		return findDesktopElement(ControlType.Window, name);
+	}
+
 	/**
 	 * Finds a pane element with the given name.
 	 *
@@ -164,90 +602,40 @@ public class Driver {
 	 * @return The Element representing the found pane, or null if not found.
 	 */
 	public Element getPane(String name) {
-	    try {
-	    	List<Panel> panes = automation.getDesktopObjects();
-
-	        for (int attempt = 0; attempt < 5; attempt++) {
-	            Panel window = panes.get(attempt);
-	            Element winElement = findPaneElement(window, name);
-	            if (winElement != null) {
-	                winElement.setFocus();
-	                return winElement;
-	            }
-	        }
-	    } catch (AutomationException e) {
-	        // Log or handle AutomationException specifically
-	        e.printStackTrace();
-	    }
-	    return null;
-	}
-
-	private Element findPaneElement(Panel pane, String name) {
-	    Element paneElement = pane.getElement();
-	    if (checkNameCondition(paneElement, name)) {
-	        return paneElement;
-	    }
-
-	    Panel child = getChildPane(pane);
-	    if (child != null) {
-	        Element childElement = child.getElement();
-	        if (checkNameCondition(childElement, name)) {
-	            return childElement;
-	        }
-	    }
-	    return null;
-	}
-
-	/**
-	 * Gets the child window of the given window.
-	 *
-	 * @param window The parent window to get the child window from.
-	 * @return The child window Element, or null if not found or an error occurred.
-	 */
-	private Window getChildWindow(Window window) {
-		Window winElement = null;
-		try {
-			List<AutomationBase> childWindows = window.getChildren(false);
-			if (!childWindows.isEmpty()) {
-				Element element = childWindows.get(0).getElement();
-				winElement = new Window(new ElementBuilder(element));
-			}
-		} catch (AutomationException e) {
-			// Log or handle AutomationException specifically
-			e.printStackTrace();
-		} catch (Exception e) {
-			// Log or handle other exceptions specifically
-			e.printStackTrace();
-		}
-		return winElement;
+		return findDesktopElement(ControlType.Pane, name);
 	}
-	
+
 	/**
-	 * Gets the child pane of the given pane.
+	 * Finds a top-level element of the desktop, or its first child, with the given
+	 * title in the {@link #getWindowRegistry() window registry}, and sets the
+	 * focus to it. A window that cannot take the focus, e.g. because it closed
+	 * since the last enumeration, is not found and the registry enumerates again
+	 * on the next lookup.
 	 *
-	 * @param pane The parent pane to get the child pane from.
-	 * @return The child pane Element, or null if not found or an error occurred.
+	 * @param controlType The control type of the top-level elements.
+	 * @param name        The title of the element to find, optionally starting
+	 *                    with a match mode.
+	 * @return The found Element, or null if not found.
 	 */
-	public Panel getChildPane(Panel pane) {
-		Panel paneElement = null;
+	private Element findDesktopElement(ControlType controlType, String name) {
+		WindowRegistry registry = getWindowRegistry();
 		try {
-			List<AutomationBase> childPanes = pane.getChildren(false);
-			if (!childPanes.isEmpty()) {
-				Element element = childPanes.get(0).getElement();
-				paneElement = new Panel(new ElementBuilder(element));
+			Element element = registry.find(controlType, name);
+			if (element != null) {
+				getBackend().setFocus(element);
 			}
+			return element;
 		} catch (AutomationException e) {
-			// Log or handle AutomationException specifically
-			e.printStackTrace();
-		} catch (Exception e) {
-			// Log or handle other exceptions specifically
-			e.printStackTrace();
+			log.debug("Desktop lookup of " + controlType + " " + name + " failed.", e);
+			registry.invalidate();
 		}
-		return paneElement;
+		return null;
 	}
 
 	/**
-	 * Returns a UIElement for the given Element.
+	 * Returns a UIElement for the given Element. With the PREFETCH_PROPERTIES
+	 * setting, the commonly used properties of the element are fetched with it in
+	 * one call, see {@link UIElement#prefetch(Element)}.
 	 * 
 	 * @param element The Element for which to get the UIElement.
 	 * @return The UIElement representing the given Element.
@@ -255,12 +643,19 @@ public class Driver {
 	 * @throws AutomationException  If an error occurs during UIElement creation.
 	 */
 	public UIElement getUIElement(Element element) throws NullPointerException, AutomationException {
-		UIElement uiElement = new UIElement(element);
-		return uiElement;
+		if (element == null) {
+			throw new NullPointerException("Element cannot be null.");
+		}
+		if (Settings.PREFETCH_PROPERTIES) {
+			return UIElement.prefetch(element);
+		}
+		return new UIElement(element);
 	}
 
 	/**
-	 * Finds an element with the given locator and value.
+	 * Finds an element with the given locator and value. An element found by an
+	 * earlier lookup from the same search context is reused if it still matches,
+	 * see {@link #getElementCache()}.
 	 * 
 	 * @param locatorType The type of locator to use for finding the element.
 	 * @param controlType The ControlType of the element to find.
@@ -277,42 +672,199 @@ public class Driver {
 		if (locatorType == null || controlType == null || value == null) {
 			throw new NullPointerException("LocatorType, ControlType, and value cannot be null.");
 		}
+		return findElement(new SearchCondition(locatorType, controlType, value));
+	}
 
-		Element element = null;
+	/**
+	 * Finds an element with a prebuilt search condition, e.g. the one of a
+	 * compiled locator. An element found by an earlier lookup from the same
+	 * search context and search scope is reused if it still matches, see
+	 * {@link #getElementCache()}, on a backend that reports closed windows.
+	 *
+	 * @param condition The search condition, with a locator type and value.
+	 * @return The Element representing the found element.
+	 * @throws NullPointerException     If the condition is null or matches on the
+	 *                                  control type only.
+	 * @throws AutomationException      If an error occurs during element search.
+	 * @throws IllegalArgumentException If the locator type of the condition is not
+	 *                                  supported.
+	 */
+	public Element findElement(SearchCondition condition) throws NullPointerException, AutomationException {
+		if (condition == null || condition.isControlTypeOnly()) {
+			throw new NullPointerException("LocatorType, ControlType, and value cannot be null.");
+		}
+		LocatorType locatorType = condition.getLocatorType();
+		ControlType controlType = condition.getControlType();
+		String value = condition.getValue();
+
+		Element context = options.isRootSearch() ? getRootElement() : getSearchContext();
+		// Only a root search searches the scope first, see By.
+		Element scope = options.isRootSearch() ? getSearchScope() : null;
+		boolean cached = isElementCacheUsable();
+		Element element = cached ? elementCache.get(condition, context, scope, Driver::stillMatches) : null;
+		if (element != null) {
+			return element;
+		}
 
+		long start = System.nanoTime();
+		element = findInModel(condition, context, scope);
+		if (element != null) {
+			if (cached) {
+				elementCache.put(condition, context, scope, element, System.nanoTime() - start);
+			}
+			return element;
+		}
 		switch (locatorType) {
 		case NAME:
-			element = By.findElementsByName(controlType, value, FindOption.FIRST).get(0);
+			element = By.findElementsByName(this, controlType, value, FindOption.FIRST).get(0);
 			break;
 		case ID:
-			element = By.findElementsById(controlType, value, FindOption.FIRST).get(0);
+			element = By.findElementsById(this, controlType, value, FindOption.FIRST).get(0);
 			break;
 		case TEXT:
-			element = By.findElementsByText(controlType, value, FindOption.FIRST).get(0);
+			element = By.findElementsByText(this, controlType, value, FindOption.FIRST).get(0);
 			break;
 		case VALUE:
-			element = By.findElementsByValue(controlType, value, FindOption.FIRST).get(0);
+			element = By.findElementsByValue(this, controlType, value, FindOption.FIRST).get(0);
 			break;
 		case PARTIALNAME:
-			element = By.findElementsByPartialName(controlType, value, FindOption.FIRST).get(0);
+			element = By.findElementsByPartialName(this, controlType, value, FindOption.FIRST).get(0);
 			break;
 		case PARTIALID:
-			element = By.findElementsByPartialId(controlType, value, FindOption.FIRST).get(0);
+			element = By.findElementsByPartialId(this, controlType, value, FindOption.FIRST).get(0);
 			break;
 		case PARTIALTEXT:
-			element = By.findElementsByPartialText(controlType, value, FindOption.FIRST).get(0);
+			element = By.findElementsByPartialText(this, controlType, value, FindOption.FIRST).get(0);
 			break;
 		case PARTIALVALUE:
-			element = By.findElementsByPartialValue(controlType, value, FindOption.FIRST).get(0);
+			element = By.findElementsByPartialValue(this, controlType, value, FindOption.FIRST).get(0);
 			break;
 		default:
 			// Log the error at the caller's level with more context.
 			throw new IllegalArgumentException("Locator type not exist: " + locatorType);
 		}
 
+		if (cached) {
+			elementCache.put(condition, context, scope, element, System.nanoTime() - start);
+		}
 		return element;
 	}
 
+	/**
+	 * Checks whether the lookups may use the element cache. The cache relies on
+	 * the backend reporting closed windows: the element of a closed window may
+	 * still answer the one property read of the validation, and would be handed
+	 * out until it expires. On other backends the cache is only used if the
+	 * ELEMENT_CACHE_WITHOUT_EVENTS setting asks for it.
+	 *
+	 * @return True if the element cache may be used.
+	 */
+	private static boolean isElementCacheUsable() {
+		return Settings.ELEMENT_CACHE_WITHOUT_EVENTS || getBackend().supportsEvents(AutomationEvent.Type.WINDOW_CLOSED);
+	}
+
+	/**
+	 * Finds an element in the element model of this session, in the same order as
+	 * the live search: for a root search under the search scope first, then under
+	 * the element the lookup searches from. The element is checked against the
+	 * live tree like a cached one, and a model it no longer matches in is dropped.
+	 *
+	 * @param condition The search condition.
+	 * @param context   The element the lookup searches from.
+	 * @param scope     The search scope the lookup searches first, or null.
+	 * @return The Element, or null if the model cannot answer the lookup.
+	 */
+	private Element findInModel(SearchCondition condition, Element context, Element scope) {
+		ElementModel model = getCurrentElementModel();
+		if (model == null) {
+			return null;
+		}
+		long start = System.nanoTime();
+		int node = -1;
+		int scoped = scope == null ? -1 : model.getNode(scope);
+		if (scoped >= 0) {
+			node = model.find(condition, scoped);
+		}
+		int within = model.getNode(context);
+		if (node < 0 && within >= 0) {
+			node = model.find(condition, within);
+		}
+		if (scoped < 0 && within < 0) {
+			return null;
+		}
+		if (node < 0) {
+			// The element may have been added since the capture.
+			snapshotStatistics.recordFallback();
+			return null;
+		}
+		Element element = model.getElement(node);
+		try {
+			if (stillMatches(condition, element)) {
+				snapshotStatistics.recordAnswer(System.nanoTime() - start);
+				return element;
+			}
+		} catch (AutomationException e) {
+			// The element no longer exists.
+		}
+		snapshotStatistics.recordFallback();
+		invalidateElementModel();
+		WindowTreeModel tree = windowTree;
+		if (tree != null) {
+			tree.invalidate();
+		}
+		return null;
+	}
+
+	/**
+	 * Get the element model of this session, building it again from the window
+	 * tree model if it was dropped while the search context stayed the same.
+	 *
+	 * @return The ElementModel, or null if there is none.
+	 */
+	private ElementModel getCurrentElementModel() {
+		ElementModel model = elementModel;
+		WindowTreeModel tree = windowTree;
+		if (model != null || tree == null) {
+			return model;
+		}
+		if (tree.getRoot() != getSearchContext()) {
+			windowTree = null;
+			return null;
+		}
+		try {
+			return buildElementModel();
+		} catch (AutomationException e) {
+			// The window went away; the lookup searches live.
+			windowTree = null;
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether a cached element still matches its locator, with one read of
+	 * the located property. The read fails if the element no longer exists.
+	 *
+	 * @param condition The locator the element was found with.
+	 * @param element   The cached element.
+	 * @return True if the element still matches.
+	 * @throws AutomationException If the property could not be read.
+	 */
+	private static boolean stillMatches(SearchCondition condition, Element element) throws AutomationException {
+		LocatorType locatorType = condition.getLocatorType();
+		switch (locatorType) {
+		case NAME:
+		case ID:
+		case TEXT:
+		case VALUE:
+			Object current = getBackend().getPropertyValue(element, condition.getProperty());
+			return current != null && condition.getValue().equals(current.toString());
+		default:
+			PartialMatcher matcher = PartialMatcher.forLocator(locatorType, condition.getValue());
+			Object partial = getBackend().getPropertyValue(element, matcher.getProperty());
+			return partial != null && matcher.matches(partial.toString());
+		}
+	}
+
 	/**
 	 * Finds elements with the given locator and value.
 	 * 
@@ -336,28 +888,28 @@ public class Driver {
 
 		switch (locatorType) {
 		case NAME:
-			elements = By.findElementsByName(controlType, value, FindOption.ALL);
+			elements = By.findElementsByName(this, controlType, value, FindOption.ALL);
 			break;
 		case ID:
-			elements = By.findElementsById(controlType, value, FindOption.ALL);
+			elements = By.findElementsById(this, controlType, value, FindOption.ALL);
 			break;
 		case TEXT:
-			elements = By.findElementsByText(controlType, value, FindOption.ALL);
+			elements = By.findElementsByText(this, controlType, value, FindOption.ALL);
 			break;
 		case VALUE:
-			elements = By.findElementsByValue(controlType, value, FindOption.ALL);
+			elements = By.findElementsByValue(this, controlType, value, FindOption.ALL);
 			break;
 		case PARTIALNAME:
-			elements = By.findElementsByPartialName(controlType, value, FindOption.ALL);
+			elements = By.findElementsByPartialName(this, controlType, value, FindOption.ALL);
 			break;
 		case PARTIALID:
-			elements = By.findElementsByPartialId(controlType, value, FindOption.ALL);
+			elements = By.findElementsByPartialId(this, controlType, value, FindOption.ALL);
 			break;
 		case PARTIALTEXT:
-			elements = By.findElementsByPartialText(controlType, value, FindOption.ALL);
+			elements = By.findElementsByPartialText(this, controlType, value, FindOption.ALL);
 			break;
 		case PARTIALVALUE:
-			elements = By.findElementsByPartialValue(controlType, value, FindOption.ALL);
+			elements = By.findElementsByPartialValue(this, controlType, value, FindOption.ALL);
 			break;
 		default:
 			// Log the error at the caller's level with more context.
@@ -0,0 +1,384 @@
+package core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+
+/**
+ * The ElementCache class keeps the elements found by earlier lookups, keyed by
+ * the locator triple, the element the search started from and the search scope
+ * searched first, so that a step acting on the element found one step earlier
+ * does not search the tree again, and a lookup in another scope does not get
+ * the element of the previous one.
+ *
+ * A cached element is only handed out after a cheap check by the caller's
+ * {@link Validator}, typically one property read, which tells whether the
+ * element still exists and still matches. Entries expire after a time to live,
+ * the least recently used entry is evicted when the cache is full, and entries
+ * can be invalidated when their element or search context goes away.
+ *
+ * The cache is thread-safe. The validation runs outside the lock.
+ */
+public class ElementCache {
+
+	/**
+	 * Checks whether a cached element can still be used.
+	 */
+	@FunctionalInterface
+	public interface Validator {
+
+		/**
+		 * Checks a cached element against the condition it was found with.
+		 *
+		 * @param condition The search condition of the lookup.
+		 * @param element   The cached element.
+		 * @return True if the element still exists and still matches.
+		 * @throws AutomationException If the element could not be read, which
+		 *                             counts as stale.
+		 */
+		boolean isValid(SearchCondition condition, Element element) throws AutomationException;
+	}
+
+	private static final class Key {
+		private final SearchCondition condition;
+		private final Element context;
+		private final Element scope;
+
+		Key(SearchCondition condition, Element context, Element scope) {
+			this.condition = condition;
+			this.context = context;
+			this.scope = scope;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			// Elements are compared by identity; the context and scope are the
+			// same objects for as long as they are searched.
+			return context == key.context && scope == key.scope && condition.equals(key.condition);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * condition.hashCode() + System.identityHashCode(context)) + System.identityHashCode(scope);
+		}
+	}
+
+	private static final class Entry {
+		private final Element element;
+		private final long expiresAt;
+
+		Entry(Element element, long expiresAt) {
+			this.element = element;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final int capacity;
+	private final long ttlNanos;
+	private final LinkedHashMap<Key, Entry> entries;
+	private volatile boolean enabled = true;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong staleHits = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	private final AtomicLong searches = new AtomicLong();
+	private final AtomicLong searchNanos = new AtomicLong();
+	private final AtomicLong validationNanos = new AtomicLong();
+
+	/**
+	 * Constructs a new ElementCache.
+	 *
+	 * @param capacity  The maximum number of elements kept in the cache.
+	 * @param ttlMillis The time an element is kept after it was found, in
+	 *                  milliseconds.
+	 * @throws IllegalArgumentException If the capacity or time to live is less
+	 *                                  than one.
+	 */
+	public ElementCache(int capacity, long ttlMillis) {
+		if (capacity < 1 || ttlMillis < 1) {
+			throw new IllegalArgumentException("Invalid element cache: capacity=" + capacity + ", ttl=" + ttlMillis
+					+ "ms");
+		}
+		this.capacity = capacity;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Returns the cached element for a lookup without a search scope if it is
+	 * still valid.
+	 *
+	 * @param condition The search condition of the lookup.
+	 * @param context   The element the search starts from.
+	 * @param validator The check of the cached element.
+	 * @return The cached element, or null if the lookup has to search.
+	 */
+	public Element get(SearchCondition condition, Element context, Validator validator) {
+		return get(condition, context, null, validator);
+	}
+
+	/**
+	 * Returns the cached element for a lookup if it is still valid. Expired and
+	 * stale entries are removed.
+	 *
+	 * @param condition The search condition of the lookup.
+	 * @param context   The element the search starts from.
+	 * @param scope     The search scope searched first, or null if there is none.
+	 * @param validator The check of the cached element.
+	 * @return The cached element, or null if the lookup has to search.
+	 */
+	public Element get(SearchCondition condition, Element context, Element scope, Validator validator) {
+		if (!enabled) {
+			return null;
+		}
+		Key key = new Key(condition, context, scope);
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		long now = System.nanoTime();
+		if (now - entry.expiresAt >= 0) {
+			remove(key, entry);
+			expirations.incrementAndGet();
+			misses.incrementAndGet();
+			return null;
+		}
+
+		boolean valid;
+		try {
+			valid = validator.isValid(condition, entry.element);
+		} catch (AutomationException | RuntimeException e) {
+			valid = false;
+		}
+		validationNanos.addAndGet(System.nanoTime() - now);
+		if (!valid) {
+			remove(key, entry);
+			staleHits.incrementAndGet();
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.element;
+	}
+
+	/**
+	 * Adds the element found by a lookup without a search scope.
+	 *
+	 * @param condition   The search condition of the lookup.
+	 * @param context     The element the search started from.
+	 * @param element     The element found.
+	 * @param searchNanos The time the search took, in nanoseconds, used to
+	 *                    estimate the time the cache saves.
+	 */
+	public void put(SearchCondition condition, Element context, Element element, long searchNanos) {
+		put(condition, context, null, element, searchNanos);
+	}
+
+	/**
+	 * Adds the element found by a lookup.
+	 *
+	 * @param condition   The search condition of the lookup.
+	 * @param context     The element the search started from.
+	 * @param scope       The search scope searched first, or null if there was
+	 *                    none.
+	 * @param element     The element found.
+	 * @param searchNanos The time the search took, in nanoseconds, used to
+	 *                    estimate the time the cache saves.
+	 */
+	public void put(SearchCondition condition, Element context, Element scope, Element element, long searchNanos) {
+		searches.incrementAndGet();
+		this.searchNanos.addAndGet(searchNanos);
+		if (!enabled || element == null) {
+			return;
+		}
+		synchronized (entries) {
+			entries.put(new Key(condition, context, scope), new Entry(element, System.nanoTime() + ttlNanos));
+			Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+			while (entries.size() > capacity && iterator.hasNext()) {
+				iterator.next();
+				iterator.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private void remove(Key key, Entry entry) {
+		synchronized (entries) {
+			if (entries.get(key) == entry) {
+				entries.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Removes the entries of an element, and the entries of the lookups that
+	 * started from it or searched it first, e.g. when the element is a window
+	 * being closed.
+	 *
+	 * @param element The element that went away.
+	 */
+	public void invalidate(Element element) {
+		invalidate(candidate -> candidate == element);
+	}
+
+	/**
+	 * Removes the entries whose element, search context or search scope matches,
+	 * e.g. is the same UI element as a window being closed, which the source of
+	 * its event is not identical to. The check runs under the lock of the cache.
+	 *
+	 * @param matches The check of the elements that went away; it is not called
+	 *                for a missing context or scope.
+	 */
+	public void invalidate(Predicate<Element> matches) {
+		synchronized (entries) {
+			Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<Key, Entry> next = iterator.next();
+				Key key = next.getKey();
+				if (matches.test(next.getValue().element) || key.context != null && matches.test(key.context)
+						|| key.scope != null && matches.test(key.scope)) {
+					iterator.remove();
+					invalidations.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all the entries. The statistics are kept.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			invalidations.addAndGet(entries.size());
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Sets whether the cache is used. A disabled cache is emptied and hands out
+	 * nothing.
+	 *
+	 * @param enabled True to use the cache.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled) {
+			clear();
+		}
+	}
+
+	/**
+	 * Checks whether the cache is used.
+	 *
+	 * @return True if the cache is enabled.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Get the number of elements currently held in the cache.
+	 *
+	 * @return The cache size.
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Get the number of lookups served from the cache.
+	 *
+	 * @return The hit count.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Get the number of lookups that had to search, including the stale and
+	 * expired entries.
+	 *
+	 * @return The miss count.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Get the number of cached elements that failed the validation.
+	 *
+	 * @return The stale hit count.
+	 */
+	public long getStaleHits() {
+		return staleHits.get();
+	}
+
+	/**
+	 * Get the ratio of lookups served from the cache.
+	 *
+	 * @return The hit ratio between 0 and 1, or 0 if there were no lookups.
+	 */
+	public double getHitRatio() {
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	/**
+	 * Get an estimate of the search time saved by the cache: the hits times the
+	 * average search time, less the time spent validating.
+	 *
+	 * @return The saved time in milliseconds.
+	 */
+	public long getSavedMillis() {
+		long searchCount = searches.get();
+		if (searchCount == 0) {
+			return 0;
+		}
+		long saved = hits.get() * (searchNanos.get() / searchCount) - validationNanos.get();
+		return TimeUnit.NANOSECONDS.toMillis(saved);
+	}
+
+	/**
+	 * Resets the statistics.
+	 */
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		staleHits.set(0);
+		expirations.set(0);
+		evictions.set(0);
+		invalidations.set(0);
+		searches.set(0);
+		searchNanos.set(0);
+		validationNanos.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"ElementCache[size=%d/%d, hits=%d, misses=%d, staleHits=%d, expired=%d, evictions=%d, invalidated=%d, hitRatio=%.2f, saved=%d ms]",
+				size(), capacity, getHits(), getMisses(), getStaleHits(), expirations.get(), evictions.get(),
+				invalidations.get(), getHitRatio(), getSavedMillis());
+	}
+}
@@ -0,0 +1,445 @@
+package core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import actions.LocatorType;
+import core.PartialMatcher.MatchMode;
+import core.backend.AutomationBackend;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+
+/**
+ * The ElementModel class indexes a {@link TreeSnapshot} of a window, so that
+ * the lookups of the Driver resolve in memory instead of searching the live
+ * tree. For each string property, Name, AutomationId, ClassName, HelpText and
+ * value, it has:
+ * <ul>
+ * <li>a hash index from each value to the nodes with that value;</li>
+ * <li>the values in sorted order, and sorted by their reversed text, for the
+ * prefix and suffix partial locators;</li>
+ * <li>a trigram index from every three characters to the values containing
+ * them, for the contains partial locators.</li>
+ * </ul>
+ * and a hash index from each control type to its nodes. All the node lists
+ * are in tree order, so the first node of a list in the range of a subtree is
+ * the first match of a FindFirst in that subtree.
+ *
+ * A contains locator with a value of at least {@value #GRAM} characters only
+ * checks the values holding all its trigrams; shorter values and regular
+ * expressions check every value of the property, which is still far fewer
+ * than the nodes.
+ *
+ * The model does not follow the application: the Driver checks every element
+ * it returns against the live tree and drops a model that is out of date.
+ */
+public final class ElementModel {
+
+	/**
+	 * The length of the indexed n-grams.
+	 */
+	public static final int GRAM = 3;
+
+	private static final int[] EMPTY = new int[0];
+	// The candidate values at which the intersection of trigrams stops.
+	private static final int FEW_CANDIDATES = 8;
+	// The string properties with a value index.
+	private static final PropertyID[] INDEXED = { PropertyID.Name, PropertyID.AutomationId, PropertyID.ClassName,
+			PropertyID.HelpText, PropertyID.LegacyIAccessibleValue };
+
+	private final TreeSnapshot snapshot;
+	private final Map<PropertyID, ValueIndex> valueIndexes = new HashMap<>();
+	private final Map<Integer, int[]> controlTypeIndex = new HashMap<>();
+	private volatile Map<Element, Integer> nodes;
+
+	/**
+	 * Constructs a new ElementModel indexing a snapshot.
+	 *
+	 * @param snapshot The snapshot to index.
+	 */
+	public ElementModel(TreeSnapshot snapshot) {
+		this.snapshot = snapshot;
+		for (PropertyID property : INDEXED) {
+			valueIndexes.put(property, new ValueIndex(snapshot, snapshot.getColumn(property)));
+		}
+
+		Map<Integer, IntList> controlTypes = new HashMap<>();
+		for (int node = 0; node < snapshot.size(); node++) {
+			controlTypes.computeIfAbsent(snapshot.getControlTypeValue(node), key -> new IntList()).add(node);
+		}
+		for (Map.Entry<Integer, IntList> entry : controlTypes.entrySet()) {
+			controlTypeIndex.put(entry.getKey(), entry.getValue().toArray());
+		}
+	}
+
+	/**
+	 * Captures the tree under an element and indexes it.
+	 *
+	 * @param backend The backend to read with.
+	 * @param root    The element whose subtree to capture, normally a window.
+	 * @return The ElementModel.
+	 * @throws AutomationException If the tree could not be read.
+	 */
+	public static ElementModel capture(AutomationBackend backend, Element root) throws AutomationException {
+		return new ElementModel(TreeSnapshot.capture(backend, root));
+	}
+
+	/**
+	 * Get the indexed snapshot.
+	 *
+	 * @return The TreeSnapshot.
+	 */
+	public TreeSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Get the element the model was captured under.
+	 *
+	 * @return The root element, or null if the snapshot was loaded from disk.
+	 */
+	public Element getRoot() {
+		return snapshot.getElement(0);
+	}
+
+	/**
+	 * Get the number of nodes, the root included.
+	 *
+	 * @return The node count.
+	 */
+	public int size() {
+		return snapshot.size();
+	}
+
+	/**
+	 * Get the number of distinct trigrams indexed, over all the properties.
+	 *
+	 * @return The trigram count.
+	 */
+	public int getGramCount() {
+		int count = 0;
+		for (ValueIndex index : valueIndexes.values()) {
+			count += index.grams.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Get the live element of a node.
+	 *
+	 * @param node The node.
+	 * @return The element, or null if the snapshot was loaded from disk.
+	 */
+	public Element getElement(int node) {
+		return snapshot.getElement(node);
+	}
+
+	/**
+	 * Get the node of a live element of the model, compared by identity like the
+	 * entries of the element cache.
+	 *
+	 * @param element The element.
+	 * @return The node, or -1 if the element is not in the model.
+	 */
+	public int getNode(Element element) {
+		Map<Element, Integer> current = nodes;
+		if (current == null) {
+			current = new IdentityHashMap<>(2 * size());
+			for (int node = 0; node < size(); node++) {
+				Element nodeElement = snapshot.getElement(node);
+				if (nodeElement != null) {
+					current.put(nodeElement, node);
+				}
+			}
+			nodes = current;
+		}
+		Integer node = current.get(element);
+		return node == null ? -1 : node;
+	}
+
+	/**
+	 * Finds the first node under the root matching the condition, in tree order.
+	 *
+	 * @param condition The search condition.
+	 * @return The node, or -1 if no node matches.
+	 * @throws IllegalArgumentException If the locator type of the condition has
+	 *                                  no property.
+	 */
+	public int find(SearchCondition condition) {
+		return find(condition, 0);
+	}
+
+	/**
+	 * Finds the first node under a node matching the condition, in tree order.
+	 *
+	 * @param condition The search condition.
+	 * @param within    The node to search under.
+	 * @return The node, or -1 if no node matches.
+	 * @throws IllegalArgumentException If the locator type of the condition has
+	 *                                  no property.
+	 */
+	public int find(SearchCondition condition, int within) {
+		int from = within + 1;
+		int end = snapshot.getEnd(within);
+		int controlType = condition.getControlType().getValue();
+		if (condition.isControlTypeOnly()) {
+			return first(controlTypeIndex.getOrDefault(controlType, EMPTY), from, end, -1);
+		}
+
+		LocatorType locatorType = condition.getLocatorType();
+		switch (locatorType) {
+		case NAME:
+		case ID:
+		case TEXT:
+		case VALUE:
+			Integer id = snapshot.getStringId(condition.getValue());
+			if (id == null) {
+				return -1;
+			}
+			return first(valueIndexes.get(condition.getProperty()).postings[id], from, end, controlType);
+		default:
+			PartialMatcher matcher = PartialMatcher.forLocator(locatorType, condition.getValue());
+			ValueIndex index = valueIndexes.get(matcher.getProperty());
+			int[] candidates = index.getCandidates(matcher);
+			int[] typed = controlTypeIndex.getOrDefault(controlType, EMPTY);
+			int typedFrom = lowerBound(typed, from);
+			int typedEnd = lowerBound(typed, end);
+			if (candidates == null || candidates.length > typedEnd - typedFrom) {
+				// Fewer nodes of the control type than candidate values: check them in
+				// tree order, like the filter of a live search.
+				int[] column = snapshot.getColumn(matcher.getProperty());
+				for (int i = typedFrom; i < typedEnd; i++) {
+					int value = column[typed[i]];
+					if (value >= 0 && matcher.matches(snapshot.getString(value))) {
+						return typed[i];
+					}
+				}
+				return -1;
+			}
+			int best = -1;
+			for (int candidate : candidates) {
+				// The sorted ranges of the prefix and suffix locators need no check.
+				if (matcher.getMode() != MatchMode.PREFIX && matcher.getMode() != MatchMode.SUFFIX
+						&& !matcher.matches(snapshot.getString(candidate))) {
+					continue;
+				}
+				int node = first(index.postings[candidate], from, best < 0 ? end : best, controlType);
+				if (node >= 0) {
+					best = node;
+				}
+			}
+			return best;
+		}
+	}
+
+	/**
+	 * Finds the first node of a sorted list in a range of nodes.
+	 *
+	 * @param list        The nodes, in tree order.
+	 * @param from        The first node of the range.
+	 * @param end         The node after the range.
+	 * @param controlType The ControlType value the node must have, or -1 for any.
+	 * @return The node, or -1 if no node of the list is in the range.
+	 */
+	private int first(int[] list, int from, int end, int controlType) {
+		for (int i = lowerBound(list, from); i < list.length && list[i] < end; i++) {
+			if (controlType < 0 || snapshot.getControlTypeValue(list[i]) == controlType) {
+				return list[i];
+			}
+		}
+		return -1;
+	}
+
+	private static int lowerBound(int[] list, int node) {
+		int index = Arrays.binarySearch(list, node);
+		return index < 0 ? -index - 1 : index;
+	}
+
+	@Override
+	public String toString() {
+		return "ElementModel[nodes=" + size() + ", strings=" + snapshot.getStringCount() + ", grams="
+				+ getGramCount() + "]";
+	}
+
+	/**
+	 * The indexes of the values of one string property.
+	 */
+	private static final class ValueIndex {
+		// The nodes of each dictionary string, in tree order.
+		private final int[][] postings;
+		// The dictionary strings of the property, sorted, and their reversed texts
+		// sorted.
+		private final String[] sorted;
+		private final int[] sortedIds;
+		private final String[] reversed;
+		private final int[] reversedIds;
+		// The dictionary strings of the property holding each trigram, ascending.
+		private final Map<Long, int[]> grams = new HashMap<>();
+
+		private ValueIndex(TreeSnapshot snapshot, int[] column) {
+			int size = snapshot.size();
+			int stringCount = snapshot.getStringCount();
+			int[] counts = new int[stringCount];
+			for (int node = 0; node < size; node++) {
+				if (column[node] >= 0) {
+					counts[column[node]]++;
+				}
+			}
+			postings = new int[stringCount][];
+			IntList ids = new IntList();
+			for (int id = 0; id < stringCount; id++) {
+				postings[id] = counts[id] == 0 ? EMPTY : new int[counts[id]];
+				if (counts[id] > 0) {
+					ids.add(id);
+				}
+				counts[id] = 0;
+			}
+			for (int node = 0; node < size; node++) {
+				int id = column[node];
+				if (id >= 0) {
+					postings[id][counts[id]++] = node;
+				}
+			}
+
+			Integer[] order = new Integer[ids.size];
+			String[] reversedStrings = new String[stringCount];
+			Map<Long, IntList> gramLists = new HashMap<>();
+			for (int i = 0; i < ids.size; i++) {
+				int id = ids.values[i];
+				String string = snapshot.getString(id);
+				order[i] = id;
+				reversedStrings[id] = new StringBuilder(string).reverse().toString();
+				for (int j = 0; j + GRAM <= string.length(); j++) {
+					IntList list = gramLists.computeIfAbsent(gram(string, j), key -> new IntList());
+					// The ids come in order, so a value is only added once per gram.
+					if (list.size == 0 || list.values[list.size - 1] != id) {
+						list.add(id);
+					}
+				}
+			}
+			for (Map.Entry<Long, IntList> entry : gramLists.entrySet()) {
+				grams.put(entry.getKey(), entry.getValue().toArray());
+			}
+
+			Arrays.sort(order, (a, b) -> snapshot.getString(a).compareTo(snapshot.getString(b)));
+			sorted = new String[order.length];
+			sortedIds = new int[order.length];
+			for (int i = 0; i < order.length; i++) {
+				sortedIds[i] = order[i];
+				sorted[i] = snapshot.getString(order[i]);
+			}
+			Arrays.sort(order, (a, b) -> reversedStrings[a].compareTo(reversedStrings[b]));
+			reversed = new String[order.length];
+			reversedIds = new int[order.length];
+			for (int i = 0; i < order.length; i++) {
+				reversedIds[i] = order[i];
+				reversed[i] = reversedStrings[order[i]];
+			}
+		}
+
+		/**
+		 * Get the dictionary strings that may match a partial locator. The strings
+		 * of a prefix or suffix locator all match.
+		 *
+		 * @param matcher The matcher of the partial locator.
+		 * @return The dictionary indexes, or null if every string may match.
+		 */
+		private int[] getCandidates(PartialMatcher matcher) {
+			String value = matcher.getValue();
+			switch (matcher.getMode()) {
+			case PREFIX:
+				return range(sorted, sortedIds, value);
+			case SUFFIX:
+				return range(reversed, reversedIds, new StringBuilder(value).reverse().toString());
+			case CONTAINS:
+				return value.length() >= GRAM ? intersect(value) : null;
+			case REGEX:
+			default:
+				return null;
+			}
+		}
+
+		/**
+		 * Get the strings of a sorted array starting with a prefix.
+		 */
+		private static int[] range(String[] keys, int[] ids, String prefix) {
+			int from = lowerBound(keys, prefix);
+			int to = from;
+			while (to < keys.length && keys[to].startsWith(prefix)) {
+				to++;
+			}
+			return Arrays.copyOfRange(ids, from, to);
+		}
+
+		private static int lowerBound(String[] keys, String key) {
+			int low = 0;
+			int high = keys.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (keys[middle].compareTo(key) < 0) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Get the strings holding the trigrams of a value, intersecting the lists
+		 * from the rarest trigram until few strings are left.
+		 */
+		private int[] intersect(String value) {
+			int count = value.length() - GRAM + 1;
+			int[][] lists = new int[count][];
+			for (int i = 0; i < count; i++) {
+				lists[i] = grams.get(gram(value, i));
+				if (lists[i] == null) {
+					return EMPTY;
+				}
+			}
+			Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+			int[] candidates = lists[0];
+			for (int i = 1; i < count && candidates.length > FEW_CANDIDATES; i++) {
+				IntList kept = new IntList();
+				for (int candidate : candidates) {
+					if (Arrays.binarySearch(lists[i], candidate) >= 0) {
+						kept.add(candidate);
+					}
+				}
+				candidates = kept.toArray();
+			}
+			return candidates;
+		}
+
+		private static long gram(String string, int start) {
+			long gram = 0;
+			for (int i = start; i < start + GRAM; i++) {
+				gram = (gram << 16) | string.charAt(i);
+			}
+			return gram;
+		}
+	}
+
+	/**
+	 * A growing list of ints, for building the indexes without boxing.
+	 */
+	private static final class IntList {
+		private int[] values = new int[4];
+		private int size;
+
+		private void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, 2 * size);
+			}
+			values[size++] = value;
+		}
+
+		private int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
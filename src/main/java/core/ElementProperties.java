@@ -0,0 +1,244 @@
+package core;
+
+import java.awt.Rectangle;
+
+import com.sun.jna.platform.win32.OaIdl;
+import com.sun.jna.platform.win32.OaIdlUtil;
+
+import core.backend.AutomationBackend;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+import mmarquee.automation.PatternID;
+import mmarquee.automation.PropertyID;
+import mmarquee.automation.UIAutomation;
+import mmarquee.uiautomation.ToggleState;
+
+/**
+ * The ElementProperties class holds the properties of an element that the
+ * keywords commonly use, fetched from the application in one
+ * {@link AutomationBackend#getPropertyValues(Element, PropertyID[])} call: the
+ * name, automation id, enabled state, bounding rectangle, toggle state and the
+ * availability of the toggle, value, invoke, expand-collapse and selection item
+ * patterns.
+ *
+ * The library has no property for the toggle state, so it is read from the
+ * checked and mixed bits of the LegacyIAccessibleState property.
+ */
+public final class ElementProperties {
+
+	/**
+	 * The properties fetched, in the order of the values.
+	 */
+	static final PropertyID[] PROPERTIES = { PropertyID.Name, PropertyID.AutomationId, PropertyID.IsEnabled,
+			PropertyID.BoundingRectangle, PropertyID.IsTogglePatternAvailable, PropertyID.LegacyIAccessibleState,
+			PropertyID.IsValuePatternAvailable, PropertyID.IsInvokePatternAvailable,
+			PropertyID.IsExpandCollapsePatternAvailable, PropertyID.IsSelectionItemPatternAvailable };
+
+	// MSAA STATE_SYSTEM_CHECKED and STATE_SYSTEM_MIXED.
+	private static final int STATE_CHECKED = 0x10;
+	private static final int STATE_MIXED = 0x20;
+
+	private final String name;
+	private final String automationId;
+	private final boolean enabled;
+	private final Rectangle bounds;
+	private final boolean toggleAvailable;
+	private final ToggleState toggleState;
+	private final boolean valueAvailable;
+	private final boolean invokeAvailable;
+	private final boolean expandCollapseAvailable;
+	private final boolean selectionItemAvailable;
+
+	private ElementProperties(Object[] values) {
+		this.name = values[0] == null ? null : values[0].toString();
+		this.automationId = values[1] == null ? null : values[1].toString();
+		this.enabled = isTrue(values[2]);
+		this.bounds = toRectangle(values[3]);
+		this.toggleAvailable = isTrue(values[4]);
+		this.toggleState = toggleAvailable ? toToggleState(values[5]) : null;
+		this.valueAvailable = isTrue(values[6]);
+		this.invokeAvailable = isTrue(values[7]);
+		this.expandCollapseAvailable = isTrue(values[8]);
+		this.selectionItemAvailable = isTrue(values[9]);
+	}
+
+	/**
+	 * Fetches the properties of an element in one call to the application.
+	 *
+	 * @param backend The backend to read with.
+	 * @param element The element to read from.
+	 * @return The ElementProperties.
+	 * @throws AutomationException If the properties could not be read.
+	 */
+	public static ElementProperties fetch(AutomationBackend backend, Element element) throws AutomationException {
+		return new ElementProperties(backend.getPropertyValues(element, PROPERTIES));
+	}
+
+	static boolean isTrue(Object value) {
+		return value != null && UIAutomation.isPropertyValueTrue(value);
+	}
+
+	/**
+	 * Converts a BoundingRectangle property value, the left, top, width and
+	 * height as an array of doubles, to a Rectangle.
+	 *
+	 * @param value The property value.
+	 * @return The Rectangle, or null if the value is not a rectangle.
+	 */
+	static Rectangle toRectangle(Object value) {
+		if (value instanceof OaIdl.SAFEARRAY) {
+			value = OaIdlUtil.toPrimitiveArray((OaIdl.SAFEARRAY) value, false);
+		}
+		double[] coordinates = new double[4];
+		if (value instanceof double[] && ((double[]) value).length == 4) {
+			coordinates = (double[]) value;
+		} else if (value instanceof Object[] && ((Object[]) value).length == 4) {
+			for (int i = 0; i < 4; i++) {
+				Object coordinate = ((Object[]) value)[i];
+				if (!(coordinate instanceof Number)) {
+					return null;
+				}
+				coordinates[i] = ((Number) coordinate).doubleValue();
+			}
+		} else {
+			return null;
+		}
+		return new Rectangle((int) coordinates[0], (int) coordinates[1], (int) coordinates[2], (int) coordinates[3]);
+	}
+
+	private static ToggleState toToggleState(Object value) {
+		if (!(value instanceof Number)) {
+			return null;
+		}
+		int state = ((Number) value).intValue();
+		if ((state & STATE_CHECKED) != 0) {
+			return ToggleState.ON;
+		} else if ((state & STATE_MIXED) != 0) {
+			return ToggleState.INDETERMINATE;
+		}
+		return ToggleState.OFF;
+	}
+
+	/**
+	 * Get the name of the element.
+	 *
+	 * @return The name, or null if it has none.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the automation id of the element.
+	 *
+	 * @return The automation id, or null if it has none.
+	 */
+	public String getAutomationId() {
+		return automationId;
+	}
+
+	/**
+	 * Checks whether the element was enabled.
+	 *
+	 * @return True if the element was enabled.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Get the bounding rectangle of the element, in screen coordinates.
+	 *
+	 * @return The bounds, or null if they could not be read.
+	 */
+	public Rectangle getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * Checks whether the element supports the toggle pattern.
+	 *
+	 * @return True if the toggle pattern is available.
+	 */
+	public boolean isToggleAvailable() {
+		return toggleAvailable;
+	}
+
+	/**
+	 * Get the toggle state of the element.
+	 *
+	 * @return The ToggleState, or null if the element does not toggle or its
+	 *         state could not be read.
+	 */
+	public ToggleState getToggleState() {
+		return toggleState;
+	}
+
+	/**
+	 * Checks whether the element supports the value pattern.
+	 *
+	 * @return True if the value pattern is available.
+	 */
+	public boolean isValueAvailable() {
+		return valueAvailable;
+	}
+
+	/**
+	 * Checks whether the element supports the invoke pattern.
+	 *
+	 * @return True if the invoke pattern is available.
+	 */
+	public boolean isInvokeAvailable() {
+		return invokeAvailable;
+	}
+
+	/**
+	 * Checks whether the element supports the expand-collapse pattern.
+	 *
+	 * @return True if the expand-collapse pattern is available.
+	 */
+	public boolean isExpandCollapseAvailable() {
+		return expandCollapseAvailable;
+	}
+
+	/**
+	 * Checks whether the element supports the selection item pattern.
+	 *
+	 * @return True if the selection item pattern is available.
+	 */
+	public boolean isSelectionItemAvailable() {
+		return selectionItemAvailable;
+	}
+
+	/**
+	 * Checks whether the element supports a control pattern, if it is one of
+	 * the patterns fetched.
+	 *
+	 * @param pattern The control pattern.
+	 * @return True or false, or null if the availability was not fetched.
+	 */
+	public Boolean isPatternAvailable(PatternID pattern) {
+		switch (pattern) {
+		case Invoke:
+			return invokeAvailable;
+		case Toggle:
+			return toggleAvailable;
+		case Value:
+			return valueAvailable;
+		case ExpandCollapse:
+			return expandCollapseAvailable;
+		case SelectionItem:
+			return selectionItemAvailable;
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ElementProperties[name=" + name + ", automationId=" + automationId + ", enabled=" + enabled
+				+ ", bounds=" + bounds + ", toggle=" + toggleState + ", value=" + valueAvailable + ", invoke="
+				+ invokeAvailable + ", expandCollapse=" + expandCollapseAvailable + ", selectionItem="
+				+ selectionItemAvailable + "]";
+	}
+}
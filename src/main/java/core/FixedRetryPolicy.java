@@ -0,0 +1,42 @@
+package core;
+
+/**
+ * The FixedRetryPolicy class waits the same interval before every retry, up to
+ * a maximum number of attempts. It is the behaviour the {@link By} class had
+ * before retry policies were introduced.
+ */
+public class FixedRetryPolicy implements RetryPolicy {
+
+	private final int maxAttempts;
+	private final long intervalMillis;
+
+	/**
+	 * Constructs a new FixedRetryPolicy.
+	 *
+	 * @param maxAttempts    The maximum number of attempts of a lookup.
+	 * @param intervalMillis The wait before every retry, in milliseconds.
+	 * @throws IllegalArgumentException If the attempts are less than one or the
+	 *                                  interval is negative.
+	 */
+	public FixedRetryPolicy(int maxAttempts, long intervalMillis) {
+		if (maxAttempts < 1 || intervalMillis < 0) {
+			throw new IllegalArgumentException(
+					"Invalid retry policy: maxAttempts=" + maxAttempts + ", interval=" + intervalMillis + "ms");
+		}
+		this.maxAttempts = maxAttempts;
+		this.intervalMillis = intervalMillis;
+	}
+
+	@Override
+	public long nextDelay(int failedAttempts, long remainingMillis) {
+		if (failedAttempts >= maxAttempts || remainingMillis <= 0) {
+			return STOP;
+		}
+		return Math.min(intervalMillis, remainingMillis);
+	}
+
+	@Override
+	public String toString() {
+		return "FixedRetryPolicy[maxAttempts=" + maxAttempts + ", interval=" + intervalMillis + "ms]";
+	}
+}
@@ -0,0 +1,432 @@
+package core;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The HitHistory class remembers where every template image was found, the
+ * last few distinct match rectangles with their scores, most recent first, so
+ * that an image search can first probe those spots with a local correlation
+ * before it searches a region or the screen. The history is saved to a file
+ * at the end of a run and loaded at the start of the next one, as most
+ * templates show up at the same coordinates run after run.
+ *
+ * For every template it also counts the probes: how often the first spot
+ * probed held the image, how often a later one did and how often none did,
+ * and the latency the probes saved against the searches that found the image
+ * otherwise. The average time of those searches is saved with the matches, so
+ * that a run whose probes all hit still knows what they saved. The history is
+ * thread-safe.
+ */
+public final class HitHistory {
+
+	private static final Logger log = LogManager.getLogger(HitHistory.class);
+
+	/**
+	 * The number of match rectangles kept per template.
+	 */
+	public static final int DEFAULT_SIZE = 4;
+
+	/**
+	 * How much lower than its recorded score a probe may score and still match.
+	 */
+	public static final double SCORE_TOLERANCE = 0.05;
+
+	// Marks the average search time of a template in the saved history.
+	private static final String SEARCH_PREFIX = "search=";
+
+	private final int size;
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a new HitHistory keeping {@link #DEFAULT_SIZE} rectangles per
+	 * template.
+	 */
+	public HitHistory() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * Constructs a new HitHistory.
+	 *
+	 * @param size The number of match rectangles kept per template.
+	 * @throws IllegalArgumentException If the size is not positive.
+	 */
+	public HitHistory(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("History size must be positive: " + size);
+		}
+		this.size = size;
+	}
+
+	/**
+	 * Get the remembered matches of a template.
+	 *
+	 * @param name The name of the template, as for the {@link TemplateCache}.
+	 * @return The matches, most recent first, or an empty list.
+	 */
+	public List<Hit> getHits(String name) {
+		Entry entry = entries.get(TemplateCache.getKey(name));
+		return entry == null ? Collections.emptyList() : entry.hits;
+	}
+
+	/**
+	 * Get the last match rectangle of a template.
+	 *
+	 * @param name The name of the template.
+	 * @return A copy of the rectangle, or null if the template was never found.
+	 */
+	public Rectangle getLast(String name) {
+		List<Hit> hits = getHits(name);
+		return hits.isEmpty() ? null : hits.get(0).getRect();
+	}
+
+	/**
+	 * Adds a match of a template. A rectangle already remembered moves to the
+	 * front with its new score; the oldest one is dropped when the history of
+	 * the template is full.
+	 *
+	 * @param name  The name of the template.
+	 * @param rect  The match rectangle on the screen.
+	 * @param score The score of the match.
+	 */
+	public void recordHit(String name, Rectangle rect, double score) {
+		getEntry(name).add(new Hit(rect, score), size);
+	}
+
+	/**
+	 * Adds the probes of the remembered spots of a template for one search.
+	 *
+	 * @param name  The name of the template.
+	 * @param spot  The index of the spot that held the image, or -1 if none did.
+	 * @param nanos The time of the probes.
+	 */
+	public void recordProbe(String name, int spot, long nanos) {
+		Entry entry = getEntry(name);
+		entry.probes.incrementAndGet();
+		entry.probeNanos.addAndGet(nanos);
+		if (spot == 0) {
+			entry.firstHits.incrementAndGet();
+		} else if (spot > 0) {
+			entry.laterHits.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Adds a search of a region or the screen that found a template.
+	 *
+	 * @param name  The name of the template.
+	 * @param nanos The time of the search.
+	 */
+	public void recordSearch(String name, long nanos) {
+		Entry entry = getEntry(name);
+		entry.searches.incrementAndGet();
+		entry.searchNanos.addAndGet(nanos);
+	}
+
+	private Entry getEntry(String name) {
+		return entries.computeIfAbsent(TemplateCache.getKey(name), key -> new Entry());
+	}
+
+	/**
+	 * Get the share of the searches with remembered spots that the first spot
+	 * answered, over all templates.
+	 *
+	 * @return The first-probe hit ratio, or 0 if nothing was probed.
+	 */
+	public double getFirstProbeHitRatio() {
+		long probes = 0;
+		long firstHits = 0;
+		for (Entry entry : entries.values()) {
+			probes += entry.probes.get();
+			firstHits += entry.firstHits.get();
+		}
+		return probes == 0 ? 0 : (double) firstHits / probes;
+	}
+
+	/**
+	 * Get the latency the probes saved over all templates, see
+	 * {@link #getReport()}.
+	 *
+	 * @return The saved time in milliseconds; negative if the probes cost more
+	 *         than they saved.
+	 */
+	public double getSavedMillis() {
+		double saved = 0;
+		for (Entry entry : entries.values()) {
+			saved += entry.getSavedNanos(getAverageSearchNanos(entry));
+		}
+		return saved / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Get the average time of the searches that found a template, in this run or
+	 * else in the earlier ones, or the mean over the templates if it was never
+	 * searched for.
+	 */
+	private double getAverageSearchNanos(Entry entry) {
+		double average = entry.getAverageSearchNanos();
+		if (average > 0) {
+			return average;
+		}
+		double sum = 0;
+		int known = 0;
+		for (Entry each : entries.values()) {
+			double eachAverage = each.getAverageSearchNanos();
+			if (eachAverage > 0) {
+				sum += eachAverage;
+				known++;
+			}
+		}
+		return known == 0 ? 0 : sum / known;
+	}
+
+	/**
+	 * Get a line per probed template with its first-probe and later-probe hit
+	 * rates and the latency saved: every probe hit saves the average time of
+	 * the searches that found the template otherwise, also in earlier runs, and
+	 * every probe costs its own time.
+	 *
+	 * @return The report lines, by template name.
+	 */
+	public List<String> getReport() {
+		List<String> report = new ArrayList<>();
+		for (Map.Entry<String, Entry> named : new TreeMap<>(entries).entrySet()) {
+			Entry entry = named.getValue();
+			long probes = entry.probes.get();
+			if (probes == 0) {
+				continue;
+			}
+			report.add(String.format("%s: probes=%d, first=%d (%.1f%%), later=%d, missed=%d, searches=%d, "
+					+ "probe %.3f ms, saved %.3f ms", named.getKey(), probes, entry.firstHits.get(),
+					100.0 * entry.firstHits.get() / probes, entry.laterHits.get(), entry.getMissed(),
+					entry.searches.get(), entry.probeNanos.get() / 1e6 / probes,
+					entry.getSavedNanos(getAverageSearchNanos(entry)) / 1e6));
+		}
+		return report;
+	}
+
+	/**
+	 * Resets the probe and search counts, keeping the remembered matches.
+	 */
+	public void resetStatistics() {
+		for (Entry entry : entries.values()) {
+			entry.resetStatistics();
+		}
+	}
+
+	/**
+	 * Loads the remembered matches saved by {@link #save(Path)}, replacing those
+	 * of the same templates. A missing file is no error.
+	 *
+	 * @param path The file.
+	 * @return The number of templates loaded.
+	 */
+	public int load(Path path) {
+		if (!Files.isRegularFile(path)) {
+			return 0;
+		}
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		} catch (IOException e) {
+			log.warn("Image hit history " + path + " could not be read.", e);
+			return 0;
+		}
+		int loaded = 0;
+		for (String name : properties.stringPropertyNames()) {
+			List<Hit> hits = new ArrayList<>();
+			double searchNanos = 0;
+			try {
+				for (String hit : properties.getProperty(name).split(";")) {
+					String[] parts = hit.split(",");
+					if (hit.startsWith(SEARCH_PREFIX)) {
+						searchNanos = Double.parseDouble(hit.substring(SEARCH_PREFIX.length()))
+								* TimeUnit.MILLISECONDS.toNanos(1);
+					} else if (parts.length == 5 && hits.size() < size) {
+						hits.add(new Hit(new Rectangle(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+								Integer.parseInt(parts[2]), Integer.parseInt(parts[3])), Double.parseDouble(parts[4])));
+					}
+				}
+			} catch (NumberFormatException e) {
+				log.debug("Skipped the malformed hit history of " + name, e);
+				continue;
+			}
+			if (!hits.isEmpty()) {
+				Entry entry = getEntry(name);
+				entry.hits = Collections.unmodifiableList(hits);
+				entry.earlierSearchNanos = searchNanos;
+				loaded++;
+			}
+		}
+		log.info("Loaded the image hit history of " + loaded + " templates.");
+		return loaded;
+	}
+
+	/**
+	 * Saves the remembered matches of all templates.
+	 *
+	 * @param path The file.
+	 * @throws IOException If the file could not be written.
+	 */
+	public void save(Path path) throws IOException {
+		Properties properties = new Properties();
+		for (Map.Entry<String, Entry> named : entries.entrySet()) {
+			StringBuilder value = new StringBuilder();
+			double searchNanos = named.getValue().getAverageSearchNanos();
+			if (searchNanos > 0) {
+				value.append(SEARCH_PREFIX).append(String.format(Locale.ROOT, "%.3f",
+						searchNanos / TimeUnit.MILLISECONDS.toNanos(1)));
+			}
+			for (Hit hit : named.getValue().hits) {
+				if (value.length() > 0) {
+					value.append(';');
+				}
+				value.append(hit.x).append(',').append(hit.y).append(',').append(hit.width).append(',')
+						.append(hit.height).append(',').append(String.format(Locale.ROOT, "%.4f", hit.score));
+			}
+			if (value.length() > 0) {
+				properties.setProperty(named.getKey(), value.toString());
+			}
+		}
+		try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			properties.store(writer, "Image hit history: the average search time in milliseconds and the "
+					+ "x,y,width,height,score of the last matches, most recent first");
+		}
+	}
+
+	@Override
+	public String toString() {
+		long probes = 0;
+		long missed = 0;
+		for (Entry entry : entries.values()) {
+			probes += entry.probes.get();
+			missed += entry.getMissed();
+		}
+		return String.format("HitHistory[templates=%d, probes=%d, firstProbeHits=%.1f%%, missed=%d, saved=%.3f ms]",
+				entries.size(), probes, 100 * getFirstProbeHitRatio(), missed, getSavedMillis());
+	}
+
+	/**
+	 * A remembered match of a template.
+	 */
+	public static final class Hit {
+		private final int x;
+		private final int y;
+		private final int width;
+		private final int height;
+		private final double score;
+
+		private Hit(Rectangle rect, double score) {
+			this.x = rect.x;
+			this.y = rect.y;
+			this.width = rect.width;
+			this.height = rect.height;
+			this.score = score;
+		}
+
+		/**
+		 * Get the match rectangle.
+		 *
+		 * @return A copy of the rectangle.
+		 */
+		public Rectangle getRect() {
+			return new Rectangle(x, y, width, height);
+		}
+
+		/**
+		 * Get the score of the match.
+		 *
+		 * @return The score.
+		 */
+		public double getScore() {
+			return score;
+		}
+
+		/**
+		 * Get the lowest score of a probe of this spot that still matches: the
+		 * recorded score less the {@link #SCORE_TOLERANCE}, but not below the
+		 * threshold of the matcher.
+		 *
+		 * @return The probe threshold.
+		 */
+		public double getProbeThreshold() {
+			return Math.min(1, Math.max(TemplateMatcher.DEFAULT_THRESHOLD, score - SCORE_TOLERANCE));
+		}
+
+		private boolean isAt(Hit other) {
+			return x == other.x && y == other.y && width == other.width && height == other.height;
+		}
+	}
+
+	/**
+	 * The remembered matches and the counts of one template.
+	 */
+	private static final class Entry {
+		// Replaced as a whole, so that the probes read it unlocked.
+		private volatile List<Hit> hits = Collections.emptyList();
+		private final AtomicLong probes = new AtomicLong();
+		private final AtomicLong firstHits = new AtomicLong();
+		private final AtomicLong laterHits = new AtomicLong();
+		private final AtomicLong probeNanos = new AtomicLong();
+		private final AtomicLong searches = new AtomicLong();
+		private final AtomicLong searchNanos = new AtomicLong();
+		private volatile double earlierSearchNanos;
+
+		private synchronized void add(Hit hit, int size) {
+			List<Hit> added = new ArrayList<>(size);
+			added.add(hit);
+			for (Hit old : hits) {
+				if (added.size() < size && !old.isAt(hit)) {
+					added.add(old);
+				}
+			}
+			hits = Collections.unmodifiableList(added);
+		}
+
+		private long getMissed() {
+			return probes.get() - firstHits.get() - laterHits.get();
+		}
+
+		/**
+		 * Get the average time of the searches in this run, or else in the
+		 * earlier runs.
+		 */
+		private double getAverageSearchNanos() {
+			long count = searches.get();
+			return count > 0 ? (double) searchNanos.get() / count : earlierSearchNanos;
+		}
+
+		private double getSavedNanos(double averageSearchNanos) {
+			return (firstHits.get() + laterHits.get()) * averageSearchNanos - probeNanos.get();
+		}
+
+		private void resetStatistics() {
+			probes.set(0);
+			firstHits.set(0);
+			laterHits.set(0);
+			probeNanos.set(0);
+			searches.set(0);
+			searchNanos.set(0);
+		}
+	}
+}
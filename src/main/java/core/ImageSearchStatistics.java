@@ -0,0 +1,121 @@
+package core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ImageSearchStatistics class counts the image searches of the IMAGE
+ * locators: the searches in a region of interest, how many of them found the
+ * image there and how many had to be widened to the screen, with the time
+ * spent in the regions and on the screen. The statistics are thread-safe.
+ */
+public class ImageSearchStatistics {
+
+	private final AtomicLong searches = new AtomicLong();
+	private final AtomicLong regionSearches = new AtomicLong();
+	private final AtomicLong regionHits = new AtomicLong();
+	private final AtomicLong regionNanos = new AtomicLong();
+	private final AtomicLong screenSearches = new AtomicLong();
+	private final AtomicLong screenNanos = new AtomicLong();
+
+	/**
+	 * Adds an image search.
+	 */
+	public void recordSearch() {
+		searches.incrementAndGet();
+	}
+
+	/**
+	 * Adds a search in a region of interest.
+	 *
+	 * @param found Whether the image was found in the region.
+	 * @param nanos The time of the search.
+	 */
+	public void recordRegionSearch(boolean found, long nanos) {
+		regionSearches.incrementAndGet();
+		if (found) {
+			regionHits.incrementAndGet();
+		}
+		regionNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Adds a search of the whole screen.
+	 *
+	 * @param nanos The time of the search.
+	 */
+	public void recordScreenSearch(long nanos) {
+		screenSearches.incrementAndGet();
+		screenNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Get the number of image searches.
+	 *
+	 * @return The search count.
+	 */
+	public long getSearches() {
+		return searches.get();
+	}
+
+	/**
+	 * Get the share of the region searches that found the image.
+	 *
+	 * @return The hit ratio, or 0 if there was no region search.
+	 */
+	public double getRegionHitRatio() {
+		long count = regionSearches.get();
+		return count == 0 ? 0 : (double) regionHits.get() / count;
+	}
+
+	/**
+	 * Get the number of region searches widened to the screen.
+	 *
+	 * @return The widened search count.
+	 */
+	public long getWidened() {
+		return regionSearches.get() - regionHits.get();
+	}
+
+	/**
+	 * Get the average time of a search in a region.
+	 *
+	 * @return The average time in milliseconds, or 0 if there was none.
+	 */
+	public double getAverageRegionMillis() {
+		return average(regionNanos.get(), regionSearches.get());
+	}
+
+	/**
+	 * Get the average time of a search of the screen.
+	 *
+	 * @return The average time in milliseconds, or 0 if there was none.
+	 */
+	public double getAverageScreenMillis() {
+		return average(screenNanos.get(), screenSearches.get());
+	}
+
+	private static double average(long nanos, long count) {
+		return count == 0 ? 0 : (double) nanos / count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Resets the statistics.
+	 */
+	public void reset() {
+		searches.set(0);
+		regionSearches.set(0);
+		regionHits.set(0);
+		regionNanos.set(0);
+		screenSearches.set(0);
+		screenNanos.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ImageSearchStatistics[searches=%d, region=%d (%.3f ms/search), regionHits=%d (%.1f%%), "
+				+ "widened=%d, screen=%d (%.3f ms/search)]", searches.get(), regionSearches.get(),
+				getAverageRegionMillis(), regionHits.get(), 100 * getRegionHitRatio(), getWidened(),
+				screenSearches.get(), getAverageScreenMillis());
+	}
+}
@@ -0,0 +1,79 @@
+package core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import core.backend.AutomationBackend;
+
+/**
+ * The KeywordStatistics class counts, per keyword, how often it ran and how
+ * many calls it made into the application under test, as counted by
+ * {@link AutomationBackend#getCallCount()}. The statistics are thread-safe.
+ */
+public class KeywordStatistics {
+
+	private static final class Counts {
+		private final AtomicLong invocations = new AtomicLong();
+		private final AtomicLong calls = new AtomicLong();
+	}
+
+	private final Map<String, Counts> keywords = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Adds a run of a keyword to the statistics.
+	 *
+	 * @param keyword The name of the keyword.
+	 * @param calls   The calls the keyword made into the application.
+	 */
+	public void record(String keyword, long calls) {
+		Counts counts = keywords.computeIfAbsent(keyword, name -> new Counts());
+		counts.invocations.incrementAndGet();
+		counts.calls.addAndGet(calls);
+	}
+
+	/**
+	 * Get the number of runs of a keyword.
+	 *
+	 * @param keyword The name of the keyword.
+	 * @return The run count.
+	 */
+	public long getInvocations(String keyword) {
+		Counts counts = keywords.get(keyword);
+		return counts == null ? 0 : counts.invocations.get();
+	}
+
+	/**
+	 * Get the average number of calls into the application per run of a
+	 * keyword.
+	 *
+	 * @param keyword The name of the keyword.
+	 * @return The calls per run.
+	 */
+	public double getCallsPerInvocation(String keyword) {
+		Counts counts = keywords.get(keyword);
+		long invocations = counts == null ? 0 : counts.invocations.get();
+		return invocations == 0 ? 0 : (double) counts.calls.get() / invocations;
+	}
+
+	/**
+	 * Resets the statistics.
+	 */
+	public void reset() {
+		keywords.clear();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("KeywordStatistics[");
+		String separator = "";
+		for (Map.Entry<String, Counts> entry : keywords.entrySet()) {
+			long invocations = entry.getValue().invocations.get();
+			builder.append(separator).append(entry.getKey()).append('=').append(invocations).append("x ")
+					.append(String.format("%.1f", (double) entry.getValue().calls.get() / invocations))
+					.append(" calls");
+			separator = ", ";
+		}
+		return builder.append(']').toString();
+	}
+}
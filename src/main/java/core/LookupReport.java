@@ -0,0 +1,86 @@
+package core;
+
+/**
+ * The LookupReport class describes one element lookup of the {@link By} class:
+ * how many attempts it took, how long it waited between them and whether the
+ * element was found. The report of the last lookup of the current thread is
+ * available from {@link By#getLastLookup()}.
+ */
+public final class LookupReport {
+
+	private final SearchCondition condition;
+	private final int attempts;
+	private final long waitedMillis;
+	private final long elapsedMillis;
+	private final boolean found;
+
+	/**
+	 * Constructs a new LookupReport.
+	 *
+	 * @param condition     The search condition of the lookup.
+	 * @param attempts      The number of attempts made.
+	 * @param waitedMillis  The time spent waiting between attempts, in
+	 *                      milliseconds.
+	 * @param elapsedMillis The total time of the lookup, in milliseconds.
+	 * @param found         True if the element was found.
+	 */
+	public LookupReport(SearchCondition condition, int attempts, long waitedMillis, long elapsedMillis,
+			boolean found) {
+		this.condition = condition;
+		this.attempts = attempts;
+		this.waitedMillis = waitedMillis;
+		this.elapsedMillis = elapsedMillis;
+		this.found = found;
+	}
+
+	/**
+	 * Get the search condition of the lookup.
+	 *
+	 * @return The SearchCondition.
+	 */
+	public SearchCondition getCondition() {
+		return condition;
+	}
+
+	/**
+	 * Get the number of attempts made.
+	 *
+	 * @return The attempts.
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * Get the time spent waiting between attempts.
+	 *
+	 * @return The wait time in milliseconds.
+	 */
+	public long getWaitedMillis() {
+		return waitedMillis;
+	}
+
+	/**
+	 * Get the total time of the lookup, searching and waiting.
+	 *
+	 * @return The elapsed time in milliseconds.
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * Checks whether the element was found.
+	 *
+	 * @return True if the element was found.
+	 */
+	public boolean isFound() {
+		return found;
+	}
+
+	@Override
+	public String toString() {
+		return condition + (found ? " found" : " not found") + " after " + attempts + " attempt(s), waited "
+				+ waitedMillis + " ms of " + elapsedMillis + " ms";
+	}
+}
@@ -0,0 +1,139 @@
+package core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LookupStatistics class sums up the {@link LookupReport}s of the element
+ * lookups, so that the retry policy and wait settings can be tuned for a sheet.
+ * The statistics are thread-safe.
+ */
+public class LookupStatistics {
+
+	// Attempts histogram buckets: 1, 2, 3-4, 5-8, 9-16, more.
+	private static final int[] BUCKET_LIMITS = { 1, 2, 4, 8, 16, Integer.MAX_VALUE };
+
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong notFound = new AtomicLong();
+	private final AtomicLong attempts = new AtomicLong();
+	private final AtomicLong maxAttempts = new AtomicLong();
+	private final AtomicLong waitedMillis = new AtomicLong();
+	private final AtomicLong elapsedMillis = new AtomicLong();
+	private final AtomicLongArray attemptsHistogram = new AtomicLongArray(BUCKET_LIMITS.length);
+
+	/**
+	 * Adds a lookup to the statistics.
+	 *
+	 * @param report The report of the lookup.
+	 */
+	public void record(LookupReport report) {
+		lookups.incrementAndGet();
+		if (!report.isFound()) {
+			notFound.incrementAndGet();
+		}
+		attempts.addAndGet(report.getAttempts());
+		waitedMillis.addAndGet(report.getWaitedMillis());
+		elapsedMillis.addAndGet(report.getElapsedMillis());
+
+		long max;
+		while ((max = maxAttempts.get()) < report.getAttempts()) {
+			if (maxAttempts.compareAndSet(max, report.getAttempts())) {
+				break;
+			}
+		}
+
+		for (int bucket = 0; bucket < BUCKET_LIMITS.length; bucket++) {
+			if (report.getAttempts() <= BUCKET_LIMITS[bucket]) {
+				attemptsHistogram.incrementAndGet(bucket);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Get the number of lookups.
+	 *
+	 * @return The lookup count.
+	 */
+	public long getLookups() {
+		return lookups.get();
+	}
+
+	/**
+	 * Get the number of lookups that did not find the element.
+	 *
+	 * @return The not-found count.
+	 */
+	public long getNotFound() {
+		return notFound.get();
+	}
+
+	/**
+	 * Get the number of attempts of all lookups.
+	 *
+	 * @return The attempt count.
+	 */
+	public long getAttempts() {
+		return attempts.get();
+	}
+
+	/**
+	 * Get the most attempts a single lookup needed.
+	 *
+	 * @return The maximum attempts.
+	 */
+	public long getMaxAttempts() {
+		return maxAttempts.get();
+	}
+
+	/**
+	 * Get the time all lookups spent waiting between attempts.
+	 *
+	 * @return The wait time in milliseconds.
+	 */
+	public long getWaitedMillis() {
+		return waitedMillis.get();
+	}
+
+	/**
+	 * Get the total time of all lookups.
+	 *
+	 * @return The elapsed time in milliseconds.
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis.get();
+	}
+
+	/**
+	 * Resets the statistics.
+	 */
+	public void reset() {
+		lookups.set(0);
+		notFound.set(0);
+		attempts.set(0);
+		maxAttempts.set(0);
+		waitedMillis.set(0);
+		elapsedMillis.set(0);
+		for (int bucket = 0; bucket < BUCKET_LIMITS.length; bucket++) {
+			attemptsHistogram.set(bucket, 0);
+		}
+	}
+
+	@Override
+	public String toString() {
+		long count = lookups.get();
+		StringBuilder histogram = new StringBuilder();
+		int lower = 1;
+		for (int bucket = 0; bucket < BUCKET_LIMITS.length; bucket++) {
+			int upper = BUCKET_LIMITS[bucket];
+			histogram.append(bucket == 0 ? "" : ", ")
+					.append(upper == Integer.MAX_VALUE ? lower + "+" : lower == upper ? "" + upper : lower + "-" + upper)
+					.append('=').append(attemptsHistogram.get(bucket));
+			lower = upper + 1;
+		}
+		return String.format(
+				"LookupStatistics[lookups=%d, notFound=%d, attempts=%.2f/lookup (max %d), waited=%d ms, elapsed=%d ms, attemptsHistogram={%s}]",
+				count, notFound.get(), count == 0 ? 0 : (double) attempts.get() / count, maxAttempts.get(),
+				waitedMillis.get(), elapsedMillis.get(), histogram);
+	}
+}
@@ -0,0 +1,228 @@
+package core;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import core.TemplateCache.Level;
+import core.TemplateMatcher.Match;
+
+/**
+ * The ParallelMatcher class finds templates in a grayscale image like the
+ * {@link TemplateMatcher}, on all cores of a ForkJoinPool. The positions of a
+ * template in the image are split into tiles of {@value #TILE_SIZE} by
+ * {@value #TILE_SIZE} positions, each searched as a region of the image that
+ * overlaps its neighbours by the size of the template less one, so that every
+ * position is scored exactly once. It works on images in memory, so it needs
+ * no display.
+ *
+ * A search for the best match scores every tile. A search for the first match
+ * skips the tiles not yet started once a tile holds a match, so a template
+ * that is on the screen is mostly found well before the last tile. A search
+ * for many templates is one pass over the same image, the tiles of all the
+ * templates shared out over the pool together.
+ */
+public class ParallelMatcher {
+
+	/**
+	 * The width and height of a tile, in positions of the template.
+	 */
+	public static final int TILE_SIZE = 128;
+
+	private final TemplateMatcher matcher;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Constructs a new ParallelMatcher on the common pool.
+	 *
+	 * @param threshold The lowest score of a match, between 0 and 1.
+	 * @throws IllegalArgumentException If the threshold is not between 0 and 1.
+	 */
+	public ParallelMatcher(double threshold) {
+		this(threshold, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructs a new ParallelMatcher.
+	 *
+	 * @param threshold The lowest score of a match, between 0 and 1.
+	 * @param pool      The pool the tiles are searched on.
+	 * @throws IllegalArgumentException If the threshold is not between 0 and 1.
+	 */
+	public ParallelMatcher(double threshold, ForkJoinPool pool) {
+		this.matcher = new TemplateMatcher(threshold);
+		this.pool = pool;
+	}
+
+	/**
+	 * Get the lowest score of a match.
+	 *
+	 * @return The threshold.
+	 */
+	public double getThreshold() {
+		return matcher.getThreshold();
+	}
+
+	/**
+	 * Finds the best match of a template in an image, the one the
+	 * {@link TemplateMatcher} finds.
+	 *
+	 * @param image    The image to search.
+	 * @param template The template to find.
+	 * @return The best Match, or null if no position scores the threshold.
+	 */
+	public Match find(Level image, Level template) {
+		return search(image, single(template), false).get(template);
+	}
+
+	/**
+	 * Finds a match of a template in an image, ending the search once a tile
+	 * holds one. The match is the best of the tiles searched, which need not be
+	 * the best of the image if the template is on it more than once.
+	 *
+	 * @param image    The image to search.
+	 * @param template The template to find.
+	 * @return A Match, or null if no position scores the threshold.
+	 */
+	public Match findFirst(Level image, Level template) {
+		return search(image, single(template), true).get(template);
+	}
+
+	/**
+	 * Finds the best match of every template of a map in an image, in one pass.
+	 *
+	 * @param <K>       The type of the keys, e.g. the image names.
+	 * @param image     The image to search.
+	 * @param templates The templates to find, by key.
+	 * @return The best Match of every template, by key, or null for a template
+	 *         that no position scores the threshold for.
+	 */
+	public <K> Map<K, Match> findAll(Level image, Map<K, Level> templates) {
+		return search(image, templates, false);
+	}
+
+	private static Map<Level, Level> single(Level template) {
+		Map<Level, Level> templates = new LinkedHashMap<>();
+		templates.put(template, template);
+		return templates;
+	}
+
+	private <K> Map<K, Match> search(Level image, Map<K, Level> templates, boolean first) {
+		Map<K, Search> searches = new LinkedHashMap<>();
+		List<Tile> tiles = new ArrayList<>();
+		for (Map.Entry<K, Level> entry : templates.entrySet()) {
+			Search search = new Search(entry.getValue(), first);
+			searches.put(entry.getKey(), search);
+			Level template = search.template;
+			int columns = image.getWidth() - template.getWidth() + 1;
+			int rows = image.getHeight() - template.getHeight() + 1;
+			for (int y = 0; y < rows; y += TILE_SIZE) {
+				for (int x = 0; x < columns; x += TILE_SIZE) {
+					tiles.add(new Tile(search, new Rectangle(x, y, Math.min(TILE_SIZE, columns - x)
+							+ template.getWidth() - 1, Math.min(TILE_SIZE, rows - y) + template.getHeight() - 1)));
+				}
+			}
+		}
+		if (!tiles.isEmpty()) {
+			pool.invoke(new Tiles(image, tiles, 0, tiles.size()));
+		}
+
+		Map<K, Match> matches = new LinkedHashMap<>();
+		for (Map.Entry<K, Search> entry : searches.entrySet()) {
+			matches.put(entry.getKey(), entry.getValue().best.get());
+		}
+		return matches;
+	}
+
+	/**
+	 * Checks whether a match is better than another, or as good and before it in
+	 * the order the TemplateMatcher scores the positions.
+	 */
+	private static boolean isBetter(Match match, Match other) {
+		if (other == null || match.getScore() != other.getScore()) {
+			return other == null || match.getScore() > other.getScore();
+		}
+		Rectangle rect = match.getRect();
+		Rectangle otherRect = other.getRect();
+		return rect.y < otherRect.y || rect.y == otherRect.y && rect.x < otherRect.x;
+	}
+
+	/**
+	 * The search for one template.
+	 */
+	private static final class Search {
+		private final Level template;
+		private final boolean first;
+		private final AtomicReference<Match> best = new AtomicReference<>();
+
+		private Search(Level template, boolean first) {
+			this.template = template;
+			this.first = first;
+		}
+
+		private void offer(Match match) {
+			Match current;
+			do {
+				current = best.get();
+				if (!isBetter(match, current)) {
+					return;
+				}
+			} while (!best.compareAndSet(current, match));
+		}
+	}
+
+	/**
+	 * A tile of the search for one template.
+	 */
+	private static final class Tile {
+		private final Search search;
+		private final Rectangle region;
+
+		private Tile(Search search, Rectangle region) {
+			this.search = search;
+			this.region = region;
+		}
+	}
+
+	/**
+	 * Searches a range of the tiles, split in halves down to single tiles.
+	 */
+	private final class Tiles extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final transient Level image;
+		private final transient List<Tile> tiles;
+		private final int from;
+		private final int to;
+
+		private Tiles(Level image, List<Tile> tiles, int from, int to) {
+			this.image = image;
+			this.tiles = tiles;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Tiles(image, tiles, from, middle), new Tiles(image, tiles, middle, to));
+				return;
+			}
+			Tile tile = tiles.get(from);
+			Search search = tile.search;
+			if (search.first && search.best.get() != null) {
+				return;
+			}
+			Match match = matcher.find(image, search.template, tile.region);
+			if (match != null) {
+				search.offer(match);
+			}
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import actions.LocatorType;
+import core.By.FindOption;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+
+/**
+ * The PartialMatcher class matches elements on part of a property value. It is
+ * used by the partial locators of the {@link By} class, which fetch all the
+ * elements of a control type together with their Name, AutomationId, HelpText
+ * and LegacyIAccessible value in one cache request and then match them here
+ * without further calls into the application under test.
+ *
+ * The match mode can be given in front of the locator value, e.g.
+ * "prefix:Developer Editor - [", "suffix:.xls" or "regex:Capture \d+". A value
+ * without a mode prefix is matched with {@link MatchMode#CONTAINS}, as before.
+ */
+public class PartialMatcher {
+
+	/**
+	 * The properties prefetched for the partial locators.
+	 */
+	public static final PropertyID[] PREFETCH_PROPERTIES = { PropertyID.Name, PropertyID.AutomationId,
+			PropertyID.HelpText, PropertyID.LegacyIAccessibleValue };
+
+	/**
+	 * An enumeration of the supported ways of matching a property value.
+	 */
+	public enum MatchMode {
+		/**
+		 * The property value starts with the given value.
+		 */
+		PREFIX,
+		/**
+		 * The property value ends with the given value.
+		 */
+		SUFFIX,
+		/**
+		 * The property value contains the given value.
+		 */
+		CONTAINS,
+		/**
+		 * The property value matches the given regular expression anywhere.
+		 */
+		REGEX
+	}
+
+	/**
+	 * Reads a property value of an element.
+	 */
+	public interface PropertyReader {
+
+		/**
+		 * Reads the given property of the element.
+		 *
+		 * @param element  The element to read from.
+		 * @param property The property to read.
+		 * @return The property value, or null if it has no value.
+		 * @throws AutomationException If the property could not be read.
+		 */
+		String read(Element element, PropertyID property) throws AutomationException;
+	}
+
+	private final PropertyID property;
+	private final MatchMode mode;
+	private final String value;
+	private final Pattern pattern;
+
+	/**
+	 * Constructs a new PartialMatcher.
+	 *
+	 * @param property The property to match on.
+	 * @param mode     The way of matching the property value.
+	 * @param value    The value, or regular expression, to match.
+	 * @throws IllegalArgumentException If the value is empty or the regular
+	 *                                  expression is invalid.
+	 */
+	public PartialMatcher(PropertyID property, MatchMode mode, String value) {
+		if (property == null || mode == null || value == null || value.isEmpty()) {
+			throw new IllegalArgumentException("Invalid input parameters.");
+		}
+		this.property = property;
+		this.mode = mode;
+		this.value = value;
+		this.pattern = mode == MatchMode.REGEX ? Pattern.compile(value) : null;
+	}
+
+	/**
+	 * Creates a matcher for a partial locator, reading the match mode from the
+	 * front of the locator value.
+	 *
+	 * @param locatorType  The partial locator type (PARTIALNAME, PARTIALID,
+	 *                     PARTIALTEXT or PARTIALVALUE).
+	 * @param locatorValue The locator value, optionally starting with "prefix:",
+	 *                     "suffix:", "contains:" or "regex:".
+	 * @return The PartialMatcher for the locator.
+	 * @throws IllegalArgumentException If the locator type is not a partial
+	 *                                  locator or the value is invalid.
+	 */
+	public static PartialMatcher forLocator(LocatorType locatorType, String locatorValue) {
+		if (locatorValue == null || locatorValue.isEmpty()) {
+			throw new IllegalArgumentException("Invalid input parameters.");
+		}
+
+		MatchMode mode = MatchMode.CONTAINS;
+		String matchValue = locatorValue;
+		int separator = locatorValue.indexOf(':');
+		if (separator > 0) {
+			String prefix = locatorValue.substring(0, separator).toUpperCase(Locale.ROOT);
+			for (MatchMode candidate : MatchMode.values()) {
+				if (candidate.name().equals(prefix)) {
+					mode = candidate;
+					matchValue = locatorValue.substring(separator + 1);
+					break;
+				}
+			}
+		}
+		return new PartialMatcher(getProperty(locatorType), mode, matchValue);
+	}
+
+	/**
+	 * Get the property a partial locator type matches on.
+	 *
+	 * @param locatorType The partial locator type.
+	 * @return The PropertyID for the locator.
+	 * @throws IllegalArgumentException If the locator type is not a partial
+	 *                                  locator.
+	 */
+	public static PropertyID getProperty(LocatorType locatorType) {
+		if (locatorType == null) {
+			throw new IllegalArgumentException("Locator type cannot be null.");
+		}
+		switch (locatorType) {
+		case PARTIALNAME:
+			return PropertyID.Name;
+		case PARTIALID:
+			return PropertyID.AutomationId;
+		case PARTIALTEXT:
+			return PropertyID.HelpText;
+		case PARTIALVALUE:
+			return PropertyID.LegacyIAccessibleValue;
+		default:
+			throw new IllegalArgumentException("Not a partial locator type: " + locatorType);
+		}
+	}
+
+	/**
+	 * Get the property this matcher matches on.
+	 *
+	 * @return The PropertyID.
+	 */
+	public PropertyID getProperty() {
+		return property;
+	}
+
+	/**
+	 * Get the match mode of this matcher.
+	 *
+	 * @return The MatchMode.
+	 */
+	public MatchMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Get the value, or regular expression, this matcher matches.
+	 *
+	 * @return The match value.
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * Checks whether a property value matches.
+	 *
+	 * @param candidate The property value to check. Null never matches.
+	 * @return True if the property value matches.
+	 */
+	public boolean matches(String candidate) {
+		if (candidate == null) {
+			return false;
+		}
+		switch (mode) {
+		case PREFIX:
+			return candidate.startsWith(value);
+		case SUFFIX:
+			return candidate.endsWith(value);
+		case REGEX:
+			return pattern.matcher(candidate).find();
+		case CONTAINS:
+		default:
+			return candidate.contains(value);
+		}
+	}
+
+	/**
+	 * Filters the candidate elements, stopping at the first match for
+	 * {@link FindOption#FIRST}.
+	 *
+	 * @param candidates The elements to filter.
+	 * @param reader     The reader for the property values, normally reading the
+	 *                   prefetched values.
+	 * @param findOption Whether to find the FIRST matching element or ALL
+	 *                   matching elements.
+	 * @return The matching elements, in the order of the candidates.
+	 * @throws AutomationException If a property could not be read.
+	 */
+	public List<Element> filter(List<Element> candidates, PropertyReader reader, FindOption findOption)
+			throws AutomationException {
+		List<Element> matched = new ArrayList<>();
+		for (Element candidate : candidates) {
+			if (matches(reader.read(candidate, property))) {
+				matched.add(candidate);
+				if (findOption == FindOption.FIRST) {
+					break;
+				}
+			}
+		}
+		return matched;
+	}
+
+	@Override
+	public String toString() {
+		return property.name() + " " + mode + " '" + value + "'";
+	}
+}
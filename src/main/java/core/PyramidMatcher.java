@@ -0,0 +1,279 @@
+package core;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import core.TemplateCache.Level;
+import core.TemplateMatcher.Match;
+
+/**
+ * The PyramidMatcher class finds a template in an image that may be shown at
+ * another scale than it was captured at, e.g. on a host with another display
+ * scaling. The template is tried at every scale of a range, and at every scale
+ * it is searched coarse to fine: over the whole image at a reduced resolution
+ * of the pyramid of half-size levels first, keeping the best few candidates,
+ * and then around each candidate at every finer level, down to the full
+ * resolution where the match must score the threshold. It works on images in
+ * memory, so it needs no display.
+ *
+ * The coarse search uses a lower threshold, as the details that make a match
+ * stand out are lost at a reduced resolution. A template is reduced only while
+ * its smaller side keeps {@value #MIN_TEMPLATE_SIZE} pixels, so a small
+ * template is searched at full resolution.
+ *
+ * A template captured at one display scaling is shown at the ratio of two
+ * display scalings on another host, and a few percent off that ratio costs a
+ * text-heavy template most of its score. So the ratios of the
+ * {@link #DISPLAY_SCALINGS} in the range are tried exactly, and the gaps
+ * between them are filled in steps of {@value #SCALE_STEP}.
+ */
+public class PyramidMatcher {
+
+	/**
+	 * The smallest width or height of a template at a reduced resolution.
+	 */
+	public static final int MIN_TEMPLATE_SIZE = 8;
+
+	/**
+	 * The largest factor between two neighbouring scales of the range.
+	 */
+	public static final double SCALE_STEP = 1.05;
+
+	/**
+	 * The display scalings offered by Windows, in percent.
+	 */
+	public static final int[] DISPLAY_SCALINGS = { 100, 125, 150, 175, 200 };
+
+	/**
+	 * The score of a match that ends the search, as no other scale can do
+	 * better.
+	 */
+	private static final double EXACT_SCORE = 0.99;
+
+	/**
+	 * How much lower the coarse search threshold is than the threshold.
+	 */
+	private static final double COARSE_SLACK = 0.2;
+
+	/**
+	 * The number of candidates of the coarse search that are refined.
+	 */
+	private static final int CANDIDATES = 16;
+
+	/**
+	 * The pixels around a candidate searched at the next finer level.
+	 */
+	private static final int REFINE_MARGIN = 3;
+
+	/**
+	 * The deepest level searched.
+	 */
+	private static final int MAX_DEPTH = 4;
+
+	private final TemplateMatcher matcher;
+	private final TemplateMatcher coarseMatcher;
+	private final List<Double> scales;
+
+	/**
+	 * Constructs a new PyramidMatcher at the template's own scale, with the
+	 * {@link TemplateMatcher#DEFAULT_THRESHOLD}.
+	 */
+	public PyramidMatcher() {
+		this(TemplateMatcher.DEFAULT_THRESHOLD, 1, 1);
+	}
+
+	/**
+	 * Constructs a new PyramidMatcher.
+	 *
+	 * @param threshold The lowest score of a match at full resolution, between 0
+	 *                  and 1.
+	 * @param minScale  The smallest scale of the template tried.
+	 * @param maxScale  The largest scale of the template tried.
+	 * @throws IllegalArgumentException If the threshold is not between 0 and 1,
+	 *                                  or the scales are not positive or not in
+	 *                                  order.
+	 */
+	public PyramidMatcher(double threshold, double minScale, double maxScale) {
+		if (minScale <= 0 || maxScale < minScale) {
+			throw new IllegalArgumentException("Invalid scale range: " + minScale + " - " + maxScale);
+		}
+		this.matcher = new TemplateMatcher(threshold);
+		this.coarseMatcher = new TemplateMatcher(Math.max(0, threshold - COARSE_SLACK));
+
+		TreeSet<Double> range = new TreeSet<>();
+		range.add(minScale);
+		range.add(maxScale);
+		if (minScale <= 1 && maxScale >= 1) {
+			range.add(1.0);
+		}
+		for (int from : DISPLAY_SCALINGS) {
+			for (int to : DISPLAY_SCALINGS) {
+				double scale = (double) to / from;
+				if (scale >= minScale && scale <= maxScale) {
+					range.add(scale);
+				}
+			}
+		}
+		List<Double> filled = new ArrayList<>();
+		for (double scale : range) {
+			if (!filled.isEmpty()) {
+				double previous = filled.get(filled.size() - 1);
+				int steps = (int) Math.ceil(Math.log(scale / previous) / Math.log(SCALE_STEP) - 1e-9);
+				for (int step = 1; step < steps; step++) {
+					filled.add(previous * Math.pow(scale / previous, (double) step / steps));
+				}
+			}
+			filled.add(scale);
+		}
+
+		// The template's own scale first, then the closer ones.
+		filled.sort((a, b) -> Double.compare(Math.abs(Math.log(a)), Math.abs(Math.log(b))));
+		this.scales = Collections.unmodifiableList(filled);
+	}
+
+	/**
+	 * Get the scales the template is tried at, closest to its own scale first.
+	 *
+	 * @return The scales.
+	 */
+	public List<Double> getScales() {
+		return scales;
+	}
+
+	/**
+	 * Finds the best match of a template in an image at any scale of the range.
+	 * The search ends early at a match that is as good as exact.
+	 *
+	 * @param image    The image to search.
+	 * @param template The template to find.
+	 * @return The best Match, with the scale it was found at, or null if no
+	 *         position scores the threshold.
+	 */
+	public Match find(BufferedImage image, BufferedImage template) {
+		return find(Level.of(image), Level.of(template));
+	}
+
+	/**
+	 * Finds the best match of a template in a grayscale image at any scale of
+	 * the range. The search ends early at a match that is as good as exact.
+	 *
+	 * @param image    The image to search.
+	 * @param template The template to find.
+	 * @return The best Match, with the scale it was found at, or null if no
+	 *         position scores the threshold.
+	 */
+	public Match find(Level image, Level template) {
+		List<Level> imagePyramid = new ArrayList<>();
+		imagePyramid.add(image);
+		Match best = null;
+		for (double scale : scales) {
+			Level scaled = scale == 1 ? template : resize(template, scale);
+			if (scaled == null || scaled.getWidth() > image.getWidth() || scaled.getHeight() > image.getHeight()) {
+				continue;
+			}
+			Match match = find(imagePyramid, scaled, scale);
+			if (match != null && (best == null || match.getScore() > best.getScore())) {
+				best = match;
+				if (best.getScore() >= EXACT_SCORE) {
+					break;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Finds a template at one scale, coarse to fine.
+	 *
+	 * @param imagePyramid The levels of the image made so far, extended as
+	 *                     needed.
+	 * @param template     The scaled template.
+	 * @param scale        The scale of the template.
+	 * @return The best Match, or null.
+	 */
+	private Match find(List<Level> imagePyramid, Level template, double scale) {
+		List<Level> templatePyramid = new ArrayList<>();
+		templatePyramid.add(template);
+		Level reduced = template;
+		while (templatePyramid.size() <= MAX_DEPTH && reduced.getWidth() / 2 >= MIN_TEMPLATE_SIZE
+				&& reduced.getHeight() / 2 >= MIN_TEMPLATE_SIZE) {
+			reduced = reduced.half();
+			templatePyramid.add(reduced);
+		}
+		int depth = templatePyramid.size() - 1;
+		while (imagePyramid.size() <= depth) {
+			imagePyramid.add(imagePyramid.get(imagePyramid.size() - 1).half());
+		}
+
+		if (depth == 0) {
+			return scaled(matcher.find(imagePyramid.get(0), template), scale);
+		}
+		Match best = null;
+		for (Match candidate : coarseMatcher.find(imagePyramid.get(depth), templatePyramid.get(depth), null,
+				CANDIDATES)) {
+			Match refined = candidate;
+			for (int level = depth - 1; level >= 0 && refined != null; level--) {
+				Level levelTemplate = templatePyramid.get(level);
+				Rectangle around = new Rectangle(2 * refined.getRect().x - REFINE_MARGIN,
+						2 * refined.getRect().y - REFINE_MARGIN, levelTemplate.getWidth() + 2 * REFINE_MARGIN,
+						levelTemplate.getHeight() + 2 * REFINE_MARGIN);
+				refined = (level == 0 ? matcher : coarseMatcher).find(imagePyramid.get(level), levelTemplate, around);
+			}
+			if (refined != null && (best == null || refined.getScore() > best.getScore())) {
+				best = refined;
+			}
+		}
+		return scaled(best, scale);
+	}
+
+	private static Match scaled(Match match, double scale) {
+		if (match == null) {
+			return null;
+		}
+		Rectangle rect = match.getRect();
+		return new Match(rect.x, rect.y, rect.width, rect.height, match.getScore(), scale);
+	}
+
+	/**
+	 * Resizes a grayscale image by bilinear interpolation.
+	 *
+	 * @param level The image.
+	 * @param scale The scale.
+	 * @return The resized image, or null if it would be empty.
+	 */
+	static Level resize(Level level, double scale) {
+		int width = (int) Math.round(level.getWidth() * scale);
+		int height = (int) Math.round(level.getHeight() * scale);
+		if (width < 1 || height < 1) {
+			return null;
+		}
+		byte[] source = level.getPixels();
+		int sourceWidth = level.getWidth();
+		int sourceHeight = level.getHeight();
+		double stepX = (double) sourceWidth / width;
+		double stepY = (double) sourceHeight / height;
+		byte[] resized = new byte[width * height];
+		for (int y = 0; y < height; y++) {
+			double sourceY = Math.min(sourceHeight - 1, Math.max(0, (y + 0.5) * stepY - 0.5));
+			int top = (int) sourceY;
+			int bottom = Math.min(sourceHeight - 1, top + 1);
+			double fractionY = sourceY - top;
+			for (int x = 0; x < width; x++) {
+				double sourceX = Math.min(sourceWidth - 1, Math.max(0, (x + 0.5) * stepX - 0.5));
+				int left = (int) sourceX;
+				int right = Math.min(sourceWidth - 1, left + 1);
+				double fractionX = sourceX - left;
+				double upper = (source[top * sourceWidth + left] & 0xFF) * (1 - fractionX)
+						+ (source[top * sourceWidth + right] & 0xFF) * fractionX;
+				double lower = (source[bottom * sourceWidth + left] & 0xFF) * (1 - fractionX)
+						+ (source[bottom * sourceWidth + right] & 0xFF) * fractionX;
+				resized[y * width + x] = (byte) Math.round(upper * (1 - fractionY) + lower * fractionY);
+			}
+		}
+		return new Level(width, height, resized);
+	}
+}
@@ -0,0 +1,29 @@
+package core;
+
+/**
+ * The RetryPolicy interface decides how long the {@link By} class waits between
+ * the attempts of an element lookup. The policy of the {@link Driver} can be
+ * replaced with {@link Driver#setRetryPolicy(RetryPolicy)}.
+ */
+public interface RetryPolicy {
+
+	/**
+	 * Returned by {@link #nextDelay} to end the lookup.
+	 */
+	long STOP = -1;
+
+	/**
+	 * Returned as the remaining time when the lookup has no deadline.
+	 */
+	long NO_DEADLINE = Long.MAX_VALUE;
+
+	/**
+	 * Get how long to wait before the next attempt of a lookup.
+	 *
+	 * @param failedAttempts  The number of attempts made so far, at least 1.
+	 * @param remainingMillis The time left until the deadline of the lookup, in
+	 *                        milliseconds, or {@link #NO_DEADLINE}.
+	 * @return The wait in milliseconds, or {@link #STOP} to give up.
+	 */
+	long nextDelay(int failedAttempts, long remainingMillis);
+}
@@ -0,0 +1,132 @@
+package core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ScopeStatistics class compares the searches made in the current search
+ * scope of the {@link Driver} with the searches made from the root element,
+ * so that the time saved by scoping, and the cost of the fallbacks to the
+ * root, can be seen per run. The statistics are thread-safe.
+ */
+public class ScopeStatistics {
+
+	private final AtomicLong scopedSearches = new AtomicLong();
+	private final AtomicLong scopedHits = new AtomicLong();
+	private final AtomicLong scopedNanos = new AtomicLong();
+	private final AtomicLong rootSearches = new AtomicLong();
+	private final AtomicLong rootHits = new AtomicLong();
+	private final AtomicLong rootNanos = new AtomicLong();
+	private final AtomicLong fallbacks = new AtomicLong();
+
+	/**
+	 * Adds a search in the current scope.
+	 *
+	 * @param found True if the search found the element.
+	 * @param nanos The time of the search, in nanoseconds.
+	 */
+	public void recordScoped(boolean found, long nanos) {
+		scopedSearches.incrementAndGet();
+		scopedNanos.addAndGet(nanos);
+		if (found) {
+			scopedHits.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Adds a search from the root element.
+	 *
+	 * @param found    True if the search found the element.
+	 * @param nanos    The time of the search, in nanoseconds.
+	 * @param fallback True if the search followed a scoped search that missed.
+	 */
+	public void recordRoot(boolean found, long nanos, boolean fallback) {
+		rootSearches.incrementAndGet();
+		rootNanos.addAndGet(nanos);
+		if (found) {
+			rootHits.incrementAndGet();
+		}
+		if (fallback) {
+			fallbacks.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Get the number of searches in the current scope.
+	 *
+	 * @return The scoped search count.
+	 */
+	public long getScopedSearches() {
+		return scopedSearches.get();
+	}
+
+	/**
+	 * Get the number of scoped searches that found the element.
+	 *
+	 * @return The scoped hit count.
+	 */
+	public long getScopedHits() {
+		return scopedHits.get();
+	}
+
+	/**
+	 * Get the number of searches from the root element.
+	 *
+	 * @return The root search count.
+	 */
+	public long getRootSearches() {
+		return rootSearches.get();
+	}
+
+	/**
+	 * Get the number of root searches made because a scoped search missed.
+	 *
+	 * @return The fallback count.
+	 */
+	public long getFallbacks() {
+		return fallbacks.get();
+	}
+
+	/**
+	 * Get the average time of a scoped search.
+	 *
+	 * @return The average time in milliseconds, or 0 if there was none.
+	 */
+	public double getAverageScopedMillis() {
+		return average(scopedNanos.get(), scopedSearches.get());
+	}
+
+	/**
+	 * Get the average time of a root search.
+	 *
+	 * @return The average time in milliseconds, or 0 if there was none.
+	 */
+	public double getAverageRootMillis() {
+		return average(rootNanos.get(), rootSearches.get());
+	}
+
+	private static double average(long nanos, long count) {
+		return count == 0 ? 0 : (double) nanos / count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Resets the statistics.
+	 */
+	public void reset() {
+		scopedSearches.set(0);
+		scopedHits.set(0);
+		scopedNanos.set(0);
+		rootSearches.set(0);
+		rootHits.set(0);
+		rootNanos.set(0);
+		fallbacks.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"ScopeStatistics[scoped=%d (hits=%d, %.3f ms/search), root=%d (hits=%d, %.3f ms/search), fallbacks=%d]",
+				scopedSearches.get(), scopedHits.get(), getAverageScopedMillis(), rootSearches.get(), rootHits.get(),
+				getAverageRootMillis(), fallbacks.get());
+	}
+}
@@ -0,0 +1,142 @@
+package core;
+
+import java.util.Objects;
+
+import actions.LocatorType;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.PropertyID;
+
+/**
+ * The SearchCondition class is an immutable description of a UIAutomation
+ * search condition. It combines the locator type, the control type and the
+ * value to match, and is used as the key for cached condition objects.
+ *
+ * A condition without a locator type and value matches on the control type
+ * only. This form is used by the partial locators, which filter the matched
+ * elements on the client side.
+ */
+public final class SearchCondition {
+
+	private final LocatorType locatorType;
+	private final ControlType controlType;
+	private final String value;
+	private final int hash;
+
+	/**
+	 * Constructs a new SearchCondition.
+	 *
+	 * @param locatorType The locator type (NAME, ID, TEXT or VALUE), or null for
+	 *                    a control type only condition.
+	 * @param controlType The ControlType of the element to find.
+	 * @param value       The value to match, or null for a control type only
+	 *                    condition.
+	 * @throws NullPointerException If the controlType is null.
+	 */
+	public SearchCondition(LocatorType locatorType, ControlType controlType, String value) {
+		if (controlType == null) {
+			throw new NullPointerException("ControlType cannot be null.");
+		}
+		this.locatorType = locatorType;
+		this.controlType = controlType;
+		this.value = value;
+		this.hash = Objects.hash(locatorType, controlType, value);
+	}
+
+	/**
+	 * Creates a condition that matches on the control type only.
+	 *
+	 * @param controlType The ControlType of the elements to find.
+	 * @return The control type only SearchCondition.
+	 */
+	public static SearchCondition ofControlType(ControlType controlType) {
+		return new SearchCondition(null, controlType, null);
+	}
+
+	/**
+	 * Get the locator type of this condition.
+	 *
+	 * @return The LocatorType, or null for a control type only condition.
+	 */
+	public LocatorType getLocatorType() {
+		return locatorType;
+	}
+
+	/**
+	 * Get the control type of this condition.
+	 *
+	 * @return The ControlType to match.
+	 */
+	public ControlType getControlType() {
+		return controlType;
+	}
+
+	/**
+	 * Get the value of this condition.
+	 *
+	 * @return The value to match, or null for a control type only condition.
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * Checks whether this condition matches on the control type only.
+	 *
+	 * @return True if there is no property part in this condition.
+	 */
+	public boolean isControlTypeOnly() {
+		return locatorType == null || value == null;
+	}
+
+	/**
+	 * Get the property the locator of this condition matches on.
+	 *
+	 * @return The PropertyID, or null if the condition matches on the control type
+	 *         only.
+	 * @throws IllegalArgumentException If the locator type has no property, e.g.
+	 *                                  IMAGE.
+	 */
+	public PropertyID getProperty() {
+		if (isControlTypeOnly()) {
+			return null;
+		}
+		switch (locatorType) {
+		case NAME:
+			return PropertyID.Name;
+		case ID:
+			return PropertyID.AutomationId;
+		case TEXT:
+			return PropertyID.HelpText;
+		case VALUE:
+			return PropertyID.LegacyIAccessibleValue;
+		default:
+			return PartialMatcher.getProperty(locatorType);
+		}
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SearchCondition)) {
+			return false;
+		}
+		SearchCondition other = (SearchCondition) obj;
+		return locatorType == other.locatorType && controlType == other.controlType
+				&& Objects.equals(value, other.value);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		if (isControlTypeOnly()) {
+			return controlType.name();
+		}
+		return locatorType + " - " + controlType.name() + " - " + value;
+	}
+}
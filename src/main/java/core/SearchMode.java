@@ -0,0 +1,25 @@
+package core;
+
+/**
+ * An enumeration of the ways the {@link By} class searches the automation
+ * tree, set with {@link Driver#setSearchMode(SearchMode, int)}.
+ */
+public enum SearchMode {
+	/**
+	 * Search with one FindFirst or FindAll call of the backend in the
+	 * {@link Driver#scope}. UIAutomation walks the whole scope, so a miss or a
+	 * target late in tree order costs a walk of the full subtree.
+	 */
+	SUBTREE,
+	/**
+	 * Walk the tree depth first, in tree order, down to the search depth only.
+	 * Suits targets that are known to be shallow, like toolbar buttons and menu
+	 * items a few levels below the window.
+	 */
+	DEPTH_LIMITED,
+	/**
+	 * Walk the tree breadth first, down to the search depth, so that the element
+	 * nearest to the search root is found first and the walk stops there.
+	 */
+	BREADTH_FIRST
+}
@@ -0,0 +1,163 @@
+package core;
+
+import mmarquee.uiautomation.TreeScope;
+
+/**
+ * The SearchOptions class holds the settings of the element lookups of one
+ * {@link Driver} session: the search attempts, whether searches start from the
+ * root element, the tree scope, the search mode and depth, and the retry
+ * policy. The options are immutable; the with methods return a copy with one
+ * setting changed, so a lookup reads one consistent set of options even while
+ * another thread changes the session settings.
+ */
+public final class SearchOptions {
+
+	/**
+	 * The default options: one attempt from the root element over the whole
+	 * subtree, retried with a {@link BackoffRetryPolicy}.
+	 */
+	public static final SearchOptions DEFAULT = new SearchOptions(1, true, TreeScope.SUBTREE, SearchMode.SUBTREE, 4,
+			new BackoffRetryPolicy());
+
+	private final int searchAttempts;
+	private final boolean rootSearch;
+	private final int scope;
+	private final SearchMode searchMode;
+	private final int searchDepth;
+	private final RetryPolicy retryPolicy;
+
+	private SearchOptions(int searchAttempts, boolean rootSearch, int scope, SearchMode searchMode, int searchDepth,
+			RetryPolicy retryPolicy) {
+		this.searchAttempts = searchAttempts;
+		this.rootSearch = rootSearch;
+		this.scope = scope;
+		this.searchMode = searchMode;
+		this.searchDepth = searchDepth;
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * Get the number of search attempts of the lookups without a deadline.
+	 *
+	 * @return The search attempts.
+	 */
+	public int getSearchAttempts() {
+		return searchAttempts;
+	}
+
+	/**
+	 * Checks whether the searches start from the root element, or from the
+	 * search context of the session.
+	 *
+	 * @return True if the searches start from the root element.
+	 */
+	public boolean isRootSearch() {
+		return rootSearch;
+	}
+
+	/**
+	 * Get the scope of searching.
+	 *
+	 * @return The scope (e.g., TreeScope.SUBTREE, TreeScope.CHILDREN).
+	 */
+	public int getScope() {
+		return scope;
+	}
+
+	/**
+	 * Get how the tree is searched.
+	 *
+	 * @return The SearchMode.
+	 */
+	public SearchMode getSearchMode() {
+		return searchMode;
+	}
+
+	/**
+	 * Get the number of levels below the search root the tree walking search
+	 * modes walk.
+	 *
+	 * @return The search depth.
+	 */
+	public int getSearchDepth() {
+		return searchDepth;
+	}
+
+	/**
+	 * Get the retry policy of the lookups.
+	 *
+	 * @return The RetryPolicy.
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Returns a copy of these options with the given search attempts.
+	 *
+	 * @param searchAttempts The number of search attempts.
+	 * @return The new SearchOptions.
+	 */
+	public SearchOptions withSearchAttempts(int searchAttempts) {
+		return new SearchOptions(searchAttempts, rootSearch, scope, searchMode, searchDepth, retryPolicy);
+	}
+
+	/**
+	 * Returns a copy of these options searching from the root element or from
+	 * the search context.
+	 *
+	 * @param rootSearch True to search from the root element.
+	 * @return The new SearchOptions.
+	 */
+	public SearchOptions withRootSearch(boolean rootSearch) {
+		return new SearchOptions(searchAttempts, rootSearch, scope, searchMode, searchDepth, retryPolicy);
+	}
+
+	/**
+	 * Returns a copy of these options with the given scope of searching.
+	 *
+	 * @param scope The scope (e.g., TreeScope.SUBTREE, TreeScope.CHILDREN).
+	 * @return The new SearchOptions.
+	 */
+	public SearchOptions withScope(int scope) {
+		return new SearchOptions(searchAttempts, rootSearch, scope, searchMode, searchDepth, retryPolicy);
+	}
+
+	/**
+	 * Returns a copy of these options with the given search mode and depth.
+	 *
+	 * @param searchMode  The search mode.
+	 * @param searchDepth The number of levels below the search root the tree
+	 *                    walking search modes walk.
+	 * @return The new SearchOptions.
+	 * @throws IllegalArgumentException If the depth is less than one.
+	 */
+	public SearchOptions withSearchMode(SearchMode searchMode, int searchDepth) {
+		if (searchMode == null) {
+			throw new NullPointerException("SearchMode cannot be null.");
+		}
+		if (searchDepth < 1) {
+			throw new IllegalArgumentException("Search depth must be at least 1: " + searchDepth);
+		}
+		return new SearchOptions(searchAttempts, rootSearch, scope, searchMode, searchDepth, retryPolicy);
+	}
+
+	/**
+	 * Returns a copy of these options with the given retry policy.
+	 *
+	 * @param retryPolicy The RetryPolicy.
+	 * @return The new SearchOptions.
+	 */
+	public SearchOptions withRetryPolicy(RetryPolicy retryPolicy) {
+		if (retryPolicy == null) {
+			throw new NullPointerException("RetryPolicy cannot be null.");
+		}
+		return new SearchOptions(searchAttempts, rootSearch, scope, searchMode, searchDepth, retryPolicy);
+	}
+
+	@Override
+	public String toString() {
+		return "SearchOptions[attempts=" + searchAttempts + ", rootSearch=" + rootSearch + ", scope=" + scope
+				+ ", mode=" + searchMode + ", depth=" + searchDepth + ", retry=" + retryPolicy + "]";
+	}
+}
@@ -0,0 +1,199 @@
+package core;
+
+import java.awt.Rectangle;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The SearchRegion class is the parsed search area of an IMAGE locator, the
+ * first parameter of the locator. Besides "SCREEN" and the name of an image to
+ * search inside, a search area can be a region of interest where the image is
+ * searched first, before the search is widened to the screen:
+ * <ul>
+ * <li>{@code WINDOW:<title>}: the bounds of a top-level window or pane, found
+ * through UIAutomation;</li>
+ * <li>{@code RECT:<x>,<y>,<width>,<height>}: a fixed rectangle of the
+ * screen;</li>
+ * <li>{@code LAST} or {@code LAST:<margin>}: the location the image was last
+ * found at, also in an earlier run, see {@link HitHistory}, grown by a margin
+ * of {@value #DEFAULT_MARGIN} pixels or the given one.</li>
+ * </ul>
+ *
+ * Search areas are parsed once per distinct string and then shared. A region
+ * that cannot be parsed fails with an IllegalArgumentException, so that a
+ * locator with a misspelled region fails when the sheets are validated.
+ */
+public final class SearchRegion {
+
+	/**
+	 * The margin around the last location of an image, in pixels.
+	 */
+	public static final int DEFAULT_MARGIN = 50;
+
+	private static final Map<String, SearchRegion> regions = new ConcurrentHashMap<>();
+
+	/**
+	 * The kinds of search area.
+	 */
+	public enum Kind {
+		/** The whole screen. */
+		SCREEN,
+		/** The match of another image. */
+		IMAGE,
+		/** The bounds of a top-level window or pane. */
+		WINDOW,
+		/** A fixed rectangle of the screen. */
+		RECT,
+		/** The last location of the image plus a margin. */
+		LAST
+	}
+
+	private final Kind kind;
+	private final String value;
+	private final Rectangle rectangle;
+	private final int margin;
+
+	private SearchRegion(Kind kind, String value, Rectangle rectangle, int margin) {
+		this.kind = kind;
+		this.value = value;
+		this.rectangle = rectangle;
+		this.margin = margin;
+	}
+
+	/**
+	 * Get the region of a search area, parsing it on first use.
+	 *
+	 * @param area The search area, see the class comment.
+	 * @return The SearchRegion.
+	 * @throws IllegalArgumentException If the area is a malformed region.
+	 * @throws NullPointerException     If the area is null.
+	 */
+	public static SearchRegion of(String area) throws IllegalArgumentException {
+		SearchRegion region = regions.get(area);
+		if (region == null) {
+			region = parse(area);
+			regions.putIfAbsent(area, region);
+		}
+		return region;
+	}
+
+	private static SearchRegion parse(String area) {
+		if (area.equalsIgnoreCase("SCREEN")) {
+			return new SearchRegion(Kind.SCREEN, area, null, 0);
+		}
+		int colon = area.indexOf(':');
+		String prefix = (colon < 0 ? area : area.substring(0, colon)).trim().toUpperCase(Locale.ROOT);
+		String value = colon < 0 ? "" : area.substring(colon + 1).trim();
+		switch (prefix) {
+		case "WINDOW":
+			if (value.isEmpty()) {
+				throw new IllegalArgumentException("Window title of search region is empty: " + area);
+			}
+			return new SearchRegion(Kind.WINDOW, value, null, 0);
+		case "RECT":
+			String[] parts = value.split(",");
+			if (parts.length != 4) {
+				throw new IllegalArgumentException("Search region must be RECT:x,y,width,height: " + area);
+			}
+			try {
+				Rectangle rectangle = new Rectangle(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+						Integer.parseInt(parts[2].trim()), Integer.parseInt(parts[3].trim()));
+				if (rectangle.isEmpty()) {
+					throw new IllegalArgumentException("Search region is empty: " + area);
+				}
+				return new SearchRegion(Kind.RECT, value, rectangle, 0);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Search region must be RECT:x,y,width,height: " + area);
+			}
+		case "LAST":
+			if (colon < 0) {
+				return new SearchRegion(Kind.LAST, value, null, DEFAULT_MARGIN);
+			}
+			try {
+				int margin = Integer.parseInt(value);
+				if (margin < 0) {
+					throw new IllegalArgumentException("Margin of search region is negative: " + area);
+				}
+				return new SearchRegion(Kind.LAST, value, null, margin);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Search region must be LAST or LAST:margin: " + area);
+			}
+		default:
+			return new SearchRegion(Kind.IMAGE, area, null, 0);
+		}
+	}
+
+	/**
+	 * Grows the location an image was found at by a margin on every side.
+	 *
+	 * @param location The location.
+	 * @param margin   The margin in pixels.
+	 * @return The grown rectangle.
+	 */
+	public static Rectangle around(Rectangle location, int margin) {
+		Rectangle grown = new Rectangle(location);
+		grown.grow(margin, margin);
+		return grown;
+	}
+
+	/**
+	 * Get the kind of the search area.
+	 *
+	 * @return The Kind.
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Checks whether the search area names an image to search inside.
+	 *
+	 * @return True for an image.
+	 */
+	public boolean isImage() {
+		return kind == Kind.IMAGE;
+	}
+
+	/**
+	 * Checks whether the search area is a region of interest, searched before the
+	 * screen.
+	 *
+	 * @return True for a WINDOW, RECT or LAST region.
+	 */
+	public boolean isRegionOfInterest() {
+		return kind == Kind.WINDOW || kind == Kind.RECT || kind == Kind.LAST;
+	}
+
+	/**
+	 * Get the image name of an IMAGE area or the window title of a WINDOW region.
+	 *
+	 * @return The value.
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * Get the rectangle of a RECT region.
+	 *
+	 * @return A copy of the rectangle, or null for the other kinds.
+	 */
+	public Rectangle getRectangle() {
+		return rectangle == null ? null : new Rectangle(rectangle);
+	}
+
+	/**
+	 * Get the margin of a LAST region.
+	 *
+	 * @return The margin in pixels.
+	 */
+	public int getMargin() {
+		return margin;
+	}
+
+	@Override
+	public String toString() {
+		return "SearchRegion[" + kind + (value.isEmpty() ? "" : ", " + value) + "]";
+	}
+}
@@ -15,9 +15,11 @@ import actions.Mouse;
 public class SikuliElement {
 
 	/**
-	 * The SikuliX {@code Screen} instance used for screen actions.
+	 * Holds the SikuliX {@code Screen}, created on the first screen action.
 	 */
-	public static Screen screen = new Screen();
+	private static final class ScreenHolder {
+		private static final Screen SCREEN = new Screen();
+	}
 
 	/**
 	 * The underlying SikuliX {@code Region} associated with this
@@ -34,9 +36,27 @@ public class SikuliElement {
 		this.region = region;
 	}
 
+	/**
+	 * Constructs a new {@code SikuliElement} whose region is computed by the
+	 * subclass on first use, see {@link #getRegion()}.
+	 */
+	protected SikuliElement() {
+	}
+
+	/**
+	 * Returns the SikuliX {@code Screen} instance used for screen actions. It is
+	 * created on first use.
+	 *
+	 * @return The SikuliX {@code Screen}.
+	 */
+	public static Screen getScreen() {
+		return ScreenHolder.SCREEN;
+	}
+
 	/**
 	 * Returns the underlying SikuliX {@code Region} associated with this
-	 * {@code SikuliElement}.
+	 * {@code SikuliElement}. All actions go through this method, so subclasses
+	 * can compute the region lazily.
 	 *
 	 * @return The SikuliX {@code Region} instance.
 	 */
@@ -50,35 +70,35 @@ public class SikuliElement {
 	 * right and 5 pixels above the original position.
 	 */
 	public void click() {
-		region.getBottomLeft().right(5).above(5).click();
+		getRegion().getBottomLeft().right(5).above(5).click();
 	}
 
 	/**
 	 * Performs a click action on the center of the {@code SikuliElement}.
 	 */
 	public void clickCenter() {
-		region.getCenter().click();
+		getRegion().getCenter().click();
 	}
 
 	/**
 	 * Performs a right-click action on the {@code SikuliElement}.
 	 */
 	public void rightClick() {
-		region.rightClick();
+		getRegion().rightClick();
 	}
 
 	/**
 	 * Performs a double-click action on the {@code SikuliElement}.
 	 */
 	public void doubleClick() {
-		region.doubleClick();
+		getRegion().doubleClick();
 	}
 
 	/**
 	 * Performs a hover action over the {@code SikuliElement}.
 	 */
 	public void hover() {
-		region.hover();
+		getRegion().hover();
 	}
 
 	/**
@@ -87,7 +107,7 @@ public class SikuliElement {
 	 */
 	public void drag() {
 		try {
-			screen.drag(region);
+			getScreen().drag(getRegion());
 		} catch (FindFailed e) {
 			System.out.println("Exception in Drag :- " + e.getMessage());
 		}
@@ -98,7 +118,7 @@ public class SikuliElement {
 	 */
 	public void dropAt() {
 		try {
-			screen.dropAt(region);
+			getScreen().dropAt(getRegion());
 		} catch (FindFailed e) {
 			System.out.println("Exception in Drag :- " + e.getMessage());
 		}
@@ -111,7 +131,7 @@ public class SikuliElement {
 	 *                 highlighted.
 	 */
 	public void highlight(double duration) {
-		region.highlight(duration);
+		getRegion().highlight(duration);
 	}
 
 	/**
@@ -120,7 +140,7 @@ public class SikuliElement {
 	 * @return {@code true} if the element is displayed, {@code false} otherwise.
 	 */
 	public boolean isDisplayed() {
-		return region.isValid();
+		return getRegion().isValid();
 	}
 
 	/**
@@ -130,7 +150,7 @@ public class SikuliElement {
 	 * @return {@code true} if the element is vanished, {@code false} otherwise.
 	 */
 	public boolean isVanished() {
-		return screen.isVirtual();
+		return getScreen().isVirtual();
 	}
 
 	/**
@@ -150,7 +170,7 @@ public class SikuliElement {
 	 */
 	public void write(String text) {
 		clear();
-		screen.type(text);
+		getScreen().type(text);
 	}
 
 	/**
@@ -0,0 +1,136 @@
+package core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The SnapshotStatistics class counts the {@link TreeSnapshot}s captured by
+ * the Driver sessions and the queries they answered, so that the time the
+ * captures cost can be weighed against the live lookups they saved. A query
+ * the snapshot cannot confirm falls back to a live lookup. The statistics are
+ * thread-safe.
+ */
+public class SnapshotStatistics {
+
+	private final AtomicLong captures = new AtomicLong();
+	private final AtomicLong capturedNodes = new AtomicLong();
+	private final AtomicLong captureNanos = new AtomicLong();
+	private final AtomicLong answers = new AtomicLong();
+	private final AtomicLong answerNanos = new AtomicLong();
+	private final AtomicLong fallbacks = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	/**
+	 * Adds a capture.
+	 *
+	 * @param nodes The number of nodes captured.
+	 * @param nanos The time of the capture, in nanoseconds.
+	 */
+	public void recordCapture(int nodes, long nanos) {
+		captures.incrementAndGet();
+		capturedNodes.addAndGet(nodes);
+		captureNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Adds a query answered by the snapshot.
+	 *
+	 * @param nanos The time of the query, in nanoseconds.
+	 */
+	public void recordAnswer(long nanos) {
+		answers.incrementAndGet();
+		answerNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Adds a query the snapshot could not confirm, made again live.
+	 */
+	public void recordFallback() {
+		fallbacks.incrementAndGet();
+	}
+
+	/**
+	 * Adds a snapshot dropped because the application may have changed.
+	 */
+	public void recordInvalidation() {
+		invalidations.incrementAndGet();
+	}
+
+	/**
+	 * Get the number of captures.
+	 *
+	 * @return The capture count.
+	 */
+	public long getCaptures() {
+		return captures.get();
+	}
+
+	/**
+	 * Get the number of queries answered by a snapshot.
+	 *
+	 * @return The answer count.
+	 */
+	public long getAnswers() {
+		return answers.get();
+	}
+
+	/**
+	 * Get the number of queries made again live.
+	 *
+	 * @return The fallback count.
+	 */
+	public long getFallbacks() {
+		return fallbacks.get();
+	}
+
+	/**
+	 * Get the number of snapshots dropped.
+	 *
+	 * @return The invalidation count.
+	 */
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	/**
+	 * Get the average time of a capture.
+	 *
+	 * @return The average time in milliseconds, or 0 if there was none.
+	 */
+	public double getAverageCaptureMillis() {
+		long count = captures.get();
+		return count == 0 ? 0 : (double) captureNanos.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Get the average time of an answered query.
+	 *
+	 * @return The average time in microseconds, or 0 if there was none.
+	 */
+	public double getAverageAnswerMicros() {
+		long count = answers.get();
+		return count == 0 ? 0 : (double) answerNanos.get() / count / TimeUnit.MICROSECONDS.toNanos(1);
+	}
+
+	/**
+	 * Resets the statistics.
+	 */
+	public void reset() {
+		captures.set(0);
+		capturedNodes.set(0);
+		captureNanos.set(0);
+		answers.set(0);
+		answerNanos.set(0);
+		fallbacks.set(0);
+		invalidations.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"SnapshotStatistics[captures=%d (nodes=%d, %.3f ms/capture), answers=%d (%.3f us/query), "
+						+ "fallbacks=%d, invalidations=%d]",
+				captures.get(), capturedNodes.get(), getAverageCaptureMillis(), answers.get(),
+				getAverageAnswerMicros(), fallbacks.get(), invalidations.get());
+	}
+}
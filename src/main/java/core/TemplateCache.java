@@ -0,0 +1,411 @@
+package core;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The TemplateCache class keeps the template images of the image searches
+ * decoded in memory, so that the polls of a wait for an image do not read and
+ * decode the file again and again. Every template is decoded once, with its
+ * grayscale pixels and a pyramid of half-size grayscale levels for the
+ * matchers, and is read again only when the last-modified time of its file
+ * changes. The cache is warmed with the files of the image folder at startup.
+ *
+ * Templates are looked up by their file name, with or without the image
+ * extension and ignoring case, as the sheets name them. The templates are
+ * immutable and the cache is thread-safe.
+ */
+public final class TemplateCache {
+
+	private static final Logger log = LogManager.getLogger(TemplateCache.class);
+
+	private static final String[] EXTENSIONS = { ".PNG", ".png", ".jpg", ".jpeg", ".bmp", ".gif" };
+
+	/**
+	 * The smallest width or height of a pyramid level.
+	 */
+	private static final int MIN_LEVEL_SIZE = 8;
+
+	private final File folder;
+	private final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong reloads = new AtomicLong();
+	private final AtomicLong decodeNanos = new AtomicLong();
+	private final AtomicLong savedNanos = new AtomicLong();
+
+	/**
+	 * Constructs a new TemplateCache.
+	 *
+	 * @param folder The folder of the templates looked up by name.
+	 */
+	public TemplateCache(String folder) {
+		this.folder = new File(folder);
+	}
+
+	/**
+	 * Decodes the given image files into the cache. Files that are not images
+	 * are skipped.
+	 *
+	 * @param paths The absolute paths of the files.
+	 * @return The number of templates in the cache.
+	 */
+	public int warm(Collection<String> paths) {
+		long start = System.nanoTime();
+		for (String path : paths) {
+			File file = new File(path);
+			if (file.isFile()) {
+				templates.compute(getKey(file.getName()), (key, cached) -> load(file, cached));
+			}
+		}
+		log.info(String.format("Warmed the template cache with %d templates in %.3f ms.", templates.size(),
+				(System.nanoTime() - start) / 1e6));
+		return templates.size();
+	}
+
+	/**
+	 * Get a template by its name, decoding it if it is not cached or its file
+	 * changed since it was decoded.
+	 *
+	 * @param name The file name of the template in the folder, with or without
+	 *             its extension.
+	 * @return The Template, or null if there is no such image file.
+	 */
+	public Template get(String name) {
+		if (name == null || name.isEmpty()) {
+			return null;
+		}
+		Template cached = templates.get(getKey(name));
+		if (cached != null && cached.file.lastModified() == cached.lastModified) {
+			hits.incrementAndGet();
+			savedNanos.addAndGet(cached.decodeNanos);
+			return cached;
+		}
+
+		misses.incrementAndGet();
+		File file = cached != null ? cached.file : resolve(name);
+		if (file == null) {
+			return null;
+		}
+		return templates.compute(getKey(name), (key, current) -> {
+			// Another thread may have decoded the file in the meantime.
+			if (current != null && current != cached && current.file.lastModified() == current.lastModified) {
+				return current;
+			}
+			return load(file, current);
+		});
+	}
+
+	/**
+	 * Removes all templates, e.g. when the image folder is replaced.
+	 */
+	public void clear() {
+		templates.clear();
+	}
+
+	/**
+	 * Get the number of cached templates.
+	 *
+	 * @return The template count.
+	 */
+	public int size() {
+		return templates.size();
+	}
+
+	/**
+	 * Get the number of lookups answered from the cache.
+	 *
+	 * @return The hit count.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Get the number of templates decoded for a changed file.
+	 *
+	 * @return The reload count.
+	 */
+	public long getReloads() {
+		return reloads.get();
+	}
+
+	/**
+	 * Get the decode time the hits saved, that is the time it took to decode
+	 * each template that was found in the cache.
+	 *
+	 * @return The saved time in milliseconds.
+	 */
+	public double getSavedMillis() {
+		return (double) savedNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Resets the statistics, keeping the templates.
+	 */
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		loads.set(0);
+		reloads.set(0);
+		decodeNanos.set(0);
+		savedNanos.set(0);
+	}
+
+	/**
+	 * Decodes a file, keeping the current template if the file is no image.
+	 */
+	private Template load(File file, Template current) {
+		long lastModified = file.lastModified();
+		long start = System.nanoTime();
+		BufferedImage image;
+		try {
+			image = ImageIO.read(file);
+		} catch (IOException e) {
+			log.warn("Template " + file + " could not be decoded.", e);
+			return current != null && current.file.exists() ? current : null;
+		}
+		if (image == null) {
+			log.debug("Skipped " + file + ", it is no image.");
+			return current;
+		}
+		Template template = new Template(file, lastModified, image, System.nanoTime() - start);
+		loads.incrementAndGet();
+		decodeNanos.addAndGet(template.decodeNanos);
+		if (current != null) {
+			reloads.incrementAndGet();
+			log.debug("Reloaded the changed template " + file);
+		}
+		return template;
+	}
+
+	/**
+	 * Finds the file of a template that is not cached yet.
+	 */
+	private File resolve(String name) {
+		File file = new File(folder, name);
+		if (file.isFile()) {
+			return file;
+		}
+		for (String extension : EXTENSIONS) {
+			file = new File(folder, name + extension);
+			if (file.isFile()) {
+				return file;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the key of a template name: the name in lower case, without its image
+	 * extension.
+	 *
+	 * @param name The name of the template.
+	 * @return The key.
+	 */
+	static String getKey(String name) {
+		String key = name.toLowerCase(Locale.ROOT);
+		for (String extension : EXTENSIONS) {
+			if (key.endsWith(extension.toLowerCase(Locale.ROOT))) {
+				return key.substring(0, key.length() - extension.length());
+			}
+		}
+		return key;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TemplateCache[templates=%d, hits=%d, misses=%d, loads=%d, reloads=%d, decode=%.3f ms, "
+				+ "saved=%.3f ms]", templates.size(), hits.get(), misses.get(), loads.get(), reloads.get(),
+				decodeNanos.get() / 1e6, getSavedMillis());
+	}
+
+	/**
+	 * A decoded template image with its grayscale pyramid. The pixel arrays are
+	 * shared and must not be modified.
+	 */
+	public static final class Template {
+		private final File file;
+		private final long lastModified;
+		private final BufferedImage image;
+		private final long decodeNanos;
+		private final List<Level> levels;
+
+		private Template(File file, long lastModified, BufferedImage image, long decodeNanos) {
+			this.file = file;
+			this.lastModified = lastModified;
+			this.image = image;
+			this.decodeNanos = decodeNanos;
+
+			List<Level> pyramid = new ArrayList<>();
+			Level level = Level.of(image);
+			pyramid.add(level);
+			while (level.width / 2 >= MIN_LEVEL_SIZE && level.height / 2 >= MIN_LEVEL_SIZE) {
+				level = level.half();
+				pyramid.add(level);
+			}
+			this.levels = Collections.unmodifiableList(pyramid);
+		}
+
+		/**
+		 * Get the file the template was decoded from.
+		 *
+		 * @return The file.
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Get the decoded image. It must not be drawn on.
+		 *
+		 * @return The image.
+		 */
+		public BufferedImage getImage() {
+			return image;
+		}
+
+		/**
+		 * Get the time it took to decode the file.
+		 *
+		 * @return The decode time in nanoseconds.
+		 */
+		public long getDecodeNanos() {
+			return decodeNanos;
+		}
+
+		/**
+		 * Get the grayscale pyramid, the full-size level first and every further
+		 * level half the size of the one before.
+		 *
+		 * @return The levels.
+		 */
+		public List<Level> getLevels() {
+			return levels;
+		}
+
+		/**
+		 * Get the full-size grayscale level.
+		 *
+		 * @return The level.
+		 */
+		public Level getGray() {
+			return levels.get(0);
+		}
+
+		@Override
+		public String toString() {
+			return "Template[" + file.getName() + ", " + image.getWidth() + "x" + image.getHeight() + ", levels="
+					+ levels.size() + "]";
+		}
+	}
+
+	/**
+	 * A grayscale image, one byte of luminance per pixel, row by row.
+	 */
+	public static final class Level {
+		private final int width;
+		private final int height;
+		private final byte[] pixels;
+
+		Level(int width, int height, byte[] pixels) {
+			this.width = width;
+			this.height = height;
+			this.pixels = pixels;
+		}
+
+		/**
+		 * Converts an image, e.g. a capture of the screen, to a grayscale level.
+		 *
+		 * @param image The image.
+		 * @return The Level.
+		 */
+		public static Level of(BufferedImage image) {
+			return new Level(image.getWidth(), image.getHeight(), toGray(image));
+		}
+
+		/**
+		 * Get the width.
+		 *
+		 * @return The width in pixels.
+		 */
+		public int getWidth() {
+			return width;
+		}
+
+		/**
+		 * Get the height.
+		 *
+		 * @return The height in pixels.
+		 */
+		public int getHeight() {
+			return height;
+		}
+
+		/**
+		 * Get the luminance of the pixels, row by row. The array is shared and
+		 * must not be modified.
+		 *
+		 * @return The pixels.
+		 */
+		public byte[] getPixels() {
+			return pixels;
+		}
+
+		/**
+		 * Averages every two by two pixels into one; an odd last row or column is
+		 * dropped.
+		 */
+		Level half() {
+			int halfWidth = width / 2;
+			int halfHeight = height / 2;
+			byte[] halved = new byte[halfWidth * halfHeight];
+			for (int y = 0; y < halfHeight; y++) {
+				int top = 2 * y * width;
+				int bottom = top + width;
+				for (int x = 0; x < halfWidth; x++) {
+					int sum = (pixels[top + 2 * x] & 0xFF) + (pixels[top + 2 * x + 1] & 0xFF)
+							+ (pixels[bottom + 2 * x] & 0xFF) + (pixels[bottom + 2 * x + 1] & 0xFF);
+					halved[y * halfWidth + x] = (byte) ((sum + 2) >> 2);
+				}
+			}
+			return new Level(halfWidth, halfHeight, halved);
+		}
+	}
+
+	/**
+	 * Converts an image to its luminance, with the weights of ITU-R BT.601.
+	 *
+	 * @param image The image.
+	 * @return The luminance of the pixels, row by row.
+	 */
+	static byte[] toGray(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] rgb = image.getRGB(0, 0, width, height, null, 0, width);
+		byte[] gray = new byte[rgb.length];
+		for (int i = 0; i < rgb.length; i++) {
+			int pixel = rgb[i];
+			gray[i] = (byte) ((299 * ((pixel >> 16) & 0xFF) + 587 * ((pixel >> 8) & 0xFF) + 114 * (pixel & 0xFF)
+					+ 500) / 1000);
+		}
+		return gray;
+	}
+}
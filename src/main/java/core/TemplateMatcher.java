@@ -0,0 +1,305 @@
+package core;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.TemplateCache.Level;
+
+/**
+ * The TemplateMatcher class finds a template in a grayscale image by the
+ * normalized cross-correlation of the template with every position of a
+ * region, the score SikuliX reports as the similarity of a match. It works on
+ * images in memory, e.g. captures of the screen, so it needs no display.
+ *
+ * The mean and variance of every window of the region come from summed-area
+ * tables of the region only, so the cost of a search grows with the area of
+ * the region searched; a window without contrast is skipped, as the flat
+ * backgrounds of a desktop cannot match a template that has some.
+ */
+public class TemplateMatcher {
+
+	/**
+	 * The lowest score of a match, the minimum similarity of SikuliX.
+	 */
+	public static final double DEFAULT_THRESHOLD = 0.7;
+
+	/**
+	 * The smallest variance of a window that is scored against a template with
+	 * contrast.
+	 */
+	private static final double MIN_VARIANCE = 1e-3;
+
+	private final double threshold;
+
+	/**
+	 * Constructs a new TemplateMatcher with the {@link #DEFAULT_THRESHOLD}.
+	 */
+	public TemplateMatcher() {
+		this(DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Constructs a new TemplateMatcher.
+	 *
+	 * @param threshold The lowest score of a match, between 0 and 1.
+	 * @throws IllegalArgumentException If the threshold is not between 0 and 1.
+	 */
+	public TemplateMatcher(double threshold) {
+		if (threshold < 0 || threshold > 1) {
+			throw new IllegalArgumentException("Threshold must be between 0 and 1: " + threshold);
+		}
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Get the lowest score of a match.
+	 *
+	 * @return The threshold.
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Finds the best match of a template in a whole image.
+	 *
+	 * @param image    The image to search.
+	 * @param template The template to find.
+	 * @return The best Match, or null if no position scores the threshold.
+	 */
+	public Match find(Level image, Level template) {
+		return find(image, template, null);
+	}
+
+	/**
+	 * Finds the best match of a template that lies inside a region of an image.
+	 *
+	 * @param image    The image to search.
+	 * @param template The template to find.
+	 * @param region   The region to search, or null for the whole image; it is
+	 *                 clipped to the image.
+	 * @return The best Match, or null if no position scores the threshold.
+	 */
+	public Match find(Level image, Level template, Rectangle region) {
+		List<Match> found = find(image, template, region, 1);
+		return found.isEmpty() ? null : found.get(0);
+	}
+
+	/**
+	 * Finds the best matches of a template that lies inside a region of an
+	 * image, at most one among the positions that overlap by more than half the
+	 * template, e.g. as the candidates of a coarse search to refine.
+	 *
+	 * @param image    The image to search.
+	 * @param template The template to find.
+	 * @param region   The region to search, or null for the whole image; it is
+	 *                 clipped to the image.
+	 * @param limit    The largest number of matches.
+	 * @return The matches that score the threshold, the best first.
+	 */
+	public List<Match> find(Level image, Level template, Rectangle region, int limit) {
+		Rectangle bounds = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+		Rectangle searched = region == null ? bounds : bounds.intersection(region);
+		int width = template.getWidth();
+		int height = template.getHeight();
+		List<Match> best = new ArrayList<>(limit + 1);
+		if (searched.width < width || searched.height < height) {
+			return best;
+		}
+
+		byte[] pixels = template.getPixels();
+		int size = pixels.length;
+		long templateSum = 0;
+		long templateSquares = 0;
+		for (byte pixel : pixels) {
+			int value = pixel & 0xFF;
+			templateSum += value;
+			templateSquares += value * value;
+		}
+		// The template minus its mean, times its size to stay integral.
+		int[] centered = new int[size];
+		for (int i = 0; i < size; i++) {
+			centered[i] = (int) ((pixels[i] & 0xFF) * size - templateSum);
+		}
+		double templateVariance = templateSquares - (double) templateSum * templateSum / size;
+
+		Tables tables = new Tables(image, searched);
+		byte[] data = image.getPixels();
+		int stride = image.getWidth();
+		// The lowest score kept, once the list is full.
+		double lowest = threshold;
+		for (int y = 0; y <= searched.height - height; y++) {
+			for (int x = 0; x <= searched.width - width; x++) {
+				long windowSum = tables.sum(x, y, width, height);
+				double windowVariance = tables.squares(x, y, width, height) - (double) windowSum * windowSum / size;
+				double score;
+				if (templateVariance < MIN_VARIANCE) {
+					// A flat template matches a flat window of the same brightness.
+					score = windowVariance < MIN_VARIANCE
+							? 1 - Math.abs((double) (templateSum - windowSum) / size) / 255
+							: 0;
+				} else if (windowVariance < MIN_VARIANCE) {
+					continue;
+				} else {
+					int origin = (searched.y + y) * stride + searched.x + x;
+					long cross = 0;
+					for (int row = 0, t = 0; row < height; row++, origin += stride) {
+						for (int column = 0; column < width; column++, t++) {
+							cross += (long) centered[t] * (data[origin + column] & 0xFF);
+						}
+					}
+					score = (double) cross / size / Math.sqrt(templateVariance * windowVariance);
+				}
+				if (score >= lowest && (best.size() < limit || score > lowest)) {
+					add(best, new Match(searched.x + x, searched.y + y, width, height, score), limit);
+					lowest = best.size() == limit ? best.get(limit - 1).score : threshold;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Adds a match to the best matches unless a better one overlaps it, dropping
+	 * the worse ones it overlaps and the worst one of a full list.
+	 */
+	private static void add(List<Match> best, Match match, int limit) {
+		for (int i = best.size() - 1; i >= 0; i--) {
+			Match other = best.get(i);
+			if (Math.abs(other.x - match.x) * 2 < match.width && Math.abs(other.y - match.y) * 2 < match.height) {
+				if (other.score >= match.score) {
+					return;
+				}
+				best.remove(i);
+			}
+		}
+		int insert = 0;
+		while (insert < best.size() && best.get(insert).score >= match.score) {
+			insert++;
+		}
+		best.add(insert, match);
+		if (best.size() > limit) {
+			best.remove(limit);
+		}
+	}
+
+	/**
+	 * The summed-area tables of the pixels and their squares in a region.
+	 */
+	private static final class Tables {
+		private final int stride;
+		private final long[] sums;
+		private final long[] squares;
+
+		private Tables(Level image, Rectangle region) {
+			stride = region.width + 1;
+			sums = new long[stride * (region.height + 1)];
+			squares = new long[sums.length];
+			byte[] pixels = image.getPixels();
+			for (int y = 0; y < region.height; y++) {
+				long rowSum = 0;
+				long rowSquares = 0;
+				int source = (region.y + y) * image.getWidth() + region.x;
+				int target = (y + 1) * stride + 1;
+				for (int x = 0; x < region.width; x++) {
+					int value = pixels[source + x] & 0xFF;
+					rowSum += value;
+					rowSquares += value * value;
+					sums[target + x] = sums[target + x - stride] + rowSum;
+					squares[target + x] = squares[target + x - stride] + rowSquares;
+				}
+			}
+		}
+
+		private long sum(int x, int y, int width, int height) {
+			return area(sums, x, y, width, height);
+		}
+
+		private long squares(int x, int y, int width, int height) {
+			return area(squares, x, y, width, height);
+		}
+
+		private long area(long[] table, int x, int y, int width, int height) {
+			int top = y * stride + x;
+			int bottom = (y + height) * stride + x;
+			return table[bottom + width] - table[bottom] - table[top + width] + table[top];
+		}
+	}
+
+	/**
+	 * A match of a template, in the coordinates of the searched image.
+	 */
+	public static final class Match {
+		private final int x;
+		private final int y;
+		private final int width;
+		private final int height;
+		private final double score;
+		private final double scale;
+
+		/**
+		 * Constructs a new Match of the template at its own size.
+		 *
+		 * @param x      The left edge.
+		 * @param y      The top edge.
+		 * @param width  The width of the template.
+		 * @param height The height of the template.
+		 * @param score  The normalized cross-correlation, at most 1.
+		 */
+		public Match(int x, int y, int width, int height, double score) {
+			this(x, y, width, height, score, 1);
+		}
+
+		/**
+		 * Constructs a new Match of a scaled template.
+		 *
+		 * @param x      The left edge.
+		 * @param y      The top edge.
+		 * @param width  The width of the scaled template.
+		 * @param height The height of the scaled template.
+		 * @param score  The normalized cross-correlation, at most 1.
+		 * @param scale  The scale of the template.
+		 */
+		public Match(int x, int y, int width, int height, double score, double scale) {
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.score = score;
+			this.scale = scale;
+		}
+
+		/**
+		 * Get the matched rectangle.
+		 *
+		 * @return The rectangle.
+		 */
+		public Rectangle getRect() {
+			return new Rectangle(x, y, width, height);
+		}
+
+		/**
+		 * Get the score of the match.
+		 *
+		 * @return The normalized cross-correlation, at most 1.
+		 */
+		public double getScore() {
+			return score;
+		}
+
+		/**
+		 * Get the scale of the template that matched.
+		 *
+		 * @return The scale, 1 for the template at its own size.
+		 */
+		public double getScale() {
+			return scale;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Match[%d,%d %dx%d, score=%.3f, scale=%.2f]", x, y, width, height, score, scale);
+		}
+	}
+}
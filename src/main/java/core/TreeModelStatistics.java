@@ -0,0 +1,97 @@
+package core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TreeModelStatistics class counts the refreshes of the
+ * {@link WindowTreeModel}s of the Driver sessions, and the nodes they read
+ * again against the nodes they kept, so that the reads saved over a full
+ * capture of the window can be seen per run. The statistics are thread-safe.
+ */
+public class TreeModelStatistics {
+
+	private final AtomicLong refreshes = new AtomicLong();
+	private final AtomicLong readNodes = new AtomicLong();
+	private final AtomicLong reusedNodes = new AtomicLong();
+	private final AtomicLong probes = new AtomicLong();
+	private final AtomicLong refreshNanos = new AtomicLong();
+
+	/**
+	 * Adds a refresh.
+	 *
+	 * @param refresh The refresh.
+	 */
+	public void recordRefresh(WindowTreeModel.Refresh refresh) {
+		refreshes.incrementAndGet();
+		readNodes.addAndGet(refresh.getRead());
+		reusedNodes.addAndGet(refresh.getReused());
+		probes.addAndGet(refresh.getProbes());
+		refreshNanos.addAndGet(refresh.getNanos());
+	}
+
+	/**
+	 * Get the number of refreshes.
+	 *
+	 * @return The refresh count.
+	 */
+	public long getRefreshes() {
+		return refreshes.get();
+	}
+
+	/**
+	 * Get the number of nodes read again by the refreshes.
+	 *
+	 * @return The read node count.
+	 */
+	public long getReadNodes() {
+		return readNodes.get();
+	}
+
+	/**
+	 * Get the number of nodes the refreshes kept without reading them.
+	 *
+	 * @return The reused node count.
+	 */
+	public long getReusedNodes() {
+		return reusedNodes.get();
+	}
+
+	/**
+	 * Get the share of the nodes the refreshes kept.
+	 *
+	 * @return The reuse ratio, or 0 if there was no refresh.
+	 */
+	public double getReuseRatio() {
+		long total = readNodes.get() + reusedNodes.get();
+		return total == 0 ? 0 : (double) reusedNodes.get() / total;
+	}
+
+	/**
+	 * Get the average time of a refresh.
+	 *
+	 * @return The average time in milliseconds, or 0 if there was none.
+	 */
+	public double getAverageRefreshMillis() {
+		long count = refreshes.get();
+		return count == 0 ? 0 : (double) refreshNanos.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Resets the statistics.
+	 */
+	public void reset() {
+		refreshes.set(0);
+		readNodes.set(0);
+		reusedNodes.set(0);
+		probes.set(0);
+		refreshNanos.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TreeModelStatistics[refreshes=%d (%.3f ms/refresh), read=%d, reused=%d (%.1f%%), "
+				+ "probes=%d]", refreshes.get(), getAverageRefreshMillis(), readNodes.get(), reusedNodes.get(),
+				100 * getReuseRatio(), probes.get());
+	}
+}
@@ -0,0 +1,222 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import core.backend.AutomationBackend;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+
+/**
+ * The TreeSearch class walks the automation tree below a search root down to a
+ * maximum depth, depth first or breadth first, for the
+ * {@link SearchMode#DEPTH_LIMITED} and {@link SearchMode#BREADTH_FIRST} search
+ * modes. The children of every element are read in one call to the backend
+ * together with the properties the matcher needs, and matched in memory; the
+ * walk stops at the first match when only the first element is wanted.
+ *
+ * The search root itself is not matched, only the elements below it.
+ */
+public class TreeSearch {
+
+	private static final Logger log = LogManager.getLogger(TreeSearch.class);
+
+	/**
+	 * The properties fetched for the partial locators: the control type and the
+	 * properties of {@link PartialMatcher#PREFETCH_PROPERTIES}.
+	 */
+	public static final PropertyID[] PARTIAL_PROPERTIES = { PropertyID.ControlType, PropertyID.Name,
+			PropertyID.AutomationId, PropertyID.HelpText, PropertyID.LegacyIAccessibleValue };
+
+	/**
+	 * Checks whether an element found by the walk is a match.
+	 */
+	@FunctionalInterface
+	public interface ElementMatcher {
+
+		/**
+		 * Checks an element, preferably with the properties fetched with it.
+		 *
+		 * @param element The element to check.
+		 * @return True if the element matches.
+		 * @throws AutomationException If a property could not be read.
+		 */
+		boolean matches(Element element) throws AutomationException;
+	}
+
+	private final AutomationBackend backend;
+	private final SearchMode mode;
+	private final int maxDepth;
+
+	/**
+	 * Constructs a new TreeSearch.
+	 *
+	 * @param backend  The automation backend to read the tree from.
+	 * @param mode     The search mode, DEPTH_LIMITED or BREADTH_FIRST.
+	 * @param maxDepth The number of levels below the search root to walk, 1 for
+	 *                 the children only.
+	 * @throws IllegalArgumentException If the mode does not walk the tree or the
+	 *                                  depth is less than one.
+	 */
+	public TreeSearch(AutomationBackend backend, SearchMode mode, int maxDepth) {
+		if (mode == null || mode == SearchMode.SUBTREE || maxDepth < 1) {
+			throw new IllegalArgumentException("Invalid tree search: mode=" + mode + ", depth=" + maxDepth);
+		}
+		this.backend = backend;
+		this.mode = mode;
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Finds the elements below the search root that match.
+	 *
+	 * @param root       The element to search from.
+	 * @param properties The properties to fetch with the elements for the
+	 *                   matcher.
+	 * @param matcher    The check of the elements.
+	 * @param firstOnly  True to stop at the first match.
+	 * @return The matching elements, in tree order for DEPTH_LIMITED and by
+	 *         distance from the root for BREADTH_FIRST, or an empty list.
+	 * @throws AutomationException If the children of an element could not be
+	 *                             read.
+	 */
+	public List<Element> find(Element root, PropertyID[] properties, ElementMatcher matcher, boolean firstOnly)
+			throws AutomationException {
+		List<Element> found = new ArrayList<>(firstOnly ? 1 : 10);
+		if (mode == SearchMode.BREADTH_FIRST) {
+			breadthFirst(root, properties, matcher, firstOnly, found);
+		} else {
+			depthFirst(root, 1, properties, matcher, firstOnly, found);
+		}
+		return found;
+	}
+
+	private boolean depthFirst(Element parent, int depth, PropertyID[] properties, ElementMatcher matcher,
+			boolean firstOnly, List<Element> found) throws AutomationException {
+		for (Element child : backend.getChildren(parent, properties)) {
+			if (matcher.matches(child)) {
+				found.add(child);
+				if (firstOnly) {
+					return true;
+				}
+			}
+			if (depth < maxDepth && depthFirst(child, depth + 1, properties, matcher, firstOnly, found)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void breadthFirst(Element root, PropertyID[] properties, ElementMatcher matcher, boolean firstOnly,
+			List<Element> found) throws AutomationException {
+		List<Element> level = Collections.singletonList(root);
+		for (int depth = 1; depth <= maxDepth && !level.isEmpty(); depth++) {
+			List<Element> next = depth < maxDepth ? new ArrayList<>() : Collections.emptyList();
+			for (Element parent : level) {
+				for (Element child : backend.getChildren(parent, properties)) {
+					if (matcher.matches(child)) {
+						found.add(child);
+						if (firstOnly) {
+							return;
+						}
+					}
+					if (depth < maxDepth) {
+						next.add(child);
+					}
+				}
+			}
+			level = next;
+		}
+	}
+
+	/**
+	 * Get the properties to fetch for matching a search condition: the control
+	 * type and the property of the locator.
+	 *
+	 * @param condition The search condition.
+	 * @return The properties to fetch.
+	 */
+	public static PropertyID[] getProperties(SearchCondition condition) {
+		if (condition.isControlTypeOnly()) {
+			return new PropertyID[] { PropertyID.ControlType };
+		}
+		return new PropertyID[] { PropertyID.ControlType, condition.getProperty() };
+	}
+
+	/**
+	 * Creates the matcher of an exact search condition, which compares the
+	 * fetched control type and locator property.
+	 *
+	 * @param backend   The automation backend to read the properties from.
+	 * @param condition The search condition.
+	 * @return The ElementMatcher.
+	 */
+	public static ElementMatcher forCondition(AutomationBackend backend, SearchCondition condition) {
+		if (condition.isControlTypeOnly()) {
+			return element -> isControlType(backend, element, condition.getControlType());
+		}
+		PropertyID property = condition.getProperty();
+		return element -> isControlType(backend, element, condition.getControlType())
+				&& condition.getValue().equals(getCachedValue(backend, element, property));
+	}
+
+	/**
+	 * Creates the matcher of a partial locator, which compares the fetched
+	 * control type and matches the property of the partial matcher. Use it with
+	 * {@link #PARTIAL_PROPERTIES}.
+	 *
+	 * @param backend     The automation backend to read the properties from.
+	 * @param controlType The control type of the elements.
+	 * @param matcher     The matcher for the property value.
+	 * @return The ElementMatcher.
+	 */
+	public static ElementMatcher forPartial(AutomationBackend backend, ControlType controlType,
+			PartialMatcher matcher) {
+		return element -> isControlType(backend, element, controlType)
+				&& matcher.matches(getCachedValue(backend, element, matcher.getProperty()));
+	}
+
+	private static boolean isControlType(AutomationBackend backend, Element element, ControlType controlType)
+			throws AutomationException {
+		Object value = getCachedObject(backend, element, PropertyID.ControlType);
+		return value instanceof Number && ((Number) value).intValue() == controlType.getValue();
+	}
+
+	/**
+	 * Reads the prefetched value of a property from the given element. If the
+	 * element was not fetched with the property cached, the value is read from
+	 * the application instead.
+	 *
+	 * @param backend  The automation backend to read the property from.
+	 * @param element  The element to read from.
+	 * @param property The property to read.
+	 * @return The value of the property, or null if it has no value.
+	 * @throws AutomationException If the property could not be read.
+	 */
+	static String getCachedValue(AutomationBackend backend, Element element, PropertyID property)
+			throws AutomationException {
+		Object value = getCachedObject(backend, element, property);
+		return value == null ? null : value.toString();
+	}
+
+	private static Object getCachedObject(AutomationBackend backend, Element element, PropertyID property)
+			throws AutomationException {
+		try {
+			return backend.getCachedPropertyValue(element, property);
+		} catch (AutomationException e) {
+			log.debug("No cached " + property + " value, reading it from the element.", e);
+			return backend.getPropertyValue(element, property);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "TreeSearch[mode=" + mode + ", depth=" + maxDepth + "]";
+	}
+}
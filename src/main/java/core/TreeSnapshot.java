@@ -0,0 +1,682 @@
+package core;
+
+import java.awt.Rectangle;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import actions.LocatorType;
+import core.backend.AutomationBackend;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+
+/**
+ * The TreeSnapshot class is a copy of the automation tree under an element,
+ * captured once with the standard properties of every node, so that the
+ * assertions of a sheet can be answered from memory while the application is
+ * not changing.
+ *
+ * The snapshot is columnar: the nodes are numbered in pre-order from 0, the
+ * snapshot root, and each property is an array indexed by node. The strings
+ * are kept once in a dictionary and the string columns hold their indexes, so
+ * an exact locator is matched by comparing ints. The subtree of node i is the
+ * range of nodes from i to {@link #getEnd(int)}, exclusive.
+ *
+ * A captured snapshot keeps the live elements of its nodes. A snapshot can be
+ * {@link #save(File) saved} to disk and {@link #load(File) loaded} without
+ * them, e.g. to replay the tree of an application on a machine without it.
+ */
+public final class TreeSnapshot {
+
+	private static final Logger log = LogManager.getLogger(TreeSnapshot.class);
+
+	/**
+	 * The properties captured with every node.
+	 */
+	static final PropertyID[] PROPERTIES = { PropertyID.Name, PropertyID.AutomationId, PropertyID.ClassName,
+			PropertyID.HelpText, PropertyID.LegacyIAccessibleValue, PropertyID.ControlType, PropertyID.IsEnabled,
+			PropertyID.IsOffscreen, PropertyID.BoundingRectangle };
+
+	// The string columns, in the order of the first properties.
+	private static final int NAME = 0;
+	private static final int AUTOMATION_ID = 1;
+	private static final int CLASS_NAME = 2;
+	private static final int HELP_TEXT = 3;
+	private static final int VALUE = 4;
+	private static final int STRING_COLUMNS = 5;
+
+	private static final int MAGIC = 0x54534e50;
+	private static final int VERSION = 1;
+	private static final Map<Integer, ControlType> CONTROL_TYPES = new HashMap<>();
+
+	static {
+		for (ControlType controlType : ControlType.values()) {
+			CONTROL_TYPES.put(controlType.getValue(), controlType);
+		}
+	}
+
+	private final int size;
+	private final int[] parents;
+	private final int[] ends;
+	private final int[] controlTypes;
+	private final int[][] columns;
+	private final BitSet enabled;
+	private final BitSet offscreen;
+	private final int[] bounds;
+	private final String[] strings;
+	private final Map<String, Integer> stringIds;
+	private final Element[] elements;
+	private final long capturedMillis;
+
+	private TreeSnapshot(int size, int[] parents, int[] ends, int[] controlTypes, int[][] columns, BitSet enabled,
+			BitSet offscreen, int[] bounds, String[] strings, Element[] elements, long capturedMillis) {
+		this.size = size;
+		this.parents = parents;
+		this.ends = ends;
+		this.controlTypes = controlTypes;
+		this.columns = columns;
+		this.enabled = enabled;
+		this.offscreen = offscreen;
+		this.bounds = bounds;
+		this.strings = strings;
+		this.elements = elements;
+		this.capturedMillis = capturedMillis;
+		this.stringIds = new HashMap<>(strings.length * 2);
+		for (int i = 0; i < strings.length; i++) {
+			stringIds.put(strings[i], i);
+		}
+	}
+
+	/**
+	 * Captures the tree under an element. Every node is read with one
+	 * {@link AutomationBackend#getChildren(Element, PropertyID[])} call that
+	 * fetches the properties of its children; an element that vanishes while the
+	 * tree is walked is kept without its children.
+	 *
+	 * @param backend The backend to read with.
+	 * @param root    The element whose subtree to capture.
+	 * @return The TreeSnapshot.
+	 * @throws AutomationException If the properties of the root could not be
+	 *                             read.
+	 */
+	public static TreeSnapshot capture(AutomationBackend backend, Element root) throws AutomationException {
+		Builder builder = new Builder();
+		builder.add(-1, root, backend.getPropertyValues(root, PROPERTIES));
+		builder.visit(backend, 0);
+		return builder.build(System.currentTimeMillis());
+	}
+
+	/**
+	 * Get the number of nodes, the snapshot root included.
+	 *
+	 * @return The node count.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the number of distinct strings of the snapshot.
+	 *
+	 * @return The dictionary size.
+	 */
+	public int getStringCount() {
+		return strings.length;
+	}
+
+	/**
+	 * Get the time the snapshot was captured.
+	 *
+	 * @return The capture time, in milliseconds since the epoch.
+	 */
+	public long getCapturedMillis() {
+		return capturedMillis;
+	}
+
+	/**
+	 * Checks whether the snapshot holds the live elements of its nodes, i.e. it
+	 * was captured and not loaded.
+	 *
+	 * @return True if {@link #getElement(int)} returns the elements.
+	 */
+	public boolean isLive() {
+		return elements != null;
+	}
+
+	/**
+	 * Finds the first node under the snapshot root matching the condition, in
+	 * tree order.
+	 *
+	 * @param condition The search condition.
+	 * @return The node, or -1 if no node matches.
+	 * @throws IllegalArgumentException If the locator type of the condition has
+	 *                                  no property.
+	 */
+	public int find(SearchCondition condition) {
+		return find(condition, 0);
+	}
+
+	/**
+	 * Finds the first node under a node matching the condition, in tree order.
+	 *
+	 * @param condition The search condition.
+	 * @param within    The node to search under.
+	 * @return The node, or -1 if no node matches.
+	 * @throws IllegalArgumentException If the locator type of the condition has
+	 *                                  no property.
+	 */
+	public int find(SearchCondition condition, int within) {
+		return scan(condition, within + 1, ends[within]);
+	}
+
+	/**
+	 * Counts the nodes under the snapshot root matching the condition.
+	 *
+	 * @param condition The search condition.
+	 * @return The number of matching nodes.
+	 * @throws IllegalArgumentException If the locator type of the condition has
+	 *                                  no property.
+	 */
+	public int count(SearchCondition condition) {
+		int count = 0;
+		for (int node = scan(condition, 1, size); node >= 0; node = scan(condition, node + 1, size)) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the first node of a range matching the condition.
+	 *
+	 * @param condition The search condition.
+	 * @param from      The first node of the range.
+	 * @param end       The node after the range.
+	 * @return The node, or -1 if no node of the range matches.
+	 */
+	private int scan(SearchCondition condition, int from, int end) {
+		int controlType = condition.getControlType().getValue();
+		if (condition.isControlTypeOnly()) {
+			for (int node = from; node < end; node++) {
+				if (controlTypes[node] == controlType) {
+					return node;
+				}
+			}
+			return -1;
+		}
+
+		LocatorType locatorType = condition.getLocatorType();
+		switch (locatorType) {
+		case NAME:
+		case ID:
+		case TEXT:
+		case VALUE:
+			Integer id = stringIds.get(condition.getValue());
+			if (id == null) {
+				return -1;
+			}
+			int[] column = getColumn(condition.getProperty());
+			for (int node = from; node < end; node++) {
+				if (column[node] == id && controlTypes[node] == controlType) {
+					return node;
+				}
+			}
+			return -1;
+		default:
+			PartialMatcher matcher = PartialMatcher.forLocator(locatorType, condition.getValue());
+			int[] partialColumn = getColumn(matcher.getProperty());
+			for (int node = from; node < end; node++) {
+				int value = partialColumn[node];
+				if (controlTypes[node] == controlType && value >= 0 && matcher.matches(strings[value])) {
+					return node;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Get the column of a string property: the dictionary index of the value of
+	 * every node, or -1 for no value.
+	 *
+	 * @param property The property.
+	 * @return The column, not to be modified.
+	 * @throws IllegalArgumentException If the property is not a string property
+	 *                                  of the snapshot.
+	 */
+	int[] getColumn(PropertyID property) {
+		switch (property) {
+		case Name:
+			return columns[NAME];
+		case AutomationId:
+			return columns[AUTOMATION_ID];
+		case ClassName:
+			return columns[CLASS_NAME];
+		case HelpText:
+			return columns[HELP_TEXT];
+		case LegacyIAccessibleValue:
+			return columns[VALUE];
+		default:
+			throw new IllegalArgumentException("Property not in the snapshot: " + property);
+		}
+	}
+
+	/**
+	 * Get a string of the dictionary.
+	 *
+	 * @param id The dictionary index.
+	 * @return The string.
+	 */
+	String getString(int id) {
+		return strings[id];
+	}
+
+	/**
+	 * Get the dictionary index of a string.
+	 *
+	 * @param string The string.
+	 * @return The dictionary index, or null if no node has the string.
+	 */
+	Integer getStringId(String string) {
+		return stringIds.get(string);
+	}
+
+	/**
+	 * Get the value of the control type of a node.
+	 *
+	 * @param node The node.
+	 * @return The ControlType value.
+	 */
+	int getControlTypeValue(int node) {
+		return controlTypes[node];
+	}
+
+	private String getString(int[] column, int node) {
+		int id = column[node];
+		return id < 0 ? null : strings[id];
+	}
+
+	/**
+	 * Get the parent of a node.
+	 *
+	 * @param node The node.
+	 * @return The parent node, or -1 for the snapshot root.
+	 */
+	public int getParent(int node) {
+		return parents[node];
+	}
+
+	/**
+	 * Get the end of the subtree of a node: the nodes from the node to the end,
+	 * exclusive, are the node and its descendants.
+	 *
+	 * @param node The node.
+	 * @return The first node after the subtree.
+	 */
+	public int getEnd(int node) {
+		return ends[node];
+	}
+
+	/**
+	 * Get the Name property of a node.
+	 *
+	 * @param node The node.
+	 * @return The name, or null if it has none.
+	 */
+	public String getName(int node) {
+		return getString(columns[NAME], node);
+	}
+
+	/**
+	 * Get the AutomationId property of a node.
+	 *
+	 * @param node The node.
+	 * @return The automation id, or null if it has none.
+	 */
+	public String getAutomationId(int node) {
+		return getString(columns[AUTOMATION_ID], node);
+	}
+
+	/**
+	 * Get the ClassName property of a node.
+	 *
+	 * @param node The node.
+	 * @return The class name, or null if it has none.
+	 */
+	public String getClassName(int node) {
+		return getString(columns[CLASS_NAME], node);
+	}
+
+	/**
+	 * Get the HelpText property of a node.
+	 *
+	 * @param node The node.
+	 * @return The help text, or null if it has none.
+	 */
+	public String getHelpText(int node) {
+		return getString(columns[HELP_TEXT], node);
+	}
+
+	/**
+	 * Get the LegacyIAccessible value of a node.
+	 *
+	 * @param node The node.
+	 * @return The value, or null if it has none.
+	 */
+	public String getValue(int node) {
+		return getString(columns[VALUE], node);
+	}
+
+	/**
+	 * Get the control type of a node.
+	 *
+	 * @param node The node.
+	 * @return The ControlType, or null if the library does not know it.
+	 */
+	public ControlType getControlType(int node) {
+		return CONTROL_TYPES.get(controlTypes[node]);
+	}
+
+	/**
+	 * Checks whether a node is enabled.
+	 *
+	 * @param node The node.
+	 * @return True if the node is enabled.
+	 */
+	public boolean isEnabled(int node) {
+		return enabled.get(node);
+	}
+
+	/**
+	 * Checks whether a node is off the screen.
+	 *
+	 * @param node The node.
+	 * @return True if the node is off the screen.
+	 */
+	public boolean isOffscreen(int node) {
+		return offscreen.get(node);
+	}
+
+	/**
+	 * Checks whether a node is displayed the way {@link UIElement#isDisplayed()}
+	 * checks it: on the screen with a bounding rectangle that is not empty.
+	 *
+	 * @param node The node.
+	 * @return True if the node is displayed.
+	 */
+	public boolean isDisplayed(int node) {
+		return !offscreen.get(node) && bounds[4 * node + 2] != 0 && bounds[4 * node + 3] != 0;
+	}
+
+	/**
+	 * Get the bounding rectangle of a node.
+	 *
+	 * @param node The node.
+	 * @return The bounds in screen coordinates.
+	 */
+	public Rectangle getBounds(int node) {
+		return new Rectangle(bounds[4 * node], bounds[4 * node + 1], bounds[4 * node + 2], bounds[4 * node + 3]);
+	}
+
+	/**
+	 * Get the live element the snapshot was captured under.
+	 *
+	 * @return The root element, or null if the snapshot was loaded from disk.
+	 */
+	public Element getRootElement() {
+		return getElement(0);
+	}
+
+	/**
+	 * Get the live element of a node.
+	 *
+	 * @param node The node.
+	 * @return The element, or null if the snapshot was loaded from disk.
+	 */
+	public Element getElement(int node) {
+		return elements == null ? null : elements[node];
+	}
+
+	/**
+	 * Saves the snapshot, without the live elements, to a compressed file.
+	 *
+	 * @param file The file to write.
+	 * @throws IOException If the file could not be written.
+	 */
+	public void save(File file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file))))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(capturedMillis);
+			out.writeInt(size);
+			out.writeInt(strings.length);
+			for (String string : strings) {
+				byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			writeInts(out, parents, size);
+			writeInts(out, ends, size);
+			writeInts(out, controlTypes, size);
+			for (int[] column : columns) {
+				writeInts(out, column, size);
+			}
+			writeInts(out, bounds, 4 * size);
+			writeLongs(out, enabled.toLongArray());
+			writeLongs(out, offscreen.toLongArray());
+		}
+	}
+
+	/**
+	 * Loads a snapshot saved with {@link #save(File)}. The loaded snapshot has
+	 * no live elements.
+	 *
+	 * @param file The file to read.
+	 * @return The TreeSnapshot.
+	 * @throws IOException If the file could not be read or is not a snapshot.
+	 */
+	public static TreeSnapshot load(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a tree snapshot: " + file);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported tree snapshot version " + version + ": " + file);
+			}
+			long capturedMillis = in.readLong();
+			int size = in.readInt();
+			String[] strings = new String[in.readInt()];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			int[] parents = readInts(in, size);
+			int[] ends = readInts(in, size);
+			int[] controlTypes = readInts(in, size);
+			int[][] columns = new int[STRING_COLUMNS][];
+			for (int i = 0; i < STRING_COLUMNS; i++) {
+				columns[i] = readInts(in, size);
+			}
+			int[] bounds = readInts(in, 4 * size);
+			BitSet enabled = BitSet.valueOf(readLongs(in));
+			BitSet offscreen = BitSet.valueOf(readLongs(in));
+			return new TreeSnapshot(size, parents, ends, controlTypes, columns, enabled, offscreen, bounds, strings,
+					null, capturedMillis);
+		}
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values, int length) throws IOException {
+		for (int i = 0; i < length; i++) {
+			out.writeInt(values[i]);
+		}
+	}
+
+	private static int[] readInts(DataInputStream in, int length) throws IOException {
+		int[] values = new int[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+	private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+		out.writeInt(values.length);
+		for (long value : values) {
+			out.writeLong(value);
+		}
+	}
+
+	private static long[] readLongs(DataInputStream in) throws IOException {
+		long[] values = new long[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readLong();
+		}
+		return values;
+	}
+
+	@Override
+	public String toString() {
+		return "TreeSnapshot[nodes=" + size + ", strings=" + strings.length + ", live=" + isLive() + "]";
+	}
+
+	/**
+	 * Collects the nodes of a capture in pre-order into growing columns, e.g.
+	 * from the live tree or from a {@link WindowTreeModel}.
+	 */
+	static final class Builder {
+		private int size;
+		private int[] parents = new int[256];
+		private int[] ends = new int[256];
+		private int[] controlTypes = new int[256];
+		private int[][] columns = new int[STRING_COLUMNS][256];
+		private int[] bounds = new int[4 * 256];
+		private final BitSet enabled = new BitSet();
+		private final BitSet offscreen = new BitSet();
+		private final List<String> strings = new ArrayList<>();
+		private final Map<String, Integer> stringIds = new HashMap<>();
+		private Element[] elements = new Element[256];
+
+		/**
+		 * Adds a node after the last one.
+		 *
+		 * @param parent  The parent node, or -1 for the root.
+		 * @param element The live element, or null.
+		 * @param values  The values of the {@link TreeSnapshot#PROPERTIES}.
+		 * @return The node.
+		 */
+		int add(int parent, Element element, Object[] values) {
+			if (size == parents.length) {
+				int capacity = 2 * size;
+				parents = Arrays.copyOf(parents, capacity);
+				ends = Arrays.copyOf(ends, capacity);
+				controlTypes = Arrays.copyOf(controlTypes, capacity);
+				for (int i = 0; i < STRING_COLUMNS; i++) {
+					columns[i] = Arrays.copyOf(columns[i], capacity);
+				}
+				bounds = Arrays.copyOf(bounds, 4 * capacity);
+				elements = Arrays.copyOf(elements, capacity);
+			}
+			int node = size++;
+			parents[node] = parent;
+			ends[node] = size;
+			elements[node] = element;
+			for (int i = 0; i < STRING_COLUMNS; i++) {
+				columns[i][node] = intern(values[i]);
+			}
+			controlTypes[node] = values[5] instanceof Number ? ((Number) values[5]).intValue() : 0;
+			enabled.set(node, ElementProperties.isTrue(values[6]));
+			offscreen.set(node, ElementProperties.isTrue(values[7]));
+			Rectangle rectangle = ElementProperties.toRectangle(values[8]);
+			if (rectangle != null) {
+				bounds[4 * node] = rectangle.x;
+				bounds[4 * node + 1] = rectangle.y;
+				bounds[4 * node + 2] = rectangle.width;
+				bounds[4 * node + 3] = rectangle.height;
+			}
+			return node;
+		}
+
+		private int intern(Object value) {
+			if (value == null) {
+				return -1;
+			}
+			String string = value.toString();
+			Integer id = stringIds.get(string);
+			if (id == null) {
+				id = strings.size();
+				strings.add(string);
+				stringIds.put(string, id);
+			}
+			return id;
+		}
+
+		private void visit(AutomationBackend backend, int node) {
+			List<Element> children;
+			try {
+				children = backend.getChildren(elements[node], PROPERTIES);
+			} catch (AutomationException e) {
+				log.debug("Children of snapshot node " + node + " not read, the element may have vanished.", e);
+				return;
+			}
+			for (Element child : children) {
+				Object[] values = new Object[PROPERTIES.length];
+				try {
+					for (int i = 0; i < PROPERTIES.length; i++) {
+						values[i] = backend.getCachedPropertyValue(child, PROPERTIES[i]);
+					}
+				} catch (AutomationException e) {
+					log.debug("Properties of a child of snapshot node " + node + " not read.", e);
+					continue;
+				}
+				visit(backend, add(node, child, values));
+			}
+			close(node);
+		}
+
+		/**
+		 * Ends the subtree of a node after the last node added.
+		 *
+		 * @param node The node.
+		 */
+		void close(int node) {
+			ends[node] = size;
+		}
+
+		TreeSnapshot build(long capturedMillis) {
+			return new TreeSnapshot(size, Arrays.copyOf(parents, size), Arrays.copyOf(ends, size),
+					Arrays.copyOf(controlTypes, size), trim(columns, size), enabled, offscreen,
+					Arrays.copyOf(bounds, 4 * size), strings.toArray(new String[0]), Arrays.copyOf(elements, size),
+					capturedMillis);
+		}
+
+		private static int[][] trim(int[][] columns, int size) {
+			int[][] trimmed = new int[columns.length][];
+			for (int i = 0; i < columns.length; i++) {
+				trimmed[i] = Arrays.copyOf(columns[i], size);
+			}
+			return trimmed;
+		}
+	}
+}
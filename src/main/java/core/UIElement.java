@@ -7,19 +7,36 @@ import org.apache.logging.log4j.Logger;
 import org.sikuli.script.FindFailed;
 import org.sikuli.script.Region;
 
+import core.backend.AutomationBackend;
 import mmarquee.automation.AutomationException;
 import mmarquee.automation.Element;
-import mmarquee.automation.pattern.Toggle;
+import mmarquee.automation.PatternID;
+import mmarquee.automation.PropertyID;
+import mmarquee.automation.UIAutomation;
 import mmarquee.uiautomation.ToggleState;
 import utils.Settings;
 
 /**
  * The {@code UIElement} class represents a UI element that wraps a SikuliX
  * {@code Element} and provides additional functionality.
+ *
+ * A UIElement created by {@link #prefetch(Element)} holds the
+ * {@link ElementProperties} fetched in one call when it was found, and answers
+ * the name, automation id, enabled and toggle state from them. Other
+ * UIElements read them live from the application; {@link #refresh()} fetches
+ * them again.
+ *
+ * The bounding rectangle and the scaled Sikuli region are only computed on the
+ * first action that needs them, and kept. The actions run through the
+ * {@link ActionEngine}, which uses the control patterns of the element when it
+ * supports them and never computes the region for them.
  */
 public class UIElement extends SikuliElement {
 
 	private Element element;
+	private volatile ElementProperties properties;
+	private volatile Rectangle bounds;
+	private volatile Region region;
 	private static final Logger log = LogManager.getLogger(UIElement.class);
 
 	/**
@@ -28,32 +45,201 @@ public class UIElement extends SikuliElement {
 	 * @param inElement The SikuliX {@code Element} to wrap.
 	 */
 	public UIElement(Element inElement) {
-		super(getRegion(inElement));
 		this.element = inElement;
 	}
 
 	/**
-	 * Converts the bounding rectangle of the given element to a region with
-	 * adjusted coordinates and dimensions.
+	 * Constructs a new {@code UIElement} with properties fetched earlier.
 	 *
-	 * @param element The element to convert to a region.
-	 * @return A Region object representing the adjusted region of the element.
+	 * @param inElement  The SikuliX {@code Element} to wrap.
+	 * @param properties The properties of the element.
 	 */
-	private static Region getRegion(Element element) {
-		Region region = null;
-		try {
-			Rectangle rect = element.getBoundingRectangle().toRectangle();
-			int x = (rect.x * 100) / Settings.SCALE;
-			int y = (rect.y * 100) / Settings.SCALE;
-			int height = (rect.height * 100) / Settings.SCALE;
-			int width = (rect.width * 100) / Settings.SCALE;
-			region = new Region(x, y, width, height);
-		} catch (AutomationException e) {
-			// Log the error using Log4j or any other logger framework.
-			// For example, if using Log4j:
-			log.error("Error occurred while getting region.", e);
+	public UIElement(Element inElement, ElementProperties properties) {
+		this.element = inElement;
+		this.properties = properties;
+	}
+
+	/**
+	 * Creates a UIElement, fetching the commonly used properties of the element
+	 * in one call to the application.
+	 *
+	 * @param element The element to wrap.
+	 * @return The UIElement.
+	 * @throws AutomationException If the properties could not be read.
+	 */
+	public static UIElement prefetch(Element element) throws AutomationException {
+		return new UIElement(element, ElementProperties.fetch(Driver.getBackend(), element));
+	}
+
+	/**
+	 * Returns the region of the element, converting its bounding rectangle with
+	 * adjusted coordinates and dimensions on first use.
+	 *
+	 * @return A Region object representing the adjusted region of the element,
+	 *         or null if the bounding rectangle could not be read.
+	 */
+	@Override
+	public Region getRegion() {
+		Region current = region;
+		if (current == null) {
+			Rectangle rect = getBounds();
+			if (rect != null) {
+				current = toRegion(rect);
+				region = current;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the bounding rectangle of the element in screen coordinates, from
+	 * the fetched properties or else read once from the application.
+	 *
+	 * @return The bounding rectangle, or null if it could not be read.
+	 */
+	public Rectangle getBounds() {
+		ElementProperties fetched = properties;
+		if (fetched != null && fetched.getBounds() != null) {
+			return fetched.getBounds();
+		}
+		Rectangle current = bounds;
+		if (current == null) {
+			try {
+				current = Driver.getBackend().getBoundingRectangle(element);
+				bounds = current;
+			} catch (AutomationException e) {
+				// Log the error using Log4j or any other logger framework.
+				// For example, if using Log4j:
+				log.error("Error occurred while getting region.", e);
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Converts a bounding rectangle to a region with the coordinates and
+	 * dimensions adjusted to the display scale.
+	 *
+	 * @param rect The bounding rectangle.
+	 * @return The Region.
+	 */
+	private static Region toRegion(Rectangle rect) {
+		int x = (rect.x * 100) / Settings.SCALE;
+		int y = (rect.y * 100) / Settings.SCALE;
+		int height = (rect.height * 100) / Settings.SCALE;
+		int width = (rect.width * 100) / Settings.SCALE;
+		return new Region(x, y, width, height);
+	}
+
+	/**
+	 * Get the wrapped UIAutomation element.
+	 *
+	 * @return The Element.
+	 */
+	public Element getElement() {
+		return element;
+	}
+
+	/**
+	 * Get the properties fetched when this UIElement was created or refreshed.
+	 *
+	 * @return The ElementProperties, or null if they are read live.
+	 */
+	public ElementProperties getProperties() {
+		return properties;
+	}
+
+	/**
+	 * Fetches the properties of the element again, in one call to the
+	 * application. The region is computed again on its next use.
+	 *
+	 * @return This UIElement.
+	 * @throws AutomationException If the properties could not be read.
+	 */
+	public UIElement refresh() throws AutomationException {
+		properties = ElementProperties.fetch(Driver.getBackend(), element);
+		bounds = null;
+		region = null;
+		return this;
+	}
+
+	private ToggleState getToggleState() throws AutomationException {
+		ElementProperties fetched = properties;
+		if (fetched != null && fetched.getToggleState() != null) {
+			return fetched.getToggleState();
 		}
-		return region;
+		return Driver.getBackend().getToggleState(element);
+	}
+
+	/**
+	 * Checks if the UI element is displayed, from its bounding rectangle and
+	 * without computing the Sikuli region.
+	 *
+	 * @return {@code true} if the element has a bounding rectangle of non-zero
+	 *         size, {@code false} otherwise.
+	 */
+	@Override
+	public boolean isDisplayed() {
+		Rectangle rect = getBounds();
+		return rect != null && rect.width != 0 && rect.height != 0;
+	}
+
+	/**
+	 * Clicks the UI element, through the {@link ActionEngine}: with the Invoke
+	 * pattern if it can, or else with the mouse.
+	 */
+	@Override
+	public void click() {
+		ActionEngine.perform("click", this, PatternID.Invoke, AutomationBackend::invoke, super::click);
+	}
+
+	/**
+	 * Writes the text to the UI element, through the {@link ActionEngine}: with
+	 * the Value pattern if it can, or else with the keyboard.
+	 *
+	 * @param text The text to be written to the UI element.
+	 */
+	@Override
+	public void write(String text) {
+		ActionEngine.perform("write", this, PatternID.Value,
+				(backend, target) -> backend.setValue(target, text), () -> super.write(text));
+	}
+
+	/**
+	 * Flips the toggle state of the UI element, through the {@link ActionEngine}:
+	 * with the Toggle pattern if it can, or else by clicking it. The fetched
+	 * properties hold the old toggle state, so they are dropped.
+	 */
+	private void flip() {
+		ActionEngine.perform("toggle", this, PatternID.Toggle, AutomationBackend::toggle, super::click);
+		properties = null;
+	}
+
+	/**
+	 * Expands the UI element, e.g. a combo box or tree item, through the
+	 * {@link ActionEngine}: with the ExpandCollapse pattern if it can, or else by
+	 * clicking it.
+	 */
+	public void expand() {
+		ActionEngine.perform("expand", this, PatternID.ExpandCollapse, AutomationBackend::expand, super::click);
+	}
+
+	/**
+	 * Collapses the UI element through the {@link ActionEngine}: with the
+	 * ExpandCollapse pattern if it can, or else by clicking it.
+	 */
+	public void collapse() {
+		ActionEngine.perform("collapse", this, PatternID.ExpandCollapse, AutomationBackend::collapse,
+				super::click);
+	}
+
+	/**
+	 * Selects the UI element, e.g. a list item or tab, through the
+	 * {@link ActionEngine}: with the SelectionItem pattern if it can, or else by
+	 * clicking it.
+	 */
+	public void select() {
+		ActionEngine.perform("select", this, PatternID.SelectionItem, AutomationBackend::select, super::click);
 	}
 
 	/**
@@ -63,11 +249,10 @@ public class UIElement extends SikuliElement {
 	 * @throws FindFailed          If the find operation fails.
 	 */
 	public void check() throws AutomationException, FindFailed {
-		Toggle toggle = new Toggle(element);
-		ToggleState state = toggle.currentToggleState();
+		ToggleState state = getToggleState();
 		int value = state.getValue();
 		if (value == 0) {
-			click();
+			flip();
 		}
 	}
 
@@ -78,11 +263,10 @@ public class UIElement extends SikuliElement {
 	 * @throws FindFailed          If the find operation fails.
 	 */
 	public void unCheck() throws AutomationException, FindFailed {
-		Toggle toggle = new Toggle(element);
-		ToggleState state = toggle.currentToggleState();
+		ToggleState state = getToggleState();
 		int value = state.getValue();
 		if (value == 1) {
-			click();
+			flip();
 		}
 	}
 
@@ -95,11 +279,10 @@ public class UIElement extends SikuliElement {
 	 */
 	public void toggle(String state) throws AutomationException, FindFailed {
 		int stat = Integer.parseInt(state);
-		Toggle toggle = new Toggle(element);
-		ToggleState toggleState = toggle.currentToggleState();
+		ToggleState toggleState = getToggleState();
 		int value = toggleState.getValue();
 		if (value != stat) {
-			click();
+			flip();
 		}
 	}
 
@@ -110,7 +293,14 @@ public class UIElement extends SikuliElement {
 	 * @throws AutomationException If an automation error occurs.
 	 */
 	public boolean isEnabled() throws AutomationException {
-		return element != null && element.isEnabled();
+		if (element == null) {
+			return false;
+		}
+		ElementProperties fetched = properties;
+		if (fetched != null) {
+			return fetched.isEnabled();
+		}
+		return UIAutomation.isPropertyValueTrue(Driver.getBackend().getPropertyValue(element, PropertyID.IsEnabled));
 	}
 
 	/**
@@ -120,7 +310,12 @@ public class UIElement extends SikuliElement {
 	 * @throws AutomationException If an automation error occurs.
 	 */
 	public String getName() throws AutomationException {
-		return element.getName();
+		ElementProperties fetched = properties;
+		if (fetched != null) {
+			return fetched.getName();
+		}
+		Object name = Driver.getBackend().getPropertyValue(element, PropertyID.Name);
+		return name == null ? null : name.toString();
 	}
 
 	/**
@@ -130,13 +325,23 @@ public class UIElement extends SikuliElement {
 	 * @throws AutomationException If an automation error occurs.
 	 */
 	public String getAutomationId() throws AutomationException {
-		return element.getAutomationId();
+		ElementProperties fetched = properties;
+		if (fetched != null) {
+			return fetched.getAutomationId();
+		}
+		Object automationId = Driver.getBackend().getPropertyValue(element, PropertyID.AutomationId);
+		return automationId == null ? null : automationId.toString();
 	}
 
 	/**
-	 * Sets focus to the UI element.
+	 * Sets focus to the UI element. A failure is logged, as the focus is only a
+	 * help for the actions that follow.
 	 */
 	public void setFocus() {
-		element.setFocus();
+		try {
+			Driver.getBackend().setFocus(element);
+		} catch (AutomationException e) {
+			log.warn("Could not set the focus to the element.", e);
+		}
 	}
 }
\ No newline at end of file
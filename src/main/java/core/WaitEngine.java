@@ -0,0 +1,424 @@
+package core;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import core.backend.AutomationBackend;
+import core.backend.AutomationEvent;
+import core.backend.AutomationEventListener;
+import utils.Settings;
+
+/**
+ * The WaitEngine class runs the waits of the keywords: it polls a probe until
+ * the probe reports a result or the timeout is over. Between two polls the
+ * waiting thread is parked instead of spinning. The interval starts at the
+ * POLL_INTERVAL setting and grows by POLL_BACKOFF after every failed poll, up
+ * to POLL_MAX_INTERVAL. It is never shorter than the last poll took, so a slow
+ * probe (e.g., an image search) cannot keep a core busy, and never longer than
+ * the time left, so the last poll is made at the timeout.
+ *
+ * Blocking waits poll on the calling thread, which keeps the UIAutomation calls
+ * on the thread that owns them. Asynchronous waits poll on a small shared pool
+ * of daemon scheduler threads, so that a slow probe of one wait, e.g. of a
+ * locator of a race, does not hold up the polls of the others.
+ *
+ * A wait can also be woken by the {@link AutomationEvent}s of a backend: an
+ * event of one of the given types triggers the next poll at once, so the wait
+ * ends right after the UI changed instead of at the next poll. The polling
+ * continues as a fallback for backends without events and for missed events.
+ */
+public final class WaitEngine {
+
+	private static final Logger log = LogManager.getLogger(WaitEngine.class);
+
+	/**
+	 * The default interval before the second poll, in milliseconds.
+	 */
+	public static final long DEFAULT_POLL_INTERVAL = 50;
+
+	/**
+	 * The default maximum interval between two polls, in milliseconds.
+	 */
+	public static final long DEFAULT_POLL_MAX_INTERVAL = 500;
+
+	/**
+	 * The default growth of the interval after a failed poll.
+	 */
+	public static final double DEFAULT_POLL_BACKOFF = 1.5;
+
+	/**
+	 * A probe checks once whether the awaited condition is met.
+	 *
+	 * @param <T> The type of the result of the wait.
+	 */
+	@FunctionalInterface
+	public interface Probe<T> {
+
+		/**
+		 * Checks the condition once.
+		 *
+		 * @return The result of the wait, or null if the condition is not met yet.
+		 */
+		T poll();
+	}
+
+	private static final AtomicLong waits = new AtomicLong();
+	private static final AtomicLong timeouts = new AtomicLong();
+	private static final AtomicLong polls = new AtomicLong();
+	private static final AtomicLong parkedMillis = new AtomicLong();
+	private static final AtomicLong wakeups = new AtomicLong();
+
+	private static volatile ScheduledExecutorService scheduler;
+
+	private WaitEngine() {
+	}
+
+	/**
+	 * Polls the probe on the calling thread until it reports a result or the
+	 * timeout is over. The probe is polled at least once.
+	 *
+	 * @param <T>           The type of the result.
+	 * @param description   The awaited condition, for the log.
+	 * @param timeoutMillis The maximum time to wait, in milliseconds.
+	 * @param probe         The probe to poll.
+	 * @return The result of the probe, or null if the timeout is over or the
+	 *         thread was interrupted.
+	 */
+	public static <T> T await(String description, long timeoutMillis, Probe<T> probe) {
+		return await(description, timeoutMillis, probe, null, null);
+	}
+
+	/**
+	 * Polls the probe on the calling thread until it reports a result or the
+	 * timeout is over, polling again at once on every event of the given types.
+	 * The probe is polled at least once.
+	 *
+	 * @param <T>           The type of the result.
+	 * @param description   The awaited condition, for the log.
+	 * @param timeoutMillis The maximum time to wait, in milliseconds.
+	 * @param probe         The probe to poll.
+	 * @param events        The backend reporting the events, or null to only
+	 *                      poll.
+	 * @param wakeOn        The types of events that trigger a poll.
+	 * @return The result of the probe, or null if the timeout is over or the
+	 *         thread was interrupted.
+	 */
+	public static <T> T await(String description, long timeoutMillis, Probe<T> probe, AutomationBackend events,
+			Set<AutomationEvent.Type> wakeOn) {
+		AtomicBoolean signalled = new AtomicBoolean();
+		AutomationEventListener listener = null;
+		if (events != null && events.supportsEvents()) {
+			Thread waiter = Thread.currentThread();
+			listener = event -> {
+				if (wakeOn.contains(event.getType())) {
+					signalled.set(true);
+					LockSupport.unpark(waiter);
+				}
+			};
+			events.addEventListener(listener);
+		}
+		try {
+			return poll(description, timeoutMillis, probe, signalled);
+		} finally {
+			if (listener != null) {
+				events.removeEventListener(listener);
+			}
+		}
+	}
+
+	private static <T> T poll(String description, long timeoutMillis, Probe<T> probe, AtomicBoolean signalled) {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMillis));
+		long interval = TimeUnit.MILLISECONDS.toNanos(getPollInterval());
+		int count = 0;
+		waits.incrementAndGet();
+
+		while (true) {
+			signalled.set(false);
+			long pollStart = System.nanoTime();
+			T result = probe.poll();
+			long pollEnd = System.nanoTime();
+			count++;
+			polls.incrementAndGet();
+			if (result != null) {
+				log.debug(description + " met after " + count + " poll(s) in "
+						+ TimeUnit.NANOSECONDS.toMillis(pollEnd - start) + " ms");
+				return result;
+			}
+
+			long remaining = deadline - pollEnd;
+			if (remaining <= 0) {
+				break;
+			}
+			long delay = Math.min(Math.max(interval, pollEnd - pollStart), remaining);
+			long parkEnd = pollEnd + delay;
+			// Park until the next poll is due, unless an event asks for it earlier.
+			// A spurious return parks again for the rest of the delay.
+			while (!signalled.get() && System.nanoTime() < parkEnd && !Thread.currentThread().isInterrupted()) {
+				LockSupport.parkNanos(parkEnd - System.nanoTime());
+			}
+			if (signalled.get()) {
+				wakeups.incrementAndGet();
+			}
+			parkedMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pollEnd));
+			if (Thread.currentThread().isInterrupted()) {
+				log.debug(description + " interrupted after " + count + " poll(s)");
+				return null;
+			}
+			interval = nextInterval(interval);
+		}
+
+		timeouts.incrementAndGet();
+		log.debug(description + " not met after " + count + " poll(s) in " + timeoutMillis + " ms");
+		return null;
+	}
+
+	/**
+	 * Polls a boolean condition on the calling thread until it is true or the
+	 * timeout is over.
+	 *
+	 * @param description   The awaited condition, for the log.
+	 * @param timeoutMillis The maximum time to wait, in milliseconds.
+	 * @param condition     The condition to poll.
+	 * @return True if the condition was met within the timeout, false otherwise.
+	 */
+	public static boolean awaitTrue(String description, long timeoutMillis, Probe<Boolean> condition) {
+		return await(description, timeoutMillis, toProbe(condition)) != null;
+	}
+
+	/**
+	 * Polls a boolean condition on the calling thread until it is true or the
+	 * timeout is over, polling again at once on every event of the given types.
+	 *
+	 * @param description   The awaited condition, for the log.
+	 * @param timeoutMillis The maximum time to wait, in milliseconds.
+	 * @param condition     The condition to poll.
+	 * @param events        The backend reporting the events, or null to only
+	 *                      poll.
+	 * @param wakeOn        The types of events that trigger a poll.
+	 * @return True if the condition was met within the timeout, false otherwise.
+	 */
+	public static boolean awaitTrue(String description, long timeoutMillis, Probe<Boolean> condition,
+			AutomationBackend events, Set<AutomationEvent.Type> wakeOn) {
+		return await(description, timeoutMillis, toProbe(condition), events, wakeOn) != null;
+	}
+
+	private static Probe<Boolean> toProbe(Probe<Boolean> condition) {
+		return () -> Boolean.TRUE.equals(condition.poll()) ? Boolean.TRUE : null;
+	}
+
+	/**
+	 * Polls the probe on the shared scheduler until it reports a result or the
+	 * timeout is over. The probe must be safe to call from the scheduler threads.
+	 *
+	 * @param <T>           The type of the result.
+	 * @param description   The awaited condition, for the log.
+	 * @param timeoutMillis The maximum time to wait, in milliseconds.
+	 * @param probe         The probe to poll.
+	 * @return A future completed with the result of the probe, or with null if
+	 *         the timeout is over. It is completed exceptionally if the probe
+	 *         throws.
+	 */
+	public static <T> CompletableFuture<T> submit(String description, long timeoutMillis, Probe<T> probe) {
+		return submit(description, timeoutMillis, probe, null, null);
+	}
+
+	/**
+	 * Polls the probe on the shared scheduler until it reports a result or the
+	 * timeout is over, polling again at once on every event of the given types.
+	 * The probe must be safe to call from the scheduler threads.
+	 *
+	 * @param <T>           The type of the result.
+	 * @param description   The awaited condition, for the log.
+	 * @param timeoutMillis The maximum time to wait, in milliseconds.
+	 * @param probe         The probe to poll.
+	 * @param events        The backend reporting the events, or null to only
+	 *                      poll.
+	 * @param wakeOn        The types of events that trigger a poll.
+	 * @return A future completed with the result of the probe, or with null if
+	 *         the timeout is over. It is completed exceptionally if the probe
+	 *         throws.
+	 */
+	public static <T> CompletableFuture<T> submit(String description, long timeoutMillis, Probe<T> probe,
+			AutomationBackend events, Set<AutomationEvent.Type> wakeOn) {
+		waits.incrementAndGet();
+		Poller<T> poller = new Poller<>(description, timeoutMillis, probe);
+		if (events != null && events.supportsEvents()) {
+			AutomationEventListener listener = event -> {
+				if (wakeOn.contains(event.getType())) {
+					getScheduler().execute(poller::wakeUp);
+				}
+			};
+			events.addEventListener(listener);
+			poller.future.whenComplete((result, error) -> events.removeEventListener(listener));
+		}
+		getScheduler().execute(poller);
+		return poller.future;
+	}
+
+	/**
+	 * Polls a boolean condition on the shared scheduler until it is true or the
+	 * timeout is over, polling again at once on every event of the given types.
+	 * The condition must be safe to call from the scheduler threads.
+	 *
+	 * @param description   The awaited condition, for the log.
+	 * @param timeoutMillis The maximum time to wait, in milliseconds.
+	 * @param condition     The condition to poll.
+	 * @param events        The backend reporting the events, or null to only
+	 *                      poll.
+	 * @param wakeOn        The types of events that trigger a poll.
+	 * @return A future completed with true if the condition was met within the
+	 *         timeout, with false otherwise.
+	 */
+	public static CompletableFuture<Boolean> submitTrue(String description, long timeoutMillis,
+			Probe<Boolean> condition, AutomationBackend events, Set<AutomationEvent.Type> wakeOn) {
+		return submit(description, timeoutMillis, toProbe(condition), events, wakeOn).thenApply(result -> result != null);
+	}
+
+	/**
+	 * Get the scheduler shared by the asynchronous waits, creating it on first
+	 * use. The probes mostly wait for the backend, so it has a daemon thread per
+	 * processor, and at least two.
+	 *
+	 * @return The shared ScheduledExecutorService.
+	 */
+	public static ScheduledExecutorService getScheduler() {
+		ScheduledExecutorService current = scheduler;
+		if (current == null) {
+			synchronized (WaitEngine.class) {
+				if (scheduler == null) {
+					AtomicInteger threads = new AtomicInteger();
+					scheduler = Executors.newScheduledThreadPool(
+							Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+								Thread thread = new Thread(runnable, "wait-engine-" + threads.incrementAndGet());
+								thread.setDaemon(true);
+								return thread;
+							});
+				}
+				current = scheduler;
+			}
+		}
+		return current;
+	}
+
+	private static long nextInterval(long intervalNanos) {
+		long max = TimeUnit.MILLISECONDS.toNanos(getPollMaxInterval());
+		return Math.min(max, (long) (intervalNanos * getPollBackoff()));
+	}
+
+	static long getPollInterval() {
+		return Settings.POLL_INTERVAL > 0 ? Settings.POLL_INTERVAL : DEFAULT_POLL_INTERVAL;
+	}
+
+	private static long getPollMaxInterval() {
+		return Math.max(getPollInterval(),
+				Settings.POLL_MAX_INTERVAL > 0 ? Settings.POLL_MAX_INTERVAL : DEFAULT_POLL_MAX_INTERVAL);
+	}
+
+	private static double getPollBackoff() {
+		return Settings.POLL_BACKOFF >= 1 ? Settings.POLL_BACKOFF : DEFAULT_POLL_BACKOFF;
+	}
+
+	/**
+	 * Resets the statistics of the waits.
+	 */
+	public static void resetStatistics() {
+		waits.set(0);
+		timeouts.set(0);
+		polls.set(0);
+		parkedMillis.set(0);
+		wakeups.set(0);
+	}
+
+	/**
+	 * Get a summary of the waits since the start or the last reset.
+	 *
+	 * @return The number of waits, timeouts, polls, polls triggered by events and
+	 *         the time parked.
+	 */
+	public static String getStatistics() {
+		long count = waits.get();
+		return String.format("WaitEngine[waits=%d, timeouts=%d, polls=%.2f/wait, eventWakeups=%d, parked=%d ms]",
+				count, timeouts.get(), count == 0 ? 0 : (double) polls.get() / count, wakeups.get(),
+				parkedMillis.get());
+	}
+
+	/**
+	 * Polls a probe on the shared scheduler, rescheduling itself until the probe
+	 * reports a result or the timeout is over.
+	 */
+	private static final class Poller<T> implements Runnable {
+
+		private final String description;
+		private final long deadline;
+		private final Probe<T> probe;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+		private long interval = TimeUnit.MILLISECONDS.toNanos(getPollInterval());
+		private ScheduledFuture<?> next;
+
+		Poller(String description, long timeoutMillis, Probe<T> probe) {
+			this.description = description;
+			this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMillis));
+			this.probe = probe;
+		}
+
+		/**
+		 * Polls at once instead of at the scheduled time. Runs on a scheduler
+		 * thread and is serialized with {@link #run()} on this poller, so the
+		 * pending poll can be cancelled safely; an event during a poll makes it
+		 * poll again right after.
+		 */
+		synchronized void wakeUp() {
+			if (future.isDone() || next == null || !next.cancel(false)) {
+				// Completed, or the first or scheduled poll is already running.
+				return;
+			}
+			wakeups.incrementAndGet();
+			run();
+		}
+
+		@Override
+		public synchronized void run() {
+			next = null;
+			if (future.isDone()) {
+				return;
+			}
+			long pollStart = System.nanoTime();
+			T result;
+			try {
+				result = probe.poll();
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+				return;
+			}
+			long pollEnd = System.nanoTime();
+			polls.incrementAndGet();
+			if (result != null) {
+				future.complete(result);
+				return;
+			}
+
+			long remaining = deadline - pollEnd;
+			if (remaining <= 0) {
+				timeouts.incrementAndGet();
+				log.debug(description + " not met within the timeout");
+				future.complete(null);
+				return;
+			}
+			long delay = Math.min(Math.max(interval, pollEnd - pollStart), remaining);
+			interval = nextInterval(interval);
+			next = getScheduler().schedule(this, delay, TimeUnit.NANOSECONDS);
+		}
+	}
+}
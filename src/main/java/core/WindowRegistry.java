@@ -0,0 +1,312 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import actions.LocatorType;
+import core.PartialMatcher.MatchMode;
+import core.backend.AutomationBackend;
+import core.backend.AutomationEvent;
+import core.backend.AutomationEventListener;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+
+/**
+ * The WindowRegistry class keeps the top-level windows and panes of the
+ * desktop with an index from their titles, for the window lookups of the
+ * Driver. The desktop is enumerated with one call, and again only when:
+ * <ul>
+ * <li>the backend reported a window opened or closed, or a window renamed;
+ * or</li>
+ * <li>the backend does not report all of these events and the last
+ * enumeration is older than one poll interval of the {@link WaitEngine}, so
+ * that the waits for a window enumerate once per poll, shared by every
+ * lookup.</li>
+ * </ul>
+ *
+ * A title is matched exactly through the index first, then as a part of the
+ * window titles in desktop order, as the lookups always did; a title starting
+ * with "prefix:", "suffix:", "contains:" or "regex:" is matched that way, see
+ * {@link PartialMatcher#forLocator}. When no top-level title matches, the
+ * first children of the top-level elements, read once per enumeration, are
+ * matched the same way, e.g. for a dialog hosted in an unnamed frame.
+ *
+ * Elements are compared by identity like the entries of the element cache,
+ * except for the source of an event, which is a new Element and is compared
+ * through {@link AutomationBackend#isSameElement}.
+ */
+public final class WindowRegistry implements AutomationEventListener {
+
+	private static final Logger log = LogManager.getLogger(WindowRegistry.class);
+
+	private static final PropertyID[] PROPERTIES = { PropertyID.Name, PropertyID.ControlType };
+
+	private final AutomationBackend backend;
+	// Replaced as a whole by every enumeration; the events read it unlocked.
+	private volatile Index index = new Index();
+	private volatile boolean stale = true;
+	private long enumeratedNanos;
+
+	private final AtomicLong enumerations = new AtomicLong();
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong exactHits = new AtomicLong();
+	private final AtomicLong partialHits = new AtomicLong();
+	private final AtomicLong childHits = new AtomicLong();
+	private final AtomicLong events = new AtomicLong();
+
+	/**
+	 * Constructs a new WindowRegistry. The caller registers it as an event
+	 * listener of the backend.
+	 *
+	 * @param backend The backend to enumerate with.
+	 */
+	public WindowRegistry(AutomationBackend backend) {
+		this.backend = backend;
+	}
+
+	@Override
+	public void onEvent(AutomationEvent event) {
+		switch (event.getType()) {
+		case WINDOW_OPENED:
+		case WINDOW_CLOSED:
+			events.incrementAndGet();
+			stale = true;
+			break;
+		case PROPERTY_CHANGED:
+			if (event.getProperty() == PropertyID.Name && index.contains(backend, event.getSource())) {
+				events.incrementAndGet();
+				stale = true;
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Marks the registry as out of date, e.g. when a window it returned can no
+	 * longer be used.
+	 */
+	public void invalidate() {
+		stale = true;
+	}
+
+	/**
+	 * Finds a top-level element of a control type by its title, or the first
+	 * child of one, see the class comment.
+	 *
+	 * @param controlType The control type of the top-level element, e.g. Window
+	 *                    or Pane.
+	 * @param title       The title, optionally starting with a match mode.
+	 * @return The Element, or null if no title matches.
+	 * @throws AutomationException      If the desktop could not be enumerated.
+	 * @throws IllegalArgumentException If the title is empty or an invalid
+	 *                                  regular expression.
+	 */
+	public synchronized Element find(ControlType controlType, String title) throws AutomationException {
+		lookups.incrementAndGet();
+		Index current = getIndex();
+		PartialMatcher matcher = PartialMatcher.forLocator(LocatorType.PARTIALNAME, title);
+		// A title without a match mode is tried as a whole title first.
+		boolean plain = matcher.getMode() == MatchMode.CONTAINS && matcher.getValue().equals(title);
+
+		Entry entry = plain ? current.first(current.byTitle.get(title), controlType) : null;
+		if (entry != null) {
+			exactHits.incrementAndGet();
+			return entry.element;
+		}
+		entry = current.first(current.topLevel, controlType, matcher);
+		if (entry != null) {
+			partialHits.incrementAndGet();
+			return entry.element;
+		}
+
+		List<Entry> children = current.getChildren(backend);
+		entry = plain ? current.first(current.childrenByTitle.get(title), controlType) : null;
+		if (entry == null) {
+			entry = current.first(children, controlType, matcher);
+		}
+		if (entry != null) {
+			childHits.incrementAndGet();
+			return entry.element;
+		}
+		return null;
+	}
+
+	/**
+	 * Get the top-level elements of the last enumeration, in desktop order.
+	 *
+	 * @return The top-level elements.
+	 */
+	public List<Element> getWindows() {
+		List<Element> windows = new ArrayList<>();
+		for (Entry entry : index.topLevel) {
+			windows.add(entry.element);
+		}
+		return windows;
+	}
+
+	/**
+	 * Get the index, enumerating the desktop again if it is out of date.
+	 */
+	private Index getIndex() throws AutomationException {
+		long now = System.nanoTime();
+		boolean expired = !(backend.supportsEvents(AutomationEvent.Type.WINDOW_OPENED)
+				&& backend.supportsEvents(AutomationEvent.Type.WINDOW_CLOSED)
+				&& backend.supportsEvents(AutomationEvent.Type.PROPERTY_CHANGED))
+				&& now - enumeratedNanos >= TimeUnit.MILLISECONDS.toNanos(WaitEngine.getPollInterval());
+		if (stale || expired) {
+			// Cleared first, so that an event during the enumeration is not lost.
+			stale = false;
+			enumeratedNanos = now;
+			index = enumerate();
+		}
+		return index;
+	}
+
+	private Index enumerate() throws AutomationException {
+		enumerations.incrementAndGet();
+		Index enumerated = new Index();
+		for (Element element : backend.getChildren(backend.getRootElement(), PROPERTIES)) {
+			Entry entry;
+			try {
+				entry = new Entry(element, backend.getCachedPropertyValue(element, PropertyID.Name),
+						backend.getCachedPropertyValue(element, PropertyID.ControlType), null);
+			} catch (AutomationException e) {
+				log.debug("Top-level element skipped, it may have closed.", e);
+				continue;
+			}
+			enumerated.add(entry);
+		}
+		log.debug("Enumerated " + enumerated.topLevel.size() + " top-level elements.");
+		return enumerated;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"WindowRegistry[windows=%d, enumerations=%d, events=%d, lookups=%d, exact=%d, partial=%d, "
+						+ "children=%d]",
+				index.topLevel.size(), enumerations.get(), events.get(), lookups.get(), exactHits.get(),
+				partialHits.get(), childHits.get());
+	}
+
+	/**
+	 * A top-level element, or the first child of one.
+	 */
+	private static final class Entry {
+		private final Element element;
+		private final String title;
+		private final int controlType;
+
+		private Entry(Element element, Object title, Object controlType, Entry owner) {
+			this.element = element;
+			this.title = title == null ? null : title.toString();
+			// A first child is found with the control type of its owner.
+			this.controlType = owner != null ? owner.controlType
+					: controlType instanceof Number ? ((Number) controlType).intValue() : 0;
+		}
+	}
+
+	/**
+	 * The elements of one enumeration.
+	 */
+	private static final class Index {
+		private final List<Entry> topLevel = new ArrayList<>();
+		private final Map<String, List<Entry>> byTitle = new HashMap<>();
+		private final Map<Element, Entry> entries = new IdentityHashMap<>();
+		private List<Entry> children;
+		private final Map<String, List<Entry>> childrenByTitle = new HashMap<>();
+
+		/**
+		 * Checks whether an element is one of the top-level elements, by identity
+		 * or else through the backend.
+		 */
+		private boolean contains(AutomationBackend backend, Element element) {
+			if (element == null) {
+				return false;
+			}
+			if (entries.containsKey(element)) {
+				return true;
+			}
+			for (Element candidate : entries.keySet()) {
+				try {
+					if (backend.isSameElement(element, candidate)) {
+						return true;
+					}
+				} catch (AutomationException e) {
+					log.debug("Top-level element not compared, it may have closed.", e);
+				}
+			}
+			return false;
+		}
+
+		private void add(Entry entry) {
+			topLevel.add(entry);
+			entries.put(entry.element, entry);
+			if (entry.title != null) {
+				byTitle.computeIfAbsent(entry.title, key -> new ArrayList<>(1)).add(entry);
+			}
+		}
+
+		/**
+		 * Get the first children of the top-level elements, reading them on first
+		 * use.
+		 */
+		private List<Entry> getChildren(AutomationBackend backend) {
+			if (children != null) {
+				return children;
+			}
+			List<Entry> read = new ArrayList<>();
+			for (Entry owner : topLevel) {
+				try {
+					List<Element> ownerChildren = backend.getChildren(owner.element, PROPERTIES);
+					if (!ownerChildren.isEmpty()) {
+						Element child = ownerChildren.get(0);
+						Entry entry = new Entry(child, backend.getCachedPropertyValue(child, PropertyID.Name), null,
+								owner);
+						read.add(entry);
+						if (entry.title != null) {
+							childrenByTitle.computeIfAbsent(entry.title, key -> new ArrayList<>(1)).add(entry);
+						}
+					}
+				} catch (AutomationException e) {
+					log.debug("First child of a top-level element not read, it may have closed.", e);
+				}
+			}
+			children = Collections.unmodifiableList(read);
+			return children;
+		}
+
+		private Entry first(List<Entry> candidates, ControlType controlType) {
+			if (candidates != null) {
+				for (Entry entry : candidates) {
+					if (entry.controlType == controlType.getValue()) {
+						return entry;
+					}
+				}
+			}
+			return null;
+		}
+
+		private Entry first(List<Entry> candidates, ControlType controlType, PartialMatcher matcher) {
+			for (Entry entry : candidates) {
+				if (entry.controlType == controlType.getValue() && matcher.matches(entry.title)) {
+					return entry;
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,570 @@
+package core;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import core.backend.AutomationBackend;
+import core.backend.AutomationEvent;
+import core.backend.AutomationEventListener;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+import mmarquee.automation.ElementNotFoundException;
+import mmarquee.automation.PropertyID;
+
+/**
+ * The WindowTreeModel class is a copy of the automation tree of a window,
+ * with the {@link TreeSnapshot#PROPERTIES} of every node, that is patched in
+ * place instead of captured again after the application changed. The events of
+ * the backend, passed to {@link #onEvent(AutomationEvent)}, mark what changed,
+ * and {@link #refresh()} then reads again:
+ * <ul>
+ * <li>the children of a node named by a StructureChanged event, and of its
+ * parent, keeping the subtrees of the children that are still there;</li>
+ * <li>the properties of a node named by a PropertyChanged event;</li>
+ * <li>when a change could not be located, e.g. an element was added, or the
+ * backend does not report structure and property changes: the subtrees whose child count or bounding box
+ * changed, found by reading the bounds of the children of every node. A child
+ * that only moved with its parent is kept.</li>
+ * </ul>
+ * Every refresh reports how many nodes it read again and how many it kept.
+ * Nodes are matched by identity like the entries of the element cache, so a
+ * backend that returns new elements on every read keeps fewer subtrees. The
+ * source of an event, a new Element, is matched by identity or else through
+ * {@link AutomationBackend#isSameElement}, node by node.
+ *
+ * The model is thread-safe: the events may come from the thread of the
+ * backend while a refresh runs.
+ */
+public final class WindowTreeModel implements AutomationEventListener {
+
+	private static final Logger log = LogManager.getLogger(WindowTreeModel.class);
+
+	// The index of the BoundingRectangle in the properties of a node.
+	private static final int BOUNDS = 8;
+	private static final PropertyID[] BOUNDS_ONLY = { PropertyID.BoundingRectangle };
+
+	private final AutomationBackend backend;
+	private final Node root;
+	private final Map<Element, Node> nodes = Collections.synchronizedMap(new IdentityHashMap<>());
+	// The changes marked by the events since the last refresh, guarded by
+	// themselves; never held while the backend is called, as the backend may
+	// report events while it holds its own lock.
+	private final Set<Node> structureChanged = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Set<Node> propertyChanged = Collections.newSetFromMap(new IdentityHashMap<>());
+	private boolean unlocated;
+	private boolean closed;
+	// The state of the running refresh, guarded by this.
+	private int generation;
+	private int read;
+	private int probes;
+	private long refreshedMillis;
+	private volatile Refresh lastRefresh;
+
+	/**
+	 * Constructs a new WindowTreeModel, capturing the tree under a window.
+	 *
+	 * @param backend The backend to read with.
+	 * @param window  The element whose subtree to model, normally a window.
+	 * @throws AutomationException If the properties of the window could not be
+	 *                             read.
+	 */
+	public WindowTreeModel(AutomationBackend backend, Element window) throws AutomationException {
+		this.backend = backend;
+		this.root = attach(null, window, backend.getPropertyValues(window, TreeSnapshot.PROPERTIES));
+		synchronized (this) {
+			walk(root);
+			refreshedMillis = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Get the element the model was captured under.
+	 *
+	 * @return The window element.
+	 */
+	public Element getRoot() {
+		return root.element;
+	}
+
+	/**
+	 * Get the number of nodes, the root included.
+	 *
+	 * @return The node count.
+	 */
+	public int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Get the result of the last refresh.
+	 *
+	 * @return The Refresh, or null if the model was never refreshed.
+	 */
+	public Refresh getLastRefresh() {
+		return lastRefresh;
+	}
+
+	/**
+	 * Checks whether there are changes for the next refresh.
+	 *
+	 * @return True if an event marked a change since the last refresh.
+	 */
+	public boolean isChanged() {
+		synchronized (structureChanged) {
+			return unlocated || closed || !structureChanged.isEmpty() || !propertyChanged.isEmpty();
+		}
+	}
+
+	/**
+	 * Marks the whole model as possibly out of date, so that the next refresh
+	 * checks the bounds of every subtree, e.g. when an element of the model no
+	 * longer matches its properties.
+	 */
+	public void invalidate() {
+		synchronized (structureChanged) {
+			unlocated = true;
+		}
+	}
+
+	@Override
+	public void onEvent(AutomationEvent event) {
+		Node node = findNode(event.getSource());
+		synchronized (structureChanged) {
+			switch (event.getType()) {
+			case WINDOW_CLOSED:
+				if (node == root) {
+					closed = true;
+				} else if (node != null) {
+					structureChanged.add(node);
+				}
+				break;
+			case STRUCTURE_CHANGED:
+				if (node != null) {
+					structureChanged.add(node);
+				} else {
+					// An added element, or an element of another window.
+					unlocated = true;
+				}
+				break;
+			case PROPERTY_CHANGED:
+				if (node != null) {
+					propertyChanged.add(node);
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Get the node of the source of an event, by identity or else through the
+	 * backend.
+	 *
+	 * @param source The source of the event.
+	 * @return The Node, or null if the source is not in the model.
+	 */
+	private Node findNode(Element source) {
+		if (source == null) {
+			return null;
+		}
+		Node node = nodes.get(source);
+		if (node != null) {
+			return node;
+		}
+		List<Node> candidates;
+		synchronized (nodes) {
+			candidates = new ArrayList<>(nodes.values());
+		}
+		for (Node candidate : candidates) {
+			try {
+				if (backend.isSameElement(source, candidate.element)) {
+					return candidate;
+				}
+			} catch (AutomationException e) {
+				log.debug("Node not compared, it may have been removed.", e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads again the parts of the tree the events marked as changed, see the
+	 * class comment.
+	 *
+	 * @return The numbers of nodes read and kept.
+	 * @throws AutomationException If the window was closed or can no longer be
+	 *                             read.
+	 */
+	public synchronized Refresh refresh() throws AutomationException {
+		long start = System.nanoTime();
+		List<Node> structural;
+		List<Node> properties;
+		boolean verify;
+		synchronized (structureChanged) {
+			if (closed) {
+				throw new ElementNotFoundException("Window of the tree model was closed.");
+			}
+			structural = new ArrayList<>(structureChanged);
+			properties = new ArrayList<>(propertyChanged);
+			verify = unlocated || !backend.supportsEvents(AutomationEvent.Type.STRUCTURE_CHANGED)
+					|| !backend.supportsEvents(AutomationEvent.Type.PROPERTY_CHANGED);
+			structureChanged.clear();
+			propertyChanged.clear();
+			unlocated = false;
+		}
+		generation++;
+		read = 0;
+		probes = 0;
+
+		// A node and its parent, parents first, so that a removed node is
+		// dropped with the children of its parent before it is read.
+		List<Node> targets = new ArrayList<>();
+		for (Node node : structural) {
+			if (node.parent != null) {
+				targets.add(node.parent);
+			}
+			targets.add(node);
+		}
+		targets.sort(Comparator.comparingInt(Node::getDepth));
+		Set<Node> rewalked = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Node node : targets) {
+			if (isAttached(node) && rewalked.add(node)) {
+				rewalk(node);
+			}
+		}
+		for (Node node : properties) {
+			if (isAttached(node) && node.generation != generation) {
+				node.values = backend.getPropertyValues(node.element, TreeSnapshot.PROPERTIES);
+				markRead(node);
+			}
+		}
+		if (verify) {
+			Object bounds = backend.getPropertyValue(root.element, PropertyID.BoundingRectangle);
+			probes++;
+			Rectangle before = ElementProperties.toRectangle(root.values[BOUNDS]);
+			Rectangle after = ElementProperties.toRectangle(bounds);
+			root.values[BOUNDS] = bounds;
+			verify(root, getDisplacement(before, after));
+		}
+
+		refreshedMillis = System.currentTimeMillis();
+		Refresh refresh = new Refresh(read, nodes.size() - read, probes, verify, System.nanoTime() - start);
+		lastRefresh = refresh;
+		log.debug("Refreshed the tree model of " + root.values[0] + ": " + refresh);
+		return refresh;
+	}
+
+	/**
+	 * Copies the model into a {@link TreeSnapshot}, e.g. to index it.
+	 *
+	 * @return The TreeSnapshot, with the live elements.
+	 */
+	public synchronized TreeSnapshot toSnapshot() {
+		TreeSnapshot.Builder builder = new TreeSnapshot.Builder();
+		add(builder, -1, root);
+		return builder.build(refreshedMillis);
+	}
+
+	private static void add(TreeSnapshot.Builder builder, int parent, Node node) {
+		int added = builder.add(parent, node.element, node.values);
+		for (Node child : node.children) {
+			add(builder, added, child);
+		}
+		builder.close(added);
+	}
+
+	private boolean isAttached(Node node) {
+		return nodes.get(node.element) == node;
+	}
+
+	private Node attach(Node parent, Element element, Object[] values) {
+		Node node = new Node(parent, element, values);
+		node.generation = generation;
+		nodes.put(element, node);
+		read++;
+		return node;
+	}
+
+	private void detach(Node node) {
+		nodes.remove(node.element, node);
+		for (Node child : node.children) {
+			detach(child);
+		}
+	}
+
+	private void markRead(Node node) {
+		if (node.generation != generation) {
+			node.generation = generation;
+			read++;
+		}
+	}
+
+	/**
+	 * Reads the subtree of a new node.
+	 */
+	private void walk(Node node) {
+		List<Element> children;
+		try {
+			children = backend.getChildren(node.element, TreeSnapshot.PROPERTIES);
+		} catch (AutomationException e) {
+			log.debug("Children of a tree model node not read, the element may have vanished.", e);
+			return;
+		}
+		List<Node> walked = new ArrayList<>(children.size());
+		for (Element child : children) {
+			Object[] values = readCached(child);
+			if (values != null) {
+				Node created = attach(node, child, values);
+				walked.add(created);
+				walk(created);
+			}
+		}
+		node.children = walked;
+	}
+
+	/**
+	 * Reads the children of a node again, keeping the subtrees of those still
+	 * there and reading the subtrees of the new ones.
+	 */
+	private void rewalk(Node node) throws AutomationException {
+		List<Element> children;
+		try {
+			children = backend.getChildren(node.element, TreeSnapshot.PROPERTIES);
+		} catch (AutomationException e) {
+			if (node == root) {
+				throw e;
+			}
+			// Removed; the read of its parent drops it.
+			log.debug("Children of a tree model node not read, the element may have vanished.", e);
+			return;
+		}
+		Map<Element, Node> previous = new IdentityHashMap<>();
+		for (Node child : node.children) {
+			previous.put(child.element, child);
+		}
+		List<Node> updated = new ArrayList<>(children.size());
+		for (Element child : children) {
+			Object[] values = readCached(child);
+			if (values == null) {
+				continue;
+			}
+			Node kept = previous.remove(child);
+			if (kept != null) {
+				kept.values = values;
+				markRead(kept);
+				updated.add(kept);
+			} else {
+				Node created = attach(node, child, values);
+				updated.add(created);
+				walk(created);
+			}
+		}
+		for (Node removed : previous.values()) {
+			detach(removed);
+		}
+		node.children = updated;
+	}
+
+	/**
+	 * Checks the children of a node by their bounds, keeping those that kept
+	 * their size and moved with the node, and checking their children in turn.
+	 * A node whose child count changed, or a child that changed its bounds, is
+	 * read again with its subtree.
+	 *
+	 * @param node         The node, with its new bounds.
+	 * @param displacement How far the node moved, as a point.
+	 */
+	private void verify(Node node, Rectangle displacement) throws AutomationException {
+		if (node.children.isEmpty()) {
+			// A leaf is not probed; one that gains children is found by its events
+			// or when its bounds change.
+			return;
+		}
+		List<Element> children;
+		try {
+			children = backend.getChildren(node.element, BOUNDS_ONLY);
+		} catch (AutomationException e) {
+			if (node == root) {
+				throw e;
+			}
+			log.debug("Children of a tree model node not checked, the element may have vanished.", e);
+			return;
+		}
+		probes++;
+		if (children.size() != node.children.size()) {
+			for (Node child : node.children) {
+				detach(child);
+			}
+			node.children = new ArrayList<>();
+			walk(node);
+			return;
+		}
+		for (int i = 0; i < children.size(); i++) {
+			Node child = node.children.get(i);
+			Element element = children.get(i);
+			Object bounds = readCachedBounds(element);
+			Rectangle before = ElementProperties.toRectangle(child.values[BOUNDS]);
+			Rectangle after = ElementProperties.toRectangle(bounds);
+			Rectangle moved = getDisplacement(before, after);
+			boolean resized = before == null ? after != null
+					: after == null || before.width != after.width || before.height != after.height;
+			if (!resized && moved.x == displacement.x && moved.y == displacement.y) {
+				child.values[BOUNDS] = bounds;
+				verify(child, moved);
+				continue;
+			}
+			detach(child);
+			Node replaced;
+			try {
+				replaced = attach(node, element, backend.getPropertyValues(element, TreeSnapshot.PROPERTIES));
+			} catch (AutomationException e) {
+				log.debug("A changed child of a tree model node vanished.", e);
+				node.children.set(i, null);
+				continue;
+			}
+			walk(replaced);
+			node.children.set(i, replaced);
+		}
+		node.children.removeIf(child -> child == null);
+	}
+
+	private static Rectangle getDisplacement(Rectangle before, Rectangle after) {
+		if (before == null || after == null) {
+			return new Rectangle();
+		}
+		return new Rectangle(after.x - before.x, after.y - before.y, 0, 0);
+	}
+
+	private Object[] readCached(Element element) {
+		Object[] values = new Object[TreeSnapshot.PROPERTIES.length];
+		try {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = backend.getCachedPropertyValue(element, TreeSnapshot.PROPERTIES[i]);
+			}
+		} catch (AutomationException e) {
+			log.debug("Properties of a tree model node not read.", e);
+			return null;
+		}
+		return values;
+	}
+
+	private Object readCachedBounds(Element element) {
+		try {
+			return backend.getCachedPropertyValue(element, PropertyID.BoundingRectangle);
+		} catch (AutomationException e) {
+			log.debug("Bounds of a tree model node not read.", e);
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "WindowTreeModel[nodes=" + size() + ", lastRefresh=" + lastRefresh + "]";
+	}
+
+	/**
+	 * A node of the model.
+	 */
+	private static final class Node {
+		private final Node parent;
+		private final Element element;
+		private Object[] values;
+		private List<Node> children = new ArrayList<>();
+		// The refresh that read the node last.
+		private int generation;
+
+		private Node(Node parent, Element element, Object[] values) {
+			this.parent = parent;
+			this.element = element;
+			this.values = values;
+		}
+
+		private int getDepth() {
+			int depth = 0;
+			for (Node ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+				depth++;
+			}
+			return depth;
+		}
+	}
+
+	/**
+	 * The result of a {@link WindowTreeModel#refresh()}.
+	 */
+	public static final class Refresh {
+		private final int read;
+		private final int reused;
+		private final int probes;
+		private final boolean verified;
+		private final long nanos;
+
+		private Refresh(int read, int reused, int probes, boolean verified, long nanos) {
+			this.read = read;
+			this.reused = reused;
+			this.probes = probes;
+			this.verified = verified;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * Get the number of nodes whose properties were read again.
+		 *
+		 * @return The read node count.
+		 */
+		public int getRead() {
+			return read;
+		}
+
+		/**
+		 * Get the number of nodes kept without reading their properties.
+		 *
+		 * @return The reused node count.
+		 */
+		public int getReused() {
+			return reused;
+		}
+
+		/**
+		 * Get the number of reads of bounds made to find the changed subtrees.
+		 *
+		 * @return The probe count.
+		 */
+		public int getProbes() {
+			return probes;
+		}
+
+		/**
+		 * Checks whether the refresh checked the bounds of every subtree.
+		 *
+		 * @return True if the whole tree was checked.
+		 */
+		public boolean isVerified() {
+			return verified;
+		}
+
+		/**
+		 * Get the time of the refresh.
+		 *
+		 * @return The time in nanoseconds.
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Refresh[read=%d, reused=%d, probes=%d, verified=%b, %.3f ms]", read, reused,
+					probes, verified, nanos / 1e6);
+		}
+	}
+}
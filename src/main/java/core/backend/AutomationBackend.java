@@ -0,0 +1,336 @@
+package core.backend;
+
+import java.awt.Rectangle;
+import java.util.List;
+
+import core.SearchCondition;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+import mmarquee.automation.PatternID;
+import mmarquee.automation.PropertyID;
+import mmarquee.uiautomation.ToggleState;
+
+/**
+ * The AutomationBackend interface is the access point of the framework to the
+ * accessibility tree of the desktop. The {@link core.Driver} and {@link core.By}
+ * classes search and read elements only through the selected backend, so the
+ * locator stack can run against the real desktop through
+ * {@link UIAutomationBackend} or against the in-memory desktop of
+ * {@link SimulatedBackend}.
+ *
+ * The elements handed out by a backend must only be passed back to the same
+ * backend.
+ *
+ * A backend may report changes of the tree as {@link AutomationEvent}s, so that
+ * waits can react to them instead of polling. Backends without events keep the
+ * default methods, and the waits then poll.
+ */
+public interface AutomationBackend {
+
+	/**
+	 * Get the name of the backend, as used for the "automation.backend" system
+	 * property.
+	 *
+	 * @return The backend name.
+	 */
+	String getName();
+
+	/**
+	 * Get the root element of the automation tree.
+	 *
+	 * @return The root Element representing the desktop.
+	 */
+	Element getRootElement();
+
+	/**
+	 * Finds the first element matching the condition.
+	 *
+	 * @param context   The element to search from.
+	 * @param scope     The scope of searching (e.g., TreeScope.SUBTREE).
+	 * @param condition The search condition to match.
+	 * @return The first matching element, or null if there is none.
+	 * @throws AutomationException If there is an error during the search.
+	 */
+	Element findFirst(Element context, int scope, SearchCondition condition) throws AutomationException;
+
+	/**
+	 * Finds all the elements matching the condition.
+	 *
+	 * @param context   The element to search from.
+	 * @param scope     The scope of searching (e.g., TreeScope.SUBTREE).
+	 * @param condition The search condition to match.
+	 * @return The matching elements in tree order, or an empty list.
+	 * @throws AutomationException If there is an error during the search.
+	 */
+	List<Element> findAll(Element context, int scope, SearchCondition condition) throws AutomationException;
+
+	/**
+	 * Finds all the elements matching the condition and fetches the given
+	 * properties together with them, so that they can be read with
+	 * {@link #getCachedPropertyValue} without a further call.
+	 *
+	 * @param context    The element to search from.
+	 * @param scope      The scope of searching (e.g., TreeScope.SUBTREE).
+	 * @param condition  The search condition to match.
+	 * @param properties The properties to fetch with the elements.
+	 * @return The matching elements in tree order, or an empty list.
+	 * @throws AutomationException If there is an error during the search.
+	 */
+	List<Element> findAll(Element context, int scope, SearchCondition condition, PropertyID[] properties)
+			throws AutomationException;
+
+	/**
+	 * Get the direct children of an element.
+	 *
+	 * @param element The parent element.
+	 * @return The children in tree order, or an empty list.
+	 * @throws AutomationException If there is an error during the search.
+	 */
+	List<Element> getChildren(Element element) throws AutomationException;
+
+	/**
+	 * Finds the direct children of an element in one call, fetching the given
+	 * properties together with them. The values are read with
+	 * {@link #getCachedPropertyValue(Element, PropertyID)}.
+	 *
+	 * @param element    The parent element.
+	 * @param properties The properties to fetch with the children.
+	 * @return The children, in tree order.
+	 * @throws AutomationException If the children could not be read.
+	 */
+	List<Element> getChildren(Element element, PropertyID[] properties) throws AutomationException;
+
+	/**
+	 * Reads the current value of a property from the application.
+	 *
+	 * @param element  The element to read from.
+	 * @param property The property to read.
+	 * @return The property value, or null if it has no value.
+	 * @throws AutomationException If the property could not be read.
+	 */
+	Object getPropertyValue(Element element, PropertyID property) throws AutomationException;
+
+	/**
+	 * Reads the bounding rectangle of an element from the application.
+	 *
+	 * @param element The element to read from.
+	 * @return The bounds in screen coordinates.
+	 * @throws AutomationException If the bounds could not be read.
+	 */
+	Rectangle getBoundingRectangle(Element element) throws AutomationException;
+
+	/**
+	 * Checks whether two elements are the same UI element. The source of an
+	 * {@link AutomationEvent} is a new Element, not the one a search returned for
+	 * the same element, so it must be compared with this rather than by
+	 * identity. By default the elements are compared by identity.
+	 *
+	 * @param element The first element.
+	 * @param other   The second element.
+	 * @return True if both refer to the same UI element.
+	 * @throws AutomationException If the elements could not be compared.
+	 */
+	default boolean isSameElement(Element element, Element other) throws AutomationException {
+		return element == other;
+	}
+
+	/**
+	 * Reads the current values of several properties of an element from the
+	 * application. Backends that can fetch them in one call override this;
+	 * by default each property is read on its own.
+	 *
+	 * @param element    The element to read from.
+	 * @param properties The properties to read.
+	 * @return The property values, in the order of the properties.
+	 * @throws AutomationException If the properties could not be read.
+	 */
+	default Object[] getPropertyValues(Element element, PropertyID[] properties) throws AutomationException {
+		Object[] values = new Object[properties.length];
+		for (int i = 0; i < properties.length; i++) {
+			values[i] = getPropertyValue(element, properties[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * Reads a property value fetched by
+	 * {@link #findAll(Element, int, SearchCondition, PropertyID[])}.
+	 *
+	 * @param element  The element to read from.
+	 * @param property The property to read.
+	 * @return The cached property value, or null if it has no value.
+	 * @throws AutomationException If the property was not fetched with the
+	 *                             element.
+	 */
+	Object getCachedPropertyValue(Element element, PropertyID property) throws AutomationException;
+
+	/**
+	 * Checks whether a control pattern is supported by an element.
+	 *
+	 * @param element The element to check.
+	 * @param pattern The control pattern.
+	 * @return True if the pattern is available.
+	 * @throws AutomationException If the availability could not be read.
+	 */
+	boolean isPatternAvailable(Element element, PatternID pattern) throws AutomationException;
+
+	/**
+	 * Invokes an element through the Invoke pattern.
+	 *
+	 * @param element The element to invoke.
+	 * @throws AutomationException If the pattern is not available or the call
+	 *                             failed.
+	 */
+	void invoke(Element element) throws AutomationException;
+
+	/**
+	 * Get the toggle state of an element through the Toggle pattern.
+	 *
+	 * @param element The element to read from.
+	 * @return The current toggle state.
+	 * @throws AutomationException If the pattern is not available or the call
+	 *                             failed.
+	 */
+	ToggleState getToggleState(Element element) throws AutomationException;
+
+	/**
+	 * Toggles an element through the Toggle pattern.
+	 *
+	 * @param element The element to toggle.
+	 * @throws AutomationException If the pattern is not available or the call
+	 *                             failed.
+	 */
+	void toggle(Element element) throws AutomationException;
+
+	/**
+	 * Get the value of an element through the Value pattern.
+	 *
+	 * @param element The element to read from.
+	 * @return The current value.
+	 * @throws AutomationException If the pattern is not available or the call
+	 *                             failed.
+	 */
+	String getValue(Element element) throws AutomationException;
+
+	/**
+	 * Sets the value of an element through the Value pattern.
+	 *
+	 * @param element The element to change.
+	 * @param value   The new value.
+	 * @throws AutomationException If the pattern is not available or the call
+	 *                             failed.
+	 */
+	void setValue(Element element, String value) throws AutomationException;
+
+	/**
+	 * Expands an element through the ExpandCollapse pattern.
+	 *
+	 * @param element The element to expand.
+	 * @throws AutomationException If the pattern is not available or the call
+	 *                             failed.
+	 */
+	void expand(Element element) throws AutomationException;
+
+	/**
+	 * Collapses an element through the ExpandCollapse pattern.
+	 *
+	 * @param element The element to collapse.
+	 * @throws AutomationException If the pattern is not available or the call
+	 *                             failed.
+	 */
+	void collapse(Element element) throws AutomationException;
+
+	/**
+	 * Selects an element through the SelectionItem pattern, deselecting the
+	 * other items of its container.
+	 *
+	 * @param element The element to select.
+	 * @throws AutomationException If the pattern is not available or the call
+	 *                             failed.
+	 */
+	void select(Element element) throws AutomationException;
+
+	/**
+	 * Sets the keyboard focus to an element.
+	 *
+	 * @param element The element to focus.
+	 * @throws AutomationException If the element could not take the focus.
+	 */
+	void setFocus(Element element) throws AutomationException;
+
+	/**
+	 * Maximizes a window through the Window pattern. A window that cannot be
+	 * maximized is left as it is.
+	 *
+	 * @param element The window to maximize.
+	 * @throws AutomationException If the pattern is not available or the call
+	 *                             failed.
+	 */
+	void maximize(Element element) throws AutomationException;
+
+	/**
+	 * Closes a window through the Window pattern.
+	 *
+	 * @param element The window to close.
+	 * @throws AutomationException If the pattern is not available or the call
+	 *                             failed.
+	 */
+	void closeWindow(Element element) throws AutomationException;
+
+	/**
+	 * Get the number of calls made into the application so far, for the
+	 * calls-per-keyword statistics. Backends that do not count their calls
+	 * return -1.
+	 *
+	 * @return The call count, or -1.
+	 */
+	default long getCallCount() {
+		return -1;
+	}
+
+	/**
+	 * Checks whether the backend reports automation events to its listeners.
+	 *
+	 * @return True if events are reported.
+	 */
+	default boolean supportsEvents() {
+		return false;
+	}
+
+	/**
+	 * Checks whether the backend reports a kind of automation event. Callers
+	 * that skip reading the tree again because events would report its changes
+	 * must check every kind they rely on; a backend may report only some.
+	 *
+	 * @param type The kind of event.
+	 * @return True if events of the type are reported.
+	 */
+	default boolean supportsEvents(AutomationEvent.Type type) {
+		return supportsEvents();
+	}
+
+	/**
+	 * Adds a listener for the automation events of the backend. Backends without
+	 * events ignore the listener.
+	 *
+	 * @param listener The listener to add.
+	 */
+	default void addEventListener(AutomationEventListener listener) {
+		// No events to report.
+	}
+
+	/**
+	 * Removes a listener added with {@link #addEventListener}.
+	 *
+	 * @param listener The listener to remove.
+	 */
+	default void removeEventListener(AutomationEventListener listener) {
+		// No events to report.
+	}
+
+	/**
+	 * Releases the resources held by the backend. The backend must not be used
+	 * afterwards.
+	 */
+	void close();
+}
@@ -0,0 +1,427 @@
+package core.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sun.jna.Platform;
+import com.sun.jna.platform.win32.Ole32;
+import com.sun.jna.platform.win32.COM.COMUtils;
+
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+
+/**
+ * The AutomationDispatcher class is a dedicated thread that owns COM objects,
+ * such as the UIAutomation instance, so that they are only used from the
+ * thread they were created on. The thread enters the multithreaded apartment
+ * on Windows, as UIAutomation clients should: it only parks on its queue and
+ * pumps no messages, so a single threaded apartment could not serve the calls
+ * UIAutomation makes into it, such as the event handlers it registers. The
+ * thread runs the calls of all other threads, one at a time,
+ * from a lock-free request queue; each call completes a CompletableFuture, so
+ * callers can wait for it, with or without a timeout, or chain on it. Calls
+ * made on the dispatcher thread itself run directly.
+ *
+ * Property reads queued back to back are batched: the reads of one element are
+ * run as one {@link PropertyReader} call. The queue depth and the latency of
+ * the calls are kept in the {@link DispatcherStatistics}.
+ */
+public class AutomationDispatcher {
+
+	private static final Logger log = LogManager.getLogger(AutomationDispatcher.class);
+
+	// The most property reads taken from the queue into one batch.
+	private static final int MAX_BATCH = 64;
+
+	/**
+	 * A call to run on the dispatcher thread.
+	 *
+	 * @param <T> The result of the call.
+	 */
+	@FunctionalInterface
+	public interface Call<T> {
+
+		/**
+		 * Runs the call.
+		 *
+		 * @return The result of the call.
+		 * @throws AutomationException If the call fails.
+		 */
+		T call() throws AutomationException;
+	}
+
+	/**
+	 * Reads several properties of one element in one call, such as
+	 * {@link AutomationBackend#getPropertyValues(Element, PropertyID[])}.
+	 */
+	@FunctionalInterface
+	public interface PropertyReader {
+
+		/**
+		 * Reads the current values of the properties.
+		 *
+		 * @param element    The element to read from.
+		 * @param properties The properties to read.
+		 * @return The property values, in the order of the properties.
+		 * @throws AutomationException If the properties could not be read.
+		 */
+		Object[] read(Element element, PropertyID[] properties) throws AutomationException;
+	}
+
+	/**
+	 * A queued call, or a queued property read when the call is null.
+	 */
+	private static final class Request<T> {
+		private final Call<T> call;
+		private final Element element;
+		private final PropertyID property;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+		private final long queuedNanos = System.nanoTime();
+
+		private Request(Call<T> call, Element element, PropertyID property) {
+			this.call = call;
+			this.element = element;
+			this.property = property;
+		}
+
+		private boolean isPropertyRead() {
+			return call == null;
+		}
+	}
+
+	private final ConcurrentLinkedQueue<Request<?>> requests = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final DispatcherStatistics statistics = new DispatcherStatistics();
+	private final Thread thread;
+	private volatile PropertyReader propertyReader = AutomationDispatcher::readSeparately;
+	private volatile boolean running = true;
+	private volatile boolean idle;
+	private volatile boolean terminated;
+
+	/**
+	 * Constructs and starts a new AutomationDispatcher.
+	 *
+	 * @param name The name of the dispatcher, used in the thread name.
+	 */
+	public AutomationDispatcher(String name) {
+		this.thread = new Thread(this::run, "automation-dispatcher-" + name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Sets how the batched property reads are run. Without a reader, each
+	 * property is read on its own with {@link Element#getPropertyValue(int)}.
+	 *
+	 * @param propertyReader The PropertyReader.
+	 */
+	public void setPropertyReader(PropertyReader propertyReader) {
+		if (propertyReader == null) {
+			throw new NullPointerException("PropertyReader cannot be null.");
+		}
+		this.propertyReader = propertyReader;
+	}
+
+	private static Object[] readSeparately(Element element, PropertyID[] properties) throws AutomationException {
+		Object[] values = new Object[properties.length];
+		for (int i = 0; i < properties.length; i++) {
+			values[i] = element.getPropertyValue(properties[i].getValue());
+		}
+		return values;
+	}
+
+	private void run() {
+		boolean initialized = false;
+		if (Platform.isWindows()) {
+			initialized = COMUtils.SUCCEEDED(Ole32.INSTANCE.CoInitializeEx(null, Ole32.COINIT_MULTITHREADED));
+		}
+		List<Request<?>> batch = new ArrayList<>();
+		try {
+			while (running) {
+				Request<?> request = requests.poll();
+				if (request == null) {
+					// Callers only unpark the thread while it is idle; check
+					// the queue again after saying so, not to miss a call.
+					idle = true;
+					if (requests.isEmpty() && running) {
+						LockSupport.park(this);
+					}
+					idle = false;
+					continue;
+				}
+				queueDepth.decrementAndGet();
+				if (!request.isPropertyRead()) {
+					runCall(request);
+					continue;
+				}
+
+				batch.add(request);
+				Request<?> next;
+				while (batch.size() < MAX_BATCH && (next = requests.peek()) != null && next.isPropertyRead()) {
+					requests.poll();
+					queueDepth.decrementAndGet();
+					batch.add(next);
+				}
+				runPropertyReads(batch);
+				batch.clear();
+			}
+		} finally {
+			// Fail the calls queued after the shutdown instead of leaving their
+			// threads waiting.
+			terminated = true;
+			Request<?> pending;
+			while ((pending = requests.poll()) != null) {
+				pending.future.completeExceptionally(new AutomationException(thread.getName() + " is stopped."));
+			}
+			if (initialized) {
+				Ole32.INSTANCE.CoUninitialize();
+			}
+			log.debug(thread.getName() + " stopped. " + statistics);
+		}
+	}
+
+	private <T> void runCall(Request<T> request) {
+		long start = System.nanoTime();
+		T result = null;
+		Throwable failure = null;
+		try {
+			result = request.call.call();
+		} catch (Throwable e) {
+			failure = e;
+		}
+		// Record before completing, so the statistics include every call its
+		// caller has seen.
+		record(request, start, System.nanoTime(), failure != null);
+		complete(request, result, failure);
+	}
+
+	private static <T> void complete(Request<T> request, T result, Throwable failure) {
+		if (failure == null) {
+			request.future.complete(result);
+		} else {
+			request.future.completeExceptionally(failure);
+		}
+	}
+
+	/**
+	 * Runs the property reads of a batch, one PropertyReader call per element,
+	 * in the order the elements were first read.
+	 *
+	 * @param batch The property read requests.
+	 */
+	@SuppressWarnings("unchecked")
+	private void runPropertyReads(List<Request<?>> batch) {
+		boolean[] done = new boolean[batch.size()];
+		for (int first = 0; first < batch.size(); first++) {
+			if (done[first]) {
+				continue;
+			}
+			Element element = batch.get(first).element;
+			List<Request<Object>> reads = new ArrayList<>();
+			for (int i = first; i < batch.size(); i++) {
+				if (!done[i] && batch.get(i).element == element) {
+					reads.add((Request<Object>) batch.get(i));
+					done[i] = true;
+				}
+			}
+			PropertyID[] properties = new PropertyID[reads.size()];
+			for (int i = 0; i < properties.length; i++) {
+				properties[i] = reads.get(i).property;
+			}
+
+			long start = System.nanoTime();
+			Object[] values = null;
+			Throwable failure = null;
+			try {
+				values = propertyReader.read(element, properties);
+			} catch (Throwable e) {
+				failure = e;
+			}
+			long end = System.nanoTime();
+			statistics.recordBatch(reads.size());
+			for (int i = 0; i < reads.size(); i++) {
+				// Share the run time of the backend call among its reads.
+				record(reads.get(i), start + (end - start) * i / reads.size(),
+						start + (end - start) * (i + 1) / reads.size(), failure != null);
+			}
+			for (int i = 0; i < reads.size(); i++) {
+				complete(reads.get(i), failure == null ? values[i] : null, failure);
+			}
+		}
+	}
+
+	private void record(Request<?> request, long start, long end, boolean failed) {
+		statistics.recordCall(start - request.queuedNanos, end - start, failed);
+		if (log.isTraceEnabled()) {
+			log.trace(String.format("%s %s: waited %d us, ran %d us", thread.getName(),
+					request.isPropertyRead() ? "read " + request.property : "call", (start - request.queuedNanos) / 1000,
+					(end - start) / 1000));
+		}
+	}
+
+	/**
+	 * Queues a call to run on the dispatcher thread. A call made on the
+	 * dispatcher thread runs directly.
+	 *
+	 * @param <T>  The result of the call.
+	 * @param call The call to run.
+	 * @return The future result of the call.
+	 */
+	public <T> CompletableFuture<T> submit(Call<T> call) {
+		if (Thread.currentThread() == thread) {
+			CompletableFuture<T> future = new CompletableFuture<>();
+			try {
+				future.complete(call.call());
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		}
+		return enqueue(new Request<>(call, null, null));
+	}
+
+	/**
+	 * Queues the read of the current value of a property. Reads queued back to
+	 * back are batched per element.
+	 *
+	 * @param element  The element to read from.
+	 * @param property The property to read.
+	 * @return The future property value.
+	 */
+	public CompletableFuture<Object> submitPropertyRead(Element element, PropertyID property) {
+		if (Thread.currentThread() == thread) {
+			return submit(() -> propertyReader.read(element, new PropertyID[] { property })[0]);
+		}
+		return enqueue(new Request<>(null, element, property));
+	}
+
+	private <T> CompletableFuture<T> enqueue(Request<T> request) {
+		if (!running) {
+			request.future.completeExceptionally(new AutomationException(thread.getName() + " is stopped."));
+			return request.future;
+		}
+		requests.offer(request);
+		statistics.recordQueueDepth(queueDepth.incrementAndGet());
+		if (idle) {
+			LockSupport.unpark(thread);
+		}
+		if (terminated && requests.remove(request)) {
+			queueDepth.decrementAndGet();
+			request.future.completeExceptionally(new AutomationException(thread.getName() + " is stopped."));
+		}
+		return request.future;
+	}
+
+	/**
+	 * Runs a call on the dispatcher thread and waits for its result.
+	 *
+	 * @param <T>  The result of the call.
+	 * @param call The call to run.
+	 * @return The result of the call.
+	 * @throws AutomationException If the call fails, the dispatcher is stopped or
+	 *                             the waiting thread is interrupted.
+	 */
+	public <T> T call(Call<T> call) throws AutomationException {
+		if (Thread.currentThread() == thread) {
+			return call.call();
+		}
+		return await(submit(call));
+	}
+
+	/**
+	 * Reads the current value of a property on the dispatcher thread, batched
+	 * with the other reads queued with it.
+	 *
+	 * @param element  The element to read from.
+	 * @param property The property to read.
+	 * @return The property value.
+	 * @throws AutomationException If the property could not be read, the
+	 *                             dispatcher is stopped or the waiting thread is
+	 *                             interrupted.
+	 */
+	public Object readProperty(Element element, PropertyID property) throws AutomationException {
+		return await(submitPropertyRead(element, property));
+	}
+
+	/**
+	 * Waits for the result of a submitted call.
+	 *
+	 * @param <T>    The result of the call.
+	 * @param future The future result of the call.
+	 * @return The result of the call.
+	 * @throws AutomationException If the call failed, was cancelled or the
+	 *                             waiting thread is interrupted.
+	 */
+	public <T> T await(CompletableFuture<T> future) throws AutomationException {
+		try {
+			return future.get();
+		} catch (CancellationException e) {
+			throw new AutomationException("Call cancelled on " + thread.getName() + ".");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AutomationException("Interrupted while waiting for " + thread.getName() + ".");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof AutomationException) {
+				throw (AutomationException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new AutomationException(cause);
+		}
+	}
+
+	/**
+	 * Checks whether the current thread is the dispatcher thread.
+	 *
+	 * @return True if called on the dispatcher thread.
+	 */
+	public boolean isDispatcherThread() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Get the number of calls waiting in the queue.
+	 *
+	 * @return The queue depth.
+	 */
+	public int getQueueDepth() {
+		return Math.max(0, queueDepth.get());
+	}
+
+	/**
+	 * Get the statistics of the calls run by this dispatcher.
+	 *
+	 * @return The DispatcherStatistics.
+	 */
+	public DispatcherStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Stops the thread once the queued calls have run.
+	 */
+	public void shutdown() {
+		enqueue(new Request<>(() -> {
+			running = false;
+			return null;
+		}, null, null));
+	}
+
+	@Override
+	public String toString() {
+		return "AutomationDispatcher[" + thread.getName() + ", queued=" + getQueueDepth() + ", " + statistics + "]";
+	}
+}
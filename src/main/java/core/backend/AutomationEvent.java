@@ -0,0 +1,87 @@
+package core.backend;
+
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+
+/**
+ * The AutomationEvent class describes a change of the automation tree reported
+ * by an {@link AutomationBackend}: a window opening or closing, elements added
+ * or removed, or a property of an element changing.
+ */
+public final class AutomationEvent {
+
+	/**
+	 * The kinds of automation events.
+	 */
+	public enum Type {
+		/**
+		 * A window was opened.
+		 */
+		WINDOW_OPENED,
+		/**
+		 * A window was closed.
+		 */
+		WINDOW_CLOSED,
+		/**
+		 * Elements were added to or removed from the tree.
+		 */
+		STRUCTURE_CHANGED,
+		/**
+		 * A property of an element changed.
+		 */
+		PROPERTY_CHANGED
+	}
+
+	private final Type type;
+	private final Element source;
+	private final PropertyID property;
+
+	/**
+	 * Constructs a new AutomationEvent.
+	 *
+	 * @param type     The kind of event.
+	 * @param source   The element the event is about.
+	 * @param property The changed property for PROPERTY_CHANGED events, null
+	 *                 otherwise.
+	 */
+	public AutomationEvent(Type type, Element source, PropertyID property) {
+		this.type = type;
+		this.source = source;
+		this.property = property;
+	}
+
+	/**
+	 * Get the kind of event.
+	 *
+	 * @return The event type.
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Get the element the event is about. A closed window may no longer be
+	 * readable. The element of a UIAutomation event is only valid during the
+	 * {@link AutomationEventListener#onEvent} call; compare it with
+	 * {@link AutomationBackend#isSameElement} there instead of keeping it.
+	 *
+	 * @return The source element.
+	 */
+	public Element getSource() {
+		return source;
+	}
+
+	/**
+	 * Get the changed property of a PROPERTY_CHANGED event.
+	 *
+	 * @return The property, or null for the other events.
+	 */
+	public PropertyID getProperty() {
+		return property;
+	}
+
+	@Override
+	public String toString() {
+		return "AutomationEvent[" + type + (property == null ? "" : " " + property) + " " + source + "]";
+	}
+}
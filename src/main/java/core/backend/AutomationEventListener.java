@@ -0,0 +1,19 @@
+package core.backend;
+
+/**
+ * The AutomationEventListener interface receives the events of an
+ * {@link AutomationBackend}. Listeners are called on the thread reporting the
+ * event and must return quickly; they should hand the work to another thread
+ * instead of searching the tree themselves. The source of an event must not be
+ * kept after the call returns.
+ */
+@FunctionalInterface
+public interface AutomationEventListener {
+
+	/**
+	 * Called for every event of the backend.
+	 *
+	 * @param event The event.
+	 */
+	void onEvent(AutomationEvent event);
+}
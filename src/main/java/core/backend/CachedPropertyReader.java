@@ -0,0 +1,106 @@
+package core.backend;
+
+import com.sun.jna.Function;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.win32.Guid;
+import com.sun.jna.platform.win32.Variant;
+import com.sun.jna.platform.win32.WinNT;
+import com.sun.jna.platform.win32.COM.COMUtils;
+import com.sun.jna.platform.win32.COM.Unknown;
+import com.sun.jna.ptr.PointerByReference;
+
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.CacheRequest;
+import mmarquee.automation.Element;
+import mmarquee.uiautomation.IUIAutomationElement;
+import mmarquee.uiautomation.IUIAutomationElementConverter;
+
+/**
+ * The CachedPropertyReader class reads property values that were prefetched by
+ * a UIAutomation cache request. The mmarquee library only exposes the cached
+ * name, so this class calls IUIAutomationElement::GetCachedPropertyValue
+ * directly through the element's vtable, the same way the library binds the
+ * other element methods.
+ *
+ * Reading a cached value does not leave the test process, unlike
+ * {@link Element#getPropertyValue(int)} which asks the application under test.
+ * IUIAutomationElement::BuildUpdatedCache fetches several properties of an
+ * element in one call to the application.
+ */
+final class CachedPropertyReader {
+
+	// IUIAutomationElement vtable slots of BuildUpdatedCache and
+	// GetCachedPropertyValue.
+	private static final int BUILD_UPDATED_CACHE = 9;
+	private static final int GET_CACHED_PROPERTY_VALUE = 12;
+
+	private CachedPropertyReader() {
+	}
+
+	/**
+	 * Reads a property value from the cache of the given element.
+	 *
+	 * @param element    The element returned by a cache request.
+	 * @param propertyId The property to read. It must be part of the cache
+	 *                   request the element was fetched with.
+	 * @return The cached value, or null if the property is empty.
+	 * @throws AutomationException If the property was not cached or the call
+	 *                             failed.
+	 */
+	static Object getCachedPropertyValue(Element element, int propertyId) throws AutomationException {
+		Variant.VARIANT.ByReference value = new Variant.VARIANT.ByReference();
+		invoke(element, GET_CACHED_PROPERTY_VALUE, propertyId, value);
+		return value.getValue();
+	}
+
+	/**
+	 * Fetches the properties of a cache request for an element in one call.
+	 * The values are read from the returned element with
+	 * {@link #getCachedPropertyValue(Element, int)}; it must be released once
+	 * they are read.
+	 *
+	 * @param element      The element to fetch the properties of.
+	 * @param cacheRequest The cache request naming the properties.
+	 * @return A new element holding the fetched values.
+	 * @throws AutomationException If the call failed.
+	 */
+	static Element buildUpdatedCache(Element element, CacheRequest cacheRequest) throws AutomationException {
+		PointerByReference updated = new PointerByReference();
+		invoke(element, BUILD_UPDATED_CACHE, cacheRequest.getValue(), updated);
+		return new Element(IUIAutomationElementConverter.pointerToInterface(updated));
+	}
+
+	/**
+	 * Calls an IUIAutomationElement method through the element's vtable.
+	 *
+	 * @param element   The element to call.
+	 * @param slot      The vtable slot of the method.
+	 * @param arguments The arguments after the interface pointer.
+	 * @throws AutomationException If the call failed.
+	 */
+	private static void invoke(Element element, int slot, Object... arguments) throws AutomationException {
+		PointerByReference reference = new PointerByReference();
+		WinNT.HRESULT result = element.getElement()
+				.QueryInterface(new Guid.REFIID(IUIAutomationElement.IID), reference);
+		if (COMUtils.FAILED(result)) {
+			throw new AutomationException(result.intValue());
+		}
+
+		Pointer pointer = reference.getValue();
+		try {
+			Pointer vTable = pointer.getPointer(0);
+			Function function = Function.getFunction(vTable.getPointer((long) slot * Native.POINTER_SIZE),
+					Function.ALT_CONVENTION);
+			Object[] values = new Object[arguments.length + 1];
+			values[0] = pointer;
+			System.arraycopy(arguments, 0, values, 1, arguments.length);
+			int hresult = function.invokeInt(values);
+			if (hresult != 0) {
+				throw new AutomationException(hresult);
+			}
+		} finally {
+			new Unknown(pointer).Release();
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package core.backend;
+
+import java.awt.Rectangle;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import core.SearchCondition;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+import mmarquee.automation.PatternID;
+import mmarquee.automation.PropertyID;
+import mmarquee.uiautomation.ToggleState;
+
+/**
+ * The ConfinedBackend class confines an {@link AutomationBackend} to an
+ * {@link AutomationDispatcher}: the backend is created on the dispatcher thread
+ * and every call into it runs there, whichever thread makes it. This keeps the
+ * COM objects of the UIAutomation backend on the thread they were created on
+ * while several sessions search concurrently. Live property reads are
+ * batched by the dispatcher into
+ * {@link AutomationBackend#getPropertyValues(Element, PropertyID[])} calls.
+ *
+ * The root element is read once at creation, and the event listeners are
+ * registered directly with the backend, as neither calls into COM. Elements
+ * are compared on the calling thread, see {@link #isSameElement}.
+ */
+public class ConfinedBackend implements AutomationBackend {
+
+	private static final Logger log = LogManager.getLogger(ConfinedBackend.class);
+
+	private final AutomationDispatcher dispatcher;
+	private final AutomationBackend backend;
+	private final Element rootElement;
+
+	/**
+	 * Constructs a new ConfinedBackend, creating the backend on the dispatcher
+	 * thread.
+	 *
+	 * @param dispatcher The dispatcher to confine the backend to.
+	 * @param factory    The call creating the backend.
+	 * @throws AutomationException If the backend could not be created.
+	 */
+	public ConfinedBackend(AutomationDispatcher dispatcher, AutomationDispatcher.Call<AutomationBackend> factory)
+			throws AutomationException {
+		this.dispatcher = dispatcher;
+		this.backend = dispatcher.call(factory);
+		this.rootElement = dispatcher.call(backend::getRootElement);
+		dispatcher.setPropertyReader(backend::getPropertyValues);
+	}
+
+	/**
+	 * Get the dispatcher the backend is confined to.
+	 *
+	 * @return The AutomationDispatcher.
+	 */
+	public AutomationDispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	/**
+	 * Get the confined backend. Its methods must only be called on the
+	 * dispatcher thread.
+	 *
+	 * @return The AutomationBackend.
+	 */
+	public AutomationBackend getBackend() {
+		return backend;
+	}
+
+	@Override
+	public String getName() {
+		return backend.getName();
+	}
+
+	@Override
+	public Element getRootElement() {
+		return rootElement;
+	}
+
+	@Override
+	public Element findFirst(Element context, int scope, SearchCondition condition) throws AutomationException {
+		return dispatcher.call(() -> backend.findFirst(context, scope, condition));
+	}
+
+	@Override
+	public List<Element> findAll(Element context, int scope, SearchCondition condition) throws AutomationException {
+		return dispatcher.call(() -> backend.findAll(context, scope, condition));
+	}
+
+	@Override
+	public List<Element> findAll(Element context, int scope, SearchCondition condition, PropertyID[] properties)
+			throws AutomationException {
+		return dispatcher.call(() -> backend.findAll(context, scope, condition, properties));
+	}
+
+	@Override
+	public List<Element> getChildren(Element element) throws AutomationException {
+		return dispatcher.call(() -> backend.getChildren(element));
+	}
+
+	@Override
+	public List<Element> getChildren(Element element, PropertyID[] properties) throws AutomationException {
+		return dispatcher.call(() -> backend.getChildren(element, properties));
+	}
+
+	@Override
+	public Object getPropertyValue(Element element, PropertyID property) throws AutomationException {
+		return dispatcher.readProperty(element, property);
+	}
+
+	@Override
+	public Object[] getPropertyValues(Element element, PropertyID[] properties) throws AutomationException {
+		return dispatcher.call(() -> backend.getPropertyValues(element, properties));
+	}
+
+	@Override
+	public Object getCachedPropertyValue(Element element, PropertyID property) throws AutomationException {
+		return dispatcher.call(() -> backend.getCachedPropertyValue(element, property));
+	}
+
+	@Override
+	public boolean isPatternAvailable(Element element, PatternID pattern) throws AutomationException {
+		return dispatcher.call(() -> backend.isPatternAvailable(element, pattern));
+	}
+
+	@Override
+	public void invoke(Element element) throws AutomationException {
+		dispatcher.call(() -> {
+			backend.invoke(element);
+			return null;
+		});
+	}
+
+	@Override
+	public ToggleState getToggleState(Element element) throws AutomationException {
+		return dispatcher.call(() -> backend.getToggleState(element));
+	}
+
+	@Override
+	public void toggle(Element element) throws AutomationException {
+		dispatcher.call(() -> {
+			backend.toggle(element);
+			return null;
+		});
+	}
+
+	@Override
+	public String getValue(Element element) throws AutomationException {
+		return dispatcher.call(() -> backend.getValue(element));
+	}
+
+	@Override
+	public void setValue(Element element, String value) throws AutomationException {
+		dispatcher.call(() -> {
+			backend.setValue(element, value);
+			return null;
+		});
+	}
+
+	@Override
+	public void expand(Element element) throws AutomationException {
+		dispatcher.call(() -> {
+			backend.expand(element);
+			return null;
+		});
+	}
+
+	@Override
+	public void collapse(Element element) throws AutomationException {
+		dispatcher.call(() -> {
+			backend.collapse(element);
+			return null;
+		});
+	}
+
+	@Override
+	public void select(Element element) throws AutomationException {
+		dispatcher.call(() -> {
+			backend.select(element);
+			return null;
+		});
+	}
+
+	@Override
+	public Rectangle getBoundingRectangle(Element element) throws AutomationException {
+		return dispatcher.call(() -> backend.getBoundingRectangle(element));
+	}
+
+	@Override
+	public void setFocus(Element element) throws AutomationException {
+		dispatcher.call(() -> {
+			backend.setFocus(element);
+			return null;
+		});
+	}
+
+	@Override
+	public void maximize(Element element) throws AutomationException {
+		dispatcher.call(() -> {
+			backend.maximize(element);
+			return null;
+		});
+	}
+
+	@Override
+	public void closeWindow(Element element) throws AutomationException {
+		dispatcher.call(() -> {
+			backend.closeWindow(element);
+			return null;
+		});
+	}
+
+	/**
+	 * Get the calls counted by the confined backend, or else the backend calls
+	 * run by the dispatcher.
+	 */
+	@Override
+	public long getCallCount() {
+		long calls = backend.getCallCount();
+		return calls >= 0 ? calls : dispatcher.getStatistics().getBackendCalls();
+	}
+
+	/**
+	 * Compares the elements on the calling thread. CompareElements may be called
+	 * from any thread of the multithreaded apartment, and the event listeners
+	 * that compare the source of an event run on the threads of UIAutomation,
+	 * which must not wait for the dispatcher: removing the event handlers there
+	 * waits for the listeners to return.
+	 */
+	@Override
+	public boolean isSameElement(Element element, Element other) throws AutomationException {
+		return backend.isSameElement(element, other);
+	}
+
+	@Override
+	public boolean supportsEvents() {
+		return backend.supportsEvents();
+	}
+
+	@Override
+	public boolean supportsEvents(AutomationEvent.Type type) {
+		return backend.supportsEvents(type);
+	}
+
+	@Override
+	public void addEventListener(AutomationEventListener listener) {
+		backend.addEventListener(listener);
+	}
+
+	@Override
+	public void removeEventListener(AutomationEventListener listener) {
+		backend.removeEventListener(listener);
+	}
+
+	@Override
+	public void close() {
+		try {
+			dispatcher.call(() -> {
+				backend.close();
+				return null;
+			});
+		} catch (AutomationException e) {
+			log.warn("Could not close " + backend.getName() + " on " + dispatcher + ".", e);
+		} finally {
+			dispatcher.shutdown();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ConfinedBackend[" + backend + ", " + dispatcher + "]";
+	}
+}
@@ -0,0 +1,174 @@
+package core.backend;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The DispatcherStatistics class sums up the calls run by an
+ * {@link AutomationDispatcher}: how long they waited in the queue, how long
+ * they ran, how deep the queue got and how many property reads were batched.
+ * The statistics are thread-safe.
+ */
+public class DispatcherStatistics {
+
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+	private final AtomicLong runNanos = new AtomicLong();
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+	private final AtomicLong maxQueueDepth = new AtomicLong();
+	private final AtomicLong propertyReads = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	/**
+	 * Adds a call to the statistics.
+	 *
+	 * @param waitNanos The time the call waited in the queue, in nanoseconds.
+	 * @param runNanos  The time the call ran, in nanoseconds.
+	 * @param failed    True if the call failed.
+	 */
+	public void recordCall(long waitNanos, long runNanos, boolean failed) {
+		calls.incrementAndGet();
+		if (failed) {
+			failures.incrementAndGet();
+		}
+		this.waitNanos.addAndGet(waitNanos);
+		this.runNanos.addAndGet(runNanos);
+		updateMax(maxLatencyNanos, waitNanos + runNanos);
+	}
+
+	/**
+	 * Adds a batch of property reads of one element, read in one backend call,
+	 * to the statistics.
+	 *
+	 * @param reads The number of property reads in the batch.
+	 */
+	public void recordBatch(int reads) {
+		batches.incrementAndGet();
+		propertyReads.addAndGet(reads);
+	}
+
+	/**
+	 * Adds the depth of the queue after a call was queued to the statistics.
+	 *
+	 * @param depth The queue depth.
+	 */
+	public void recordQueueDepth(int depth) {
+		updateMax(maxQueueDepth, depth);
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current;
+		while ((current = max.get()) < value) {
+			if (max.compareAndSet(current, value)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Get the number of calls run, property reads included.
+	 *
+	 * @return The call count.
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+	/**
+	 * Get the number of calls that failed.
+	 *
+	 * @return The failure count.
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * Get the average time the calls waited in the queue.
+	 *
+	 * @return The average wait, in nanoseconds.
+	 */
+	public long getAverageWaitNanos() {
+		long count = calls.get();
+		return count == 0 ? 0 : waitNanos.get() / count;
+	}
+
+	/**
+	 * Get the average time the calls ran on the dispatcher thread.
+	 *
+	 * @return The average run time, in nanoseconds.
+	 */
+	public long getAverageRunNanos() {
+		long count = calls.get();
+		return count == 0 ? 0 : runNanos.get() / count;
+	}
+
+	/**
+	 * Get the longest time from queuing a call to its result.
+	 *
+	 * @return The maximum latency, in nanoseconds.
+	 */
+	public long getMaxLatencyNanos() {
+		return maxLatencyNanos.get();
+	}
+
+	/**
+	 * Get the deepest the queue got.
+	 *
+	 * @return The maximum queue depth.
+	 */
+	public long getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	/**
+	 * Get the number of property reads run in batches.
+	 *
+	 * @return The property read count.
+	 */
+	public long getPropertyReads() {
+		return propertyReads.get();
+	}
+
+	/**
+	 * Get the number of backend calls the property reads were batched into.
+	 *
+	 * @return The batch count.
+	 */
+	public long getBatches() {
+		return batches.get();
+	}
+
+	/**
+	 * Get the number of backend calls run, counting each batch of property reads
+	 * as one call.
+	 *
+	 * @return The backend call count.
+	 */
+	public long getBackendCalls() {
+		return calls.get() - propertyReads.get() + batches.get();
+	}
+
+	/**
+	 * Resets the statistics.
+	 */
+	public void reset() {
+		calls.set(0);
+		failures.set(0);
+		waitNanos.set(0);
+		runNanos.set(0);
+		maxLatencyNanos.set(0);
+		maxQueueDepth.set(0);
+		propertyReads.set(0);
+		batches.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"DispatcherStatistics[calls=%d, failures=%d, wait=%.3f ms/call, run=%.3f ms/call, maxLatency=%.3f ms, "
+						+ "maxQueued=%d, propertyReads=%d in %d batches]",
+				getCalls(), getFailures(), getAverageWaitNanos() / 1e6, getAverageRunNanos() / 1e6,
+				getMaxLatencyNanos() / 1e6, getMaxQueueDepth(), getPropertyReads(), getBatches());
+	}
+}
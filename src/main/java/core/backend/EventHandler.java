@@ -0,0 +1,245 @@
+package core.backend;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sun.jna.Function;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+import com.sun.jna.platform.win32.COM.COMUtils;
+import com.sun.jna.platform.win32.COM.IUnknown;
+import com.sun.jna.platform.win32.COM.Unknown;
+import com.sun.jna.platform.win32.Guid;
+import com.sun.jna.platform.win32.Ole32;
+import com.sun.jna.platform.win32.WTypes;
+import com.sun.jna.platform.win32.WinNT;
+import com.sun.jna.ptr.PointerByReference;
+import com.sun.jna.win32.StdCallLibrary;
+
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+import mmarquee.uiautomation.IUIAutomation;
+import mmarquee.uiautomation.IUIAutomationElement;
+import mmarquee.uiautomation.IUIAutomationElementConverter;
+
+/**
+ * The EventHandler class is the base of the UIAutomation event handlers of the
+ * {@link UIAutomationBackend}. A handler is a COM object built with JNA
+ * callbacks: the subclass fills a vtable with the IUnknown methods of this
+ * class and its own handler method, and registers it for the subtree of an
+ * element through the vtable of its own IUIAutomation instance, as the event
+ * handler methods of the library pass their arguments by reference.
+ *
+ * UIAutomation calls the handler on its own threads, which report the events to
+ * the listener as {@link AutomationEvent}s. The source of an event is a new
+ * Element, not the one a search returned for the same element, and it borrows
+ * the reference of UIAutomation, so it is only valid until the listener
+ * returns.
+ */
+abstract class EventHandler {
+
+	private static final Logger log = LogManager.getLogger(EventHandler.class);
+
+	static final int S_OK = 0;
+	private static final int E_POINTER = 0x80004003;
+	private static final int E_NOINTERFACE = 0x80004002;
+
+	private final Guid.IID interfaceId;
+	private final AutomationEventListener listener;
+	private final AtomicInteger references = new AtomicInteger(1);
+	// The vtable and its callbacks are referenced until the handler is removed,
+	// so that they are not collected while UIAutomation may still call them.
+	private Structure vtbl;
+	final Memory handler = new Memory(Native.POINTER_SIZE);
+	private Pointer automation;
+	Pointer root;
+
+	/**
+	 * Constructs a new EventHandler. The subclass installs its vtable with
+	 * {@link #install}.
+	 *
+	 * @param interfaceId The id of the handler interface.
+	 * @param listener    The listener to report the events to.
+	 */
+	EventHandler(Guid.IID interfaceId, AutomationEventListener listener) {
+		this.interfaceId = interfaceId;
+		this.listener = listener;
+	}
+
+	/**
+	 * Makes a filled vtable the one of this COM object.
+	 *
+	 * @param handlerVtbl The vtable, starting with the IUnknown methods.
+	 */
+	final void install(Structure handlerVtbl) {
+		handlerVtbl.write();
+		vtbl = handlerVtbl;
+		handler.setPointer(0, handlerVtbl.getPointer());
+	}
+
+	/**
+	 * Subscribes the handler to the events under an element. The calling thread
+	 * must have initialized COM. If the handler could not be added, what was
+	 * acquired is released.
+	 *
+	 * @param element The element, usually the desktop.
+	 * @throws AutomationException If the handler could not be added.
+	 */
+	final void subscribe(Element element) throws AutomationException {
+		try {
+			PointerByReference created = new PointerByReference();
+			check(Ole32.INSTANCE.CoCreateInstance(IUIAutomation.CLSID, null, WTypes.CLSCTX_SERVER, IUIAutomation.IID,
+					created));
+			automation = created.getValue();
+			PointerByReference rootElement = new PointerByReference();
+			check(element.getElement().QueryInterface(new Guid.REFIID(IUIAutomationElement.IID), rootElement));
+			root = rootElement.getValue();
+			register();
+		} catch (AutomationException | RuntimeException e) {
+			remove();
+			throw e;
+		}
+	}
+
+	/**
+	 * Adds the handler for the events of the subclass under {@link #root}.
+	 *
+	 * @throws AutomationException If UIAutomation refused the handler.
+	 */
+	abstract void register() throws AutomationException;
+
+	/**
+	 * Removes what {@link #register} added, logging the failures.
+	 */
+	abstract void unregister();
+
+	/**
+	 * Removes the handler and releases the COM objects it holds. The calling
+	 * thread must be the one that added it.
+	 */
+	void remove() {
+		if (automation != null && root != null) {
+			unregister();
+		}
+		if (root != null) {
+			new Unknown(root).Release();
+			root = null;
+		}
+		if (automation != null) {
+			new Unknown(automation).Release();
+			automation = null;
+		}
+	}
+
+	/**
+	 * Calls a method of IUIAutomation through its vtable.
+	 *
+	 * @param method    The index of the method in the vtable.
+	 * @param arguments The arguments after the interface pointer.
+	 * @return The HRESULT of the call.
+	 */
+	final int invoke(int method, Object... arguments) {
+		Object[] parameters = new Object[arguments.length + 1];
+		parameters[0] = automation;
+		System.arraycopy(arguments, 0, parameters, 1, arguments.length);
+		Pointer vtable = automation.getPointer(0);
+		return Function.getFunction(vtable.getPointer((long) method * Native.POINTER_SIZE), Function.ALT_CONVENTION)
+				.invokeInt(parameters);
+	}
+
+	/**
+	 * Calls a remove method of IUIAutomation, logging a failure.
+	 *
+	 * @param description What is removed, for the log.
+	 * @param method      The index of the method in the vtable.
+	 * @param arguments   The arguments after the interface pointer.
+	 */
+	final void invokeRemove(String description, int method, Object... arguments) {
+		int result = invoke(method, arguments);
+		if (COMUtils.FAILED(result)) {
+			log.warn("Could not remove the " + description + " handler: " + Integer.toHexString(result));
+		}
+	}
+
+	private static void check(WinNT.HRESULT result) throws AutomationException {
+		check(result.intValue());
+	}
+
+	static void check(int result) throws AutomationException {
+		if (COMUtils.FAILED(result)) {
+			throw new AutomationException(result);
+		}
+	}
+
+	final int queryInterface(Pointer thisPointer, Pointer iid, Pointer object) {
+		if (object == null) {
+			return E_POINTER;
+		}
+		Guid.IID requested = new Guid.IID(iid);
+		if (requested.equals(interfaceId) || requested.equals(IUnknown.IID_IUNKNOWN)) {
+			object.setPointer(0, thisPointer);
+			references.incrementAndGet();
+			return S_OK;
+		}
+		object.setPointer(0, null);
+		return E_NOINTERFACE;
+	}
+
+	final int addRef(Pointer thisPointer) {
+		return references.incrementAndGet();
+	}
+
+	final int release(Pointer thisPointer) {
+		return references.decrementAndGet();
+	}
+
+	/**
+	 * Reports an event to the listener. An exception of the listener is logged,
+	 * as it must not unwind into UIAutomation.
+	 *
+	 * @param type     The kind of event.
+	 * @param sender   The sender passed by UIAutomation.
+	 * @param property The changed property, or null.
+	 * @return S_OK, the result of the handler method.
+	 */
+	final int dispatch(AutomationEvent.Type type, Pointer sender, PropertyID property) {
+		try {
+			listener.onEvent(new AutomationEvent(type, toElement(sender), property));
+		} catch (RuntimeException e) {
+			log.warn("The listener failed on a " + type + " event.", e);
+		}
+		return S_OK;
+	}
+
+	/**
+	 * Wraps the sender of an event without a reference of its own: UIAutomation
+	 * holds the sender until the handler returns, and the listeners must not keep
+	 * the source past their call, so no reference is taken that nothing would
+	 * release.
+	 */
+	private static Element toElement(Pointer sender) {
+		if (sender == null) {
+			return null;
+		}
+		return new Element(IUIAutomationElementConverter.pointerToInterface(new PointerByReference(sender)));
+	}
+
+	/**
+	 * IUnknown::QueryInterface.
+	 */
+	public interface QueryInterfaceCallback extends StdCallLibrary.StdCallCallback {
+		int invoke(Pointer thisPointer, Pointer iid, Pointer object);
+	}
+
+	/**
+	 * IUnknown::AddRef and IUnknown::Release.
+	 */
+	public interface ReferenceCallback extends StdCallLibrary.StdCallCallback {
+		int invoke(Pointer thisPointer);
+	}
+}
@@ -0,0 +1,113 @@
+package core.backend;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+import com.sun.jna.platform.win32.Guid;
+import com.sun.jna.platform.win32.Variant;
+import com.sun.jna.win32.StdCallLibrary;
+
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+import mmarquee.automation.PropertyID;
+import mmarquee.uiautomation.TreeScope;
+
+/**
+ * The PropertyEventHandler class subscribes the {@link UIAutomationBackend} to
+ * the changes of the IsEnabled and Name properties, for the whole desktop, see
+ * {@link EventHandler}. These are the properties the waits for an enabled
+ * element and the window titles depend on; every property added makes
+ * UIAutomation report more events across the processes of the desktop.
+ *
+ * The handler is added with AddPropertyChangedEventHandlerNativeArray, which
+ * takes the property ids as a plain array instead of a SAFEARRAY.
+ */
+final class PropertyEventHandler extends EventHandler {
+
+	private static final int ADD_PROPERTY_CHANGED_EVENT_HANDLER_NATIVE_ARRAY = 34;
+	private static final int REMOVE_PROPERTY_CHANGED_EVENT_HANDLER = 36;
+
+	/**
+	 * IUIAutomationPropertyChangedEventHandler.
+	 */
+	private static final Guid.IID IID = new Guid.IID("{40CD37D4-C756-4B0C-8C6F-BDDFEEB13B50}");
+
+	private static final PropertyID[] PROPERTIES = { PropertyID.IsEnabled, PropertyID.Name };
+
+	private PropertyEventHandler(AutomationEventListener listener) {
+		super(IID, listener);
+		HandlerVtbl vtbl = new HandlerVtbl();
+		vtbl.QueryInterface = this::queryInterface;
+		vtbl.AddRef = this::addRef;
+		vtbl.Release = this::release;
+		vtbl.HandlePropertyChangedEvent = this::handlePropertyChangedEvent;
+		install(vtbl);
+	}
+
+	/**
+	 * Subscribes a listener to the property changes under an element. The
+	 * calling thread must have initialized COM.
+	 *
+	 * @param element  The element, usually the desktop.
+	 * @param listener The listener to report the events to.
+	 * @return The PropertyEventHandler, to remove with {@link #remove()}.
+	 * @throws AutomationException If the handler could not be added.
+	 */
+	static PropertyEventHandler add(Element element, AutomationEventListener listener) throws AutomationException {
+		PropertyEventHandler eventHandler = new PropertyEventHandler(listener);
+		eventHandler.subscribe(element);
+		return eventHandler;
+	}
+
+	@Override
+	void register() throws AutomationException {
+		Memory properties = new Memory(4L * PROPERTIES.length);
+		for (int i = 0; i < PROPERTIES.length; i++) {
+			properties.setInt(4L * i, PROPERTIES[i].getValue());
+		}
+		check(invoke(ADD_PROPERTY_CHANGED_EVENT_HANDLER_NATIVE_ARRAY, root, TreeScope.SUBTREE, null, handler,
+				properties, PROPERTIES.length));
+	}
+
+	@Override
+	void unregister() {
+		invokeRemove("property changed", REMOVE_PROPERTY_CHANGED_EVENT_HANDLER, root, handler);
+	}
+
+	private int handlePropertyChangedEvent(Pointer thisPointer, Pointer sender, int propertyId,
+			Variant.VARIANT.ByValue newValue) {
+		for (PropertyID property : PROPERTIES) {
+			if (property.getValue() == propertyId) {
+				return dispatch(AutomationEvent.Type.PROPERTY_CHANGED, sender, property);
+			}
+		}
+		return S_OK;
+	}
+
+	/**
+	 * The vtable of the IUIAutomationPropertyChangedEventHandler interface.
+	 */
+	public static final class HandlerVtbl extends Structure {
+		public QueryInterfaceCallback QueryInterface;
+		public ReferenceCallback AddRef;
+		public ReferenceCallback Release;
+		public HandlePropertyChangedEventCallback HandlePropertyChangedEvent;
+
+		@Override
+		protected List<String> getFieldOrder() {
+			return Arrays.asList("QueryInterface", "AddRef", "Release", "HandlePropertyChangedEvent");
+		}
+	}
+
+	/**
+	 * IUIAutomationPropertyChangedEventHandler::HandlePropertyChangedEvent. The
+	 * new value is passed by value; it is declared so that the arguments are
+	 * taken off the stack as the calling convention expects, and not read.
+	 */
+	public interface HandlePropertyChangedEventCallback extends StdCallLibrary.StdCallCallback {
+		int invoke(Pointer thisPointer, Pointer sender, int propertyId, Variant.VARIANT.ByValue newValue);
+	}
+}
@@ -0,0 +1,777 @@
+package core.backend;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import core.SearchCondition;
+import core.TreeSnapshot;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.Element;
+import mmarquee.automation.ElementNotFoundException;
+import mmarquee.automation.PatternID;
+import mmarquee.automation.PropertyID;
+import mmarquee.automation.pattern.PatternNotFoundException;
+import mmarquee.uiautomation.ToggleState;
+import mmarquee.uiautomation.TreeScope;
+
+/**
+ * The SimulatedBackend class is an {@link AutomationBackend} on a deterministic
+ * in-memory desktop. The desktop holds {@code fanOut} windows, every element
+ * down to {@code depth} levels has {@code fanOut} children, and the control
+ * types, names and automation IDs are derived from the tree position, so the
+ * same settings always build the same tree. Every call that would cross into
+ * the application under test is counted and delayed by the configured latency,
+ * which makes the locator stack measurable on machines without a desktop.
+ *
+ * Element names follow the pattern "&lt;ControlType&gt; &lt;path&gt;", e.g.
+ * "Button 3.1.4", and automation IDs "&lt;controltype&gt;_3_1_4". Windows are
+ * named "Window &lt;n&gt;".
+ *
+ * The backend can be selected with the system property
+ * {@code -Dautomation.backend=simulated}; the tree is then sized by the
+ * properties {@code simulated.fanOut}, {@code simulated.depth} and
+ * {@code simulated.latencyMicros}.
+ *
+ * A desktop can also be replayed from a {@link TreeSnapshot}, e.g. one saved
+ * from the application under test on Windows, to measure the locators on the
+ * real tree; its elements keep the captured names, automation IDs, help texts,
+ * values, enabled states and bounds.
+ *
+ * Adding and removing elements and changing their properties is reported to
+ * the event listeners, the way UIAutomation reports window, structure and
+ * property changes, so event-driven waits can be run without Windows.
+ */
+public class SimulatedBackend implements AutomationBackend {
+
+	/**
+	 * The name of this backend.
+	 */
+	public static final String NAME = "simulated";
+
+	/**
+	 * The kinds of counted calls.
+	 */
+	public enum CallType {
+		/**
+		 * A search for the first matching element.
+		 */
+		FIND_FIRST,
+		/**
+		 * A search for all matching elements, with or without prefetched
+		 * properties.
+		 */
+		FIND_ALL,
+		/**
+		 * A read of the direct children of an element.
+		 */
+		CHILDREN,
+		/**
+		 * A live property read, or the batched reads of one element.
+		 */
+		PROPERTY,
+		/**
+		 * A control pattern call, including focus changes.
+		 */
+		PATTERN
+	}
+
+	// Control types of the elements below the windows, by position.
+	private static final ControlType[] CONTROL_TYPES = { ControlType.Pane, ControlType.Button, ControlType.Edit,
+			ControlType.CheckBox, ControlType.Text, ControlType.MenuItem, ControlType.ListItem, ControlType.TreeItem,
+			ControlType.ComboBox, ControlType.Hyperlink };
+
+	private final int fanOut;
+	private final int depth;
+	private final SimulatedElement root;
+	private final Map<CallType, AtomicLong> calls = new EnumMap<>(CallType.class);
+	private final List<AutomationEventListener> listeners = new CopyOnWriteArrayList<>();
+	private final AtomicLong visitedElements = new AtomicLong();
+	private volatile long callLatencyNanos;
+	private volatile long visitLatencyNanos;
+	private volatile boolean eventsEnabled = true;
+	private int elementCount;
+
+	/**
+	 * Constructs a new SimulatedBackend sized by the system properties
+	 * {@code simulated.fanOut} (default 8), {@code simulated.depth} (default 4)
+	 * and {@code simulated.latencyMicros} (default 0).
+	 */
+	public SimulatedBackend() {
+		this(Integer.getInteger("simulated.fanOut", 8), Integer.getInteger("simulated.depth", 4),
+				TimeUnit.MICROSECONDS.toNanos(Long.getLong("simulated.latencyMicros", 0L)));
+	}
+
+	/**
+	 * Constructs a new SimulatedBackend.
+	 *
+	 * @param fanOut           The number of windows and of children of every
+	 *                         element above the deepest level.
+	 * @param depth            The number of levels below the desktop, counting
+	 *                         the windows.
+	 * @param callLatencyNanos The latency of every counted call, in nanoseconds.
+	 * @throws IllegalArgumentException If the fan-out or depth is less than one,
+	 *                                  or the latency is negative.
+	 */
+	public SimulatedBackend(int fanOut, int depth, long callLatencyNanos) {
+		if (fanOut < 1 || depth < 1 || callLatencyNanos < 0) {
+			throw new IllegalArgumentException("Invalid simulated desktop: fanOut=" + fanOut + ", depth=" + depth
+					+ ", latency=" + callLatencyNanos + "ns");
+		}
+		this.fanOut = fanOut;
+		this.depth = depth;
+		this.callLatencyNanos = callLatencyNanos;
+		for (CallType callType : CallType.values()) {
+			calls.put(callType, new AtomicLong());
+		}
+
+		this.root = new SimulatedElement(this, null, ControlType.Pane, "", "Desktop", "desktop",
+				new Rectangle(0, 0, 1920, 1080));
+		this.elementCount = 1;
+		build(root, 1);
+	}
+
+	/**
+	 * Constructs a new SimulatedBackend replaying the tree of a snapshot. The
+	 * snapshot root becomes the desktop, and the elements get tree paths from
+	 * their positions like those of a built desktop. The fan-out and depth are
+	 * those of the snapshot.
+	 *
+	 * @param snapshot         The tree to replay.
+	 * @param callLatencyNanos The latency of every counted call, in nanoseconds.
+	 * @throws IllegalArgumentException If the latency is negative.
+	 */
+	public SimulatedBackend(TreeSnapshot snapshot, long callLatencyNanos) {
+		if (callLatencyNanos < 0) {
+			throw new IllegalArgumentException("Invalid simulated desktop: latency=" + callLatencyNanos + "ns");
+		}
+		int size = snapshot.size();
+		int[] childCounts = new int[size];
+		int[] depths = new int[size];
+		int maxFanOut = 0;
+		int maxDepth = 0;
+		// Parents come before their children in the pre-order of the snapshot.
+		for (int node = 1; node < size; node++) {
+			int parent = snapshot.getParent(node);
+			depths[node] = depths[parent] + 1;
+			maxFanOut = Math.max(maxFanOut, ++childCounts[parent]);
+			maxDepth = Math.max(maxDepth, depths[node]);
+		}
+		this.fanOut = maxFanOut;
+		this.depth = maxDepth;
+		this.callLatencyNanos = callLatencyNanos;
+		for (CallType callType : CallType.values()) {
+			calls.put(callType, new AtomicLong());
+		}
+
+		SimulatedElement[] elements = new SimulatedElement[size];
+		this.root = replay(snapshot, 0, null, "");
+		elements[0] = root;
+		for (int node = 1; node < size; node++) {
+			SimulatedElement parent = elements[snapshot.getParent(node)];
+			int index = parent.children().size();
+			String path = parent.getPath().isEmpty() ? String.valueOf(index) : parent.getPath() + "." + index;
+			elements[node] = replay(snapshot, node, parent, path);
+			parent.children().add(elements[node]);
+		}
+		this.elementCount = size;
+	}
+
+	private SimulatedElement replay(TreeSnapshot snapshot, int node, SimulatedElement parent, String path) {
+		ControlType controlType = snapshot.getControlType(node);
+		SimulatedElement element = new SimulatedElement(this, parent,
+				controlType == null ? ControlType.Custom : controlType, path, snapshot.getName(node),
+				snapshot.getAutomationId(node), snapshot.getBounds(node));
+		element.restore(snapshot.getHelpText(node), snapshot.getValue(node), snapshot.isEnabled(node));
+		return element;
+	}
+
+	private void build(SimulatedElement parent, int level) {
+		if (level > depth) {
+			return;
+		}
+		for (int index = 0; index < fanOut; index++) {
+			String path = parent.getPath().isEmpty() ? String.valueOf(index) : parent.getPath() + "." + index;
+			ControlType controlType = level == 1 ? ControlType.Window
+					: CONTROL_TYPES[(level + index) % CONTROL_TYPES.length];
+			SimulatedElement child = createElement(parent, controlType, path, controlType.name() + " " + path);
+			parent.children().add(child);
+			elementCount++;
+			build(child, level + 1);
+		}
+	}
+
+	private SimulatedElement createElement(SimulatedElement parent, ControlType controlType, String path,
+			String name) {
+		String automationId = controlType.name().toLowerCase() + "_" + path.replace('.', '_');
+		Rectangle parentBounds = parent.getBounds();
+		int index = parent.children().size();
+		Rectangle bounds = new Rectangle(parentBounds.x + 4 + (index % 4) * 40, parentBounds.y + 24 + (index / 4) * 24,
+				Math.max(16, parentBounds.width / 4), 20);
+		return new SimulatedElement(this, parent, controlType, path, name, automationId, bounds);
+	}
+
+	/**
+	 * Counts a call and waits for the configured latency. Short latencies are
+	 * spun to keep them accurate; longer ones park the thread.
+	 *
+	 * @param callType The kind of call.
+	 */
+	void call(CallType callType) {
+		calls.get(callType).incrementAndGet();
+		delay(callLatencyNanos);
+	}
+
+	/**
+	 * Counts the elements a search walked and waits for the visit latency of
+	 * each.
+	 *
+	 * @param visited The number of elements walked.
+	 */
+	private void visit(int visited) {
+		visitedElements.addAndGet(visited);
+		delay(visited * visitLatencyNanos);
+	}
+
+	private static void delay(long latency) {
+		if (latency == 0) {
+			return;
+		}
+		long end = System.nanoTime() + latency;
+		if (latency >= TimeUnit.MILLISECONDS.toNanos(1)) {
+			LockSupport.parkNanos(latency);
+		}
+		while (System.nanoTime() < end) {
+			// Simulates the cost of a call into the application under test.
+		}
+	}
+
+	/**
+	 * Get the number of counted calls of a kind.
+	 *
+	 * @param callType The kind of call.
+	 * @return The call count.
+	 */
+	public long getCallCount(CallType callType) {
+		return calls.get(callType).get();
+	}
+
+	/**
+	 * Get the number of counted calls of all kinds.
+	 *
+	 * @return The total call count.
+	 */
+	public long getTotalCalls() {
+		long total = 0;
+		for (AtomicLong count : calls.values()) {
+			total += count.get();
+		}
+		return total;
+	}
+
+	/**
+	 * Resets the call counters.
+	 */
+	public void resetCallCounts() {
+		for (AtomicLong count : calls.values()) {
+			count.set(0);
+		}
+		visitedElements.set(0);
+	}
+
+	/**
+	 * Get the number of elements walked by the searches since the counters were
+	 * reset.
+	 *
+	 * @return The visited element count.
+	 */
+	public long getVisitedElements() {
+		return visitedElements.get();
+	}
+
+	/**
+	 * Get the latency of every element a search walks.
+	 *
+	 * @return The latency in nanoseconds.
+	 */
+	public long getVisitLatencyNanos() {
+		return visitLatencyNanos;
+	}
+
+	/**
+	 * Sets the latency of every element a search walks, on top of the call
+	 * latency, so that searches cost more the larger the subtree they walk, as
+	 * they do in UIAutomation. The default is 0.
+	 *
+	 * @param visitLatencyNanos The latency in nanoseconds.
+	 */
+	public void setVisitLatencyNanos(long visitLatencyNanos) {
+		if (visitLatencyNanos < 0) {
+			throw new IllegalArgumentException("Latency cannot be negative: " + visitLatencyNanos);
+		}
+		this.visitLatencyNanos = visitLatencyNanos;
+	}
+
+	/**
+	 * Get the latency of every counted call.
+	 *
+	 * @return The latency in nanoseconds.
+	 */
+	public long getCallLatencyNanos() {
+		return callLatencyNanos;
+	}
+
+	/**
+	 * Sets the latency of every counted call.
+	 *
+	 * @param callLatencyNanos The latency in nanoseconds.
+	 */
+	public void setCallLatencyNanos(long callLatencyNanos) {
+		if (callLatencyNanos < 0) {
+			throw new IllegalArgumentException("Latency cannot be negative: " + callLatencyNanos);
+		}
+		this.callLatencyNanos = callLatencyNanos;
+	}
+
+	/**
+	 * Get the fan-out the desktop was built with.
+	 *
+	 * @return The fan-out.
+	 */
+	public int getFanOut() {
+		return fanOut;
+	}
+
+	/**
+	 * Get the depth the desktop was built with.
+	 *
+	 * @return The depth.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Get the number of elements in the tree, including the desktop.
+	 *
+	 * @return The element count.
+	 */
+	public synchronized int getElementCount() {
+		return elementCount;
+	}
+
+	/**
+	 * Get all the elements of the tree in pre-order, without counting a call.
+	 *
+	 * @return A snapshot of the elements.
+	 */
+	public synchronized List<SimulatedElement> getElements() {
+		List<SimulatedElement> elements = new ArrayList<>(elementCount);
+		collect(root, TreeScope.SUBTREE, null, elements, false);
+		return elements;
+	}
+
+	/**
+	 * Finds an element by its tree path, without counting a call.
+	 *
+	 * @param path The tree path, e.g. "3.1.4", or "" for the desktop.
+	 * @return The element.
+	 * @throws ElementNotFoundException If there is no element at the path.
+	 */
+	public synchronized SimulatedElement getElement(String path) throws ElementNotFoundException {
+		SimulatedElement element = root;
+		if (!path.isEmpty()) {
+			String[] parts = path.split("\\.");
+			for (int level = 0; level < parts.length; level++) {
+				String childPath = String.join(".", Arrays.copyOfRange(parts, 0, level + 1));
+				SimulatedElement next = null;
+				for (SimulatedElement child : element.children()) {
+					if (child.getPath().equals(childPath)) {
+						next = child;
+						break;
+					}
+				}
+				if (next == null) {
+					throw new ElementNotFoundException("No simulated element at " + path);
+				}
+				element = next;
+			}
+		}
+		return element;
+	}
+
+	/**
+	 * Adds an element to the tree, e.g. to simulate a dialog opening.
+	 *
+	 * @param parent      The parent element.
+	 * @param controlType The control type of the new element.
+	 * @param name        The Name property of the new element.
+	 * @return The new element.
+	 */
+	public synchronized SimulatedElement addElement(SimulatedElement parent, ControlType controlType, String name) {
+		List<SimulatedElement> siblings = parent.children();
+		int index = 0;
+		if (!siblings.isEmpty()) {
+			String lastPath = siblings.get(siblings.size() - 1).getPath();
+			index = Integer.parseInt(lastPath.substring(lastPath.lastIndexOf('.') + 1)) + 1;
+		}
+		String path = (parent.getPath().isEmpty() ? "" : parent.getPath() + ".") + index;
+		SimulatedElement element = createElement(parent, controlType, path, name);
+		parent.children().add(element);
+		elementCount++;
+		fireEvent(new AutomationEvent(controlType == ControlType.Window ? AutomationEvent.Type.WINDOW_OPENED
+				: AutomationEvent.Type.STRUCTURE_CHANGED, element, null));
+		return element;
+	}
+
+	/**
+	 * Removes an element and its subtree from the tree, e.g. to simulate a
+	 * window closing.
+	 *
+	 * @param element The element to remove.
+	 */
+	public synchronized void removeElement(SimulatedElement element) {
+		SimulatedElement parent = element.getParent();
+		if (parent != null && parent.children().remove(element)) {
+			elementCount -= count(element);
+			element.markRemoved();
+			fireEvent(new AutomationEvent(element.getSimulatedControlType() == ControlType.Window
+					? AutomationEvent.Type.WINDOW_CLOSED
+					: AutomationEvent.Type.STRUCTURE_CHANGED, element, null));
+		}
+	}
+
+	private static int count(SimulatedElement element) {
+		int count = 1;
+		for (SimulatedElement child : element.children()) {
+			count += count(child);
+		}
+		return count;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public Element getRootElement() {
+		return root;
+	}
+
+	@Override
+	public Element findFirst(Element context, int scope, SearchCondition condition) throws AutomationException {
+		call(CallType.FIND_FIRST);
+		List<SimulatedElement> found = new ArrayList<>(1);
+		int visited;
+		synchronized (this) {
+			visited = collect(toSimulated(context), scope, condition, found, true);
+		}
+		visit(visited);
+		return found.isEmpty() ? null : found.get(0);
+	}
+
+	@Override
+	public List<Element> findAll(Element context, int scope, SearchCondition condition) throws AutomationException {
+		call(CallType.FIND_ALL);
+		List<SimulatedElement> found = new ArrayList<>();
+		int visited;
+		synchronized (this) {
+			visited = collect(toSimulated(context), scope, condition, found, false);
+		}
+		visit(visited);
+		return new ArrayList<>(found);
+	}
+
+	@Override
+	public List<Element> findAll(Element context, int scope, SearchCondition condition, PropertyID[] properties)
+			throws AutomationException {
+		// The properties are always in memory, so the batched search costs the
+		// same single call as a plain one.
+		return findAll(context, scope, condition);
+	}
+
+	/**
+	 * Collects the elements in the scope of the context that match the
+	 * condition, in pre-order.
+	 *
+	 * @return The number of elements walked.
+	 */
+	private static int collect(SimulatedElement context, int scope, SearchCondition condition,
+			List<SimulatedElement> found, boolean firstOnly) {
+		int visited = 1;
+		if ((scope & TreeScope.ELEMENT) != 0 && matches(context, condition)) {
+			found.add(context);
+			if (firstOnly) {
+				return visited;
+			}
+		}
+		if ((scope & (TreeScope.CHILDREN | TreeScope.DESCENDANTS)) == 0) {
+			return visited;
+		}
+		for (SimulatedElement child : context.children()) {
+			if ((scope & TreeScope.DESCENDANTS) != 0) {
+				visited += collect(child, TreeScope.SUBTREE, condition, found, firstOnly);
+			} else {
+				visited++;
+				if (matches(child, condition)) {
+					found.add(child);
+				}
+			}
+			if (firstOnly && !found.isEmpty()) {
+				return visited;
+			}
+		}
+		return visited;
+	}
+
+	private static boolean matches(SimulatedElement element, SearchCondition condition) {
+		if (condition == null) {
+			return true;
+		}
+		if (element.getSimulatedControlType() != condition.getControlType()) {
+			return false;
+		}
+		if (condition.isControlTypeOnly()) {
+			return true;
+		}
+		switch (condition.getLocatorType()) {
+		case NAME:
+			return condition.getValue().equals(element.readProperty(PropertyID.Name));
+		case ID:
+			return condition.getValue().equals(element.readProperty(PropertyID.AutomationId));
+		case TEXT:
+			return condition.getValue().equals(element.readProperty(PropertyID.HelpText));
+		case VALUE:
+			return condition.getValue().equals(element.readProperty(PropertyID.LegacyIAccessibleValue));
+		default:
+			throw new IllegalArgumentException("Locator type has no property condition: " + condition.getLocatorType());
+		}
+	}
+
+	@Override
+	public List<Element> getChildren(Element element) throws AutomationException {
+		call(CallType.CHILDREN);
+		List<Element> children;
+		synchronized (this) {
+			children = new ArrayList<>(toSimulated(element).children());
+		}
+		visit(children.size());
+		return children;
+	}
+
+	@Override
+	public List<Element> getChildren(Element element, PropertyID[] properties) throws AutomationException {
+		// The properties are always in memory, so the batched read costs the same
+		// single call as a plain one.
+		return getChildren(element);
+	}
+
+	@Override
+	public Object getPropertyValue(Element element, PropertyID property) throws AutomationException {
+		call(CallType.PROPERTY);
+		return toSimulated(element).readProperty(property);
+	}
+
+	@Override
+	public Object[] getPropertyValues(Element element, PropertyID[] properties) throws AutomationException {
+		call(CallType.PROPERTY);
+		Object[] values = new Object[properties.length];
+		for (int i = 0; i < properties.length; i++) {
+			values[i] = toSimulated(element).readProperty(properties[i]);
+		}
+		return values;
+	}
+
+	@Override
+	public Object getCachedPropertyValue(Element element, PropertyID property) throws AutomationException {
+		return toSimulated(element).readProperty(property);
+	}
+
+	@Override
+	public boolean isPatternAvailable(Element element, PatternID pattern) throws AutomationException {
+		call(CallType.PROPERTY);
+		return toSimulated(element).hasPattern(pattern);
+	}
+
+	@Override
+	public void invoke(Element element) throws AutomationException {
+		SimulatedElement simulated = getPattern(element, PatternID.Invoke);
+		call(CallType.PATTERN);
+		simulated.invoked();
+	}
+
+	@Override
+	public ToggleState getToggleState(Element element) throws AutomationException {
+		SimulatedElement simulated = getPattern(element, PatternID.Toggle);
+		call(CallType.PATTERN);
+		return simulated.toggleState();
+	}
+
+	@Override
+	public void toggle(Element element) throws AutomationException {
+		SimulatedElement simulated = getPattern(element, PatternID.Toggle);
+		call(CallType.PATTERN);
+		simulated.setToggleState(simulated.toggleState() == ToggleState.ON ? ToggleState.OFF : ToggleState.ON);
+	}
+
+	@Override
+	public String getValue(Element element) throws AutomationException {
+		SimulatedElement simulated = getPattern(element, PatternID.Value);
+		call(CallType.PATTERN);
+		return (String) simulated.readProperty(PropertyID.LegacyIAccessibleValue);
+	}
+
+	@Override
+	public void setValue(Element element, String value) throws AutomationException {
+		SimulatedElement simulated = getPattern(element, PatternID.Value);
+		call(CallType.PATTERN);
+		simulated.setValue(value);
+	}
+
+	@Override
+	public void expand(Element element) throws AutomationException {
+		SimulatedElement simulated = getPattern(element, PatternID.ExpandCollapse);
+		call(CallType.PATTERN);
+		simulated.setExpanded(true);
+	}
+
+	@Override
+	public void collapse(Element element) throws AutomationException {
+		SimulatedElement simulated = getPattern(element, PatternID.ExpandCollapse);
+		call(CallType.PATTERN);
+		simulated.setExpanded(false);
+	}
+
+	@Override
+	public void select(Element element) throws AutomationException {
+		SimulatedElement simulated = getPattern(element, PatternID.SelectionItem);
+		call(CallType.PATTERN);
+		simulated.select();
+	}
+
+	@Override
+	public Rectangle getBoundingRectangle(Element element) throws AutomationException {
+		call(CallType.PROPERTY);
+		return new Rectangle(toSimulated(element).getBounds());
+	}
+
+	@Override
+	public void setFocus(Element element) throws AutomationException {
+		toSimulated(element).setFocus();
+	}
+
+	/**
+	 * Maximizes a window to the bounds of the desktop.
+	 */
+	@Override
+	public void maximize(Element element) throws AutomationException {
+		SimulatedElement simulated = getPattern(element, PatternID.Window);
+		call(CallType.PATTERN);
+		simulated.setBounds(root.getBounds());
+	}
+
+	/**
+	 * Closes a window by removing it, which reports the window closed event.
+	 */
+	@Override
+	public void closeWindow(Element element) throws AutomationException {
+		SimulatedElement simulated = getPattern(element, PatternID.Window);
+		call(CallType.PATTERN);
+		removeElement(simulated);
+	}
+
+	/**
+	 * Get the simulated element of a pattern call, like the pattern lookup of
+	 * UIAutomation.
+	 */
+	private SimulatedElement getPattern(Element element, PatternID pattern) throws AutomationException {
+		call(CallType.PATTERN);
+		SimulatedElement simulated = toSimulated(element);
+		if (!simulated.hasPattern(pattern)) {
+			throw new PatternNotFoundException(pattern + " pattern not available on " + simulated);
+		}
+		return simulated;
+	}
+
+	private SimulatedElement toSimulated(Element element) throws AutomationException {
+		if (!(element instanceof SimulatedElement) || ((SimulatedElement) element).getBackend() != this) {
+			throw new AutomationException("Not an element of this simulated desktop: " + element);
+		}
+		SimulatedElement simulated = (SimulatedElement) element;
+		if (simulated.isRemoved()) {
+			throw new ElementNotFoundException("Element was removed: " + simulated);
+		}
+		return simulated;
+	}
+
+	/**
+	 * Sets whether the events are reported, so that waits can be compared with
+	 * and without them.
+	 *
+	 * @param eventsEnabled True to report events to the listeners.
+	 */
+	public void setEventsEnabled(boolean eventsEnabled) {
+		this.eventsEnabled = eventsEnabled;
+	}
+
+	@Override
+	public long getCallCount() {
+		return getTotalCalls();
+	}
+
+	@Override
+	public boolean supportsEvents() {
+		return eventsEnabled;
+	}
+
+	@Override
+	public void addEventListener(AutomationEventListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void removeEventListener(AutomationEventListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Reports an event to the listeners, on the calling thread.
+	 *
+	 * @param event The event.
+	 */
+	void fireEvent(AutomationEvent event) {
+		if (!eventsEnabled) {
+			return;
+		}
+		for (AutomationEventListener listener : listeners) {
+			listener.onEvent(event);
+		}
+	}
+
+	@Override
+	public void close() {
+		listeners.clear();
+	}
+
+	@Override
+	public String toString() {
+		Map<CallType, Long> counts = new EnumMap<>(CallType.class);
+		for (Map.Entry<CallType, AtomicLong> entry : calls.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().get());
+		}
+		return String.format(
+				"SimulatedBackend[elements=%d, fanOut=%d, depth=%d, latency=%dus, visitLatency=%dns, calls=%s, visited=%d]",
+				getElementCount(), fanOut, depth, TimeUnit.NANOSECONDS.toMicros(callLatencyNanos), visitLatencyNanos,
+				Collections.unmodifiableMap(counts), visitedElements.get());
+	}
+}
@@ -0,0 +1,480 @@
+package core.backend;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.jna.platform.win32.WinDef;
+
+import core.backend.SimulatedBackend.CallType;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.ControlType;
+import mmarquee.automation.Element;
+import mmarquee.automation.PatternID;
+import mmarquee.automation.PropertyID;
+import mmarquee.uiautomation.IUIAutomationElement;
+import mmarquee.uiautomation.ToggleState;
+
+/**
+ * The SimulatedElement class is an element of the in-memory desktop of the
+ * {@link SimulatedBackend}. It has no native counterpart; the property getters
+ * of {@link Element} are answered from memory, each one counted and delayed by
+ * the backend like a cross-process call, so existing code that reads elements
+ * directly also runs against the simulated desktop.
+ */
+public class SimulatedElement extends Element {
+
+	private static final Map<Integer, PropertyID> PROPERTIES = new HashMap<>();
+
+	static {
+		for (PropertyID property : PropertyID.values()) {
+			PROPERTIES.put(property.getValue(), property);
+		}
+	}
+
+	private final SimulatedBackend backend;
+	private final SimulatedElement parent;
+	private final List<SimulatedElement> children = new ArrayList<>();
+	private final ControlType controlType;
+	private final String path;
+	private final Set<PatternID> patterns;
+	private final AtomicInteger invokeCount = new AtomicInteger();
+
+	private volatile String name;
+	private volatile String automationId;
+	private volatile String helpText;
+	private volatile String value;
+	private volatile boolean enabled = true;
+	private volatile Rectangle bounds;
+	private volatile ToggleState toggleState = ToggleState.OFF;
+	private volatile boolean expanded;
+	private volatile boolean selected;
+	private volatile boolean removed;
+
+	/**
+	 * Constructs a new SimulatedElement. Elements are created by the
+	 * {@link SimulatedBackend}.
+	 *
+	 * @param backend      The backend owning the element.
+	 * @param parent       The parent element, or null for the root.
+	 * @param controlType  The control type of the element.
+	 * @param path         The position of the element in the tree, e.g. "3.1.4".
+	 * @param name         The Name property.
+	 * @param automationId The AutomationId property.
+	 * @param bounds       The bounding rectangle in screen coordinates.
+	 */
+	SimulatedElement(SimulatedBackend backend, SimulatedElement parent, ControlType controlType, String path,
+			String name, String automationId, Rectangle bounds) {
+		super((IUIAutomationElement) null);
+		this.backend = backend;
+		this.parent = parent;
+		this.controlType = controlType;
+		this.path = path;
+		this.name = name;
+		this.automationId = automationId;
+		this.helpText = "Help " + path;
+		this.value = "Value " + path;
+		this.bounds = bounds;
+		this.patterns = getDefaultPatterns(controlType);
+	}
+
+	/**
+	 * Get the control patterns the simulated controls of a type support.
+	 *
+	 * @param controlType The control type.
+	 * @return The supported patterns.
+	 */
+	private static Set<PatternID> getDefaultPatterns(ControlType controlType) {
+		Set<PatternID> patterns = EnumSet.of(PatternID.LegacyIAccessible);
+		switch (controlType) {
+		case Button:
+		case MenuItem:
+		case Hyperlink:
+		case SplitButton:
+			patterns.add(PatternID.Invoke);
+			break;
+		case CheckBox:
+			patterns.add(PatternID.Toggle);
+			break;
+		case Edit:
+			patterns.add(PatternID.Value);
+			break;
+		case ComboBox:
+			patterns.add(PatternID.Value);
+			patterns.add(PatternID.ExpandCollapse);
+			break;
+		case TreeItem:
+			patterns.add(PatternID.SelectionItem);
+			patterns.add(PatternID.ExpandCollapse);
+			break;
+		case ListItem:
+		case RadioButton:
+		case TabItem:
+			patterns.add(PatternID.SelectionItem);
+			break;
+		case Window:
+			patterns.add(PatternID.Window);
+			break;
+		default:
+			break;
+		}
+		return patterns;
+	}
+
+	/**
+	 * Get the backend owning this element.
+	 *
+	 * @return The SimulatedBackend.
+	 */
+	public SimulatedBackend getBackend() {
+		return backend;
+	}
+
+	/**
+	 * Get the parent of this element.
+	 *
+	 * @return The parent element, or null for the root.
+	 */
+	public SimulatedElement getParent() {
+		return parent;
+	}
+
+	/**
+	 * Get the position of this element in the tree, e.g. "3.1.4" for the fifth
+	 * child of the second child of the fourth window. The root has an empty path.
+	 *
+	 * @return The tree path.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Get the depth of this element in the tree; the root has depth 0.
+	 *
+	 * @return The depth.
+	 */
+	public int getDepth() {
+		return path.isEmpty() ? 0 : path.split("\\.").length;
+	}
+
+	/**
+	 * Get the children of this element. The list is a snapshot and is not
+	 * counted as a call.
+	 *
+	 * @return The children in tree order.
+	 */
+	public List<SimulatedElement> getChildElements() {
+		synchronized (backend) {
+			return new ArrayList<>(children);
+		}
+	}
+
+	List<SimulatedElement> children() {
+		return children;
+	}
+
+	/**
+	 * Checks whether the element was removed from the tree.
+	 *
+	 * @return True if the element was removed.
+	 */
+	public boolean isRemoved() {
+		return removed;
+	}
+
+	void markRemoved() {
+		removed = true;
+		for (SimulatedElement child : children) {
+			child.markRemoved();
+		}
+	}
+
+	/**
+	 * Get how often the element was invoked.
+	 *
+	 * @return The invoke count.
+	 */
+	public int getInvokeCount() {
+		return invokeCount.get();
+	}
+
+	void invoked() {
+		invokeCount.incrementAndGet();
+	}
+
+	/**
+	 * Checks whether a control pattern is supported, without counting a call.
+	 *
+	 * @param pattern The control pattern.
+	 * @return True if the pattern is supported.
+	 */
+	public boolean hasPattern(PatternID pattern) {
+		return patterns.contains(pattern);
+	}
+
+	/**
+	 * Reads a property from memory, without counting a call.
+	 *
+	 * @param property The property to read.
+	 * @return The property value, or null if the simulated element has none.
+	 */
+	public Object readProperty(PropertyID property) {
+		switch (property) {
+		case Name:
+			return name;
+		case AutomationId:
+			return automationId;
+		case HelpText:
+			return helpText;
+		case LegacyIAccessibleValue:
+			return value;
+		case ClassName:
+			return "Simulated" + controlType.name();
+		case ControlType:
+			return controlType.getValue();
+		case IsEnabled:
+			return enabled;
+		case IsOffscreen:
+			return removed;
+		case BoundingRectangle:
+			Rectangle rectangle = bounds;
+			return new double[] { rectangle.x, rectangle.y, rectangle.width, rectangle.height };
+		case LegacyIAccessibleState:
+			// STATE_SYSTEM_CHECKED and STATE_SYSTEM_MIXED.
+			return toggleState == ToggleState.ON ? 0x10 : toggleState == ToggleState.INDETERMINATE ? 0x20 : 0;
+		default:
+			String propertyName = property.name();
+			if (propertyName.startsWith("Is") && propertyName.contains("Pattern")) {
+				String pattern = propertyName.substring(2, propertyName.indexOf("Pattern"));
+				if (propertyName.endsWith("Pattern2Available")) {
+					pattern = pattern + "2";
+				}
+				try {
+					return hasPattern(PatternID.valueOf(pattern));
+				} catch (IllegalArgumentException e) {
+					return false;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Get the simulated control type.
+	 *
+	 * @return The ControlType.
+	 */
+	public ControlType getSimulatedControlType() {
+		return controlType;
+	}
+
+	/**
+	 * Sets the properties of a replayed element, without reporting a change.
+	 *
+	 * @param helpText The HelpText property.
+	 * @param value    The value.
+	 * @param enabled  The enabled state.
+	 */
+	void restore(String helpText, String value, boolean enabled) {
+		this.helpText = helpText;
+		this.value = value;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Sets the Name property.
+	 *
+	 * @param name The new name.
+	 */
+	public void setName(String name) {
+		this.name = name;
+		propertyChanged(PropertyID.Name);
+	}
+
+	/**
+	 * Sets the AutomationId property.
+	 *
+	 * @param automationId The new automation ID.
+	 */
+	public void setAutomationId(String automationId) {
+		this.automationId = automationId;
+		propertyChanged(PropertyID.AutomationId);
+	}
+
+	/**
+	 * Sets the HelpText property.
+	 *
+	 * @param helpText The new help text.
+	 */
+	public void setHelpText(String helpText) {
+		this.helpText = helpText;
+		propertyChanged(PropertyID.HelpText);
+	}
+
+	/**
+	 * Sets the value, as read through the Value pattern and the
+	 * LegacyIAccessible value.
+	 *
+	 * @param value The new value.
+	 */
+	public void setValue(String value) {
+		this.value = value;
+		propertyChanged(PropertyID.LegacyIAccessibleValue);
+	}
+
+	/**
+	 * Sets whether the element is enabled.
+	 *
+	 * @param enabled The new enabled state.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		propertyChanged(PropertyID.IsEnabled);
+	}
+
+	/**
+	 * Sets the bounding rectangle.
+	 *
+	 * @param bounds The new bounds in screen coordinates.
+	 */
+	public void setBounds(Rectangle bounds) {
+		this.bounds = bounds;
+		propertyChanged(PropertyID.BoundingRectangle);
+	}
+
+	/**
+	 * Get the bounding rectangle, without counting a call.
+	 *
+	 * @return The bounds in screen coordinates.
+	 */
+	public Rectangle getBounds() {
+		return bounds;
+	}
+
+	ToggleState toggleState() {
+		return toggleState;
+	}
+
+	void setToggleState(ToggleState toggleState) {
+		this.toggleState = toggleState;
+		// The toggle state has no PropertyID in the library; LegacyIAccessibleState
+		// carries the checked state.
+		propertyChanged(PropertyID.LegacyIAccessibleState);
+	}
+
+	/**
+	 * Checks whether the element is expanded, without counting a call.
+	 *
+	 * @return True if the element is expanded.
+	 */
+	public boolean isExpanded() {
+		return expanded;
+	}
+
+	void setExpanded(boolean expanded) {
+		this.expanded = expanded;
+	}
+
+	/**
+	 * Checks whether the element is selected, without counting a call.
+	 *
+	 * @return True if the element is selected.
+	 */
+	public boolean isSelected() {
+		return selected;
+	}
+
+	void select() {
+		if (parent != null) {
+			for (SimulatedElement sibling : parent.children()) {
+				sibling.selected = false;
+			}
+		}
+		selected = true;
+	}
+
+	private void propertyChanged(PropertyID property) {
+		if (!removed) {
+			backend.fireEvent(new AutomationEvent(AutomationEvent.Type.PROPERTY_CHANGED, this, property));
+		}
+	}
+
+	@Override
+	public Object getPropertyValue(int propertyId) throws AutomationException {
+		backend.call(CallType.PROPERTY);
+		PropertyID property = PROPERTIES.get(propertyId);
+		if (property == null) {
+			throw new AutomationException("Unknown property: " + propertyId);
+		}
+		return readProperty(property);
+	}
+
+	@Override
+	public String getName() throws AutomationException {
+		backend.call(CallType.PROPERTY);
+		return name;
+	}
+
+	@Override
+	public String getCachedName() throws AutomationException {
+		return name;
+	}
+
+	@Override
+	public String getAutomationId() throws AutomationException {
+		backend.call(CallType.PROPERTY);
+		return automationId;
+	}
+
+	@Override
+	public String getClassName() throws AutomationException {
+		backend.call(CallType.PROPERTY);
+		return "Simulated" + controlType.name();
+	}
+
+	@Override
+	public int getControlType() throws AutomationException {
+		backend.call(CallType.PROPERTY);
+		return controlType.getValue();
+	}
+
+	@Override
+	public Boolean isEnabled() throws AutomationException {
+		backend.call(CallType.PROPERTY);
+		return enabled;
+	}
+
+	@Override
+	public Boolean offScreen() throws AutomationException {
+		backend.call(CallType.PROPERTY);
+		return removed;
+	}
+
+	@Override
+	public WinDef.RECT getBoundingRectangle() throws AutomationException {
+		backend.call(CallType.PROPERTY);
+		Rectangle rectangle = bounds;
+		WinDef.RECT rect = new WinDef.RECT();
+		rect.left = rectangle.x;
+		rect.top = rectangle.y;
+		rect.right = rectangle.x + rectangle.width;
+		rect.bottom = rectangle.y + rectangle.height;
+		return rect;
+	}
+
+	@Override
+	public void setFocus() {
+		backend.call(CallType.PATTERN);
+	}
+
+	@Override
+	public String toString() {
+		return "SimulatedElement[" + controlType + " '" + name + "' " + (path.isEmpty() ? "root" : path) + "]";
+	}
+}
@@ -0,0 +1,91 @@
+package core.backend;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+import com.sun.jna.platform.win32.Guid;
+import com.sun.jna.win32.StdCallLibrary;
+
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+import mmarquee.uiautomation.TreeScope;
+
+/**
+ * The StructureEventHandler class subscribes the {@link UIAutomationBackend} to
+ * the structure changes of UIAutomation, elements added to or removed from the
+ * tree, for the whole desktop, see {@link EventHandler}. The source of a
+ * removal is the parent of the removed elements.
+ */
+final class StructureEventHandler extends EventHandler {
+
+	private static final int ADD_STRUCTURE_CHANGED_EVENT_HANDLER = 37;
+	private static final int REMOVE_STRUCTURE_CHANGED_EVENT_HANDLER = 38;
+
+	/**
+	 * IUIAutomationStructureChangedEventHandler.
+	 */
+	private static final Guid.IID IID = new Guid.IID("{E81D1B4E-11C5-42F8-9754-E7036C79F054}");
+
+	private StructureEventHandler(AutomationEventListener listener) {
+		super(IID, listener);
+		HandlerVtbl vtbl = new HandlerVtbl();
+		vtbl.QueryInterface = this::queryInterface;
+		vtbl.AddRef = this::addRef;
+		vtbl.Release = this::release;
+		vtbl.HandleStructureChangedEvent = this::handleStructureChangedEvent;
+		install(vtbl);
+	}
+
+	/**
+	 * Subscribes a listener to the structure changes under an element. The
+	 * calling thread must have initialized COM.
+	 *
+	 * @param element  The element, usually the desktop.
+	 * @param listener The listener to report the events to.
+	 * @return The StructureEventHandler, to remove with {@link #remove()}.
+	 * @throws AutomationException If the handler could not be added.
+	 */
+	static StructureEventHandler add(Element element, AutomationEventListener listener) throws AutomationException {
+		StructureEventHandler eventHandler = new StructureEventHandler(listener);
+		eventHandler.subscribe(element);
+		return eventHandler;
+	}
+
+	@Override
+	void register() throws AutomationException {
+		check(invoke(ADD_STRUCTURE_CHANGED_EVENT_HANDLER, root, TreeScope.SUBTREE, null, handler));
+	}
+
+	@Override
+	void unregister() {
+		invokeRemove("structure changed", REMOVE_STRUCTURE_CHANGED_EVENT_HANDLER, root, handler);
+	}
+
+	private int handleStructureChangedEvent(Pointer thisPointer, Pointer sender, int changeType, Pointer runtimeId) {
+		return dispatch(AutomationEvent.Type.STRUCTURE_CHANGED, sender, null);
+	}
+
+	/**
+	 * The vtable of the IUIAutomationStructureChangedEventHandler interface.
+	 */
+	public static final class HandlerVtbl extends Structure {
+		public QueryInterfaceCallback QueryInterface;
+		public ReferenceCallback AddRef;
+		public ReferenceCallback Release;
+		public HandleStructureChangedEventCallback HandleStructureChangedEvent;
+
+		@Override
+		protected List<String> getFieldOrder() {
+			return Arrays.asList("QueryInterface", "AddRef", "Release", "HandleStructureChangedEvent");
+		}
+	}
+
+	/**
+	 * IUIAutomationStructureChangedEventHandler::HandleStructureChangedEvent.
+	 */
+	public interface HandleStructureChangedEventCallback extends StdCallLibrary.StdCallCallback {
+		int invoke(Pointer thisPointer, Pointer sender, int changeType, Pointer runtimeId);
+	}
+}
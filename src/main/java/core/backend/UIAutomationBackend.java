@@ -0,0 +1,448 @@
+package core.backend;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sun.jna.platform.win32.COM.COMUtils;
+import com.sun.jna.platform.win32.COM.Unknown;
+import com.sun.jna.platform.win32.Guid;
+import com.sun.jna.platform.win32.WinNT;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+
+import core.ConditionCache;
+import core.SearchCondition;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.CacheRequest;
+import mmarquee.automation.Element;
+import mmarquee.automation.ElementNotFoundException;
+import mmarquee.automation.PatternID;
+import mmarquee.automation.PropertyID;
+import mmarquee.automation.UIAutomation;
+import mmarquee.automation.pattern.ExpandCollapse;
+import mmarquee.automation.pattern.Invoke;
+import mmarquee.automation.pattern.SelectionItem;
+import mmarquee.automation.pattern.Toggle;
+import mmarquee.automation.pattern.Value;
+import mmarquee.automation.pattern.Window;
+import mmarquee.uiautomation.IUIAutomationElement;
+import mmarquee.uiautomation.ToggleState;
+import mmarquee.uiautomation.TreeScope;
+
+/**
+ * The UIAutomationBackend class is the {@link AutomationBackend} for the real
+ * Windows desktop, built on the mmarquee UIAutomation library. Conditions are
+ * kept in a {@link ConditionCache} and the cache requests of the batched
+ * searches are built once per property set.
+ *
+ * The backend reports the window opened and closed events, the structure
+ * changes and the changes of the IsEnabled and Name properties of the desktop,
+ * see {@link WindowEventHandler}, {@link StructureEventHandler} and
+ * {@link PropertyEventHandler}. Each kind is subscribed to on its own; the
+ * kinds that could not be are not reported, and callers relying on them still
+ * read the tree again.
+ */
+public class UIAutomationBackend implements AutomationBackend {
+
+	/**
+	 * The name of this backend.
+	 */
+	public static final String NAME = "uiautomation";
+
+	private static final Logger log = LogManager.getLogger(UIAutomationBackend.class);
+
+	private static final int CONDITION_CACHE_SIZE = 256;
+
+	private final UIAutomation automation;
+	private final ConditionCache conditionCache;
+	private final Map<List<PropertyID>, CacheRequest> cacheRequests = new ConcurrentHashMap<>();
+	private final Map<Integer, TreeScope> treeScopes = new ConcurrentHashMap<>();
+	private final Element rootElement;
+	private final List<AutomationEventListener> listeners = new CopyOnWriteArrayList<>();
+	private PointerByReference trueCondition;
+	private volatile WindowEventHandler windowEvents;
+	private volatile StructureEventHandler structureEvents;
+	private volatile PropertyEventHandler propertyEvents;
+
+	/**
+	 * Constructs a new UIAutomationBackend on the shared UIAutomation instance.
+	 */
+	public UIAutomationBackend() {
+		this(UIAutomation.getInstance(), CONDITION_CACHE_SIZE);
+	}
+
+	/**
+	 * Constructs a new UIAutomationBackend. The events are subscribed to on the
+	 * calling thread, which must also close the backend.
+	 *
+	 * @param automation         The UIAutomation instance to use.
+	 * @param conditionCacheSize The maximum number of conditions kept in the
+	 *                           condition cache.
+	 */
+	public UIAutomationBackend(UIAutomation automation, int conditionCacheSize) {
+		this.automation = automation;
+		this.conditionCache = new ConditionCache(conditionCacheSize, new UIAutomationConditionFactory(automation));
+		this.rootElement = automation.getDesktop().getElement();
+		try {
+			this.windowEvents = WindowEventHandler.add(rootElement, this::fireEvent);
+		} catch (AutomationException | RuntimeException e) {
+			log.warn("Could not subscribe to the window events, windows are polled instead.", e);
+		}
+		try {
+			this.structureEvents = StructureEventHandler.add(rootElement, this::fireEvent);
+		} catch (AutomationException | RuntimeException e) {
+			log.warn("Could not subscribe to the structure changed events, trees are read again instead.", e);
+		}
+		try {
+			this.propertyEvents = PropertyEventHandler.add(rootElement, this::fireEvent);
+		} catch (AutomationException | RuntimeException e) {
+			log.warn("Could not subscribe to the property changed events, properties are polled instead.", e);
+		}
+	}
+
+	/**
+	 * Get the UIAutomation instance used by this backend.
+	 *
+	 * @return The UIAutomation instance.
+	 */
+	public UIAutomation getAutomation() {
+		return automation;
+	}
+
+	/**
+	 * Get the cache of the conditions built by this backend.
+	 *
+	 * @return The ConditionCache.
+	 */
+	public ConditionCache getConditionCache() {
+		return conditionCache;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public Element getRootElement() {
+		return rootElement;
+	}
+
+	@Override
+	public Element findFirst(Element context, int scope, SearchCondition condition) throws AutomationException {
+		try (ConditionCache.Lease lease = conditionCache.acquire(condition)) {
+			return context.findFirst(getTreeScope(scope), lease.get());
+		} catch (ElementNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Get the TreeScope structure for a scope. The structures are passed by value
+	 * and never changed, so one per scope is shared by all searches.
+	 *
+	 * @param scope The scope of searching (e.g., TreeScope.SUBTREE).
+	 * @return The TreeScope.
+	 */
+	private TreeScope getTreeScope(int scope) {
+		TreeScope treeScope = treeScopes.get(scope);
+		if (treeScope == null) {
+			treeScope = new TreeScope(scope);
+			treeScopes.put(scope, treeScope);
+		}
+		return treeScope;
+	}
+
+	@Override
+	public List<Element> findAll(Element context, int scope, SearchCondition condition) throws AutomationException {
+		try (ConditionCache.Lease lease = conditionCache.acquire(condition)) {
+			return context.findAll(getTreeScope(scope), lease.get());
+		}
+	}
+
+	@Override
+	public List<Element> findAll(Element context, int scope, SearchCondition condition, PropertyID[] properties)
+			throws AutomationException {
+		try (ConditionCache.Lease lease = conditionCache.acquire(condition)) {
+			return context.findAll(getTreeScope(scope), lease.get(), getCacheRequest(properties));
+		}
+	}
+
+	/**
+	 * Get the cache request fetching the given properties, building it on first
+	 * use.
+	 *
+	 * @param properties The properties to fetch.
+	 * @return The cache request.
+	 * @throws AutomationException If the cache request could not be created.
+	 */
+	private CacheRequest getCacheRequest(PropertyID[] properties) throws AutomationException {
+		List<PropertyID> key = Arrays.asList(properties.clone());
+		CacheRequest cacheRequest = cacheRequests.get(key);
+		if (cacheRequest == null) {
+			cacheRequest = new CacheRequest(automation);
+			for (PropertyID property : properties) {
+				cacheRequest.addProperty(property.getValue());
+			}
+			CacheRequest existing = cacheRequests.putIfAbsent(key, cacheRequest);
+			if (existing != null) {
+				cacheRequest = existing;
+			}
+		}
+		return cacheRequest;
+	}
+
+	@Override
+	public List<Element> getChildren(Element element) throws AutomationException {
+		return element.findAll(getTreeScope(TreeScope.CHILDREN), getTrueCondition());
+	}
+
+	@Override
+	public List<Element> getChildren(Element element, PropertyID[] properties) throws AutomationException {
+		return element.findAll(getTreeScope(TreeScope.CHILDREN), getTrueCondition(), getCacheRequest(properties));
+	}
+
+	private synchronized PointerByReference getTrueCondition() throws AutomationException {
+		if (trueCondition == null) {
+			trueCondition = automation.createTrueCondition();
+		}
+		return trueCondition;
+	}
+
+	@Override
+	public Object getPropertyValue(Element element, PropertyID property) throws AutomationException {
+		return element.getPropertyValue(property.getValue());
+	}
+
+	@Override
+	public Rectangle getBoundingRectangle(Element element) throws AutomationException {
+		return element.getBoundingRectangle().toRectangle();
+	}
+
+	/**
+	 * Compares the elements with IUIAutomation::CompareElements, which compares
+	 * their runtime ids.
+	 */
+	@Override
+	public boolean isSameElement(Element element, Element other) throws AutomationException {
+		if (element == other) {
+			return true;
+		}
+		if (element == null || other == null) {
+			return false;
+		}
+		PointerByReference first = new PointerByReference();
+		PointerByReference second = new PointerByReference();
+		try {
+			check(element.getElement().QueryInterface(new Guid.REFIID(IUIAutomationElement.IID), first));
+			check(other.getElement().QueryInterface(new Guid.REFIID(IUIAutomationElement.IID), second));
+			IntByReference same = new IntByReference();
+			check(automation.compareElements(first.getValue(), second.getValue(), same));
+			return same.getValue() != 0;
+		} finally {
+			release(first);
+			release(second);
+		}
+	}
+
+	private static void check(WinNT.HRESULT result) throws AutomationException {
+		check(result.intValue());
+	}
+
+	private static void check(int result) throws AutomationException {
+		if (COMUtils.FAILED(result)) {
+			throw new AutomationException(result);
+		}
+	}
+
+	private static void release(PointerByReference reference) {
+		if (reference.getValue() != null) {
+			new Unknown(reference.getValue()).Release();
+		}
+	}
+
+	@Override
+	public Object[] getPropertyValues(Element element, PropertyID[] properties) throws AutomationException {
+		if (properties.length == 1) {
+			return new Object[] { getPropertyValue(element, properties[0]) };
+		}
+		Element updated = CachedPropertyReader.buildUpdatedCache(element, getCacheRequest(properties));
+		try {
+			Object[] values = new Object[properties.length];
+			for (int i = 0; i < properties.length; i++) {
+				values[i] = CachedPropertyReader.getCachedPropertyValue(updated, properties[i].getValue());
+			}
+			return values;
+		} finally {
+			updated.getElement().Release();
+		}
+	}
+
+	@Override
+	public Object getCachedPropertyValue(Element element, PropertyID property) throws AutomationException {
+		return CachedPropertyReader.getCachedPropertyValue(element, property.getValue());
+	}
+
+	@Override
+	public boolean isPatternAvailable(Element element, PatternID pattern) throws AutomationException {
+		return UIAutomation.isPropertyValueTrue(element.getPropertyValue(getAvailabilityProperty(pattern).getValue()));
+	}
+
+	/**
+	 * Get the property telling whether a control pattern is available.
+	 *
+	 * @param pattern The control pattern.
+	 * @return The Is...PatternAvailable property of the pattern.
+	 */
+	private static PropertyID getAvailabilityProperty(PatternID pattern) {
+		String name = pattern.name();
+		if (name.endsWith("2")) {
+			// Text2 and Transform2 are named IsTextPattern2Available and
+			// IsTransformPattern2Available.
+			return PropertyID.valueOf("Is" + name.substring(0, name.length() - 1) + "Pattern2Available");
+		}
+		return PropertyID.valueOf("Is" + name + "PatternAvailable");
+	}
+
+	@Override
+	public void invoke(Element element) throws AutomationException {
+		new Invoke(element).invoke();
+	}
+
+	@Override
+	public ToggleState getToggleState(Element element) throws AutomationException {
+		return new Toggle(element).currentToggleState();
+	}
+
+	@Override
+	public void toggle(Element element) throws AutomationException {
+		new Toggle(element).toggle();
+	}
+
+	@Override
+	public String getValue(Element element) throws AutomationException {
+		return new Value(element).value();
+	}
+
+	@Override
+	public void setValue(Element element, String value) throws AutomationException {
+		new Value(element).setValue(value);
+	}
+
+	@Override
+	public void expand(Element element) throws AutomationException {
+		new ExpandCollapse(element).expand();
+	}
+
+	@Override
+	public void collapse(Element element) throws AutomationException {
+		new ExpandCollapse(element).collapse();
+	}
+
+	@Override
+	public void select(Element element) throws AutomationException {
+		new SelectionItem(element).select();
+	}
+
+	/**
+	 * Sets the focus through the element itself, as the library drops the
+	 * result of the call.
+	 */
+	@Override
+	public void setFocus(Element element) throws AutomationException {
+		int result = element.getElement().setFocus();
+		if (COMUtils.FAILED(result)) {
+			throw new AutomationException(result);
+		}
+	}
+
+	@Override
+	public void maximize(Element element) throws AutomationException {
+		Window window = new Window(element);
+		if (window.getCanMaximize()) {
+			window.maximize();
+		}
+	}
+
+	@Override
+	public void closeWindow(Element element) throws AutomationException {
+		new Window(element).close();
+	}
+
+	@Override
+	public boolean supportsEvents() {
+		return windowEvents != null || structureEvents != null || propertyEvents != null;
+	}
+
+	@Override
+	public boolean supportsEvents(AutomationEvent.Type type) {
+		switch (type) {
+		case WINDOW_OPENED:
+		case WINDOW_CLOSED:
+			return windowEvents != null;
+		case STRUCTURE_CHANGED:
+			return structureEvents != null;
+		case PROPERTY_CHANGED:
+			return propertyEvents != null;
+		default:
+			return false;
+		}
+	}
+
+	@Override
+	public void addEventListener(AutomationEventListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void removeEventListener(AutomationEventListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Reports an event to the listeners, on the UIAutomation thread calling
+	 * the event handler.
+	 *
+	 * @param event The event.
+	 */
+	private void fireEvent(AutomationEvent event) {
+		for (AutomationEventListener listener : listeners) {
+			listener.onEvent(event);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (windowEvents != null) {
+			windowEvents.remove();
+			windowEvents = null;
+		}
+		if (structureEvents != null) {
+			structureEvents.remove();
+			structureEvents = null;
+		}
+		if (propertyEvents != null) {
+			propertyEvents.remove();
+			propertyEvents = null;
+		}
+		listeners.clear();
+		conditionCache.clear();
+		cacheRequests.clear();
+		if (trueCondition != null && trueCondition.getValue() != null) {
+			new Unknown(trueCondition.getValue()).Release();
+		}
+		trueCondition = null;
+	}
+
+	@Override
+	public String toString() {
+		return "UIAutomationBackend[" + conditionCache + "]";
+	}
+}
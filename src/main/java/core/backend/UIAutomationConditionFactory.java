@@ -0,0 +1,104 @@
+package core.backend;
+
+import com.sun.jna.platform.win32.OleAuto;
+import com.sun.jna.platform.win32.Variant;
+import com.sun.jna.platform.win32.WTypes;
+import com.sun.jna.platform.win32.COM.Unknown;
+import com.sun.jna.ptr.PointerByReference;
+
+import core.ConditionCache;
+import core.SearchCondition;
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.PropertyID;
+import mmarquee.automation.UIAutomation;
+
+/**
+ * The UIAutomationConditionFactory class builds the COM conditions used by the
+ * {@link UIAutomationBackend} through the mmarquee UIAutomation library. Property
+ * conditions are combined with the control type condition by an AND condition,
+ * which keeps its own references to the parts, so the parts are released right
+ * after the AND condition is built.
+ */
+class UIAutomationConditionFactory implements ConditionCache.ConditionFactory {
+
+	private final UIAutomation automation;
+
+	/**
+	 * Constructs a new UIAutomationConditionFactory.
+	 *
+	 * @param automation The UIAutomation instance used to create conditions.
+	 */
+	UIAutomationConditionFactory(UIAutomation automation) {
+		this.automation = automation;
+	}
+
+	@Override
+	public PointerByReference create(SearchCondition condition) throws AutomationException {
+		PointerByReference controlTypeCondition = automation.createControlTypeCondition(condition.getControlType());
+		if (condition.isControlTypeOnly()) {
+			return controlTypeCondition;
+		}
+
+		PointerByReference propertyCondition = null;
+		try {
+			propertyCondition = createPropertyCondition(condition);
+			return automation.createAndCondition(propertyCondition, controlTypeCondition);
+		} finally {
+			release(propertyCondition);
+			release(controlTypeCondition);
+		}
+	}
+
+	/**
+	 * Builds the property part of the given condition.
+	 *
+	 * @param condition The search condition to build.
+	 * @return The property condition.
+	 * @throws AutomationException      If the condition could not be created.
+	 * @throws IllegalArgumentException If the locator type has no property
+	 *                                  condition.
+	 */
+	private PointerByReference createPropertyCondition(SearchCondition condition) throws AutomationException {
+		switch (condition.getLocatorType()) {
+		case NAME:
+			return automation.createNamePropertyCondition(condition.getValue());
+		case ID:
+			return automation.createAutomationIdPropertyCondition(condition.getValue());
+		case TEXT:
+			return createStringPropertyCondition(PropertyID.HelpText, condition.getValue());
+		case VALUE:
+			return createStringPropertyCondition(PropertyID.LegacyIAccessibleValue, condition.getValue());
+		default:
+			throw new IllegalArgumentException("Locator type has no property condition: " + condition.getLocatorType());
+		}
+	}
+
+	/**
+	 * Builds a property condition for a string property. The BSTR is only needed
+	 * while the condition is created, as UIAutomation keeps its own copy of the
+	 * VARIANT.
+	 *
+	 * @param propertyID The property to match.
+	 * @param value      The string value to match.
+	 * @return The property condition.
+	 * @throws AutomationException If the condition could not be created.
+	 */
+	private PointerByReference createStringPropertyCondition(PropertyID propertyID, String value)
+			throws AutomationException {
+		WTypes.BSTR sysAllocated = OleAuto.INSTANCE.SysAllocString(value);
+		try {
+			Variant.VARIANT.ByValue variant = new Variant.VARIANT.ByValue();
+			variant.setValue(Variant.VT_BSTR, sysAllocated);
+			return automation.createPropertyCondition(propertyID.getValue(), variant);
+		} finally {
+			OleAuto.INSTANCE.SysFreeString(sysAllocated);
+		}
+	}
+
+	@Override
+	public void release(PointerByReference condition) {
+		if (condition != null && condition.getValue() != null) {
+			new Unknown(condition.getValue()).Release();
+		}
+	}
+}
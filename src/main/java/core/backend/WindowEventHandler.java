@@ -0,0 +1,97 @@
+package core.backend;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+import com.sun.jna.win32.StdCallLibrary;
+
+import mmarquee.automation.AutomationException;
+import mmarquee.automation.Element;
+import mmarquee.automation.EventID;
+import mmarquee.uiautomation.IUIAutomationEventHandler;
+import mmarquee.uiautomation.TreeScope;
+
+/**
+ * The WindowEventHandler class subscribes the {@link UIAutomationBackend} to
+ * the window opened and closed events of UIAutomation, for the whole desktop,
+ * see {@link EventHandler}.
+ */
+final class WindowEventHandler extends EventHandler {
+
+	private static final int ADD_AUTOMATION_EVENT_HANDLER = 32;
+	private static final int REMOVE_AUTOMATION_EVENT_HANDLER = 33;
+
+	private static final EventID[] EVENTS = { EventID.Window_WindowOpened, EventID.Window_WindowClosed };
+
+	private WindowEventHandler(AutomationEventListener listener) {
+		super(IUIAutomationEventHandler.IID, listener);
+		HandlerVtbl vtbl = new HandlerVtbl();
+		vtbl.QueryInterface = this::queryInterface;
+		vtbl.AddRef = this::addRef;
+		vtbl.Release = this::release;
+		vtbl.HandleAutomationEvent = this::handleAutomationEvent;
+		install(vtbl);
+	}
+
+	/**
+	 * Subscribes a listener to the window opened and closed events under an
+	 * element. The calling thread must have initialized COM.
+	 *
+	 * @param element  The element, usually the desktop.
+	 * @param listener The listener to report the events to.
+	 * @return The WindowEventHandler, to remove with {@link #remove()}.
+	 * @throws AutomationException If the handler could not be added.
+	 */
+	static WindowEventHandler add(Element element, AutomationEventListener listener) throws AutomationException {
+		WindowEventHandler eventHandler = new WindowEventHandler(listener);
+		eventHandler.subscribe(element);
+		return eventHandler;
+	}
+
+	@Override
+	void register() throws AutomationException {
+		for (EventID event : EVENTS) {
+			check(invoke(ADD_AUTOMATION_EVENT_HANDLER, event.getValue(), root, TreeScope.SUBTREE, null, handler));
+		}
+	}
+
+	@Override
+	void unregister() {
+		for (EventID event : EVENTS) {
+			invokeRemove(event.toString(), REMOVE_AUTOMATION_EVENT_HANDLER, event.getValue(), root, handler);
+		}
+	}
+
+	private int handleAutomationEvent(Pointer thisPointer, Pointer sender, int eventId) {
+		if (eventId == EventID.Window_WindowOpened.getValue()) {
+			return dispatch(AutomationEvent.Type.WINDOW_OPENED, sender, null);
+		} else if (eventId == EventID.Window_WindowClosed.getValue()) {
+			return dispatch(AutomationEvent.Type.WINDOW_CLOSED, sender, null);
+		}
+		return S_OK;
+	}
+
+	/**
+	 * The vtable of the IUIAutomationEventHandler interface.
+	 */
+	public static final class HandlerVtbl extends Structure {
+		public QueryInterfaceCallback QueryInterface;
+		public ReferenceCallback AddRef;
+		public ReferenceCallback Release;
+		public HandleAutomationEventCallback HandleAutomationEvent;
+
+		@Override
+		protected List<String> getFieldOrder() {
+			return Arrays.asList("QueryInterface", "AddRef", "Release", "HandleAutomationEvent");
+		}
+	}
+
+	/**
+	 * IUIAutomationEventHandler::HandleAutomationEvent.
+	 */
+	public interface HandleAutomationEventCallback extends StdCallLibrary.StdCallCallback {
+		int invoke(Pointer thisPointer, Pointer sender, int eventId);
+	}
+}
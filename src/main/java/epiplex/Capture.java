@@ -77,7 +77,7 @@ public class Capture {
 
 			// Focus on the Epiplex main window
 			Timer.waitTime(1500);
-			finder.getWindow("Epiplex500", waitTime).setFocus();
+			Driver.getBackend().setFocus(finder.getWindow("Epiplex500", waitTime));
 
 			// Locate and enter the file name in the Edit Box
 			UIElement fileNameEditBox = finder.getElement("name", "EDIT",
@@ -143,7 +143,7 @@ public class Capture {
 
 			// Focus on the Epiplex main window
 			Timer.waitTime(1500);
-			finder.getWindow("Epiplex500", waitTime).setFocus();
+			Driver.getBackend().setFocus(finder.getWindow("Epiplex500", waitTime));
 
 			// Locate and enter the file name in the Edit Box
 			UIElement fileNameEditBox = finder.getElement("name", "EDIT",
@@ -268,7 +268,7 @@ public class Capture {
 
 				// Close any pop-up windows that appear after saving the capture
 				finder.waitToDisplay("name", "Window", "Epiplex500", waitTime);
-				finder.getWindow("Epiplex500", waitTime).setFocus();
+				Driver.getBackend().setFocus(finder.getWindow("Epiplex500", waitTime));
 				finder.getElement("name", "BUTTON", "OK", waitTime).clickCenter();
 				finder.getElement("name", "BUTTON", "No", waitTime).clickCenter();
 
@@ -316,7 +316,7 @@ public class Capture {
 				log.info("Add Note window displayed: {}", addNoteWindowDisplayed);
 
 				if (addNoteWindowDisplayed) {
-					finder.getWindow("Epiplex500 Capture  - Add Note", waitTime).setFocus();
+					Driver.getBackend().setFocus(finder.getWindow("Epiplex500 Capture  - Add Note", waitTime));
 					Keyboard.type("Step Note added while capturing");
 
 					// Attach an audio file to the note, if applicable
@@ -384,7 +384,7 @@ public class Capture {
 				log.info("Validations and Prerequisites window displayed: {}", validationsWindowDisplayed);
 
 				if (validationsWindowDisplayed) {
-					finder.getWindow("Validations and Prerequisites", waitTime).setFocus();
+					Driver.getBackend().setFocus(finder.getWindow("Validations and Prerequisites", waitTime));
 
 					// Select the specified condition from the condition combo box
 					UIElement conditionComboBox = finder.getElement("id", "COMBOBOX", "cmb_condition", waitTime);
@@ -443,7 +443,7 @@ public class Capture {
 				log.info("Exception Information window displayed: {}", exceptionWindowDisplayed);
 
 				if (exceptionWindowDisplayed) {
-					finder.getWindow("Process Exception", waitTime).setFocus();
+					Driver.getBackend().setFocus(finder.getWindow("Process Exception", waitTime));
 
 					// Write the specified exception description in the exception description
 					// textbox
@@ -530,7 +530,7 @@ public class Capture {
 
 				if (inputDataWindowDisplayed) {
 					// Set focus to the "Input Data Points" window
-					finder.getWindow("Input Data Points", waitTime).setFocus();
+					Driver.getBackend().setFocus(finder.getWindow("Input Data Points", waitTime));
 
 					// Write test data into the "Datapoint_1" textbox
 					UIElement datapointTextbox = finder.getElement("name", "TEXT", "Datapoint_1", waitTime);
@@ -706,7 +706,7 @@ public class Capture {
 
 				if (narrationWindowDisplayed) {
 					// Set focus to the "Narration" window
-					finder.getWindow("Epiplex500 Capture  - Add Narration", waitTime).setFocus();
+					Driver.getBackend().setFocus(finder.getWindow("Epiplex500 Capture  - Add Narration", waitTime));
 
 					// Enter the text "Narration added" in the "Partner Name" textbox
 					UIElement partnerNameEdit = finder.getElement("name", "EDIT", "Partner Name", waitTime);
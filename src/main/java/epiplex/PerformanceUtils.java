@@ -172,8 +172,7 @@ public class PerformanceUtils {
 		// Wait for the capture file to be saved
 		Timer.startTimer();
 		finder.waitToDisplay("name", "Window", "Saving capture file", WAIT_TIME);
-		while (finder.waitToDisplay("name", "Window", "Saving capture file", 3)) {
-		}
+		finder.waitToVanish("name", "Window", "Saving capture file", MAX_WAIT);
 		Timer.stopTimer("Save Capture");
 
 		try {
@@ -338,8 +337,8 @@ public class PerformanceUtils {
 
 			action.focusWindow("Developer Editor");
 
-			// Wait for the document to be generated
-			finder.waitToDisplay("IMAGE", "SCREEN", "launchDocument", MAX_WAIT);
+			// Wait for the document to be generated, first where it showed last time
+			finder.waitToDisplay("IMAGE", "LAST", "launchDocument", MAX_WAIT);
 
 			Timer.stopTimer(testCaseName);
 
@@ -430,8 +429,8 @@ public class PerformanceUtils {
 
 			action.focusWindow("Developer Editor");
 
-			// Wait for the simulation to be generated
-			finder.waitToDisplay("IMAGE", "SCREEN", "launchSimulation", MAX_WAIT);
+			// Wait for the simulation to be generated, first where it showed last time
+			finder.waitToDisplay("IMAGE", "LAST", "launchSimulation", MAX_WAIT);
 
 			Timer.stopTimer(testCaseName);
 
@@ -522,8 +521,8 @@ public class PerformanceUtils {
 
 			action.focusWindow("Developer Editor");
 
-			// Wait for the cue card to be generated
-			finder.waitToDisplay("IMAGE", "SCREEN", "launchCueCard", MAX_WAIT);
+			// Wait for the cue card to be generated, first where it showed last time
+			finder.waitToDisplay("IMAGE", "LAST", "launchCueCard", MAX_WAIT);
 
 			Timer.stopTimer(testCaseName);
 
@@ -23,7 +23,12 @@ import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import actions.LocatorChain;
+import actions.LocatorPlan;
+import actions.LocatorStep;
+import actions.LocatorType;
 import core.Application;
+import core.SearchRegion;
 
 /**
  * Utility class containing methods related to test execution and workbook
@@ -252,6 +257,42 @@ public class ExecutionUtils {
 		case "SCALE":
 			Settings.SCALE = Integer.parseInt(value);
 			break;
+		case "AUTOMATION_BACKEND":
+			Settings.AUTOMATION_BACKEND = value;
+			break;
+		case "POLL_INTERVAL":
+			Settings.POLL_INTERVAL = Long.parseLong(value);
+			break;
+		case "POLL_MAX_INTERVAL":
+			Settings.POLL_MAX_INTERVAL = Long.parseLong(value);
+			break;
+		case "POLL_BACKOFF":
+			Settings.POLL_BACKOFF = Double.parseDouble(value);
+			break;
+		case "AUTO_SCOPE":
+			Settings.AUTO_SCOPE = Boolean.parseBoolean(value);
+			break;
+		case "PREFETCH_PROPERTIES":
+			Settings.PREFETCH_PROPERTIES = Boolean.parseBoolean(value);
+			break;
+		case "PATTERN_ACTIONS":
+			Settings.PATTERN_ACTIONS = Boolean.parseBoolean(value);
+			break;
+		case "ELEMENT_MODEL":
+			Settings.ELEMENT_MODEL = Boolean.parseBoolean(value);
+			break;
+		case "ELEMENT_CACHE_WITHOUT_EVENTS":
+			Settings.ELEMENT_CACHE_WITHOUT_EVENTS = Boolean.parseBoolean(value);
+			break;
+		case "IMAGE_MIN_SCALE":
+			Settings.IMAGE_MIN_SCALE = Double.parseDouble(value);
+			break;
+		case "IMAGE_MAX_SCALE":
+			Settings.IMAGE_MAX_SCALE = Double.parseDouble(value);
+			break;
+		case "PARALLEL_IMAGE_SEARCH":
+			Settings.PARALLEL_IMAGE_SEARCH = Boolean.parseBoolean(value);
+			break;
 		// Add more settings here
 		default:
 			String errorMessage = key + " - is invalid";
@@ -340,6 +381,12 @@ public class ExecutionUtils {
 			return false; // Invalid number of arguments
 		}
 
+		// Compile the locator now, so that a misspelled one fails here.
+		LocatorStep locatorStep = method.getAnnotation(LocatorStep.class);
+		if (locatorStep != null && !compileLocator(locatorStep, stepParameters)) {
+			return false;
+		}
+
 		// Validation specific to "IMAGE" locators
 		if (stepParameters.size() == 4) {
 			String locator = stepParameters.get(1).toUpperCase();
@@ -353,6 +400,38 @@ public class ExecutionUtils {
 		return true; // All conditions passed, step is valid
 	}
 
+	/**
+	 * Compiles the locator of a step into its {@link LocatorPlan}, which the step
+	 * then uses when it runs. A step listing several locators compiles into a
+	 * {@link LocatorChain}, whose images are checked like those of an IMAGE step.
+	 *
+	 * @param locatorStep    The locator annotation of the keyword.
+	 * @param stepParameters The list of parameters for the step, where the first
+	 *                       element is the method name and the next three the
+	 *                       locator.
+	 * @return True if the locator compiled, False otherwise.
+	 */
+	private boolean compileLocator(LocatorStep locatorStep, List<String> stepParameters) {
+		if (stepParameters.size() < 4) {
+			return false;
+		}
+		String controlType = locatorStep.controlType().isEmpty() ? stepParameters.get(2) : locatorStep.controlType();
+		try {
+			LocatorChain chain = LocatorChain.of(stepParameters.get(1), controlType, stepParameters.get(3));
+			if (chain.size() > 1) {
+				for (LocatorPlan plan : chain.getPlans()) {
+					if (plan.getLocatorType() == LocatorType.IMAGE) {
+						addImages(plan.getParameter1(), plan.getParameter2());
+					}
+				}
+			}
+			return true;
+		} catch (IllegalArgumentException e) {
+			log.error(stepParameters.get(0) + " - " + e.getMessage());
+			return false;
+		}
+	}
+
 	public LinkedHashSet<String> images = new LinkedHashSet<>();
 
 	/**
@@ -370,14 +449,40 @@ public class ExecutionUtils {
 			return; // Invalid "IMAGE" locator, not enough parameters
 		}
 
-		String parameter1 = stepParameters.get(2).toUpperCase();
-		if (!parameter1.equals("SCREEN")) {
+		addImages(stepParameters.get(2), stepParameters.get(3));
+	}
+
+	/**
+	 * Adds the image paths of an IMAGE locator to the images set, except for the
+	 * "SCREEN" search area and the regions of interest.
+	 *
+	 * @param parameter1 The search area image file name, "SCREEN" or a search
+	 *                   region.
+	 * @param parameter2 The search element image file name.
+	 */
+	private void addImages(String parameter1, String parameter2) {
+		if (isSearchImage(parameter1)) {
 			// Add the image path for the first image to the images set
-			images.add(ProjectConfiguration.sikuliImageBasePath + "\\" + stepParameters.get(2) + ".PNG");
+			images.add(ProjectConfiguration.sikuliImageBasePath + "\\" + parameter1 + ".PNG");
 		}
 
 		// Add the image path for the second image to the images set
-		images.add(ProjectConfiguration.sikuliImageBasePath + "\\" + stepParameters.get(3) + ".PNG");
+		images.add(ProjectConfiguration.sikuliImageBasePath + "\\" + parameter2 + ".PNG");
+	}
+
+	/**
+	 * Checks whether the search area of an IMAGE locator names an image file.
+	 *
+	 * @param parameter1 The search area.
+	 * @return True for an image, False for "SCREEN", a region or a malformed
+	 *         region, which the compiled locator reports.
+	 */
+	private static boolean isSearchImage(String parameter1) {
+		try {
+			return SearchRegion.of(parameter1).isImage();
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
 	}
 
 	/**
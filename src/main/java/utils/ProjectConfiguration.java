@@ -38,6 +38,7 @@ public class ProjectConfiguration {
 	public static final String transformedGPS_path = TRANSFORMED_GPS_FOLDER.toAbsolutePath().toString();
 	public static final String reportPath = Paths.get(REPORT_FOLDER.toString(), REPORT_NAME).toString();
 	public static final String sikuliImageBasePath = SIKULI_IMAGES_FOLDER.toAbsolutePath().toString();
+	public static final String imageHitHistoryPath = Paths.get(CONFIG_FOLDER.toString(), "image-hits.properties").toString();
 	public static final String mainWorkbookPath = Paths.get(EXCEL_HOLDER_FOLDER.toString(), "main.xlsx").toString();
 	public static final String performaceReportExcelPath = Paths.get(REPORT_FOLDER.toString(), "Performance_Report.xlsx").toString();
 
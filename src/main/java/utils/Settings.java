@@ -24,4 +24,16 @@ public class Settings {
 	public static long MAX_WAIT;
 	public static String XLS_PATH = "config/Formatter.xsl";
 	public static int SCALE;
+	public static String AUTOMATION_BACKEND;
+	public static long POLL_INTERVAL;
+	public static long POLL_MAX_INTERVAL;
+	public static double POLL_BACKOFF;
+	public static boolean AUTO_SCOPE = true;
+	public static boolean PREFETCH_PROPERTIES = true;
+	public static boolean PATTERN_ACTIONS = true;
+	public static boolean ELEMENT_MODEL = false;
+	public static boolean ELEMENT_CACHE_WITHOUT_EVENTS = false;
+	public static double IMAGE_MIN_SCALE = 1.0;
+	public static double IMAGE_MAX_SCALE = 1.0;
+	public static boolean PARALLEL_IMAGE_SEARCH = false;
 }
\ No newline at end of file